@@ -0,0 +1,94 @@
+package Java.bench;
+
+import Java.main.Entity;
+import Java.util.Util_ConcurrentMap;
+import Java.util.Util_Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares {@link Util_ConcurrentMap} against a {@link Util_Map} guarded by a single
+ * monitor, under a read-mostly mix (90% getValueByKey, 10% put) and a merge-only workload.
+ * Run it with several thread counts, e.g. {@code -t 1}, {@code -t 4} and {@code -t 16}.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@Threads(4)
+@State(Scope.Benchmark)
+public class ConcurrentMapBenchmark {
+    @Param({"1000", "100000", "10000000"})
+    public int keys;
+
+    Entity[] pool;
+    Util_Map<Entity> locked;
+    Util_ConcurrentMap<Entity> concurrent;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        pool = new Entity[keys];
+        locked = new Util_Map<>(keys);
+        concurrent = new Util_ConcurrentMap<>(keys);
+        for (int i = 0; i < keys; i++) {
+            pool[i] = new Entity();
+            locked.put(i, pool[i]);
+            concurrent.put(i, pool[i]);
+        }
+    }
+
+    /**
+     * Counts each thread's operations, so that every tenth one is a write.
+     */
+    @State(Scope.Thread)
+    public static class Counter {
+        int next;
+
+        boolean isWrite() {
+            return ++next % 10 == 0;
+        }
+    }
+
+    // =========================================================================
+    @Benchmark
+    public Entity readMostlySynchronized(Counter counter) {
+        int key = ThreadLocalRandom.current().nextInt(keys);
+        synchronized (locked) {
+            return counter.isWrite() ? locked.put(key, pool[key]) : locked.getValueByKey(key);
+        }
+    }
+
+    @Benchmark
+    public Entity readMostlyConcurrent(Counter counter) {
+        int key = ThreadLocalRandom.current().nextInt(keys);
+        return counter.isWrite() ? concurrent.put(key, pool[key]) : concurrent.getValueByKey(key);
+    }
+
+    @Benchmark
+    public Entity mergeSynchronized() {
+        int key = ThreadLocalRandom.current().nextInt(keys);
+        synchronized (locked) {
+            return locked.merge(key, pool[key], (a, b) -> b);
+        }
+    }
+
+    @Benchmark
+    public Entity mergeConcurrent() {
+        int key = ThreadLocalRandom.current().nextInt(keys);
+        return concurrent.merge(key, pool[key], (a, b) -> b);
+    }
+}
@@ -0,0 +1,69 @@
+package Java.bench;
+
+import Java.main.Entity;
+import Java.main.IdGenerator;
+import Java.main.IdGenerators;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares the throughput of the built-in ID generators, and of entity construction with
+ * each of them. The generators are shared between threads, so {@code -t N} shows how they
+ * scale under contention.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@Threads(1)
+@State(Scope.Benchmark)
+public class IdGeneratorBenchmark {
+    @Param({"secureRandom", "threadLocalRandom", "timeOrdered", "monotonic"})
+    public String generatorName;
+
+    IdGenerator generator;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        switch (generatorName) {
+            case "secureRandom":
+                generator = IdGenerators.secureRandom();
+                break;
+            case "threadLocalRandom":
+                generator = IdGenerators.threadLocalRandom();
+                break;
+            case "timeOrdered":
+                generator = IdGenerators.timeOrdered();
+                break;
+            case "monotonic":
+                generator = IdGenerators.monotonic();
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown generator: " + generatorName);
+        }
+    }
+
+    @Benchmark
+    public UUID nextId() {
+        return generator.nextId();
+    }
+
+    @Benchmark
+    public Entity newCompactEntity() {
+        return new Entity(Entity.IdMode.COMPACT, generator);
+    }
+}
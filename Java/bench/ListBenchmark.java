@@ -0,0 +1,125 @@
+package Java.bench;
+
+import Java.main.Entity;
+import Java.util.Util_List;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Hot-path benchmarks for {@link Util_List}: getEntityById (scan and indexed), filterEntities,
+ * mapEntities, indexOf, sortEntities and removeEntity(T). Reads share one list between the
+ * benchmark threads; sortEntities and removeEntity work on a copy per thread.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 2, jvmArgsAppend = "-Xmx8g")
+@Threads(1)
+@State(Scope.Benchmark)
+public class ListBenchmark {
+    @Param({"1000", "10000", "100000", "1000000", "10000000"})
+    public int size;
+
+    Entity[] pool;
+    Util_List<Entity> list;
+    Util_List<Entity> indexed;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        pool = new Entity[size];
+        list = new Util_List<>(size);
+        indexed = new Util_List<>(size);
+        for (int i = 0; i < size; i++) {
+            pool[i] = new Entity();
+            list.addEntity(pool[i]);
+            indexed.addEntity(pool[i]);
+        }
+        indexed.enableIdIndex();
+    }
+
+    /**
+     * A copy of the list for each benchmark thread, for the benchmarks that modify it.
+     */
+    @State(Scope.Thread)
+    public static class ThreadCopy {
+        Util_List<Entity> list;
+        Comparator<Entity> byId = Comparator.comparing(Entity::getId);
+        Comparator<Entity> byIdReversed = byId.reversed();
+        boolean reversed;
+
+        @Setup(Level.Trial)
+        public void setUp(ListBenchmark shared) {
+            list = new Util_List<>(shared.size);
+            for (Entity entity : shared.pool) {
+                list.addEntity(entity);
+            }
+        }
+    }
+
+    private Entity randomEntity() {
+        return pool[ThreadLocalRandom.current().nextInt(size)];
+    }
+
+    // =========================================================================
+    @Benchmark
+    public Entity getEntityByIdScan() {
+        return list.getEntityById(randomEntity().getId());
+    }
+
+    @Benchmark
+    public Entity getEntityByIdIndexed() {
+        return indexed.getEntityById(randomEntity().getId());
+    }
+
+    @Benchmark
+    public List<Entity> filterEntities() {
+        return list.filterEntities(entity -> (entity.getId().charAt(0) & 1) == 0);
+    }
+
+    @Benchmark
+    public List<String> mapEntities() {
+        return list.mapEntities(Entity::getId);
+    }
+
+    @Benchmark
+    public int indexOf() {
+        return list.indexOf(randomEntity());
+    }
+
+    /**
+     * Sorts by ID, alternating the direction so that every call reorders the whole list.
+     */
+    @Benchmark
+    public Util_List<Entity> sortEntities(ThreadCopy copy) {
+        copy.reversed = !copy.reversed;
+        copy.list.sortEntities(copy.reversed ? copy.byIdReversed : copy.byId);
+        return copy.list;
+    }
+
+    /**
+     * Removes the middle entity and appends it again, keeping the size constant.
+     */
+    @Benchmark
+    public boolean removeEntity(ThreadCopy copy) {
+        Entity entity = copy.list.getEntityByIndex(size / 2);
+        boolean removed = copy.list.removeEntity(entity);
+        copy.list.addEntity(entity);
+        return removed;
+    }
+}
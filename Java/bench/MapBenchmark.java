@@ -0,0 +1,124 @@
+package Java.bench;
+
+import Java.main.Entity;
+import Java.util.Util_ConcurrentMap;
+import Java.util.Util_Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Hot-path benchmarks for {@link Util_Map}: put, getValueByKey, computeIfAbsent, merge and
+ * containsValue. Reads share one map between the benchmark threads; writes go to a copy per
+ * thread, and the {@code concurrent*} variants write to one shared {@link Util_ConcurrentMap}.
+ * All writes hit existing keys, so the maps keep their size.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 2, jvmArgsAppend = "-Xmx8g")
+@Threads(1)
+@State(Scope.Benchmark)
+public class MapBenchmark {
+    @Param({"1000", "10000", "100000", "1000000", "10000000"})
+    public int size;
+
+    Entity[] pool;
+    Object[] keys;
+    Util_Map<Entity> map;
+    Util_ConcurrentMap<Entity> concurrent;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        pool = new Entity[size];
+        keys = new Object[size];
+        map = new Util_Map<>(size);
+        concurrent = new Util_ConcurrentMap<>(size);
+        for (int i = 0; i < size; i++) {
+            pool[i] = new Entity();
+            keys[i] = pool[i].getId();
+            map.put(keys[i], pool[i]);
+            concurrent.put(keys[i], pool[i]);
+        }
+    }
+
+    /**
+     * A copy of the map for each benchmark thread, for the benchmarks that modify it.
+     */
+    @State(Scope.Thread)
+    public static class ThreadCopy {
+        Util_Map<Entity> map;
+
+        @Setup(Level.Trial)
+        public void setUp(MapBenchmark shared) {
+            map = new Util_Map<>(shared.size);
+            for (int i = 0; i < shared.size; i++) {
+                map.put(shared.keys[i], shared.pool[i]);
+            }
+        }
+    }
+
+    private int randomIndex() {
+        return ThreadLocalRandom.current().nextInt(size);
+    }
+
+    // =========================================================================
+    @Benchmark
+    public Entity getValueByKey() {
+        return map.getValueByKey(keys[randomIndex()]);
+    }
+
+    @Benchmark
+    public boolean containsValue() {
+        return map.containsValue(pool[randomIndex()]);
+    }
+
+    @Benchmark
+    public Entity put(ThreadCopy copy) {
+        int i = randomIndex();
+        return copy.map.put(keys[i], pool[i]);
+    }
+
+    @Benchmark
+    public Entity computeIfAbsent(ThreadCopy copy) {
+        int i = randomIndex();
+        return copy.map.computeIfAbsent(keys[i], key -> pool[i]);
+    }
+
+    @Benchmark
+    public Entity merge(ThreadCopy copy) {
+        int i = randomIndex();
+        return copy.map.merge(keys[i], pool[i], (a, b) -> b);
+    }
+
+    @Benchmark
+    public Entity concurrentPut() {
+        int i = randomIndex();
+        return concurrent.put(keys[i], pool[i]);
+    }
+
+    @Benchmark
+    public Entity concurrentComputeIfAbsent() {
+        int i = randomIndex();
+        return concurrent.computeIfAbsent(keys[i], key -> pool[i]);
+    }
+
+    @Benchmark
+    public Entity concurrentMerge() {
+        int i = randomIndex();
+        return concurrent.merge(keys[i], pool[i], (a, b) -> b);
+    }
+}
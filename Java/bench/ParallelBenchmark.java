@@ -0,0 +1,73 @@
+package Java.bench;
+
+import Java.main.Entity;
+import Java.util.Util_List;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Finds the list size at which parallel filterEntities and mapEntities overtake the
+ * sequential versions. Each size is measured with parallelism off and with a threshold of
+ * zero; the first size where the parallel score is lower is the crossover to use as threshold.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 2, jvmArgsAppend = "-Xmx8g")
+@Threads(1)
+@State(Scope.Benchmark)
+public class ParallelBenchmark {
+    @Param({"1000", "10000", "100000", "1000000", "10000000"})
+    public int size;
+
+    @Param({"false", "true"})
+    public boolean parallel;
+
+    Util_List<Entity> list;
+    ForkJoinPool pool;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        list = new Util_List<>(size);
+        for (int i = 0; i < size; i++) {
+            list.addEntity(new Entity(Entity.IdMode.COMPACT));
+        }
+        if (parallel) {
+            pool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+            list.enableParallelism(0, pool);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        if (pool != null) {
+            pool.shutdown();
+        }
+    }
+
+    @Benchmark
+    public List<Entity> filterEntities() {
+        return list.filterEntities(entity -> (entity.getIdKey().hashCode() & 1) == 0);
+    }
+
+    @Benchmark
+    public List<Object> mapEntities() {
+        return list.mapEntities(Entity::getIdKey);
+    }
+}
@@ -0,0 +1,23 @@
+/**
+ * JMH benchmarks for the containers in {@link Java.util}.
+ *
+ * <p>The benchmarks are built by the {@code jmh} Maven profile into a self-contained jar, which
+ * the profile also runs with the GC profiler, {@code -prof gc}, through {@code exec:exec}:</p>
+ * <pre>
+ * mvn -Pjmh package exec:exec -Djmh.args=ListBenchmark
+ * java -jar target/benchmarks.jar ListBenchmark -prof gc
+ * </pre>
+ *
+ * <p>Every benchmark runs in two forks of 5 warm-up and 5 measured one-second iterations and
+ * consumes its results through JMH, so no work is eliminated. {@code -prof gc} adds the
+ * allocation rate and {@code gc.alloc.rate.norm}, the bytes allocated per operation, next to
+ * each score; run the jar directly to leave it out.</p>
+ *
+ * <p>Sizes run from 1K to 10M elements; select some with {@code -p size=1000,1000000}. The
+ * 10M runs need a large heap, which the forks get from {@code -Xmx8g}. Benchmarks run on one
+ * thread by default; {@code -t 4} runs them on four. Only read-only benchmarks share a
+ * container between threads; writes to {@link Java.util.Util_List} and {@link Java.util.Util_Map}
+ * go to a copy per thread, since those classes are not thread-safe, and the
+ * {@code concurrent*} benchmarks share a {@link Java.util.Util_ConcurrentMap}.</p>
+ */
+package Java.bench;
@@ -4,13 +4,128 @@ import java.util.UUID;
 
 public class Entity {
     private String id;
+    private long idMostSigBits;
+    private long idLeastSigBits;
+
+    /**
+     * How an entity keeps its ID in memory.
+     * STRING stores the textual UUID; COMPACT stores its two 64-bit halves and
+     * builds the text only when {@link Entity#getId()} is called.
+     */
+    public enum IdMode {
+        STRING,
+        COMPACT
+    }
 
     public Entity() {
         this.id = UUID.randomUUID().toString();
     }
 
+    /**
+     * Creates an entity with a random ID stored in the given mode.
+     * @param mode - the storage mode of the ID
+     */
+    public Entity(IdMode mode) {
+        this(UUID.randomUUID(), mode);
+    }
+
+    /**
+     * Creates an entity with an ID taken from the given generator.
+     * @param mode - the storage mode of the ID
+     * @param generator - the source of the ID, see {@link IdGenerators}
+     */
+    public Entity(IdMode mode, IdGenerator generator) {
+        this(generator.nextId(), mode);
+    }
+
+    /**
+     * Creates an entity with a known ID, e.g. when restoring it from storage.
+     * @param id - the ID of the entity
+     * @param mode - the storage mode of the ID
+     */
+    protected Entity(UUID id, IdMode mode) {
+        if (mode == IdMode.COMPACT) {
+            this.idMostSigBits = id.getMostSignificantBits();
+            this.idLeastSigBits = id.getLeastSignificantBits();
+        } else {
+            this.id = id.toString();
+        }
+    }
+
+    /**
+     * Returns the textual ID. Compact IDs are formatted on every call and not cached,
+     * since caching the string would give back the memory the compact mode saves.
+     * @return the ID of the entity
+     */
     public String getId() {
-        return id;
+        if (id != null) {
+            return id;
+        }
+        return new UUID(idMostSigBits, idLeastSigBits).toString();
+    }
+
+    /**
+     * Checks if the ID is stored in compact form.
+     * @return true if the ID is kept as two longs, false if it is kept as a string
+     */
+    public boolean hasCompactId() {
+        return id == null;
+    }
+
+    /**
+     * Returns the ID as a UUID.
+     * @return the ID of the entity
+     */
+    public UUID getUuid() {
+        if (id != null) {
+            return UUID.fromString(id);
+        }
+        return new UUID(idMostSigBits, idLeastSigBits);
+    }
+
+    /**
+     * Returns the key containers use when indexing this entity by ID: a UUID for compact IDs,
+     * the string itself otherwise. UUID keys hash and compare two longs instead of 36 characters.
+     * @return the ID key of the entity
+     */
+    public Object getIdKey() {
+        if (id != null) {
+            return id;
+        }
+        return new UUID(idMostSigBits, idLeastSigBits);
+    }
+
+    /**
+     * Checks if this entity has the given ID without allocating, in either ID mode: a string ID
+     * is compared by parsing its hex digits in place.
+     * @param mostSigBits - the most significant 64 bits of the ID
+     * @param leastSigBits - the least significant 64 bits of the ID
+     * @return true if the IDs are equal, false otherwise
+     */
+    public boolean hasId(long mostSigBits, long leastSigBits) {
+        if (id != null) {
+            return id.length() == 36 && hexEquals(id, 0, 18, mostSigBits) && hexEquals(id, 19, 36, leastSigBits);
+        }
+        return idMostSigBits == mostSigBits && idLeastSigBits == leastSigBits;
+    }
+
+    /**
+     * Checks if the hex digits of a part of a UUID string, dashes skipped, spell the given bits.
+     */
+    private static boolean hexEquals(String text, int from, int to, long bits) {
+        long value = 0;
+        for (int i = from; i < to; i++) {
+            char c = text.charAt(i);
+            if (c == '-') {
+                continue;
+            }
+            int digit = Character.digit(c, 16);
+            if (digit < 0) {
+                return false;
+            }
+            value = value << 4 | digit;
+        }
+        return value == bits;
     }
 
 }
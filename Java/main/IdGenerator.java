@@ -0,0 +1,17 @@
+package Java.main;
+
+import java.util.UUID;
+
+/**
+ * Source of entity IDs. Implementations must be safe to call from many threads at once.
+ * See {@link IdGenerators} for the built-in generators.
+ */
+@FunctionalInterface
+public interface IdGenerator {
+
+    /**
+     * Returns a new ID.
+     * @return the next ID
+     */
+    UUID nextId();
+}
@@ -0,0 +1,78 @@
+package Java.main;
+
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Built-in {@link IdGenerator} implementations.
+ *
+ * <p>{@link UUID#randomUUID()} draws from a shared {@link java.security.SecureRandom}, which
+ * serialises threads and may block on entropy. The other generators here never block:
+ * they use per-thread random state or a single atomic counter.</p>
+ */
+public final class IdGenerators {
+    private static final long VERSION_MASK = 0xFFFFFFFFFFFF0FFFL;
+    private static final long VARIANT_MASK = 0x3FFFFFFFFFFFFFFFL;
+    private static final long VARIANT_BITS = 0x8000000000000000L;
+
+    private IdGenerators() {
+    }
+
+    /**
+     * Random (version 4) UUIDs from the shared SecureRandom, the same as {@link Entity#Entity()}.
+     * @return a cryptographically strong generator
+     */
+    public static IdGenerator secureRandom() {
+        return UUID::randomUUID;
+    }
+
+    /**
+     * Random (version 4) UUIDs from {@link ThreadLocalRandom}. IDs are unique in practice
+     * but predictable, so do not use them as secrets.
+     * @return a contention-free random generator
+     */
+    public static IdGenerator threadLocalRandom() {
+        return () -> {
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            long mostSigBits = (random.nextLong() & VERSION_MASK) | 0x4000L;
+            long leastSigBits = (random.nextLong() & VARIANT_MASK) | VARIANT_BITS;
+            return new UUID(mostSigBits, leastSigBits);
+        };
+    }
+
+    /**
+     * Time-ordered (version 7) UUIDs: a 48-bit Unix millisecond timestamp followed by
+     * random bits from {@link ThreadLocalRandom}. IDs created in different milliseconds sort
+     * by creation time, which keeps B-tree inserts and range scans local.
+     * @return a time-ordered generator
+     */
+    public static IdGenerator timeOrdered() {
+        return () -> {
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            long mostSigBits = (System.currentTimeMillis() << 16) | 0x7000L | (random.nextInt() & 0x0FFFL);
+            long leastSigBits = (random.nextLong() & VARIANT_MASK) | VARIANT_BITS;
+            return new UUID(mostSigBits, leastSigBits);
+        };
+    }
+
+    /**
+     * Strictly increasing 64-bit IDs held in the low half of the UUID; the high half is zero.
+     * The counter starts at the current time in milliseconds shifted left by 20 bits, so IDs
+     * keep increasing across restarts as long as fewer than about a million are issued per millisecond.
+     * @return a monotonic generator
+     */
+    public static IdGenerator monotonic() {
+        return monotonic(System.currentTimeMillis() << 20);
+    }
+
+    /**
+     * Strictly increasing 64-bit IDs held in the low half of the UUID; the high half is zero.
+     * @param start - the first ID to issue
+     * @return a monotonic generator
+     */
+    public static IdGenerator monotonic(long start) {
+        AtomicLong counter = new AtomicLong(start);
+        return () -> new UUID(0L, counter.getAndIncrement());
+    }
+}
@@ -0,0 +1,220 @@
+package Java.util;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Named secondary index of a {@link Util_List} over one attribute of its entities, used by
+ * {@link IndexQuery}. A hash index serves equality; a sorted index (a red-black tree) serves
+ * equality and ranges.
+ *
+ * <p>Entities are tracked by identity with a count, so duplicates are served as often as they
+ * occur. The key each entity was indexed under is remembered, so an entity modified in place is
+ * re-indexed correctly when it is set again, and can always be removed.</p>
+ *
+ * @param <T> the type of entities indexed
+ */
+final class AttributeIndex<T> {
+    private final String name;
+    private final Function<? super T, ?> extractor;
+    private final boolean sorted;
+    private final Map<Object, Map<T, int[]>> buckets;
+    private final Map<T, Object> keys = new IdentityHashMap<>();
+    private Map<T, int[]> nullBucket;
+    private int size;
+
+    /**
+     * Creates an empty index.
+     * @param name - the name of the index
+     * @param extractor - returns the indexed attribute of an entity
+     * @param sorted - true for a sorted index, whose keys must be mutually comparable
+     */
+    AttributeIndex(String name, Function<? super T, ?> extractor, boolean sorted) {
+        this.name = name;
+        this.extractor = extractor;
+        this.sorted = sorted;
+        this.buckets = sorted ? new TreeMap<>() : new HashMap<>();
+    }
+
+    String name() {
+        return name;
+    }
+
+    boolean isSorted() {
+        return sorted;
+    }
+
+    /**
+     * Returns the attribute of an entity, for checking conditions the index cannot serve.
+     * @param entity - the entity
+     * @return the attribute value
+     */
+    Object keyOf(T entity) {
+        return extractor.apply(entity);
+    }
+
+    int size() {
+        return size;
+    }
+
+    // =========================================================================
+    void add(T entity) {
+        Object key = extractor.apply(entity);
+        if (keys.containsKey(entity)) {
+            Object previous = keys.get(entity);
+            if (!Objects.equals(previous, key)) {
+                // Modified in place since it was indexed: move every occurrence to the new key
+                int[] count = bucket(previous, false).remove(entity);
+                dropIfEmpty(previous);
+                bucket(key, true).put(entity, count);
+                keys.put(entity, key);
+            }
+            bucket(key, false).get(entity)[0]++;
+        } else {
+            bucket(key, true).put(entity, new int[] {1});
+            keys.put(entity, key);
+        }
+        size++;
+    }
+
+    void remove(T entity) {
+        if (!keys.containsKey(entity)) {
+            return;
+        }
+        Object key = keys.get(entity);
+        Map<T, int[]> bucket = bucket(key, false);
+        if (--bucket.get(entity)[0] == 0) {
+            bucket.remove(entity);
+            keys.remove(entity);
+            dropIfEmpty(key);
+        }
+        size--;
+    }
+
+    void rebuild(List<T> entities) {
+        clear();
+        for (T entity : entities) {
+            add(entity);
+        }
+    }
+
+    void clear() {
+        buckets.clear();
+        keys.clear();
+        nullBucket = null;
+        size = 0;
+    }
+
+    // =========================================================================
+    /**
+     * Counts the entities with the given key, stopping early once the count exceeds the limit.
+     */
+    int countEqual(Object key, int limit) {
+        Map<T, int[]> bucket = find(key);
+        return bucket == null ? 0 : count(bucket, 0, limit);
+    }
+
+    void forEachEqual(Object key, Consumer<? super T> action) {
+        Map<T, int[]> bucket = find(key);
+        if (bucket != null) {
+            forEach(bucket, action);
+        }
+    }
+
+    /**
+     * Counts the entities in a range, stopping early once the count exceeds the limit.
+     * Only supported by sorted indexes.
+     */
+    int countRange(Object from, boolean fromInclusive, Object to, boolean toInclusive, int limit) {
+        int count = 0;
+        for (Map<T, int[]> bucket : range(from, fromInclusive, to, toInclusive).values()) {
+            count = count(bucket, count, limit);
+            if (count > limit) {
+                break;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Visits the entities in a range in key order; null bounds are open, and a range whose lower
+     * bound lies above its upper bound is empty. Only supported by sorted indexes.
+     */
+    void forEachInRange(Object from, boolean fromInclusive, Object to, boolean toInclusive, Consumer<? super T> action) {
+        for (Map<T, int[]> bucket : range(from, fromInclusive, to, toInclusive).values()) {
+            forEach(bucket, action);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private NavigableMap<Object, Map<T, int[]>> range(Object from, boolean fromInclusive, Object to, boolean toInclusive) {
+        NavigableMap<Object, Map<T, int[]>> tree = (NavigableMap<Object, Map<T, int[]>>) buckets;
+        if (from != null && to != null) {
+            int order = ((Comparable<Object>) from).compareTo(to);
+            if (order > 0 || order == 0 && !(fromInclusive && toInclusive)) {
+                return Collections.emptyNavigableMap();
+            }
+            return tree.subMap(from, fromInclusive, to, toInclusive);
+        }
+        if (from != null) {
+            return tree.tailMap(from, fromInclusive);
+        }
+        if (to != null) {
+            return tree.headMap(to, toInclusive);
+        }
+        return tree;
+    }
+
+    private Map<T, int[]> find(Object key) {
+        if (key == null && sorted) {
+            return nullBucket;
+        }
+        return buckets.get(key);
+    }
+
+    private Map<T, int[]> bucket(Object key, boolean create) {
+        if (key == null && sorted) {
+            if (nullBucket == null && create) {
+                nullBucket = new IdentityHashMap<>();
+            }
+            return nullBucket;
+        }
+        return create ? buckets.computeIfAbsent(key, k -> new IdentityHashMap<>()) : buckets.get(key);
+    }
+
+    private void dropIfEmpty(Object key) {
+        if (key == null && sorted) {
+            if (nullBucket != null && nullBucket.isEmpty()) {
+                nullBucket = null;
+            }
+        } else if (buckets.get(key).isEmpty()) {
+            buckets.remove(key);
+        }
+    }
+
+    private static <T> int count(Map<T, int[]> bucket, int count, int limit) {
+        for (int[] occurrences : bucket.values()) {
+            count += occurrences[0];
+            if (count > limit) {
+                break;
+            }
+        }
+        return count;
+    }
+
+    private static <T> void forEach(Map<T, int[]> bucket, Consumer<? super T> action) {
+        for (Map.Entry<T, int[]> entry : bucket.entrySet()) {
+            for (int i = entry.getValue()[0]; i > 0; i--) {
+                action.accept(entry.getKey());
+            }
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package Java.util;
+
+/**
+ * A single change published to a {@link ChangeSubscription}.
+ *
+ * <p>Map events are keyed by the map key; list events by the {@link Java.main.Entity#getIdKey()}
+ * of the entity (the new entity, for a replacement). A {@link Type#CLEAR} event stands for the
+ * removal of every entity and has no key or values.</p>
+ *
+ * @param <T> the type of entities in the container
+ */
+public final class ChangeEvent<T> {
+
+    /**
+     * The kind of change.
+     */
+    public enum Type {
+        ADD,
+        REPLACE,
+        REMOVE,
+        CLEAR
+    }
+
+    private final Type type;
+    private final Object key;
+    private final T previous;
+    private final T current;
+
+    ChangeEvent(Type type, Object key, T previous, T current) {
+        this.type = type;
+        this.key = key;
+        this.previous = previous;
+        this.current = current;
+    }
+
+    /**
+     * Creates the event for a change from previous to current; null stands for no mapping.
+     */
+    static <T> ChangeEvent<T> of(Object key, T previous, T current) {
+        Type type = previous == null ? Type.ADD : current == null ? Type.REMOVE : Type.REPLACE;
+        return new ChangeEvent<>(type, key, previous, current);
+    }
+
+    /**
+     * Returns the kind of change.
+     * @return the type of the event
+     */
+    public Type getType() {
+        return type;
+    }
+
+    /**
+     * Returns the key of the changed entry.
+     * @return the key, or null for {@link Type#CLEAR}
+     */
+    public Object getKey() {
+        return key;
+    }
+
+    /**
+     * Returns the value before the change.
+     * @return the previous value, or null for {@link Type#ADD} and {@link Type#CLEAR}
+     */
+    public T getPrevious() {
+        return previous;
+    }
+
+    /**
+     * Returns the value after the change.
+     * @return the new value, or null for {@link Type#REMOVE} and {@link Type#CLEAR}
+     */
+    public T getCurrent() {
+        return current;
+    }
+
+    @Override
+    public String toString() {
+        return type + " " + key + ": " + previous + " -> " + current;
+    }
+}
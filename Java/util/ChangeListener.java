@@ -0,0 +1,20 @@
+package Java.util;
+
+import java.util.List;
+
+/**
+ * Receives the changes of a container in batches, on the delivery thread of its
+ * {@link ChangeSubscription}.
+ *
+ * @param <T> the type of entities in the container
+ */
+@FunctionalInterface
+public interface ChangeListener<T> {
+
+    /**
+     * Handles a batch of changes, in the order they were published. A listener must not modify
+     * the container it is subscribed to. If it throws, the subscription ends.
+     * @param changes - the changes, never empty; the list is read-only
+     */
+    void onChanges(List<ChangeEvent<T>> changes);
+}
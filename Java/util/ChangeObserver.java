@@ -0,0 +1,43 @@
+package Java.util;
+
+import java.util.List;
+
+/**
+ * Receives every change made through the mutating methods of a {@link Util_Map} or
+ * {@link Util_List}, after the backing collection has been updated and on the thread that
+ * made the change. {@link Util_ConcurrentList} is the exception: it hands the changes over after
+ * releasing its writer lock, possibly on the thread of a later writer, still in write order.
+ *
+ * <p>A map reports changes by key. A list reports them by {@link Java.main.Entity#getIdKey()}:
+ * an added entity as a change from null, a removed one as a change to null, and a replaced
+ * one, keyed by the new entity, as a change from the old entity to the new one.</p>
+ *
+ * @param <T> the type of entities in the container
+ */
+interface ChangeObserver<T> {
+
+    /**
+     * Called when the value for a key changed. Re-putting the same instance is reported too,
+     * since the entity may have been modified in place.
+     * @param key - the key whose mapping changed
+     * @param previous - the previous value, or null if there was no mapping
+     * @param current - the new value, or null if the mapping was removed
+     */
+    void changed(Object key, T previous, T current);
+
+    /**
+     * Called after the container was cleared.
+     */
+    void cleared();
+
+    /**
+     * Called once for the changes of a bulk operation, in order, instead of once per change.
+     * Observers that can take a batch more cheaply than its changes one by one override this.
+     * @param changes - the changes, none of which is a clear
+     */
+    default void changedAll(List<ChangeEvent<T>> changes) {
+        for (ChangeEvent<T> change : changes) {
+            changed(change.getKey(), change.getPrevious(), change.getCurrent());
+        }
+    }
+}
@@ -0,0 +1,267 @@
+package Java.util;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+/**
+ * A subscription to the changes of a {@link Util_Map} or {@link Util_List}, created by their
+ * {@code subscribe} methods.
+ *
+ * <p>Mutating methods publish their changes into a bounded ring buffer, and a dedicated delivery
+ * thread hands everything that has accumulated to the {@link ChangeListener} as one batch. When
+ * the listener falls behind and the buffer is full, the writers wait for it (backpressure)
+ * instead of dropping changes or growing without bound.</p>
+ *
+ * <p>Changes are delivered in the order they were published, which is the order in which they
+ * were applied. Writers of a {@link Util_DurableMap} publish under the container's lock, and
+ * writers of a {@link Util_ConcurrentMap} publish inside the atomic update of the key, so the
+ * changes of each key keep their order while writes to different keys interleave. Writers of a
+ * {@link Util_ConcurrentList} queue their changes under the writer lock and publish them in
+ * that order after releasing it, so the listener may read and query the list at any time.</p>
+ *
+ * @param <T> the type of entities in the container
+ */
+public final class ChangeSubscription<T> implements AutoCloseable {
+    /**
+     * The default number of changes the buffer holds.
+     */
+    public static final int DEFAULT_CAPACITY = 8192;
+
+    private static final AtomicInteger THREAD_IDS = new AtomicInteger();
+
+    private static final int ACTIVE = 0;
+    private static final int CLOSING = 1;
+    private static final int FAILED = 2;
+
+    private final ChangeListener<T> listener;
+    private final Object[] ring;
+    private final int mask;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private final Condition notFull = lock.newCondition();
+    private final Thread delivery;
+    private final Consumer<ChangeObserver<T>> detach;
+    private final ChangeObserver<T> observer = new ChangeObserver<T>() {
+        @Override
+        public void changed(Object key, T previous, T current) {
+            publish(ChangeEvent.of(key, previous, current));
+        }
+
+        @Override
+        public void changedAll(List<ChangeEvent<T>> changes) {
+            publishAll(changes);
+        }
+
+        @Override
+        public void cleared() {
+            publish(new ChangeEvent<>(ChangeEvent.Type.CLEAR, null, null, null));
+        }
+    };
+
+    // Guarded by lock
+    private long head;
+    private long tail;
+    private int state = ACTIVE;
+    private Throwable failure;
+
+    /**
+     * Creates a subscription and starts its delivery thread; the caller registers
+     * {@link #observer()} with the container.
+     * @param listener - the listener to deliver to
+     * @param capacity - the minimum number of changes the buffer holds, rounded up to a power of two
+     * @param detach - unregisters the observer from the container
+     */
+    ChangeSubscription(ChangeListener<T> listener, int capacity, Consumer<ChangeObserver<T>> detach) {
+        if (capacity <= 0 || capacity > 1 << 30) {
+            throw new IllegalArgumentException("Capacity must be between 1 and 2^30: " + capacity);
+        }
+        int size = Integer.highestOneBit(capacity);
+        if (size < capacity) {
+            size <<= 1;
+        }
+        this.listener = listener;
+        this.ring = new Object[size];
+        this.mask = size - 1;
+        this.detach = detach;
+        this.delivery = new Thread(this::deliverLoop, "change-feed-" + THREAD_IDS.incrementAndGet());
+        delivery.setDaemon(true);
+    }
+
+    /**
+     * Returns the observer that publishes into this subscription.
+     * @return the observer to register with the container
+     */
+    ChangeObserver<T> observer() {
+        return observer;
+    }
+
+    /**
+     * Starts delivering, once the observer is registered.
+     */
+    void start() {
+        delivery.start();
+    }
+
+    // =========================================================================
+    /**
+     * Checks if changes are still being published and delivered.
+     * @return false once the subscription was closed or the listener failed
+     */
+    public boolean isActive() {
+        lock.lock();
+        try {
+            return state == ACTIVE;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns what the listener threw, which ended the subscription.
+     * @return the failure, or null if the listener never threw
+     */
+    public Throwable getFailure() {
+        lock.lock();
+        try {
+            return failure;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Stops publishing, delivers the changes already buffered and waits for the delivery thread
+     * to finish, unless called from the listener itself.
+     */
+    @Override
+    public void close() {
+        detach.accept(observer);
+        lock.lock();
+        try {
+            if (state == ACTIVE) {
+                state = CLOSING;
+            }
+            notEmpty.signal();
+            notFull.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        if (Thread.currentThread() != delivery) {
+            boolean interrupted = false;
+            while (delivery.isAlive()) {
+                try {
+                    delivery.join();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    // =========================================================================
+    private void publish(ChangeEvent<T> event) {
+        if (Thread.currentThread() == delivery) {
+            throw new IllegalStateException("A change listener must not modify the container it is subscribed to");
+        }
+        lock.lock();
+        try {
+            while (tail - head == ring.length && state == ACTIVE) {
+                notFull.awaitUninterruptibly();
+            }
+            if (state != ACTIVE) {
+                return;
+            }
+            ring[(int) tail & mask] = event;
+            if (tail++ == head) {
+                notEmpty.signal();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Publishes a batch under one acquisition of the lock, waking the delivery thread once,
+     * or whenever the buffer fills up.
+     */
+    private void publishAll(List<ChangeEvent<T>> events) {
+        if (Thread.currentThread() == delivery) {
+            throw new IllegalStateException("A change listener must not modify the container it is subscribed to");
+        }
+        lock.lock();
+        try {
+            for (ChangeEvent<T> event : events) {
+                while (tail - head == ring.length && state == ACTIVE) {
+                    notEmpty.signal();
+                    notFull.awaitUninterruptibly();
+                }
+                if (state != ACTIVE) {
+                    return;
+                }
+                ring[(int) tail++ & mask] = event;
+            }
+            notEmpty.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void deliverLoop() {
+        while (true) {
+            List<ChangeEvent<T>> batch;
+            lock.lock();
+            try {
+                while (head == tail && state == ACTIVE) {
+                    notEmpty.awaitUninterruptibly();
+                }
+                if (head == tail) {
+                    return;
+                }
+                int size = (int) (tail - head);
+                batch = new ArrayList<>(size);
+                for (int i = 0; i < size; i++) {
+                    int slot = (int) head++ & mask;
+                    batch.add(event(slot));
+                    ring[slot] = null;
+                }
+                notFull.signalAll();
+            } finally {
+                lock.unlock();
+            }
+            try {
+                listener.onChanges(Collections.unmodifiableList(batch));
+            } catch (RuntimeException | Error e) {
+                fail(e);
+                return;
+            }
+        }
+    }
+
+    private void fail(Throwable e) {
+        detach.accept(observer);
+        lock.lock();
+        try {
+            failure = e;
+            state = FAILED;
+            while (head != tail) {
+                ring[(int) head++ & mask] = null;
+            }
+            notFull.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private ChangeEvent<T> event(int slot) {
+        return (ChangeEvent<T>) ring[slot];
+    }
+}
@@ -0,0 +1,427 @@
+package Java.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.OptionalDouble;
+import java.util.OptionalLong;
+import java.util.function.Function;
+import java.util.function.ToDoubleFunction;
+import java.util.function.ToLongFunction;
+
+/**
+ * Structure-of-arrays copy of selected entity fields of a {@link Util_List}, kept in list order.
+ * Numeric fields live in {@code long[]} and {@code double[]} arrays and strings are
+ * dictionary-encoded into {@code int[]} codes, so scans over them are sequential loops over
+ * primitive arrays instead of pointer chasing through the heap.
+ *
+ * <p>Appends, replacements and removals at the end are applied to the columns in place; any
+ * other change marks the columns stale and they are rebuilt in one pass before the next scan.</p>
+ *
+ * @param <T> the type of entities in the list
+ */
+final class ColumnStore<T> {
+    private static final int INITIAL_CAPACITY = 16;
+
+    private final Map<String, Column<T>> columns = new LinkedHashMap<>();
+    private int size;
+    private int capacity = INITIAL_CAPACITY;
+    private boolean valid = true;
+
+    /**
+     * A column of one field.
+     */
+    abstract static class Column<T> {
+        abstract void set(int index, T entity);
+
+        abstract void resize(int capacity);
+
+        void reset() {
+        }
+    }
+
+    static final class LongColumn<T> extends Column<T> {
+        private final ToLongFunction<? super T> extractor;
+        long[] values = new long[INITIAL_CAPACITY];
+
+        LongColumn(ToLongFunction<? super T> extractor) {
+            this.extractor = extractor;
+        }
+
+        @Override
+        void set(int index, T entity) {
+            values[index] = extractor.applyAsLong(entity);
+        }
+
+        @Override
+        void resize(int capacity) {
+            values = Arrays.copyOf(values, capacity);
+        }
+    }
+
+    static final class DoubleColumn<T> extends Column<T> {
+        private final ToDoubleFunction<? super T> extractor;
+        double[] values = new double[INITIAL_CAPACITY];
+
+        DoubleColumn(ToDoubleFunction<? super T> extractor) {
+            this.extractor = extractor;
+        }
+
+        @Override
+        void set(int index, T entity) {
+            values[index] = extractor.applyAsDouble(entity);
+        }
+
+        @Override
+        void resize(int capacity) {
+            values = Arrays.copyOf(values, capacity);
+        }
+    }
+
+    /**
+     * Dictionary-encoded strings: each distinct string gets a code, null is -1.
+     */
+    static final class StringColumn<T> extends Column<T> {
+        private final Function<? super T, String> extractor;
+        private final Map<String, Integer> dictionary = new HashMap<>();
+        private final List<String> strings = new ArrayList<>();
+        int[] codes = new int[INITIAL_CAPACITY];
+
+        StringColumn(Function<? super T, String> extractor) {
+            this.extractor = extractor;
+        }
+
+        @Override
+        void set(int index, T entity) {
+            String value = extractor.apply(entity);
+            codes[index] = value == null ? -1 : dictionary.computeIfAbsent(value, v -> {
+                strings.add(v);
+                return strings.size() - 1;
+            });
+        }
+
+        @Override
+        void resize(int capacity) {
+            codes = Arrays.copyOf(codes, capacity);
+        }
+
+        @Override
+        void reset() {
+            dictionary.clear();
+            strings.clear();
+        }
+
+        /**
+         * Returns the code of a string, or -2 if it does not occur, which matches no row.
+         */
+        int codeOf(String value) {
+            if (value == null) {
+                return -1;
+            }
+            Integer code = dictionary.get(value);
+            return code == null ? -2 : code;
+        }
+
+        String stringOf(int code) {
+            return code < 0 ? null : strings.get(code);
+        }
+    }
+
+    // =========================================================================
+    boolean isEmpty() {
+        return columns.isEmpty();
+    }
+
+    boolean contains(String name) {
+        return columns.containsKey(name);
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * Adds a column and fills it from the entities of the list, as callers see it.
+     */
+    void add(String name, Column<T> column, List<T> entities) {
+        if (columns.containsKey(name)) {
+            throw new IllegalArgumentException("Column already exists: " + name);
+        }
+        column.resize(capacity);
+        columns.put(name, column);
+        valid = false;
+        refresh(entities);
+    }
+
+    boolean remove(String name) {
+        return columns.remove(name) != null;
+    }
+
+    @SuppressWarnings("unchecked")
+    <C extends Column<T>> C column(String name, Class<?> type) {
+        Column<T> column = columns.get(name);
+        if (column == null) {
+            throw new IllegalArgumentException("No column named: " + name);
+        }
+        if (!type.isInstance(column)) {
+            throw new IllegalArgumentException("Column " + name + " is not a " + type.getSimpleName());
+        }
+        return (C) column;
+    }
+
+    // =========================================================================
+    // Scans. Each one is a single counted loop over a primitive array with no calls in its body,
+    // which the JIT unrolls and, for the comparisons and integer sums, vectorises. Row selection
+    // writes every row number and advances the cursor only on a match, so there is no branch
+    // to mispredict on the comparison.
+
+    /**
+     * Returns the rows whose value lies between two bounds, both inclusive, in ascending order.
+     */
+    int[] selectLong(String name, long min, long max) {
+        long[] values = this.<LongColumn<T>>column(name, LongColumn.class).values;
+        int n = size;
+        int[] rows = new int[n];
+        int count = 0;
+        for (int i = 0; i < n; i++) {
+            long value = values[i];
+            rows[count] = i;
+            count += (value >= min & value <= max) ? 1 : 0;
+        }
+        return Arrays.copyOf(rows, count);
+    }
+
+    /**
+     * Returns the rows whose value lies between two bounds, both inclusive, in ascending order.
+     * NaN never matches.
+     */
+    int[] selectDouble(String name, double min, double max) {
+        double[] values = this.<DoubleColumn<T>>column(name, DoubleColumn.class).values;
+        int n = size;
+        int[] rows = new int[n];
+        int count = 0;
+        for (int i = 0; i < n; i++) {
+            double value = values[i];
+            rows[count] = i;
+            count += (value >= min & value <= max) ? 1 : 0;
+        }
+        return Arrays.copyOf(rows, count);
+    }
+
+    /**
+     * Returns the rows whose string equals the value, comparing dictionary codes only.
+     */
+    int[] selectString(String name, String value) {
+        StringColumn<T> column = column(name, StringColumn.class);
+        int code = column.codeOf(value);
+        if (code == -2) {
+            return new int[0];
+        }
+        int[] codes = column.codes;
+        int n = size;
+        int[] rows = new int[n];
+        int count = 0;
+        for (int i = 0; i < n; i++) {
+            rows[count] = i;
+            count += codes[i] == code ? 1 : 0;
+        }
+        return Arrays.copyOf(rows, count);
+    }
+
+    int countString(String name, String value) {
+        StringColumn<T> column = column(name, StringColumn.class);
+        int code = column.codeOf(value);
+        if (code == -2) {
+            return 0;
+        }
+        int[] codes = column.codes;
+        int n = size;
+        int count = 0;
+        for (int i = 0; i < n; i++) {
+            count += codes[i] == code ? 1 : 0;
+        }
+        return count;
+    }
+
+    /**
+     * Counts the rows per distinct string, in order of first occurrence; nulls are counted under null.
+     */
+    Map<String, Integer> countByString(String name) {
+        StringColumn<T> column = column(name, StringColumn.class);
+        int[] codes = column.codes;
+        int n = size;
+        int[] counts = new int[column.strings.size() + 1];
+        for (int i = 0; i < n; i++) {
+            counts[codes[i] + 1]++;
+        }
+        Map<String, Integer> result = new LinkedHashMap<>();
+        for (int code = 0; code < column.strings.size(); code++) {
+            if (counts[code + 1] > 0) {
+                result.put(column.stringOf(code), counts[code + 1]);
+            }
+        }
+        if (counts[0] > 0) {
+            result.put(null, counts[0]);
+        }
+        return result;
+    }
+
+    long sumLong(String name) {
+        long[] values = this.<LongColumn<T>>column(name, LongColumn.class).values;
+        int n = size;
+        long sum = 0;
+        for (int i = 0; i < n; i++) {
+            sum += values[i];
+        }
+        return sum;
+    }
+
+    OptionalLong minLong(String name) {
+        long[] values = this.<LongColumn<T>>column(name, LongColumn.class).values;
+        int n = size;
+        if (n == 0) {
+            return OptionalLong.empty();
+        }
+        long min = values[0];
+        for (int i = 1; i < n; i++) {
+            min = Math.min(min, values[i]);
+        }
+        return OptionalLong.of(min);
+    }
+
+    OptionalLong maxLong(String name) {
+        long[] values = this.<LongColumn<T>>column(name, LongColumn.class).values;
+        int n = size;
+        if (n == 0) {
+            return OptionalLong.empty();
+        }
+        long max = values[0];
+        for (int i = 1; i < n; i++) {
+            max = Math.max(max, values[i]);
+        }
+        return OptionalLong.of(max);
+    }
+
+    /**
+     * Sums with four independent accumulators, so consecutive additions do not wait on each
+     * other; the rounding may therefore differ slightly from a strictly sequential sum.
+     */
+    double sumDouble(String name) {
+        double[] values = this.<DoubleColumn<T>>column(name, DoubleColumn.class).values;
+        int n = size;
+        double s0 = 0;
+        double s1 = 0;
+        double s2 = 0;
+        double s3 = 0;
+        int i = 0;
+        for (; i + 3 < n; i += 4) {
+            s0 += values[i];
+            s1 += values[i + 1];
+            s2 += values[i + 2];
+            s3 += values[i + 3];
+        }
+        for (; i < n; i++) {
+            s0 += values[i];
+        }
+        return (s0 + s1) + (s2 + s3);
+    }
+
+    OptionalDouble minDouble(String name) {
+        double[] values = this.<DoubleColumn<T>>column(name, DoubleColumn.class).values;
+        int n = size;
+        if (n == 0) {
+            return OptionalDouble.empty();
+        }
+        double min = values[0];
+        for (int i = 1; i < n; i++) {
+            min = Math.min(min, values[i]);
+        }
+        return OptionalDouble.of(min);
+    }
+
+    OptionalDouble maxDouble(String name) {
+        double[] values = this.<DoubleColumn<T>>column(name, DoubleColumn.class).values;
+        int n = size;
+        if (n == 0) {
+            return OptionalDouble.empty();
+        }
+        double max = values[0];
+        for (int i = 1; i < n; i++) {
+            max = Math.max(max, values[i]);
+        }
+        return OptionalDouble.of(max);
+    }
+
+    // =========================================================================
+    void appended(T entity) {
+        if (!valid) {
+            return;
+        }
+        if (size == capacity) {
+            grow(Math.max(INITIAL_CAPACITY, capacity + (capacity >> 1)));
+        }
+        for (Column<T> column : columns.values()) {
+            column.set(size, entity);
+        }
+        size++;
+    }
+
+    void replaced(int index, T entity) {
+        if (valid && index < size) {
+            for (Column<T> column : columns.values()) {
+                column.set(index, entity);
+            }
+        }
+    }
+
+    void removedLast() {
+        if (valid) {
+            size--;
+        }
+    }
+
+    void invalidate() {
+        valid = false;
+    }
+
+    void clear() {
+        for (Column<T> column : columns.values()) {
+            column.reset();
+        }
+        size = 0;
+        valid = true;
+    }
+
+    /**
+     * Rebuilds the columns from the entities if a change invalidated them.
+     * @param entities - the entities of the list, as callers see it
+     */
+    void refresh(List<T> entities) {
+        if (valid) {
+            return;
+        }
+        int n = entities.size();
+        if (n > capacity) {
+            grow(n);
+        }
+        for (Column<T> column : columns.values()) {
+            column.reset();
+            int i = 0;
+            for (T entity : entities) {
+                column.set(i++, entity);
+            }
+        }
+        size = n;
+        valid = true;
+    }
+
+    private void grow(int newCapacity) {
+        for (Column<T> column : columns.values()) {
+            column.resize(newCapacity);
+        }
+        capacity = newCapacity;
+    }
+}
@@ -0,0 +1,104 @@
+package Java.util;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * Immutable consistent-hash ring that assigns keys to shards.
+ *
+ * <p>Each shard is placed at {@link #VIRTUAL_NODES} points on a 64-bit ring, hashed from its
+ * name, and a key belongs to the shard of the first point at or after the key's hash. Adding or
+ * removing one of N shards therefore moves only about 1/N of the keys, all of them to or from
+ * that shard, and the many points per shard keep the shards within a few percent of each
+ * other in size. The same names always give the same ring.</p>
+ *
+ * <p>A lookup is one hash and a binary search over the sorted points.</p>
+ *
+ * @param <S> the type of shards
+ */
+final class ConsistentHashRing<S> {
+    static final int VIRTUAL_NODES = 160;
+
+    private final List<S> shards;
+    private final long[] points;
+    private final int[] owners;
+
+    /**
+     * Builds the ring of the given shards.
+     * @param shards - the shards, at least one
+     * @param name - returns the name of a shard, unique among the shards
+     */
+    ConsistentHashRing(List<S> shards, Function<? super S, String> name) {
+        if (shards.isEmpty()) {
+            throw new IllegalArgumentException("A ring needs at least one shard");
+        }
+        this.shards = List.copyOf(shards);
+        int size = shards.size() * VIRTUAL_NODES;
+        long[] hashes = new long[size];
+        Integer[] order = new Integer[size];
+        for (int i = 0; i < size; i++) {
+            hashes[i] = hashName(name.apply(shards.get(i / VIRTUAL_NODES)) + '#' + i % VIRTUAL_NODES);
+            order[i] = i;
+        }
+        Arrays.sort(order, Comparator.comparingLong(i -> hashes[i]));
+        this.points = new long[size];
+        this.owners = new int[size];
+        for (int i = 0; i < size; i++) {
+            points[i] = hashes[order[i]];
+            owners[i] = order[i] / VIRTUAL_NODES;
+        }
+    }
+
+    /**
+     * Returns the shards on the ring.
+     * @return the shards, in the order they were given
+     */
+    List<S> shards() {
+        return shards;
+    }
+
+    /**
+     * Returns the shard a key belongs to.
+     * @param key - the key
+     * @return the owning shard
+     */
+    S owner(Object key) {
+        long hash = mix(key.hashCode());
+        int low = 0;
+        int high = points.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (points[mid] < hash) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return shards.get(owners[low == points.length ? 0 : low]);
+    }
+
+    // =========================================================================
+    private static long hashName(String name) {
+        // FNV-1a, finished with the mixer below
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < name.length(); i++) {
+            hash ^= name.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        return mix(hash);
+    }
+
+    /**
+     * The 64-bit finalizer of MurmurHash3, which spreads every input bit over the whole ring.
+     */
+    private static long mix(long hash) {
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
@@ -0,0 +1,310 @@
+package Java.util;
+
+import java.lang.management.ManagementFactory;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.IntSupplier;
+import java.util.function.ToLongFunction;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Call counts, latency histograms, size and resize statistics of one {@link Util_List} or
+ * {@link Util_Map}, collected while metrics are enabled with {@code enableMetrics}.
+ *
+ * <p>Every instrumented method reads a single field once and, while metrics are disabled, goes
+ * straight to its work. While they are enabled it also reads the clock twice and records the
+ * latency into the {@link LatencyHistogram} of its {@link Operation}, which is striped and
+ * allocation-free, and records the size of the container after mutating operations.</p>
+ *
+ * <p>The JDK collections do not report their capacity, so resizes are counted by replaying the
+ * growth policy of the backing collection (1.5x for array lists, doubling at 75% load for hash
+ * tables) from the size the container had when metrics were enabled. Changes made by
+ * uninstrumented methods are noticed at the next instrumented mutation.</p>
+ *
+ * <p>The statistics can be pulled from this object or, when a name was given, through the
+ * platform MBean server; see {@link ContainerMetricsMXBean}.</p>
+ */
+public final class ContainerMetrics implements ContainerMetricsMXBean {
+
+    /**
+     * The instrumented operations. Each container records the ones it has.
+     */
+    public enum Operation {
+        ADD,
+        ADD_ALL,
+        GET,
+        SET,
+        REMOVE,
+        REMOVE_ALL,
+        CLEAR,
+        FILTER,
+        MAP,
+        QUERY,
+        COMPUTE_IF_ABSENT,
+        COMPUTE_IF_PRESENT,
+        COMPUTE,
+        MERGE,
+        REPLACE_ALL,
+        AGGREGATE
+    }
+
+    /**
+     * The growth policy of the backing collection.
+     */
+    enum Growth {
+        ARRAY,
+        HASH
+    }
+
+    private static final Operation[] OPERATIONS = Operation.values();
+
+    private final String name;
+    private final IntSupplier size;
+    private final Growth growth;
+    private final AtomicReferenceArray<LatencyHistogram> histograms = new AtomicReferenceArray<>(OPERATIONS.length);
+    private final AtomicInteger peakSize = new AtomicInteger();
+    private volatile long limit;
+    private long capacity;
+    private long resizes;
+    private ObjectName objectName;
+
+    /**
+     * Creates the metrics of a container.
+     * @param name - the name to register under with JMX, or null for none
+     * @param size - returns the current size of the container
+     * @param growth - the growth policy of the backing collection
+     */
+    ContainerMetrics(String name, IntSupplier size, Growth growth) {
+        this.name = name;
+        this.size = size;
+        this.growth = growth;
+        startModel(size.getAsInt());
+    }
+
+    /**
+     * Registers with the platform MBean server, if a name was given.
+     * @param type - the container class, used as the type key of the object name
+     * @throws IllegalStateException if the name is taken or registration fails
+     */
+    void register(String type) {
+        if (name == null) {
+            return;
+        }
+        try {
+            ObjectName objectName = new ObjectName("Java.util:type=" + type + ",name=" + ObjectName.quote(name));
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+            this.objectName = objectName;
+        } catch (JMException e) {
+            throw new IllegalStateException("Cannot register metrics " + name + " with JMX", e);
+        }
+    }
+
+    /**
+     * Unregisters from the platform MBean server, if registered.
+     */
+    void unregister() {
+        if (objectName == null) {
+            return;
+        }
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            if (server.isRegistered(objectName)) {
+                server.unregisterMBean(objectName);
+            }
+        } catch (JMException e) {
+            throw new IllegalStateException("Cannot unregister metrics " + name + " from JMX", e);
+        } finally {
+            objectName = null;
+        }
+    }
+
+    // =========================================================================
+    /**
+     * Records a call that started at the given time and did not change the container.
+     * @param operation - the operation
+     * @param startNanos - the {@link System#nanoTime()} at the start of the call
+     */
+    void record(Operation operation, long startNanos) {
+        histogram(operation).record(System.nanoTime() - startNanos);
+    }
+
+    /**
+     * Records a call that started at the given time and left the container at the given size.
+     * @param operation - the operation
+     * @param startNanos - the {@link System#nanoTime()} at the start of the call
+     * @param currentSize - the size of the container after the call
+     */
+    void record(Operation operation, long startNanos, int currentSize) {
+        histogram(operation).record(System.nanoTime() - startNanos);
+        if (currentSize > peakSize.get()) {
+            peakSize.accumulateAndGet(currentSize, Math::max);
+        }
+        if (currentSize > limit) {
+            grow(currentSize);
+        }
+    }
+
+    /**
+     * Records that the backing collection was presized to hold the given number of entities.
+     * @param minCapacity - the requested capacity
+     */
+    synchronized void reserved(int minCapacity) {
+        if (minCapacity > limit) {
+            resizes++;
+            capacity = growth == Growth.ARRAY ? minCapacity : tableFor(minCapacity);
+            limit = limitOf(capacity);
+        }
+    }
+
+    private synchronized void grow(int currentSize) {
+        if (growth == Growth.ARRAY) {
+            if (currentSize > capacity) {
+                capacity = Math.max(currentSize, Math.max(10, capacity + (capacity >> 1)));
+                resizes++;
+            }
+        } else {
+            while (currentSize > limitOf(capacity)) {
+                capacity <<= 1;
+                resizes++;
+            }
+        }
+        limit = limitOf(capacity);
+    }
+
+    private synchronized void startModel(int currentSize) {
+        capacity = growth == Growth.ARRAY ? Math.max(10, currentSize) : tableFor(currentSize);
+        limit = limitOf(capacity);
+        resizes = 0;
+        peakSize.set(currentSize);
+    }
+
+    private long limitOf(long capacity) {
+        return growth == Growth.ARRAY ? capacity : capacity - (capacity >> 2);
+    }
+
+    private static long tableFor(int entries) {
+        long table = 16;
+        while (entries > table - (table >> 2)) {
+            table <<= 1;
+        }
+        return table;
+    }
+
+    private LatencyHistogram histogram(Operation operation) {
+        int i = operation.ordinal();
+        LatencyHistogram histogram = histograms.get(i);
+        if (histogram == null) {
+            histograms.compareAndSet(i, null, new LatencyHistogram());
+            histogram = histograms.get(i);
+        }
+        return histogram;
+    }
+
+    // =========================================================================
+    /**
+     * Returns the latency histogram of an operation.
+     * @param operation - the operation
+     * @return a snapshot of its histogram, empty if it was never called
+     */
+    public HistogramSnapshot snapshot(Operation operation) {
+        LatencyHistogram histogram = histograms.get(operation.ordinal());
+        return histogram != null ? histogram.snapshot() : new HistogramSnapshot(new long[LatencyHistogram.BUCKETS], 0, 0);
+    }
+
+    /**
+     * Returns the latency histograms of every operation called so far.
+     * @return the snapshots, in declaration order of the operations
+     */
+    public Map<Operation, HistogramSnapshot> snapshots() {
+        Map<Operation, HistogramSnapshot> snapshots = new LinkedHashMap<>();
+        for (Operation operation : OPERATIONS) {
+            LatencyHistogram histogram = histograms.get(operation.ordinal());
+            if (histogram != null) {
+                snapshots.put(operation, histogram.snapshot());
+            }
+        }
+        return snapshots;
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public int getSize() {
+        return size.getAsInt();
+    }
+
+    @Override
+    public int getPeakSize() {
+        return peakSize.get();
+    }
+
+    @Override
+    public synchronized long getEstimatedCapacity() {
+        return capacity;
+    }
+
+    @Override
+    public synchronized long getResizeCount() {
+        return resizes;
+    }
+
+    @Override
+    public Map<String, Long> getCallCounts() {
+        return summarize(HistogramSnapshot::getCount);
+    }
+
+    @Override
+    public Map<String, Double> getMeanNanos() {
+        Map<String, Double> means = new LinkedHashMap<>();
+        snapshots().forEach((operation, snapshot) -> means.put(operation.name(), snapshot.getMean()));
+        return means;
+    }
+
+    @Override
+    public Map<String, Long> getP50Nanos() {
+        return summarize(snapshot -> snapshot.getValueAtPercentile(50));
+    }
+
+    @Override
+    public Map<String, Long> getP99Nanos() {
+        return summarize(snapshot -> snapshot.getValueAtPercentile(99));
+    }
+
+    @Override
+    public Map<String, Long> getMaxNanos() {
+        return summarize(HistogramSnapshot::getMax);
+    }
+
+    @Override
+    public void reset() {
+        for (int i = 0; i < OPERATIONS.length; i++) {
+            LatencyHistogram histogram = histograms.get(i);
+            if (histogram != null) {
+                histogram.reset();
+            }
+        }
+        startModel(size.getAsInt());
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(name != null ? name : "metrics").append(": size=").append(getSize())
+          .append(", peak=").append(getPeakSize()).append(", resizes=").append(getResizeCount());
+        snapshots().forEach((operation, snapshot) -> sb.append("\n  ").append(operation).append(": ").append(snapshot));
+        return sb.toString();
+    }
+
+    private Map<String, Long> summarize(ToLongFunction<HistogramSnapshot> statistic) {
+        Map<String, Long> summary = new LinkedHashMap<>();
+        snapshots().forEach((operation, snapshot) -> summary.put(operation.name(), statistic.applyAsLong(snapshot)));
+        return summary;
+    }
+}
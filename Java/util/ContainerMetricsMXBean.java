@@ -0,0 +1,37 @@
+package Java.util;
+
+import java.util.Map;
+
+/**
+ * JMX view of the {@link ContainerMetrics} of a container, registered under
+ * {@code Java.util:type=<container class>,name=<name>} by {@code enableMetrics(String)}.
+ * Latencies are in nanoseconds and keyed by {@link ContainerMetrics.Operation} name; operations
+ * that were never called are left out.
+ */
+public interface ContainerMetricsMXBean {
+
+    String getName();
+
+    int getSize();
+
+    int getPeakSize();
+
+    long getEstimatedCapacity();
+
+    long getResizeCount();
+
+    Map<String, Long> getCallCounts();
+
+    Map<String, Double> getMeanNanos();
+
+    Map<String, Long> getP50Nanos();
+
+    Map<String, Long> getP99Nanos();
+
+    Map<String, Long> getMaxNanos();
+
+    /**
+     * Clears the call counts, latencies, peak size and resize count.
+     */
+    void reset();
+}
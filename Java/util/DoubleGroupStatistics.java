@@ -0,0 +1,173 @@
+package Java.util;
+
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+
+/**
+ * Count, sum, minimum and maximum of a {@code double} value per {@code long} group key, as
+ * computed by the {@code groupDouble} methods of {@link Util_List} and {@link Util_Map}.
+ *
+ * <p>Groups are held in a primitive hash table with the statistics in parallel arrays, so
+ * accumulating a value neither boxes it nor allocates. Groups are kept in order of first
+ * occurrence; after a parallel aggregation that order depends on how the work was split.</p>
+ */
+public final class DoubleGroupStatistics {
+    private final LongOrdinalTable groups = new LongOrdinalTable();
+    private long[] counts = new long[16];
+    private double[] sums = new double[16];
+    private double[] mins = new double[16];
+    private double[] maxs = new double[16];
+
+    DoubleGroupStatistics() {
+    }
+
+    /**
+     * Adds a value to a group.
+     * @param key - the group key
+     * @param value - the value
+     */
+    void accept(long key, double value) {
+        int group = groups.add(key);
+        if (group == counts.length) {
+            grow();
+        }
+        if (counts[group]++ == 0) {
+            sums[group] = value;
+            mins[group] = value;
+            maxs[group] = value;
+        } else {
+            sums[group] += value;
+            mins[group] = Math.min(mins[group], value);
+            maxs[group] = Math.max(maxs[group], value);
+        }
+    }
+
+    /**
+     * Adds the statistics of another partial result, for parallel aggregation.
+     * @param other - the other partial result
+     */
+    void combine(DoubleGroupStatistics other) {
+        for (int i = 0; i < other.groups.size(); i++) {
+            int group = groups.add(other.groups.keyAt(i));
+            if (group == counts.length) {
+                grow();
+            }
+            if (counts[group] == 0) {
+                sums[group] = other.sums[i];
+                mins[group] = other.mins[i];
+                maxs[group] = other.maxs[i];
+            } else {
+                sums[group] += other.sums[i];
+                mins[group] = Math.min(mins[group], other.mins[i]);
+                maxs[group] = Math.max(maxs[group], other.maxs[i]);
+            }
+            counts[group] += other.counts[i];
+        }
+    }
+
+    // =========================================================================
+    /**
+     * Returns the number of groups.
+     * @return the number of distinct keys
+     */
+    public int size() {
+        return groups.size();
+    }
+
+    /**
+     * Returns the group keys.
+     * @return the keys, in order of first occurrence
+     */
+    public long[] keys() {
+        return groups.keys();
+    }
+
+    /**
+     * Checks if a group exists.
+     * @param key - the group key
+     * @return true if any entity fell into the group
+     */
+    public boolean containsKey(long key) {
+        return groups.find(key) >= 0;
+    }
+
+    /**
+     * Returns the number of values in a group.
+     * @param key - the group key
+     * @return the count, or 0 for an unknown group
+     */
+    public long count(long key) {
+        int group = groups.find(key);
+        return group < 0 ? 0 : counts[group];
+    }
+
+    /**
+     * Returns the sum of a group.
+     * @param key - the group key
+     * @return the sum, or 0 for an unknown group
+     */
+    public double sum(long key) {
+        int group = groups.find(key);
+        return group < 0 ? 0 : sums[group];
+    }
+
+    /**
+     * Returns the smallest value of a group, NaN if any of its values is NaN.
+     * @param key - the group key
+     * @return the minimum
+     * @throws NoSuchElementException if the group does not exist
+     */
+    public double min(long key) {
+        return mins[require(key)];
+    }
+
+    /**
+     * Returns the largest value of a group, NaN if any of its values is NaN.
+     * @param key - the group key
+     * @return the maximum
+     * @throws NoSuchElementException if the group does not exist
+     */
+    public double max(long key) {
+        return maxs[require(key)];
+    }
+
+    /**
+     * Returns the mean of a group.
+     * @param key - the group key
+     * @return the average, or 0 for an unknown group
+     */
+    public double average(long key) {
+        int group = groups.find(key);
+        return group < 0 ? 0 : sums[group] / counts[group];
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("{");
+        for (int i = 0; i < groups.size(); i++) {
+            if (i > 0) {
+                sb.append(", ");
+            }
+            sb.append(groups.keyAt(i)).append("=[count=").append(counts[i]).append(", sum=").append(sums[i])
+              .append(", min=").append(mins[i]).append(", max=").append(maxs[i]).append(']');
+        }
+        return sb.append('}').toString();
+    }
+
+    // =========================================================================
+    private int require(long key) {
+        int group = groups.find(key);
+        if (group < 0) {
+            throw new NoSuchElementException("No group: " + key);
+        }
+        return group;
+    }
+
+    private void grow() {
+        int capacity = counts.length << 1;
+        counts = Arrays.copyOf(counts, capacity);
+        sums = Arrays.copyOf(sums, capacity);
+        mins = Arrays.copyOf(mins, capacity);
+        maxs = Arrays.copyOf(maxs, capacity);
+    }
+}
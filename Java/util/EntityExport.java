@@ -0,0 +1,364 @@
+package Java.util;
+
+import Java.main.Entity;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.channels.WritableByteChannel;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Function;
+
+/**
+ * Streaming text export of {@link Util_List} and {@link Util_Map}, one entity per line, as
+ * JSON Lines or CSV, to any {@link WritableByteChannel} or {@link OutputStream}.
+ *
+ * <p>An export is configured once and can be reused: the format, the columns (a name and a
+ * function of the entity each, in order), the buffer size and whether writes happen on a
+ * background thread. Entities are encoded straight from the container into a reusable UTF-8
+ * buffer by an {@link ExportWriter}; no line is built as a string unless a column value's
+ * {@code toString} builds one. Map exports start every line with the key, in a column named
+ * "key".</p>
+ *
+ * <p>With background writes, encoding on the calling thread overlaps with the channel or stream
+ * writes on a second thread, which pays off when the destination is slow, such as a socket or
+ * a pipe. Without them, everything happens on the calling thread.</p>
+ *
+ * <p>JSON values are written by type: numbers and booleans as they are, with non-finite
+ * floating-point values as null; null as null; anything else as an escaped string of its
+ * {@code toString}. CSV follows RFC 4180: a header row, CRLF line ends, and fields quoted when
+ * they contain a comma, quote or line break; null is an empty field.</p>
+ *
+ * <p>Exporting iterates the live container: export while no other thread modifies it, or from a
+ * {@link Util_ConcurrentList}/{@link Util_ConcurrentMap}, whose iteration is safe. The channel
+ * or stream is flushed but not closed.</p>
+ *
+ * @param <T> the type of entities exported
+ */
+public final class EntityExport<T extends Entity> {
+    /**
+     * The default buffer size, 1 MiB.
+     */
+    public static final int DEFAULT_BUFFER_SIZE = 1 << 20;
+
+    /**
+     * The line formats.
+     */
+    public enum Format {
+        JSON_LINES,
+        CSV
+    }
+
+    private static final String KEY_COLUMN = "key";
+
+    private final Format format;
+    private final String[] names;
+    private final Function<? super T, ?>[] columns;
+    private final int bufferSize;
+    private final boolean background;
+
+    private EntityExport(Format format, String[] names, Function<? super T, ?>[] columns, int bufferSize,
+                         boolean background) {
+        this.format = format;
+        this.names = names;
+        this.columns = columns;
+        this.bufferSize = bufferSize;
+        this.background = background;
+    }
+
+    // =========================================================================
+    /**
+     * Creates a JSON Lines export of each entity's ID and {@code toString}, in columns named
+     * "id" and "value".
+     * @param <T> the type of entities exported
+     * @return the export
+     */
+    public static <T extends Entity> EntityExport<T> jsonLines() {
+        return of(Format.JSON_LINES, defaultColumns());
+    }
+
+    /**
+     * Creates a JSON Lines export of the given columns.
+     * @param <T> the type of entities exported
+     * @param columns - the column names and values, in order
+     * @return the export
+     */
+    public static <T extends Entity> EntityExport<T> jsonLines(Map<String, ? extends Function<? super T, ?>> columns) {
+        return of(Format.JSON_LINES, columns);
+    }
+
+    /**
+     * Creates a CSV export of each entity's ID and {@code toString}, in columns named "id" and
+     * "value".
+     * @param <T> the type of entities exported
+     * @return the export
+     */
+    public static <T extends Entity> EntityExport<T> csv() {
+        return of(Format.CSV, defaultColumns());
+    }
+
+    /**
+     * Creates a CSV export of the given columns.
+     * @param <T> the type of entities exported
+     * @param columns - the column names and values, in order
+     * @return the export
+     */
+    public static <T extends Entity> EntityExport<T> csv(Map<String, ? extends Function<? super T, ?>> columns) {
+        return of(Format.CSV, columns);
+    }
+
+    /**
+     * Returns this export with a different buffer size.
+     * @param bufferSize - the size of each buffer, in bytes
+     * @return the new export
+     * @throws IllegalArgumentException if the size is below 64 bytes
+     */
+    public EntityExport<T> withBufferSize(int bufferSize) {
+        if (bufferSize < ExportWriter.MIN_BUFFER_SIZE) {
+            throw new IllegalArgumentException("Buffer size must be at least " + ExportWriter.MIN_BUFFER_SIZE + ": "
+                    + bufferSize);
+        }
+        return new EntityExport<>(format, names, columns, bufferSize, background);
+    }
+
+    /**
+     * Returns this export with writes on or off a background thread.
+     * @param background - true to write from a background thread while encoding continues
+     * @return the new export
+     */
+    public EntityExport<T> withBackgroundWrites(boolean background) {
+        return new EntityExport<>(format, names, columns, bufferSize, background);
+    }
+
+    /**
+     * Returns the line format.
+     * @return the format
+     */
+    public Format getFormat() {
+        return format;
+    }
+
+    // =========================================================================
+    /**
+     * Writes all entities of a list in list order.
+     * @param list - the list to export
+     * @param channel - the channel to write to
+     * @return the number of entities written
+     * @throws UncheckedIOException if the channel cannot be written
+     */
+    public long writeList(Util_List<? extends T> list, WritableByteChannel channel) {
+        try (ExportWriter out = new ExportWriter(channel, bufferSize, background)) {
+            return writeList(list, out);
+        }
+    }
+
+    /**
+     * Writes all entities of a list in list order.
+     * @param list - the list to export
+     * @param out - the stream to write to
+     * @return the number of entities written
+     * @throws UncheckedIOException if the stream cannot be written
+     */
+    public long writeList(Util_List<? extends T> list, OutputStream out) {
+        try (ExportWriter writer = new ExportWriter(out, bufferSize, background)) {
+            return writeList(list, writer);
+        }
+    }
+
+    /**
+     * Writes all entries of a map, with the key first.
+     * @param map - the map to export
+     * @param channel - the channel to write to
+     * @return the number of entries written
+     * @throws UncheckedIOException if the channel cannot be written
+     */
+    public long writeMap(Util_Map<? extends T> map, WritableByteChannel channel) {
+        try (ExportWriter out = new ExportWriter(channel, bufferSize, background)) {
+            return writeMap(map, out);
+        }
+    }
+
+    /**
+     * Writes all entries of a map, with the key first.
+     * @param map - the map to export
+     * @param out - the stream to write to
+     * @return the number of entries written
+     * @throws UncheckedIOException if the stream cannot be written
+     */
+    public long writeMap(Util_Map<? extends T> map, OutputStream out) {
+        try (ExportWriter writer = new ExportWriter(out, bufferSize, background)) {
+            return writeMap(map, writer);
+        }
+    }
+
+    // =========================================================================
+    private long writeList(Util_List<? extends T> list, ExportWriter out) {
+        header(out, false);
+        long[] count = new long[1];
+        list.forEachInOrder(entity -> {
+            row(out, false, null, entity);
+            count[0]++;
+        });
+        return count[0];
+    }
+
+    private long writeMap(Util_Map<? extends T> map, ExportWriter out) {
+        header(out, true);
+        long[] count = new long[1];
+        map.forEachEntry((key, entity) -> {
+            row(out, true, key, entity);
+            count[0]++;
+        });
+        return count[0];
+    }
+
+    private void header(ExportWriter out, boolean keyed) {
+        if (format != Format.CSV) {
+            return;
+        }
+        if (keyed) {
+            csvField(out, KEY_COLUMN);
+        }
+        for (int i = 0; i < names.length; i++) {
+            if (keyed || i > 0) {
+                out.append(',');
+            }
+            csvField(out, names[i]);
+        }
+        out.append("\r\n");
+    }
+
+    private void row(ExportWriter out, boolean keyed, Object key, T entity) {
+        if (format == Format.JSON_LINES) {
+            out.append('{');
+            if (keyed) {
+                jsonString(out, KEY_COLUMN);
+                out.append(':');
+                jsonValue(out, key);
+            }
+            for (int i = 0; i < names.length; i++) {
+                if (keyed || i > 0) {
+                    out.append(',');
+                }
+                jsonString(out, names[i]);
+                out.append(':');
+                jsonValue(out, columns[i].apply(entity));
+            }
+            out.append("}\n");
+        } else {
+            if (keyed) {
+                csvValue(out, key);
+            }
+            for (int i = 0; i < names.length; i++) {
+                if (keyed || i > 0) {
+                    out.append(',');
+                }
+                csvValue(out, columns[i].apply(entity));
+            }
+            out.append("\r\n");
+        }
+    }
+
+    private static void jsonValue(ExportWriter out, Object value) {
+        if (value == null) {
+            out.append("null");
+        } else if (value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte) {
+            out.append(((Number) value).longValue());
+        } else if (value instanceof Double || value instanceof Float) {
+            double d = ((Number) value).doubleValue();
+            out.append(Double.isFinite(d) ? value.toString() : "null");
+        } else if (value instanceof Number || value instanceof Boolean) {
+            out.append(value.toString());
+        } else {
+            jsonString(out, value.toString());
+        }
+    }
+
+    private static void jsonString(ExportWriter out, String text) {
+        out.append('"');
+        int start = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c >= 0x20 && c != '"' && c != '\\') {
+                continue;
+            }
+            out.append(text.subSequence(start, i));
+            start = i + 1;
+            switch (c) {
+                case '"':
+                    out.append("\\\"");
+                    break;
+                case '\\':
+                    out.append("\\\\");
+                    break;
+                case '\n':
+                    out.append("\\n");
+                    break;
+                case '\r':
+                    out.append("\\r");
+                    break;
+                case '\t':
+                    out.append("\\t");
+                    break;
+                default:
+                    out.append("\\u00").append(Character.forDigit(c >> 4, 16)).append(Character.forDigit(c & 0xF, 16));
+            }
+        }
+        out.append(start == 0 ? text : text.subSequence(start, text.length()));
+        out.append('"');
+    }
+
+    private static void csvValue(ExportWriter out, Object value) {
+        if (value == null) {
+            return;
+        }
+        if (value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte) {
+            out.append(((Number) value).longValue());
+        } else {
+            csvField(out, value.toString());
+        }
+    }
+
+    private static void csvField(ExportWriter out, String text) {
+        boolean quote = false;
+        for (int i = 0; i < text.length() && !quote; i++) {
+            char c = text.charAt(i);
+            quote = c == ',' || c == '"' || c == '\n' || c == '\r';
+        }
+        if (!quote) {
+            out.append(text);
+            return;
+        }
+        out.append('"');
+        int start = 0;
+        for (int i = text.indexOf('"'); i >= 0; i = text.indexOf('"', i + 1)) {
+            out.append(text.subSequence(start, i + 1)).append('"');
+            start = i + 1;
+        }
+        out.append(text.subSequence(start, text.length())).append('"');
+    }
+
+    // =========================================================================
+    @SuppressWarnings("unchecked")
+    private static <T extends Entity> EntityExport<T> of(Format format,
+                                                       Map<String, ? extends Function<? super T, ?>> columns) {
+        if (columns.isEmpty()) {
+            throw new IllegalArgumentException("An export needs at least one column");
+        }
+        String[] names = new String[columns.size()];
+        Function<? super T, ?>[] functions = (Function<? super T, ?>[]) new Function<?, ?>[columns.size()];
+        int i = 0;
+        for (Map.Entry<String, ? extends Function<? super T, ?>> column : columns.entrySet()) {
+            names[i] = Objects.requireNonNull(column.getKey(), "column name");
+            functions[i++] = Objects.requireNonNull(column.getValue(), "column function");
+        }
+        return new EntityExport<>(format, names, functions, DEFAULT_BUFFER_SIZE, false);
+    }
+
+    private static <T extends Entity> Map<String, Function<? super T, ?>> defaultColumns() {
+        Map<String, Function<? super T, ?>> columns = new LinkedHashMap<>();
+        columns.put("id", Entity::getId);
+        columns.put("value", String::valueOf);
+        return columns;
+    }
+}
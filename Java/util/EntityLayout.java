@@ -0,0 +1,40 @@
+package Java.util;
+
+import Java.main.Entity;
+import java.nio.ByteBuffer;
+import java.util.UUID;
+
+/**
+ * Fixed-size binary layout of an entity's payload, used by {@link Util_OffHeapMap} to keep
+ * entities outside the Java heap. The ID is stored by the map itself and is not part of the payload.
+ *
+ * <p>Implementations must use absolute {@link ByteBuffer} accessors (those taking an index)
+ * and must not change the buffer's position or limit.</p>
+ *
+ * @param <T> the type of entities described
+ */
+public interface EntityLayout<T extends Entity> {
+
+    /**
+     * Returns the number of payload bytes of every entity.
+     * @return the payload size in bytes
+     */
+    int payloadSize();
+
+    /**
+     * Writes the entity's payload.
+     * @param entity - the entity to write
+     * @param buffer - the buffer to write to
+     * @param offset - the absolute index of the first payload byte
+     */
+    void write(T entity, ByteBuffer buffer, int offset);
+
+    /**
+     * Reads an entity back from its ID and payload.
+     * @param id - the ID of the entity
+     * @param buffer - the buffer to read from
+     * @param offset - the absolute index of the first payload byte
+     * @return the entity
+     */
+    T read(UUID id, ByteBuffer buffer, int offset);
+}
@@ -0,0 +1,514 @@
+package Java.util;
+
+import Java.main.Entity;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.UUID;
+import java.util.function.Consumer;
+import java.util.function.IntFunction;
+import java.util.zip.CRC32C;
+
+/**
+ * Streaming binary snapshots of {@link Util_Map} and {@link Util_List}, for warm-starting a
+ * process without going back to the original data source.
+ *
+ * <p>A snapshot is a 24-byte header followed by blocks. The header holds the entry count, so a
+ * restore can size the backing HashMap or ArrayList once and never rehash or grow it. Each block
+ * is a 16-byte block header (payload length, entry count, CRC32C of the payload) followed by
+ * whole entries; a block is verified before any of its entries are decoded.</p>
+ *
+ * <p>Entries are encoded straight from the container into a direct buffer and written through a
+ * {@link FileChannel} one block at a time; restore decodes straight from the block into the new
+ * container. No intermediate collection is built either way. Map keys may be Strings, UUIDs,
+ * Longs or Integers, which covers every key produced by {@link Entity#getIdKey()}; values are
+ * encoded by a {@link SnapshotCodec}.</p>
+ *
+ * <p>A snapshot is written to a temporary file next to the target, which then replaces the target
+ * in one atomic move, so a reader or a crash never sees a partly written snapshot.</p>
+ *
+ * <p>Writing iterates the live container: take the snapshot while no other thread modifies it,
+ * or from a {@link Util_ConcurrentList}/{@link Util_ConcurrentMap}, whose iteration is safe.</p>
+ */
+public final class EntitySnapshot {
+    /**
+     * The default block size, 1 MiB.
+     */
+    public static final int DEFAULT_BLOCK_SIZE = 1 << 20;
+
+    private static final int MAGIC = 0x53565350; // "SVSP"
+    private static final int VERSION = 1;
+    private static final int KIND_MAP = 1;
+    private static final int KIND_LIST = 2;
+    private static final int HEADER_SIZE = 24;
+    private static final int BLOCK_HEADER_SIZE = 16;
+    private static final int MIN_BLOCK_SIZE = 4096;
+
+    private static final byte NULL = 0;
+    private static final byte STRING = 1;
+    private static final byte UUID_KEY = 2;
+    private static final byte LONG = 3;
+    private static final byte INTEGER = 4;
+    private static final byte PRESENT = 1;
+
+    private EntitySnapshot() {
+    }
+
+    // =========================================================================
+    /**
+     * Writes all entries of a map to a file, atomically replacing the file if it exists.
+     * @param <T> the type of entities in the map
+     * @param map - the map to write
+     * @param file - the snapshot file
+     * @param codec - the encoding of the values
+     * @throws UncheckedIOException if the file cannot be written
+     * @throws IllegalArgumentException if a key has an unsupported type or an entry is larger than a block
+     */
+    public static <T extends Entity> void writeMap(Util_Map<T> map, Path file, SnapshotCodec<? super T> codec) {
+        writeMap(map, file, codec, DEFAULT_BLOCK_SIZE);
+    }
+
+    /**
+     * Writes all entries of a map to a file using the given block size.
+     * @param <T> the type of entities in the map
+     * @param map - the map to write
+     * @param file - the snapshot file
+     * @param codec - the encoding of the values
+     * @param blockSize - the size of the write buffer and upper bound of a block, in bytes
+     * @throws UncheckedIOException if the file cannot be written
+     * @throws IllegalArgumentException if a key has an unsupported type or an entry is larger than a block
+     */
+    public static <T extends Entity> void writeMap(Util_Map<T> map, Path file, SnapshotCodec<? super T> codec,
+                                                   int blockSize) {
+        replaceAtomically(file, temporary -> writeMapDirect(map, temporary, codec, blockSize));
+    }
+
+    /**
+     * Writes all entries of a map straight into a file, for a caller that publishes the file itself.
+     * @param file - the file to write, replaced if it exists
+     */
+    static <T extends Entity> void writeMapDirect(Util_Map<T> map, Path file, SnapshotCodec<? super T> codec,
+                                                  int blockSize) {
+        try (Writer<T> writer = new Writer<>(file, KIND_MAP, codec, blockSize)) {
+            map.forEachEntry(writer::putEntry);
+            writer.finish();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot write snapshot: " + file, e);
+        }
+    }
+
+    /**
+     * Reads a map snapshot into a new map sized for its entries.
+     * @param <T> the type of entities in the map
+     * @param file - the snapshot file
+     * @param codec - the encoding of the values
+     * @return the restored map
+     * @throws UncheckedIOException if the file cannot be read, is not a map snapshot or fails a checksum
+     */
+    public static <T extends Entity> Util_Map<T> readMap(Path file, SnapshotCodec<? extends T> codec) {
+        return readMap(file, codec, Util_Map::new);
+    }
+
+    /**
+     * Reads a map snapshot into a map created for the number of entries in the header.
+     * @param file - the snapshot file
+     * @param codec - the encoding of the values
+     * @param newMap - creates an empty map sized for the given number of entries
+     * @return the restored map
+     */
+    static <T extends Entity, M extends Util_Map<T>> M readMap(Path file, SnapshotCodec<? extends T> codec,
+                                                               IntFunction<M> newMap) {
+        try (Reader reader = new Reader(file, KIND_MAP)) {
+            M map = newMap.apply(reader.count());
+            while (reader.nextBlock()) {
+                ByteBuffer block = reader.block();
+                for (int i = reader.blockEntries(); i > 0; i--) {
+                    Object key = getKey(block);
+                    map.addEntity(key, getValue(block, codec));
+                }
+                reader.endBlock();
+            }
+            return map;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot read snapshot: " + file, e);
+        }
+    }
+
+    // =========================================================================
+    /**
+     * Writes all entities of a list to a file in list order, atomically replacing the file if it exists.
+     * @param <T> the type of entities in the list
+     * @param list - the list to write
+     * @param file - the snapshot file
+     * @param codec - the encoding of the entities
+     * @throws UncheckedIOException if the file cannot be written
+     * @throws IllegalArgumentException if an entity is larger than a block
+     */
+    public static <T extends Entity> void writeList(Util_List<T> list, Path file, SnapshotCodec<? super T> codec) {
+        writeList(list, file, codec, DEFAULT_BLOCK_SIZE);
+    }
+
+    /**
+     * Writes all entities of a list to a file in list order using the given block size.
+     * @param <T> the type of entities in the list
+     * @param list - the list to write
+     * @param file - the snapshot file
+     * @param codec - the encoding of the entities
+     * @param blockSize - the size of the write buffer and upper bound of a block, in bytes
+     * @throws UncheckedIOException if the file cannot be written
+     * @throws IllegalArgumentException if an entity is larger than a block
+     */
+    public static <T extends Entity> void writeList(Util_List<T> list, Path file, SnapshotCodec<? super T> codec,
+                                                    int blockSize) {
+        replaceAtomically(file, temporary -> {
+            try (Writer<T> writer = new Writer<>(temporary, KIND_LIST, codec, blockSize)) {
+                list.forEachInOrder(writer::putValue);
+                writer.finish();
+            } catch (IOException e) {
+                throw new UncheckedIOException("Cannot write snapshot: " + file, e);
+            }
+        });
+    }
+
+    /**
+     * Reads a list snapshot into a new list sized for its entities.
+     * @param <T> the type of entities in the list
+     * @param file - the snapshot file
+     * @param codec - the encoding of the entities
+     * @return the restored list, in the order it was written
+     * @throws UncheckedIOException if the file cannot be read, is not a list snapshot or fails a checksum
+     */
+    public static <T extends Entity> Util_List<T> readList(Path file, SnapshotCodec<? extends T> codec) {
+        try (Reader reader = new Reader(file, KIND_LIST)) {
+            Util_List<T> list = new Util_List<>(reader.count());
+            while (reader.nextBlock()) {
+                ByteBuffer block = reader.block();
+                for (int i = reader.blockEntries(); i > 0; i--) {
+                    list.addEntity(getValue(block, codec));
+                }
+                reader.endBlock();
+            }
+            return list;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot read snapshot: " + file, e);
+        }
+    }
+
+    // =========================================================================
+    /**
+     * Checks that a key can be written by {@link #putKey(ByteBuffer, Object)}.
+     * @param key - the key to check
+     * @throws IllegalArgumentException if the key has an unsupported type
+     */
+    static void checkKey(Object key) {
+        if (key != null && !(key instanceof String || key instanceof UUID || key instanceof Long
+                || key instanceof Integer)) {
+            throw new IllegalArgumentException("Unsupported key type: " + key.getClass().getName());
+        }
+    }
+
+    static void putKey(ByteBuffer buffer, Object key) {
+        if (key == null) {
+            buffer.put(NULL);
+        } else if (key instanceof String) {
+            buffer.put(STRING);
+            SnapshotCodec.putString(buffer, (String) key);
+        } else if (key instanceof UUID) {
+            UUID uuid = (UUID) key;
+            buffer.put(UUID_KEY);
+            buffer.putLong(uuid.getMostSignificantBits());
+            buffer.putLong(uuid.getLeastSignificantBits());
+        } else if (key instanceof Long) {
+            buffer.put(LONG);
+            buffer.putLong((Long) key);
+        } else if (key instanceof Integer) {
+            buffer.put(INTEGER);
+            buffer.putInt((Integer) key);
+        } else {
+            checkKey(key);
+        }
+    }
+
+    static Object getKey(ByteBuffer buffer) throws IOException {
+        byte tag = buffer.get();
+        switch (tag) {
+            case NULL:
+                return null;
+            case STRING:
+                return SnapshotCodec.getString(buffer);
+            case UUID_KEY:
+                return new UUID(buffer.getLong(), buffer.getLong());
+            case LONG:
+                return buffer.getLong();
+            case INTEGER:
+                return buffer.getInt();
+            default:
+                throw new IOException("Corrupt snapshot: unknown key tag " + tag);
+        }
+    }
+
+    static <T extends Entity> void putValue(ByteBuffer buffer, T value, SnapshotCodec<? super T> codec) {
+        if (value == null) {
+            buffer.put(NULL);
+        } else {
+            buffer.put(PRESENT);
+            codec.encode(value, buffer);
+        }
+    }
+
+    static <T extends Entity> T getValue(ByteBuffer buffer, SnapshotCodec<? extends T> codec) {
+        return buffer.get() == NULL ? null : codec.decode(buffer);
+    }
+
+    /**
+     * Writes a snapshot to a temporary file next to the target and moves it over the target in
+     * one step, deleting the temporary file if anything fails.
+     * @param file - the target file
+     * @param write - writes the complete snapshot to the given temporary file
+     */
+    private static void replaceAtomically(Path file, Consumer<Path> write) {
+        Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+        try {
+            write.accept(temporary);
+            Files.move(temporary, file, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot write snapshot: " + file, e);
+        } finally {
+            try {
+                Files.deleteIfExists(temporary);
+            } catch (IOException ignored) {
+                // Only reached after the write or move already failed, which is the error to report
+            }
+        }
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer) < 0) {
+                throw new EOFException("Corrupt snapshot: unexpected end of file");
+            }
+        }
+    }
+
+    // =========================================================================
+    /**
+     * Encodes entries into a block buffer and writes each block once it is full.
+     */
+    private static final class Writer<T extends Entity> implements AutoCloseable {
+        private final FileChannel channel;
+        private final SnapshotCodec<? super T> codec;
+        private final ByteBuffer block;
+        private final CRC32C crc = new CRC32C();
+        private final int kind;
+        private long position = HEADER_SIZE;
+        private int blockEntries;
+        private long count;
+
+        Writer(Path file, int kind, SnapshotCodec<? super T> codec, int blockSize) throws IOException {
+            if (blockSize < MIN_BLOCK_SIZE) {
+                throw new IllegalArgumentException("Block size must be at least " + MIN_BLOCK_SIZE + ": " + blockSize);
+            }
+            this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING);
+            this.kind = kind;
+            this.codec = codec;
+            this.block = ByteBuffer.allocateDirect(blockSize);
+            block.position(BLOCK_HEADER_SIZE);
+        }
+
+        void putEntry(Object key, T value) {
+            int start = block.position();
+            try {
+                putKey(block, key);
+                EntitySnapshot.putValue(block, value, codec);
+            } catch (BufferOverflowException e) {
+                block.position(start);
+                flushForRetry();
+                putKey(block, key);
+                EntitySnapshot.putValue(block, value, codec);
+            }
+            entryWritten();
+        }
+
+        void putValue(T value) {
+            int start = block.position();
+            try {
+                EntitySnapshot.putValue(block, value, codec);
+            } catch (BufferOverflowException e) {
+                block.position(start);
+                flushForRetry();
+                EntitySnapshot.putValue(block, value, codec);
+            }
+            entryWritten();
+        }
+
+        private void entryWritten() {
+            blockEntries++;
+            count++;
+        }
+
+        /**
+         * Writes the current block so an entry that did not fit can be retried in an empty one.
+         */
+        private void flushForRetry() {
+            if (blockEntries == 0) {
+                throw new IllegalArgumentException("Entry larger than the block size of " + block.capacity() + " bytes");
+            }
+            try {
+                flush();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        private void flush() throws IOException {
+            if (blockEntries == 0) {
+                return;
+            }
+            int end = block.position();
+            block.limit(end).position(BLOCK_HEADER_SIZE);
+            crc.reset();
+            crc.update(block);
+            block.putInt(0, end - BLOCK_HEADER_SIZE);
+            block.putInt(4, blockEntries);
+            block.putLong(8, crc.getValue());
+            block.position(0);
+            writeFully(channel, block, position);
+            position += end;
+            block.clear().position(BLOCK_HEADER_SIZE);
+            blockEntries = 0;
+        }
+
+        /**
+         * Writes the last block, then the header with the final entry count, and syncs the file.
+         */
+        void finish() throws IOException {
+            flush();
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            header.putInt(MAGIC).putInt(VERSION).putInt(kind).putInt(block.capacity()).putLong(count).flip();
+            writeFully(channel, header, 0);
+            channel.force(false);
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+    }
+
+    /**
+     * Reads and verifies one block at a time into a reusable buffer.
+     */
+    private static final class Reader implements AutoCloseable {
+        private final FileChannel channel;
+        private final ByteBuffer blockHeader = ByteBuffer.allocate(BLOCK_HEADER_SIZE);
+        private final ByteBuffer block;
+        private final CRC32C crc = new CRC32C();
+        private final int count;
+        private long remaining;
+        private int blockEntries;
+
+        Reader(Path file, int kind) throws IOException {
+            this.channel = FileChannel.open(file, StandardOpenOption.READ);
+            try {
+                ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+                readFully(channel, header);
+                header.flip();
+                if (header.getInt() != MAGIC) {
+                    throw new IOException("Not a snapshot file");
+                }
+                int version = header.getInt();
+                if (version != VERSION) {
+                    throw new IOException("Unsupported snapshot version: " + version);
+                }
+                if (header.getInt() != kind) {
+                    throw new IOException(kind == KIND_MAP ? "Not a map snapshot" : "Not a list snapshot");
+                }
+                int blockSize = header.getInt();
+                long entries = header.getLong();
+                if (blockSize < MIN_BLOCK_SIZE || entries < 0 || entries > Integer.MAX_VALUE - 8) {
+                    throw new IOException("Corrupt snapshot header");
+                }
+                this.block = ByteBuffer.allocateDirect(blockSize - BLOCK_HEADER_SIZE);
+                this.count = (int) entries;
+                this.remaining = entries;
+            } catch (IOException | RuntimeException e) {
+                channel.close();
+                throw e;
+            }
+        }
+
+        int count() {
+            return count;
+        }
+
+        ByteBuffer block() {
+            return block;
+        }
+
+        int blockEntries() {
+            return blockEntries;
+        }
+
+        /**
+         * Reads and verifies the next block, leaving its payload between position and limit.
+         * @return false once all entries announced by the header have been read
+         */
+        boolean nextBlock() throws IOException {
+            if (remaining == 0) {
+                if (channel.position() != channel.size()) {
+                    throw new IOException("Corrupt snapshot: data after the last entry");
+                }
+                return false;
+            }
+            blockHeader.clear();
+            readFully(channel, blockHeader);
+            int length = blockHeader.getInt(0);
+            blockEntries = blockHeader.getInt(4);
+            long checksum = blockHeader.getLong(8);
+            if (length <= 0 || length > block.capacity() || blockEntries <= 0 || blockEntries > remaining) {
+                throw new IOException("Corrupt snapshot: bad block header at offset "
+                        + (channel.position() - BLOCK_HEADER_SIZE));
+            }
+            block.clear().limit(length);
+            readFully(channel, block);
+            block.flip();
+            crc.reset();
+            crc.update(block);
+            if (crc.getValue() != checksum) {
+                throw new IOException("Corrupt snapshot: checksum mismatch in block at offset "
+                        + (channel.position() - length - BLOCK_HEADER_SIZE));
+            }
+            block.rewind();
+            remaining -= blockEntries;
+            return true;
+        }
+
+        /**
+         * Checks that the entries of the block used up exactly its payload.
+         */
+        void endBlock() throws IOException {
+            if (block.hasRemaining()) {
+                throw new IOException("Corrupt snapshot: " + block.remaining() + " stray bytes in block");
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+    }
+}
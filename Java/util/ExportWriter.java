@@ -0,0 +1,347 @@
+package Java.util;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Buffered UTF-8 text writer behind {@link EntityExport} and the print and loop methods of
+ * {@link Util_List} and {@link Util_Map}.
+ *
+ * <p>Text is encoded straight into a large byte buffer, which reaches the channel or stream
+ * only when it is full or the writer is flushed, so a million lines cost a few hundred writes
+ * instead of a million locked, flushed {@code println} calls. The buffers are reused for the
+ * whole export.</p>
+ *
+ * <p>With background writes, the writer owns two buffers and a writer thread: while the thread
+ * writes one buffer, the caller encodes into the other. An I/O error on the thread is rethrown
+ * to the caller at its next buffer hand-off or at {@link #close()}.</p>
+ *
+ * <p>The writer never closes the channel or stream it writes to. Methods throw
+ * {@link UncheckedIOException} so they can be called from lambdas.</p>
+ */
+final class ExportWriter implements AutoCloseable {
+    static final int MIN_BUFFER_SIZE = 64;
+
+    private static final ByteBuffer END = ByteBuffer.allocate(0);
+    private static final int CONSOLE_BUFFER_SIZE = 1 << 16;
+    private static final String LINE_SEPARATOR = System.lineSeparator();
+
+    private final Sink sink;
+    private final BlockingQueue<ByteBuffer> full;
+    private final BlockingQueue<ByteBuffer> free;
+    private final Thread thread;
+    private volatile IOException failure;
+    private ByteBuffer buffer;
+    private byte[] bytes;
+    private int position;
+    private boolean closed;
+
+    private interface Sink {
+        void write(ByteBuffer buffer) throws IOException;
+
+        void flush() throws IOException;
+    }
+
+    /**
+     * Creates a writer to a channel.
+     * @param channel - the channel to write to
+     * @param bufferSize - the size of each buffer, in bytes
+     * @param background - true to write from a background thread
+     */
+    ExportWriter(WritableByteChannel channel, int bufferSize, boolean background) {
+        this(new Sink() {
+            @Override
+            public void write(ByteBuffer buffer) throws IOException {
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+            }
+
+            @Override
+            public void flush() {
+            }
+        }, bufferSize, background);
+    }
+
+    /**
+     * Creates a writer to a stream.
+     * @param out - the stream to write to
+     * @param bufferSize - the size of each buffer, in bytes
+     * @param background - true to write from a background thread
+     */
+    ExportWriter(OutputStream out, int bufferSize, boolean background) {
+        this(new Sink() {
+            @Override
+            public void write(ByteBuffer buffer) throws IOException {
+                out.write(buffer.array(), buffer.position(), buffer.remaining());
+            }
+
+            @Override
+            public void flush() throws IOException {
+                out.flush();
+            }
+        }, bufferSize, background);
+    }
+
+    private ExportWriter(Sink sink, int bufferSize, boolean background) {
+        if (bufferSize < MIN_BUFFER_SIZE) {
+            throw new IllegalArgumentException("Buffer size must be at least " + MIN_BUFFER_SIZE + ": " + bufferSize);
+        }
+        this.sink = sink;
+        use(ByteBuffer.allocate(bufferSize));
+        if (background) {
+            full = new ArrayBlockingQueue<>(2);
+            free = new ArrayBlockingQueue<>(2);
+            free.add(ByteBuffer.allocate(bufferSize));
+            thread = new Thread(this::writeLoop, "EntityExport-writer");
+            thread.setDaemon(true);
+            thread.start();
+        } else {
+            full = null;
+            free = null;
+            thread = null;
+        }
+    }
+
+    /**
+     * Creates a writer to the current {@link System#out}, for the print and loop methods. Each
+     * full buffer is printed as one string, so {@code System.out} encodes it in its own charset,
+     * as it would encode the lines given to {@code println}.
+     * @return a writer without a background thread
+     */
+    static ExportWriter toStandardOut() {
+        PrintStream out = System.out;
+        return new ExportWriter(new Sink() {
+            @Override
+            public void write(ByteBuffer buffer) {
+                // A buffer never ends inside a character, see appendCodePoint
+                out.print(new String(buffer.array(), buffer.position(), buffer.remaining(), StandardCharsets.UTF_8));
+            }
+
+            @Override
+            public void flush() {
+                out.flush();
+            }
+        }, CONSOLE_BUFFER_SIZE, false);
+    }
+
+    // =========================================================================
+    /**
+     * Appends a character, which must not be a surrogate.
+     * @param c - the character
+     * @return this writer
+     */
+    ExportWriter append(char c) {
+        if (c < 0x80) {
+            if (position == bytes.length) {
+                drain();
+            }
+            bytes[position++] = (byte) c;
+        } else {
+            appendCodePoint(Character.isSurrogate(c) ? '?' : c);
+        }
+        return this;
+    }
+
+    /**
+     * Appends the characters of a string, encoding surrogate pairs as one code point and
+     * unpaired surrogates as '?'.
+     * @param text - the text, where null appends "null"
+     * @return this writer
+     */
+    ExportWriter append(CharSequence text) {
+        if (text == null) {
+            text = "null";
+        }
+        int length = text.length();
+        for (int i = 0; i < length; i++) {
+            char c = text.charAt(i);
+            if (c < 0x80) {
+                if (position == bytes.length) {
+                    drain();
+                }
+                bytes[position++] = (byte) c;
+            } else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(text.charAt(i + 1))) {
+                appendCodePoint(Character.toCodePoint(c, text.charAt(++i)));
+            } else {
+                appendCodePoint(Character.isSurrogate(c) ? '?' : c);
+            }
+        }
+        return this;
+    }
+
+    /**
+     * Appends the decimal digits of a number without building a string.
+     * @param value - the number
+     * @return this writer
+     */
+    ExportWriter append(long value) {
+        if (value == Long.MIN_VALUE) {
+            return append(Long.toString(value));
+        }
+        if (bytes.length - position < 20) {
+            drain();
+        }
+        if (value < 0) {
+            bytes[position++] = '-';
+            value = -value;
+        }
+        int end = position + digits(value);
+        for (int i = end - 1; i >= position; i--) {
+            bytes[i] = (byte) ('0' + value % 10);
+            value /= 10;
+        }
+        position = end;
+        return this;
+    }
+
+    /**
+     * Appends the platform line separator, as {@code println} does.
+     * @return this writer
+     */
+    ExportWriter line() {
+        return append(LINE_SEPARATOR);
+    }
+
+    /**
+     * Writes everything appended so far and flushes the stream, if writing to one.
+     */
+    void flush() {
+        drain();
+        try {
+            if (thread != null) {
+                // The other buffer returns to the free queue once the thread has written it
+                free.put(free.take());
+                checkFailure();
+            }
+            sink.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } catch (InterruptedException e) {
+            throw interrupted();
+        }
+    }
+
+    /**
+     * Flushes, then stops the background thread, if any.
+     */
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            flush();
+        } finally {
+            if (thread != null) {
+                full.add(END);
+                try {
+                    thread.join();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+    }
+
+    // =========================================================================
+    private void appendCodePoint(int codePoint) {
+        if (bytes.length - position < 4) {
+            drain();
+        }
+        if (codePoint < 0x80) {
+            bytes[position++] = (byte) codePoint;
+            return;
+        }
+        if (codePoint < 0x800) {
+            bytes[position++] = (byte) (0xC0 | codePoint >> 6);
+        } else {
+            if (codePoint < 0x10000) {
+                bytes[position++] = (byte) (0xE0 | codePoint >> 12);
+            } else {
+                bytes[position++] = (byte) (0xF0 | codePoint >> 18);
+                bytes[position++] = (byte) (0x80 | codePoint >> 12 & 0x3F);
+            }
+            bytes[position++] = (byte) (0x80 | codePoint >> 6 & 0x3F);
+        }
+        bytes[position++] = (byte) (0x80 | codePoint & 0x3F);
+    }
+
+    private static int digits(long value) {
+        int digits = 1;
+        for (long limit = 10; digits < 19 && value >= limit; limit *= 10) {
+            digits++;
+        }
+        return digits;
+    }
+
+    /**
+     * Writes the current buffer, or hands it to the background thread and takes the free one.
+     */
+    private void drain() {
+        checkFailure();
+        if (position == 0) {
+            return;
+        }
+        buffer.limit(position).position(0);
+        try {
+            if (thread == null) {
+                sink.write(buffer);
+                buffer.clear();
+                position = 0;
+                return;
+            }
+            full.put(buffer);
+            use(free.take());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } catch (InterruptedException e) {
+            throw interrupted();
+        }
+        checkFailure();
+    }
+
+    private static UncheckedIOException interrupted() {
+        Thread.currentThread().interrupt();
+        return new UncheckedIOException(new InterruptedIOException("Interrupted while exporting"));
+    }
+
+    private void use(ByteBuffer next) {
+        buffer = next;
+        bytes = next.array();
+        position = 0;
+        next.clear();
+    }
+
+    private void checkFailure() {
+        if (failure != null) {
+            throw new UncheckedIOException(failure);
+        }
+    }
+
+    private void writeLoop() {
+        try {
+            for (ByteBuffer next = full.take(); next != END; next = full.take()) {
+                if (failure == null) {
+                    try {
+                        sink.write(next);
+                    } catch (IOException e) {
+                        failure = e;
+                    }
+                }
+                free.put(next);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,165 @@
+package Java.util;
+
+import Java.main.Entity;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Secondary hash index from entity ID to entity, used by {@link Util_List} to answer
+ * ID lookups in constant time instead of scanning the backing list.
+ *
+ * <p>Each slot counts how many entities in the list share its ID. While the count is one the
+ * slot holds the entity itself; once an ID is duplicated, lookups fall back to a scan so that
+ * the first occurrence is still returned, exactly as an unindexed lookup would.</p>
+ *
+ * <p>Entities of both ID modes are keyed by the UUID of their ID, so an entity with a string ID
+ * and one with the same compact ID share a slot, and the first occurrence is the same as for an
+ * unindexed lookup. Lookups accept the ID as a UUID or as a string in UUID form, in either case,
+ * see {@link #normalize(Object)}.</p>
+ *
+ * @param <T> the type of entities being indexed
+ */
+class IdIndex<T extends Entity> {
+    private final Map<UUID, Slot<T>> slots;
+
+    IdIndex() {
+        this(new HashMap<>());
+    }
+
+    /**
+     * Creates an index over the given empty slot map. Slots are immutable, so a concurrent
+     * map lets readers look up IDs while a single writer updates the index.
+     * @param slots - the backing map
+     */
+    IdIndex(Map<UUID, Slot<T>> slots) {
+        this.slots = slots;
+    }
+
+    /**
+     * Immutable index slot; replaced rather than mutated on every change.
+     */
+    static final class Slot<T> {
+        final T entity;
+        final int count;
+
+        Slot(T entity, int count) {
+            this.entity = entity;
+            this.count = count;
+        }
+    }
+
+    /**
+     * Finds the first entity with the given ID.
+     * @param id - the ID of the entity to find
+     * @param entities - the indexed list, scanned only when the ID is duplicated
+     * @return the entity if found, or null if not found
+     */
+    T get(Object id, List<T> entities) {
+        Object key = normalize(id);
+        Slot<T> slot = key instanceof UUID ? slots.get(key) : null;
+        if (slot == null) {
+            return null;
+        }
+        if (slot.count == 1) {
+            return slot.entity;
+        }
+        return scan((UUID) key, entities);
+    }
+
+    /**
+     * Records an entity that was added to the indexed list.
+     * @param entity - the added entity
+     */
+    void add(T entity) {
+        if (entity == null) {
+            return;
+        }
+        UUID id = entity.getUuid();
+        Slot<T> slot = slots.get(id);
+        slots.put(id, slot == null ? new Slot<>(entity, 1) : new Slot<>(slot.entity, slot.count + 1));
+    }
+
+    /**
+     * Records an entity that was removed from the indexed list.
+     * @param entity - the removed entity
+     * @param entities - the indexed list after the removal
+     */
+    void remove(T entity, List<T> entities) {
+        if (entity == null) {
+            return;
+        }
+        UUID id = entity.getUuid();
+        Slot<T> slot = slots.get(id);
+        if (slot == null) {
+            return;
+        }
+        if (slot.count == 1) {
+            slots.remove(id);
+        } else if (slot.count == 2) {
+            slots.put(id, new Slot<>(scan(id, entities), 1));
+        } else {
+            slots.put(id, new Slot<>(null, slot.count - 1));
+        }
+    }
+
+    /**
+     * Records an entity that replaced another at the same position of the indexed list. When both
+     * have the same ID its slot is replaced in one step, so a concurrent lookup of the ID finds
+     * either entity and never misses.
+     * @param previous - the replaced entity
+     * @param entity - the new entity
+     * @param entities - the indexed list after the replacement
+     */
+    void replace(T previous, T entity, List<T> entities) {
+        UUID id = entity == null ? null : entity.getUuid();
+        if (previous == null || id == null || !previous.hasId(id.getMostSignificantBits(), id.getLeastSignificantBits())) {
+            remove(previous, entities);
+            add(entity);
+            return;
+        }
+        Slot<T> slot = slots.get(id);
+        if (slot == null || slot.count == 1) {
+            slots.put(id, new Slot<>(entity, 1));
+        }
+    }
+
+    /**
+     * Indexes every entity in the list. Callers build a fresh index and then publish it, so
+     * readers never see an index that is only partly filled.
+     * @param entities - the list to index
+     */
+    void addAll(List<T> entities) {
+        for (T entity : entities) {
+            add(entity);
+        }
+    }
+
+    private T scan(UUID key, List<T> entities) {
+        long mostSigBits = key.getMostSignificantBits();
+        long leastSigBits = key.getLeastSignificantBits();
+        for (T entity : entities) {
+            if (entity != null && entity.hasId(mostSigBits, leastSigBits)) {
+                return entity;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns the form an ID is looked up by: the UUID for a UUID or for a string in UUID form,
+     * in upper or lower case, or the ID itself otherwise. Every entity ID is a UUID, so an ID
+     * that does not normalize to one matches no entity.
+     */
+    static Object normalize(Object id) {
+        if (id instanceof String && ((String) id).length() == 36) {
+            try {
+                return UUID.fromString((String) id);
+            } catch (IllegalArgumentException e) {
+                return id;
+            }
+        }
+        return id;
+    }
+}
@@ -0,0 +1,218 @@
+package Java.util;
+
+import Java.main.Entity;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+/**
+ * Query over the named attribute indexes of a {@link Util_List}, created by
+ * {@link Util_List#indexQuery()}.
+ *
+ * <p>All conditions must hold. The query walks only the entities of the condition with the
+ * fewest matches that an index can serve (equality on any index, ranges on sorted indexes) and
+ * checks the other conditions and filters on those entities alone. Only when no condition can be
+ * served, e.g. a range on a hash index, is the whole list scanned.</p>
+ *
+ * <p>Results are in index order (key order for a sorted index, no particular order for a hash
+ * index), not in list order.</p>
+ *
+ * @param <T> the type of entities in the list
+ */
+public final class IndexQuery<T extends Entity> {
+    private final Util_List<T> list;
+    private final List<Condition> conditions = new ArrayList<>();
+    private final List<Predicate<? super T>> filters = new ArrayList<>();
+
+    IndexQuery(Util_List<T> list) {
+        this.list = list;
+    }
+
+    /**
+     * Adds a condition that the indexed attribute equals a value.
+     * @param index - the name of the index
+     * @param value - the value to match, may be null
+     * @return this query
+     */
+    public IndexQuery<T> whereEquals(String index, Object value) {
+        conditions.add(new Condition(index, false, value, true, value, true));
+        return this;
+    }
+
+    /**
+     * Adds a condition that the indexed attribute lies in a range. Entities whose attribute is
+     * null never match, and neither does anything when the lower bound lies above the upper one.
+     * @param index - the name of the index
+     * @param from - the lower bound, or null for none
+     * @param fromInclusive - true if the lower bound itself matches
+     * @param to - the upper bound, or null for none
+     * @param toInclusive - true if the upper bound itself matches
+     * @return this query
+     */
+    public IndexQuery<T> whereRange(String index, Object from, boolean fromInclusive, Object to, boolean toInclusive) {
+        conditions.add(new Condition(index, true, from, fromInclusive, to, toInclusive));
+        return this;
+    }
+
+    /**
+     * Adds a condition that the indexed attribute lies between two bounds, both inclusive.
+     * @param index - the name of the index
+     * @param from - the lower bound, or null for none
+     * @param to - the upper bound, or null for none
+     * @return this query
+     */
+    public IndexQuery<T> whereBetween(String index, Object from, Object to) {
+        return whereRange(index, from, true, to, true);
+    }
+
+    /**
+     * Adds a condition that no index serves, checked only on the entities the indexed
+     * conditions select.
+     * @param predicate - the condition
+     * @return this query
+     */
+    public IndexQuery<T> filter(Predicate<? super T> predicate) {
+        filters.add(predicate);
+        return this;
+    }
+
+    /**
+     * Runs the query.
+     * @return the matching entities
+     * @throws IllegalArgumentException if a condition names an index that does not exist
+     */
+    public List<T> list() {
+        return list.runQuery(this);
+    }
+
+    /**
+     * Runs the query and counts the matches.
+     * @return the number of matching entities
+     */
+    public int count() {
+        return list().size();
+    }
+
+    // =========================================================================
+    /**
+     * Runs the query against the indexes and entities of the list; called with any list lock held.
+     */
+    List<T> execute(Map<String, AttributeIndex<T>> indexes, List<T> entities) {
+        List<AttributeIndex<T>> resolved = new ArrayList<>(conditions.size());
+        for (Condition condition : conditions) {
+            AttributeIndex<T> index = indexes.get(condition.index);
+            if (index == null) {
+                throw new IllegalArgumentException("No index named: " + condition.index);
+            }
+            resolved.add(index);
+        }
+
+        int best = -1;
+        int bestCount = Integer.MAX_VALUE;
+        for (int i = 0; i < conditions.size(); i++) {
+            Condition condition = conditions.get(i);
+            AttributeIndex<T> index = resolved.get(i);
+            if (!condition.range || index.isSorted()) {
+                int count = condition.count(index, bestCount);
+                if (count < bestCount) {
+                    best = i;
+                    bestCount = count;
+                }
+            }
+        }
+
+        List<T> result = new ArrayList<>(best < 0 ? 16 : bestCount);
+        int driver = best;
+        Predicate<T> rest = entity -> {
+            for (int i = 0; i < conditions.size(); i++) {
+                if (i != driver && !conditions.get(i).test(resolved.get(i), entity)) {
+                    return false;
+                }
+            }
+            for (Predicate<? super T> filter : filters) {
+                if (!filter.test(entity)) {
+                    return false;
+                }
+            }
+            return true;
+        };
+        if (driver < 0) {
+            for (T entity : entities) {
+                if (rest.test(entity)) {
+                    result.add(entity);
+                }
+            }
+        } else {
+            conditions.get(driver).forEach(resolved.get(driver), entity -> {
+                if (rest.test(entity)) {
+                    result.add(entity);
+                }
+            });
+        }
+        return result;
+    }
+
+    /**
+     * An equality or range condition on one index.
+     */
+    private static final class Condition {
+        final String index;
+        final boolean range;
+        final Object from;
+        final boolean fromInclusive;
+        final Object to;
+        final boolean toInclusive;
+
+        Condition(String index, boolean range, Object from, boolean fromInclusive, Object to, boolean toInclusive) {
+            this.index = Objects.requireNonNull(index, "index");
+            this.range = range;
+            this.from = from;
+            this.fromInclusive = fromInclusive;
+            this.to = to;
+            this.toInclusive = toInclusive;
+        }
+
+        <T> int count(AttributeIndex<T> index, int limit) {
+            return range ? index.countRange(from, fromInclusive, to, toInclusive, limit) : index.countEqual(from, limit);
+        }
+
+        <T> void forEach(AttributeIndex<T> index, Consumer<? super T> action) {
+            if (range) {
+                index.forEachInRange(from, fromInclusive, to, toInclusive, action);
+            } else {
+                index.forEachEqual(from, action);
+            }
+        }
+
+        <T> boolean test(AttributeIndex<T> index, T entity) {
+            Object key = index.keyOf(entity);
+            if (!range) {
+                return Objects.equals(key, from);
+            }
+            if (key == null) {
+                return false;
+            }
+            if (from != null) {
+                int c = compare(key, from);
+                if (c < 0 || (c == 0 && !fromInclusive)) {
+                    return false;
+                }
+            }
+            if (to != null) {
+                int c = compare(key, to);
+                if (c > 0 || (c == 0 && !toInclusive)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @SuppressWarnings("unchecked")
+        private static int compare(Object key, Object bound) {
+            return ((Comparable<Object>) key).compareTo(bound);
+        }
+    }
+}
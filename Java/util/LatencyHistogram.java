@@ -0,0 +1,107 @@
+package Java.util;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Concurrent latency histogram in the style of HdrHistogram: values are counted in log-linear
+ * buckets, exact below 16 and with eight sub-buckets per power of two above, so every recorded
+ * value is known to within 12.5% whatever its magnitude, from nanoseconds to hours.
+ *
+ * <p>Counts are striped: each thread records into one of a few copies of the bucket array,
+ * picked by its thread ID, so concurrent recorders rarely touch the same cache line. Recording
+ * is a handful of arithmetic operations and one atomic add, and never allocates. Reading sums
+ * the stripes and is not atomic with respect to concurrent recording.</p>
+ */
+final class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int LINEAR_LIMIT = SUB_BUCKETS * 2;
+    static final int BUCKETS = (63 - SUB_BUCKET_BITS) * SUB_BUCKETS + SUB_BUCKETS;
+
+    // Per-stripe totals are spaced a cache line apart
+    private static final int TOTAL_SPACING = 8;
+    private static final int STRIPES = stripes();
+
+    private final AtomicLongArray counts = new AtomicLongArray(STRIPES * BUCKETS);
+    private final AtomicLongArray sums = new AtomicLongArray(STRIPES * TOTAL_SPACING);
+    private final AtomicLongArray maxima = new AtomicLongArray(STRIPES * TOTAL_SPACING);
+
+    /**
+     * Records one value.
+     * @param value - the value, in nanoseconds; negative values count as 0
+     */
+    void record(long value) {
+        value = Math.max(0, value);
+        int stripe = (int) Thread.currentThread().getId() & (STRIPES - 1);
+        counts.getAndIncrement(stripe * BUCKETS + bucketOf(value));
+        int total = stripe * TOTAL_SPACING;
+        sums.getAndAdd(total, value);
+        if (value > maxima.get(total)) {
+            maxima.accumulateAndGet(total, value, Math::max);
+        }
+    }
+
+    /**
+     * Sums the stripes into an immutable snapshot.
+     * @return the current contents
+     */
+    HistogramSnapshot snapshot() {
+        long[] buckets = new long[BUCKETS];
+        for (int stripe = 0; stripe < STRIPES; stripe++) {
+            for (int bucket = 0; bucket < BUCKETS; bucket++) {
+                buckets[bucket] += counts.get(stripe * BUCKETS + bucket);
+            }
+        }
+        long sum = 0;
+        long max = 0;
+        for (int stripe = 0; stripe < STRIPES; stripe++) {
+            sum += sums.get(stripe * TOTAL_SPACING);
+            max = Math.max(max, maxima.get(stripe * TOTAL_SPACING));
+        }
+        return new HistogramSnapshot(buckets, sum, max);
+    }
+
+    void reset() {
+        for (int i = 0; i < counts.length(); i++) {
+            counts.set(i, 0);
+        }
+        for (int i = 0; i < sums.length(); i++) {
+            sums.set(i, 0);
+            maxima.set(i, 0);
+        }
+    }
+
+    // =========================================================================
+    static int bucketOf(long value) {
+        if (value < LINEAR_LIMIT) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int sub = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + sub;
+    }
+
+    /**
+     * Returns the smallest value that falls into a bucket.
+     */
+    static long lowestValueOf(int bucket) {
+        if (bucket < LINEAR_LIMIT) {
+            return bucket;
+        }
+        int exponent = bucket / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+        long sub = bucket % SUB_BUCKETS;
+        return (SUB_BUCKETS + sub) << (exponent - SUB_BUCKET_BITS);
+    }
+
+    /**
+     * Returns the largest value that falls into a bucket.
+     */
+    static long highestValueOf(int bucket) {
+        return bucket == BUCKETS - 1 ? Long.MAX_VALUE : lowestValueOf(bucket + 1) - 1;
+    }
+
+    private static int stripes() {
+        int processors = Runtime.getRuntime().availableProcessors();
+        return Math.min(8, Integer.highestOneBit(Math.max(1, processors - 1)) << 1);
+    }
+}
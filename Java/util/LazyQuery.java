@@ -0,0 +1,727 @@
+package Java.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Lazy query over the entities of a {@link Util_List}, created by {@link Util_List#lazyQuery()}.
+ *
+ * <p>Building a query only records its stages; nothing is read until a terminal method runs,
+ * and every run reads the current contents of the list, so a query can be kept and re-run.
+ * Each stage returns a new query and leaves this one unchanged.</p>
+ *
+ * <p>A run is a single pass: consecutive {@code filter} and {@code map} stages are fused into
+ * one step per element, and no intermediate list is built. {@code skip} and {@code limit} cut
+ * the range of the list by index when no filter precedes them, and otherwise stop pulling
+ * elements as soon as the limit is reached. {@code sorted} followed by {@code limit} keeps only
+ * the best elements in a bounded heap instead of sorting everything.</p>
+ *
+ * <p>The {@link #spliterator()} reports what actually holds: it is {@code SIZED} only while no
+ * filter or distinct stage can drop elements, {@code SORTED} right after a sort and
+ * {@code DISTINCT} after distinct. It splits wherever the underlying range can, i.e. over the
+ * list or a sorted result, through any fused filters and maps; the stages that depend on
+ * encounter order, a limit after a filter or distinct, do not split.</p>
+ *
+ * @param <E> the type of the query results
+ */
+public final class LazyQuery<E> {
+    private final Util_List<?> list;
+    private final LazyQuery<?> parent;
+    private final Stage stage;
+
+    LazyQuery(Util_List<?> list) {
+        this(list, null, null);
+    }
+
+    private LazyQuery(Util_List<?> list, LazyQuery<?> parent, Stage stage) {
+        this.list = list;
+        this.parent = parent;
+        this.stage = stage;
+    }
+
+    // =========================================================================
+    /**
+     * Keeps the elements that match a predicate.
+     * @param predicate - the condition to keep
+     * @return the extended query
+     */
+    public LazyQuery<E> filter(Predicate<? super E> predicate) {
+        return then(new Stage(Kind.FILTER, Objects.requireNonNull(predicate, "predicate"), 0));
+    }
+
+    /**
+     * Transforms every element.
+     * @param mapper - the function to apply
+     * @param <R> - the type of the result
+     * @return the extended query
+     */
+    public <R> LazyQuery<R> map(Function<? super E, ? extends R> mapper) {
+        return then(new Stage(Kind.MAP, Objects.requireNonNull(mapper, "mapper"), 0));
+    }
+
+    /**
+     * Drops the first elements.
+     * @param n - the number of elements to drop
+     * @return the extended query
+     * @throws IllegalArgumentException if n is negative
+     */
+    public LazyQuery<E> skip(long n) {
+        return then(new Stage(Kind.SKIP, null, checkCount(n)));
+    }
+
+    /**
+     * Keeps at most the first elements.
+     * @param n - the maximum number of elements
+     * @return the extended query
+     * @throws IllegalArgumentException if n is negative
+     */
+    public LazyQuery<E> limit(long n) {
+        return then(new Stage(Kind.LIMIT, null, checkCount(n)));
+    }
+
+    /**
+     * Drops elements equal to an earlier one.
+     * @return the extended query
+     */
+    public LazyQuery<E> distinct() {
+        return then(new Stage(Kind.DISTINCT, null, 0));
+    }
+
+    /**
+     * Sorts the elements; the sort is stable. A following {@code limit}, possibly after a
+     * {@code skip}, bounds the number of elements kept while sorting.
+     * @param comparator - the order
+     * @return the extended query
+     */
+    public LazyQuery<E> sorted(Comparator<? super E> comparator) {
+        return then(new Stage(Kind.SORTED, Objects.requireNonNull(comparator, "comparator"), 0));
+    }
+
+    /**
+     * Sorts the elements and keeps the first k, in a bounded heap. Shorthand for
+     * {@code sorted(comparator).limit(k)}.
+     * @param k - the number of elements to keep
+     * @param comparator - the order
+     * @return the extended query
+     */
+    public LazyQuery<E> top(int k, Comparator<? super E> comparator) {
+        return sorted(comparator).limit(k);
+    }
+
+    // =========================================================================
+    /**
+     * Runs the query lazily: elements are computed as the spliterator is advanced.
+     * @return a spliterator over the results
+     */
+    @SuppressWarnings("unchecked")
+    public Spliterator<E> spliterator() {
+        return (Spliterator<E>) build();
+    }
+
+    /**
+     * Runs the query as a sequential stream.
+     * @return a stream of the results
+     */
+    public Stream<E> stream() {
+        return StreamSupport.stream(spliterator(), false);
+    }
+
+    /**
+     * Runs the query as a parallel stream, which splits as described for {@link #spliterator()}.
+     * @return a parallel stream of the results
+     */
+    public Stream<E> parallelStream() {
+        return StreamSupport.stream(spliterator(), true);
+    }
+
+    /**
+     * Runs the query and collects the results.
+     * @return the results, in order
+     */
+    public List<E> list() {
+        Spliterator<E> results = spliterator();
+        long size = results.getExactSizeIfKnown();
+        List<E> result = new ArrayList<>(size < 0 ? 16 : (int) size);
+        results.forEachRemaining(result::add);
+        return result;
+    }
+
+    /**
+     * Runs the query and performs an action for each result, in order.
+     * @param action - the action to perform
+     */
+    public void forEach(Consumer<? super E> action) {
+        spliterator().forEachRemaining(action);
+    }
+
+    /**
+     * Runs the query and counts the results, without computing them if the count is known
+     * from the range alone.
+     * @return the number of results
+     */
+    public long count() {
+        Spliterator<E> results = spliterator();
+        long size = results.getExactSizeIfKnown();
+        if (size >= 0) {
+            return size;
+        }
+        long[] count = new long[1];
+        results.forEachRemaining(e -> count[0]++);
+        return count[0];
+    }
+
+    /**
+     * Runs the query until the first result.
+     * @return the first result, or empty if there is none
+     * @throws NullPointerException if the first result is null
+     */
+    public Optional<E> findFirst() {
+        List<E> first = new ArrayList<>(1);
+        spliterator().tryAdvance(first::add);
+        return first.isEmpty() ? Optional.empty() : Optional.of(first.get(0));
+    }
+
+    // =========================================================================
+    private <R> LazyQuery<R> then(Stage next) {
+        return new LazyQuery<>(list, this, next);
+    }
+
+    private static long checkCount(long n) {
+        if (n < 0) {
+            throw new IllegalArgumentException("Count must not be negative: " + n);
+        }
+        return n;
+    }
+
+    private List<Stage> stages() {
+        List<Stage> stages = new ArrayList<>();
+        for (LazyQuery<?> query = this; query.stage != null; query = query.parent) {
+            stages.add(query.stage);
+        }
+        Collections.reverse(stages);
+        return stages;
+    }
+
+    /**
+     * Plans the stages over the current contents of the list and returns the spliterator that runs them.
+     */
+    private Spliterator<Object> build() {
+        List<Stage> stages = stages();
+        List<?> source = list.querySource();
+        Spliterator<Object> current = new RangeSpliterator(source, 0, source.size(), null);
+        List<Stage> fused = new ArrayList<>();
+        for (int i = 0; i < stages.size(); i++) {
+            Stage stage = stages.get(i);
+            switch (stage.kind) {
+                case FILTER:
+                case MAP:
+                    fused.add(stage);
+                    break;
+                case SKIP:
+                case LIMIT: {
+                    int end = windowEnd(stages, i);
+                    long[] window = window(stages, i, end);
+                    i = end - 1;
+                    if (current instanceof RangeSpliterator && !hasFilter(fused)) {
+                        // One result per element so far: cut the range by index, keep it sized and splittable
+                        current = ((RangeSpliterator) current).slice(window[0], window[1]);
+                    } else {
+                        current = new SliceSpliterator(fuse(current, fused), window[0], window[1]);
+                    }
+                    break;
+                }
+                case DISTINCT:
+                    current = new DistinctSpliterator(fuse(current, fused));
+                    break;
+                case SORTED: {
+                    int end = windowEnd(stages, i + 1);
+                    long[] window = window(stages, i + 1, end);
+                    i = end - 1;
+                    current = sort(fuse(current, fused), stage.comparator(), window);
+                    break;
+                }
+                default:
+                    throw new IllegalStateException("Unknown stage: " + stage.kind);
+            }
+        }
+        return fuse(current, fused);
+    }
+
+    /**
+     * Returns the index after the run of skip and limit stages starting at the given index.
+     */
+    private static int windowEnd(List<Stage> stages, int start) {
+        int end = start;
+        while (end < stages.size() && (stages.get(end).kind == Kind.SKIP || stages.get(end).kind == Kind.LIMIT)) {
+            end++;
+        }
+        return end;
+    }
+
+    /**
+     * Folds a run of skip and limit stages into one window [from, to) of positions to keep.
+     */
+    private static long[] window(List<Stage> stages, int start, int end) {
+        long from = 0;
+        long to = Long.MAX_VALUE;
+        for (int i = start; i < end; i++) {
+            Stage stage = stages.get(i);
+            if (stage.kind == Kind.SKIP) {
+                from = Math.min(to, saturatedAdd(from, stage.count));
+            } else {
+                to = Math.min(to, saturatedAdd(from, stage.count));
+            }
+        }
+        return new long[] {from, to};
+    }
+
+    private static long saturatedAdd(long a, long b) {
+        long sum = a + b;
+        return sum < 0 ? Long.MAX_VALUE : sum;
+    }
+
+    private static boolean hasFilter(List<Stage> stages) {
+        for (Stage stage : stages) {
+            if (stage.kind == Kind.FILTER) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Wraps the pending filters and maps around a spliterator as one fused step and clears them.
+     */
+    private static Spliterator<Object> fuse(Spliterator<Object> source, List<Stage> stages) {
+        if (stages.isEmpty()) {
+            return source;
+        }
+        Spliterator<Object> fused = new FusedSpliterator(source, stages.toArray(new Stage[0]));
+        stages.clear();
+        return fused;
+    }
+
+    /**
+     * Sorts all elements, or keeps only the first {@code window[1]} in a bounded heap, and
+     * returns the window of the result as a sorted range.
+     */
+    private static Spliterator<Object> sort(Spliterator<Object> source, Comparator<Object> comparator, long[] window) {
+        Object[] sorted;
+        if (window[1] < Integer.MAX_VALUE - 8) {
+            TopK top = new TopK((int) window[1], comparator);
+            source.forEachRemaining(top);
+            sorted = top.drain();
+        } else {
+            List<Object> all = new ArrayList<>();
+            source.forEachRemaining(all::add);
+            all.sort(comparator);
+            sorted = all.toArray();
+        }
+        return new RangeSpliterator(Arrays.asList(sorted), 0, sorted.length, comparator).slice(window[0], window[1]);
+    }
+
+    // =========================================================================
+    private enum Kind { FILTER, MAP, SKIP, LIMIT, DISTINCT, SORTED }
+
+    /**
+     * One recorded stage: a predicate, mapper or comparator in {@code function}, or a count.
+     */
+    private static final class Stage {
+        final Kind kind;
+        final Object function;
+        final long count;
+
+        Stage(Kind kind, Object function, long count) {
+            this.kind = kind;
+            this.function = function;
+            this.count = count;
+        }
+
+        @SuppressWarnings("unchecked")
+        boolean test(Object element) {
+            return ((Predicate<Object>) function).test(element);
+        }
+
+        @SuppressWarnings("unchecked")
+        Object apply(Object element) {
+            return ((Function<Object, Object>) function).apply(element);
+        }
+
+        @SuppressWarnings("unchecked")
+        Comparator<Object> comparator() {
+            return (Comparator<Object>) function;
+        }
+    }
+
+    /**
+     * Index range of a random-access list: the list itself, or the result of a sort.
+     */
+    private static final class RangeSpliterator implements Spliterator<Object> {
+        private final List<?> list;
+        private final Comparator<Object> comparator;
+        private int from;
+        private final int to;
+
+        RangeSpliterator(List<?> list, int from, int to, Comparator<Object> comparator) {
+            this.list = list;
+            this.from = from;
+            this.to = to;
+            this.comparator = comparator;
+        }
+
+        RangeSpliterator slice(long skip, long limit) {
+            int start = (int) Math.min(to, from + Math.min(skip, to - from));
+            int end = (int) Math.min(to, from + Math.min(limit, to - from));
+            return new RangeSpliterator(list, start, Math.max(start, end), comparator);
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super Object> action) {
+            if (from >= to) {
+                return false;
+            }
+            action.accept(list.get(from++));
+            return true;
+        }
+
+        @Override
+        public void forEachRemaining(Consumer<? super Object> action) {
+            for (int i = from; i < to; i++) {
+                action.accept(list.get(i));
+            }
+            from = to;
+        }
+
+        @Override
+        public Spliterator<Object> trySplit() {
+            int mid = (from + to) >>> 1;
+            if (mid <= from) {
+                return null;
+            }
+            Spliterator<Object> prefix = new RangeSpliterator(list, from, mid, comparator);
+            from = mid;
+            return prefix;
+        }
+
+        @Override
+        public long estimateSize() {
+            return to - from;
+        }
+
+        @Override
+        public int characteristics() {
+            return ORDERED | SIZED | SUBSIZED | (comparator != null ? SORTED : 0);
+        }
+
+        @Override
+        public Comparator<? super Object> getComparator() {
+            if (comparator == null) {
+                throw new IllegalStateException();
+            }
+            return comparator;
+        }
+    }
+
+    /**
+     * Runs consecutive filters and maps as one step per element.
+     */
+    private static final class FusedSpliterator implements Spliterator<Object>, Consumer<Object> {
+        private static final Object REJECTED = new Object();
+
+        private final Spliterator<Object> source;
+        private final Stage[] stages;
+        private Object next = REJECTED;
+
+        FusedSpliterator(Spliterator<Object> source, Stage[] stages) {
+            this.source = source;
+            this.stages = stages;
+        }
+
+        private Object apply(Object element) {
+            for (Stage stage : stages) {
+                if (stage.kind == Kind.FILTER) {
+                    if (!stage.test(element)) {
+                        return REJECTED;
+                    }
+                } else {
+                    element = stage.apply(element);
+                }
+            }
+            return element;
+        }
+
+        @Override
+        public void accept(Object element) {
+            next = apply(element);
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super Object> action) {
+            while (source.tryAdvance(this)) {
+                Object element = next;
+                if (element != REJECTED) {
+                    next = REJECTED;
+                    action.accept(element);
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        @Override
+        public void forEachRemaining(Consumer<? super Object> action) {
+            source.forEachRemaining(element -> {
+                Object result = apply(element);
+                if (result != REJECTED) {
+                    action.accept(result);
+                }
+            });
+        }
+
+        @Override
+        public Spliterator<Object> trySplit() {
+            Spliterator<Object> prefix = source.trySplit();
+            return prefix == null ? null : new FusedSpliterator(prefix, stages);
+        }
+
+        @Override
+        public long estimateSize() {
+            return source.estimateSize();
+        }
+
+        @Override
+        public int characteristics() {
+            int characteristics = source.characteristics();
+            for (Stage stage : stages) {
+                characteristics &= stage.kind == Kind.FILTER ? ~(SIZED | SUBSIZED) : ~(DISTINCT | SORTED | NONNULL);
+            }
+            return characteristics;
+        }
+
+        @Override
+        public Comparator<? super Object> getComparator() {
+            return source.getComparator();
+        }
+    }
+
+    /**
+     * Skips and limits by position in encounter order; stops pulling once the limit is reached.
+     */
+    private static final class SliceSpliterator implements Spliterator<Object> {
+        private final Spliterator<Object> source;
+        private long skip;
+        private long remaining;
+
+        SliceSpliterator(Spliterator<Object> source, long from, long to) {
+            this.source = source;
+            this.skip = from;
+            this.remaining = to - from;
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super Object> action) {
+            while (skip > 0) {
+                if (!source.tryAdvance(e -> { })) {
+                    return false;
+                }
+                skip--;
+            }
+            if (remaining <= 0 || !source.tryAdvance(action)) {
+                return false;
+            }
+            remaining--;
+            return true;
+        }
+
+        @Override
+        public void forEachRemaining(Consumer<? super Object> action) {
+            while (tryAdvance(action)) {
+                // Advance one at a time so the source is not read past the limit
+            }
+        }
+
+        @Override
+        public Spliterator<Object> trySplit() {
+            return null;
+        }
+
+        @Override
+        public long estimateSize() {
+            return Math.min(remaining, Math.max(0, source.estimateSize() - skip));
+        }
+
+        @Override
+        public int characteristics() {
+            return source.characteristics() & ~(SIZED | SUBSIZED);
+        }
+
+        @Override
+        public Comparator<? super Object> getComparator() {
+            return source.getComparator();
+        }
+    }
+
+    /**
+     * Passes on the first occurrence of every element, by equals.
+     */
+    private static final class DistinctSpliterator implements Spliterator<Object>, Consumer<Object> {
+        private final Spliterator<Object> source;
+        private final Set<Object> seen = new HashSet<>();
+        private Object next;
+        private boolean fresh;
+
+        DistinctSpliterator(Spliterator<Object> source) {
+            this.source = source;
+        }
+
+        @Override
+        public void accept(Object element) {
+            next = element;
+            fresh = seen.add(element);
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super Object> action) {
+            while (source.tryAdvance(this)) {
+                if (fresh) {
+                    Object element = next;
+                    next = null;
+                    action.accept(element);
+                    return true;
+                }
+            }
+            next = null;
+            return false;
+        }
+
+        @Override
+        public void forEachRemaining(Consumer<? super Object> action) {
+            source.forEachRemaining(element -> {
+                if (seen.add(element)) {
+                    action.accept(element);
+                }
+            });
+        }
+
+        @Override
+        public Spliterator<Object> trySplit() {
+            return null;
+        }
+
+        @Override
+        public long estimateSize() {
+            return source.estimateSize();
+        }
+
+        @Override
+        public int characteristics() {
+            return (source.characteristics() & ~(SIZED | SUBSIZED)) | DISTINCT;
+        }
+
+        @Override
+        public Comparator<? super Object> getComparator() {
+            return source.getComparator();
+        }
+    }
+
+    /**
+     * Bounded max-heap keeping the k smallest elements; ties are broken by arrival, so the
+     * result is the same as a stable sort followed by a limit.
+     */
+    private static final class TopK implements Consumer<Object> {
+        private final int k;
+        private final Comparator<Object> comparator;
+        private Object[] heap = new Object[16];
+        private long[] arrivals = new long[16];
+        private int size;
+        private long arrival;
+
+        TopK(int k, Comparator<Object> comparator) {
+            this.k = k;
+            this.comparator = comparator;
+        }
+
+        @Override
+        public void accept(Object element) {
+            long order = arrival++;
+            if (size < k) {
+                if (size == heap.length) {
+                    int capacity = (int) Math.min(k, (long) size << 1);
+                    heap = Arrays.copyOf(heap, capacity);
+                    arrivals = Arrays.copyOf(arrivals, capacity);
+                }
+                siftUp(size++, element, order);
+            } else if (k > 0 && comparator.compare(element, heap[0]) < 0) {
+                // Equal to the worst kept element means it arrived later: not better
+                siftDown(0, element, order);
+            }
+        }
+
+        /**
+         * Empties the heap into an array in ascending order.
+         */
+        Object[] drain() {
+            Object[] sorted = new Object[size];
+            while (size > 0) {
+                sorted[size - 1] = heap[0];
+                size--;
+                if (size > 0) {
+                    siftDown(0, heap[size], arrivals[size]);
+                }
+                heap[size] = null;
+            }
+            return sorted;
+        }
+
+        private int compare(Object a, long aOrder, Object b, long bOrder) {
+            int c = comparator.compare(a, b);
+            return c != 0 ? c : Long.compare(aOrder, bOrder);
+        }
+
+        private void siftUp(int i, Object element, long order) {
+            while (i > 0) {
+                int parent = (i - 1) >>> 1;
+                if (compare(element, order, heap[parent], arrivals[parent]) <= 0) {
+                    break;
+                }
+                heap[i] = heap[parent];
+                arrivals[i] = arrivals[parent];
+                i = parent;
+            }
+            heap[i] = element;
+            arrivals[i] = order;
+        }
+
+        private void siftDown(int i, Object element, long order) {
+            int half = size >>> 1;
+            while (i < half) {
+                int child = 2 * i + 1;
+                int right = child + 1;
+                if (right < size && compare(heap[right], arrivals[right], heap[child], arrivals[child]) > 0) {
+                    child = right;
+                }
+                if (compare(element, order, heap[child], arrivals[child]) >= 0) {
+                    break;
+                }
+                heap[i] = heap[child];
+                arrivals[i] = arrivals[child];
+                i = child;
+            }
+            heap[i] = element;
+            arrivals[i] = order;
+        }
+    }
+}
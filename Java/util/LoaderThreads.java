@@ -0,0 +1,40 @@
+package Java.util;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The default executor of the asynchronous loaders of {@link Util_Map}.
+ *
+ * <p>Loads usually block on I/O, so each one gets its own thread: a virtual thread when the
+ * runtime has them, found reflectively so this code still runs on older JDKs, and otherwise a
+ * daemon thread from an unbounded cached pool, which reuses idle threads for a minute.</p>
+ */
+final class LoaderThreads {
+    static final Executor EXECUTOR = create();
+
+    private LoaderThreads() {
+    }
+
+    private static Executor create() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return Executors.newCachedThreadPool(new DaemonFactory());
+        }
+    }
+
+    private static final class DaemonFactory implements ThreadFactory {
+        private final AtomicInteger count = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable task) {
+            Thread thread = new Thread(task, "Util_Map-loader-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package Java.util;
+
+import Java.main.Entity;
+import java.util.Objects;
+import java.util.function.BiConsumer;
+
+/**
+ * A {@link Shard} that holds its entries in a {@link Util_Map} of this process.
+ *
+ * @param <T> the type of entities in the shard
+ */
+final class LocalShard<T extends Entity> implements Shard<T> {
+    private final String name;
+    private final Util_Map<T> map;
+
+    LocalShard(String name, Util_Map<T> map) {
+        this.name = Objects.requireNonNull(name, "name");
+        this.map = Objects.requireNonNull(map, "map");
+    }
+
+    @Override
+    public String name() {
+        return name;
+    }
+
+    @Override
+    public T get(Object key) {
+        return map.getValueByKey(key);
+    }
+
+    @Override
+    public T put(Object key, T entity) {
+        return map.put(key, entity);
+    }
+
+    @Override
+    public T putIfAbsent(Object key, T entity) {
+        return map.putIfAbsent(key, entity);
+    }
+
+    @Override
+    public T remove(Object key) {
+        // Util_Map.removeEntity throws for a missing key; a conditional remove does not
+        T entity = map.getValueByKey(key);
+        while (entity != null && !map.remove(key, entity)) {
+            entity = map.getValueByKey(key);
+        }
+        return entity;
+    }
+
+    @Override
+    public int size() {
+        return map.size();
+    }
+
+    @Override
+    public void clear() {
+        map.clear();
+    }
+
+    @Override
+    public void forEach(BiConsumer<Object, ? super T> action) {
+        map.forEachEntry(action);
+    }
+
+    @Override
+    public void close() {
+    }
+
+    @Override
+    public String toString() {
+        return "LocalShard[" + name + ", size=" + map.size() + "]";
+    }
+}
@@ -0,0 +1,113 @@
+package Java.util;
+
+import java.util.Arrays;
+
+/**
+ * Assigns dense ordinals 0, 1, 2, ... to {@code long} keys in order of first occurrence, so that
+ * per-key data can live in plain parallel arrays indexed by ordinal.
+ *
+ * <p>Open addressing with linear probing and Fibonacci hashing, like {@link Util_LongMap}; the
+ * slots hold ordinal + 1, so 0 marks an empty slot and every key value, 0 included, is allowed.
+ * Keys are never removed.</p>
+ */
+final class LongOrdinalTable {
+    private static final long PHI = 0x9E3779B97F4A7C15L;
+    private static final int MIN_CAPACITY = 16;
+    private static final float LOAD_FACTOR = 0.5f;
+
+    private int[] slots;
+    private long[] keys;
+    private int shift;
+    private int size;
+    private int resizeAt;
+
+    LongOrdinalTable() {
+        allocate(MIN_CAPACITY);
+        keys = new long[MIN_CAPACITY];
+    }
+
+    int size() {
+        return size;
+    }
+
+    long keyAt(int ordinal) {
+        return keys[ordinal];
+    }
+
+    long[] keys() {
+        return Arrays.copyOf(keys, size);
+    }
+
+    /**
+     * Returns the ordinal of a key, or -1 if it was never added.
+     */
+    int find(long key) {
+        int[] s = slots;
+        int mask = s.length - 1;
+        int i = slotOf(key);
+        while (true) {
+            int ordinal = s[i] - 1;
+            if (ordinal < 0) {
+                return -1;
+            }
+            if (keys[ordinal] == key) {
+                return ordinal;
+            }
+            i = (i + 1) & mask;
+        }
+    }
+
+    /**
+     * Returns the ordinal of a key, assigning the next one if the key is new.
+     */
+    int add(long key) {
+        int[] s = slots;
+        int mask = s.length - 1;
+        int i = slotOf(key);
+        while (true) {
+            int ordinal = s[i] - 1;
+            if (ordinal < 0) {
+                break;
+            }
+            if (keys[ordinal] == key) {
+                return ordinal;
+            }
+            i = (i + 1) & mask;
+        }
+        int ordinal = size++;
+        if (ordinal == keys.length) {
+            keys = Arrays.copyOf(keys, ordinal << 1);
+        }
+        keys[ordinal] = key;
+        s[i] = ordinal + 1;
+        if (size >= resizeAt) {
+            rehash(s.length << 1);
+        }
+        return ordinal;
+    }
+
+    private void rehash(int capacity) {
+        allocate(capacity);
+        int mask = capacity - 1;
+        for (int ordinal = 0; ordinal < size; ordinal++) {
+            int i = slotOf(keys[ordinal]);
+            while (slots[i] != 0) {
+                i = (i + 1) & mask;
+            }
+            slots[i] = ordinal + 1;
+        }
+    }
+
+    private void allocate(int capacity) {
+        if (capacity > 1 << 30) {
+            throw new IllegalStateException("Too many distinct keys");
+        }
+        slots = new int[capacity];
+        shift = 64 - Integer.numberOfTrailingZeros(capacity);
+        resizeAt = (int) (capacity * LOAD_FACTOR);
+    }
+
+    private int slotOf(long key) {
+        return (int) ((key * PHI) >>> shift);
+    }
+}
@@ -0,0 +1,746 @@
+package Java.util;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+/**
+ * Persistent hash map, stored as a compressed hash array mapped trie (CHAMP), behind
+ * {@link Util_PersistentMap}.
+ *
+ * <p>Each trie node has up to 32 slots, one per 5 bits of the key's hash. Two bitmaps record
+ * which slots hold an entry inline and which hold a child node. Keys whose 32-bit hashes are
+ * equal share a collision node at the bottom. Nodes are never modified once published. A write
+ * copies only the nodes on the path from the root to its key, at most seven, and shares the rest
+ * with the previous version. A version is therefore just a root and a size, and
+ * {@link #snapshot()} is O(1).</p>
+ *
+ * <p>Writers are serialized on this map's monitor. Each write publishes a new version through a
+ * volatile field. Readers, including iterators and snapshots, take whichever version is
+ * published when they start and never lock or block. Iteration therefore never throws
+ * {@link java.util.ConcurrentModificationException}, and an iterator can remove entries.</p>
+ *
+ * <p>{@link #batch(Runnable)} runs a series of writes in transient mode. Nodes created during the
+ * batch belong to the batch and are updated in place by later writes of the same batch, so a
+ * bulk load copies each path at most once instead of once per entry. Other threads keep seeing
+ * the version from before the batch until it ends and the result is published in one step. An
+ * iteration started inside a batch seals the nodes made so far, so the batch's later writes copy
+ * them again rather than change the version being iterated.</p>
+ *
+ * <p>Null keys and values are allowed, as in {@link java.util.HashMap}.</p>
+ *
+ * @param <V> the type of values
+ */
+final class PersistentHashMap<V> extends AbstractMap<Object, V> {
+    private static final int BITS = 5;
+    private static final int HASH_BITS = 32;
+    private static final Object NOT_FOUND = new Object();
+    private static final BitmapNode EMPTY = new BitmapNode(null, 0, 0, new Object[0]);
+
+    private final boolean readOnly;
+    private volatile Version published;
+    private Set<Map.Entry<Object, V>> entrySet;
+
+    // Writer state, guarded by this; differs from the published version only during a batch
+    private Node root;
+    private int size;
+    private Edit edit;
+    private Thread editor;
+
+    /**
+     * An immutable version of the map.
+     */
+    private static final class Version {
+        final Node root;
+        final int size;
+
+        Version(Node root, int size) {
+            this.root = root;
+            this.size = size;
+        }
+    }
+
+    /**
+     * The owner of the nodes created during one batch. Nodes of a finished batch point to an
+     * edit that is never used again, so they are immutable from then on.
+     */
+    private static final class Edit {
+    }
+
+    /**
+     * What a write did, filled in by the nodes on its path.
+     */
+    private static final class Change {
+        boolean added;
+        boolean removed;
+        Object old = NOT_FOUND;
+    }
+
+    /**
+     * Creates an empty, writable map.
+     */
+    PersistentHashMap() {
+        this(new Version(EMPTY, 0), false);
+    }
+
+    private PersistentHashMap(Version version, boolean readOnly) {
+        this.published = version;
+        this.root = version.root;
+        this.size = version.size;
+        this.readOnly = readOnly;
+    }
+
+    // =========================================================================
+    /**
+     * Returns a read-only map of the current published version, sharing all its nodes.
+     * @return the snapshot
+     */
+    PersistentHashMap<V> snapshot() {
+        return new PersistentHashMap<>(published, true);
+    }
+
+    /**
+     * Checks if this map is a snapshot.
+     * @return true if writes throw {@link UnsupportedOperationException}
+     */
+    boolean isReadOnly() {
+        return readOnly;
+    }
+
+    /**
+     * Runs a series of writes in transient mode and publishes their result as one version.
+     * Writes from other threads wait until the batch ends; batches may nest. If the edits throw,
+     * the writes made so far are published.
+     * @param edits - the writes, made through this map on the calling thread
+     */
+    synchronized void batch(Runnable edits) {
+        checkWritable();
+        if (edit != null) {
+            edits.run();
+            return;
+        }
+        edit = new Edit();
+        editor = Thread.currentThread();
+        try {
+            edits.run();
+        } finally {
+            edit = null;
+            editor = null;
+            published = new Version(root, size);
+        }
+    }
+
+    // =========================================================================
+    @Override
+    public V get(Object key) {
+        Object value = view().root.find(key, hash(key), 0);
+        return value == NOT_FOUND ? null : cast(value);
+    }
+
+    @Override
+    public V getOrDefault(Object key, V defaultValue) {
+        Object value = view().root.find(key, hash(key), 0);
+        return value == NOT_FOUND ? defaultValue : cast(value);
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return view().root.find(key, hash(key), 0) != NOT_FOUND;
+    }
+
+    @Override
+    public int size() {
+        return view().size;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    @Override
+    public void forEach(BiConsumer<? super Object, ? super V> action) {
+        forEach(iterationRoot(), action);
+    }
+
+    @Override
+    public Set<Map.Entry<Object, V>> entrySet() {
+        Set<Map.Entry<Object, V>> entries = entrySet;
+        if (entries == null) {
+            entries = new EntrySet();
+            entrySet = entries;
+        }
+        return entries;
+    }
+
+    // =========================================================================
+    @Override
+    public synchronized V put(Object key, V value) {
+        checkWritable();
+        Change change = new Change();
+        Node updated = root.put(edit, key, value, hash(key), 0, change);
+        commit(updated, change.added ? 1 : 0);
+        return change.old == NOT_FOUND ? null : cast(change.old);
+    }
+
+    @Override
+    public synchronized V remove(Object key) {
+        checkWritable();
+        Change change = new Change();
+        Node updated = root.remove(edit, key, hash(key), 0, change);
+        commit(updated, change.removed ? -1 : 0);
+        return change.old == NOT_FOUND ? null : cast(change.old);
+    }
+
+    @Override
+    public void putAll(Map<?, ? extends V> other) {
+        if (other.isEmpty()) {
+            return;
+        }
+        batch(() -> {
+            for (Map.Entry<?, ? extends V> entry : other.entrySet()) {
+                put(entry.getKey(), entry.getValue());
+            }
+        });
+    }
+
+    @Override
+    public synchronized void clear() {
+        checkWritable();
+        commit(EMPTY, -size);
+    }
+
+    // The defaults of Map read and then write; holding the monitor makes them atomic
+
+    @Override
+    public synchronized V putIfAbsent(Object key, V value) {
+        return super.putIfAbsent(key, value);
+    }
+
+    @Override
+    public synchronized boolean remove(Object key, Object value) {
+        return super.remove(key, value);
+    }
+
+    @Override
+    public synchronized V replace(Object key, V value) {
+        return super.replace(key, value);
+    }
+
+    @Override
+    public synchronized boolean replace(Object key, V oldValue, V newValue) {
+        return super.replace(key, oldValue, newValue);
+    }
+
+    @Override
+    public synchronized V computeIfAbsent(Object key, Function<? super Object, ? extends V> mappingFunction) {
+        return super.computeIfAbsent(key, mappingFunction);
+    }
+
+    @Override
+    public synchronized V computeIfPresent(Object key,
+                                           BiFunction<? super Object, ? super V, ? extends V> remappingFunction) {
+        return super.computeIfPresent(key, remappingFunction);
+    }
+
+    @Override
+    public synchronized V compute(Object key, BiFunction<? super Object, ? super V, ? extends V> remappingFunction) {
+        return super.compute(key, remappingFunction);
+    }
+
+    @Override
+    public synchronized V merge(Object key, V value, BiFunction<? super V, ? super V, ? extends V> remappingFunction) {
+        return super.merge(key, value, remappingFunction);
+    }
+
+    // =========================================================================
+    /**
+     * Returns the version the calling thread reads: the batch in progress for the thread
+     * running it, the published version for everyone else.
+     */
+    private Version view() {
+        if (editor == Thread.currentThread()) {
+            return new Version(root, size);
+        }
+        return published;
+    }
+
+    /**
+     * Returns the root for an iteration to walk. Inside a batch the editor's nodes are still
+     * updated in place, so the batch moves on to a new edit first: later writes of the batch then
+     * copy the nodes the iteration walks instead of changing them under it.
+     */
+    private Node iterationRoot() {
+        if (editor == Thread.currentThread()) {
+            edit = new Edit();
+            return root;
+        }
+        return published.root;
+    }
+
+    private void commit(Node updated, int delta) {
+        root = updated;
+        size += delta;
+        if (edit == null) {
+            published = new Version(updated, size);
+        }
+    }
+
+    private void checkWritable() {
+        if (readOnly) {
+            throw new UnsupportedOperationException("Snapshots are read-only");
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <V> V cast(Object value) {
+        return (V) value;
+    }
+
+    private static int hash(Object key) {
+        int h = Objects.hashCode(key);
+        return h ^ (h >>> 16);
+    }
+
+    private static int mask(int hash, int shift) {
+        return (hash >>> shift) & ((1 << BITS) - 1);
+    }
+
+    private static <V> void forEach(Node node, BiConsumer<? super Object, ? super V> action) {
+        for (int i = 0; i < node.dataArity(); i++) {
+            action.accept(node.keyAt(i), cast(node.valueAt(i)));
+        }
+        for (int i = 0; i < node.nodeArity(); i++) {
+            forEach(node.nodeAt(i), action);
+        }
+    }
+
+    // =========================================================================
+    private final class EntrySet extends AbstractSet<Map.Entry<Object, V>> {
+        @Override
+        public Iterator<Map.Entry<Object, V>> iterator() {
+            return new EntryIterator(iterationRoot());
+        }
+
+        @Override
+        public int size() {
+            return PersistentHashMap.this.size();
+        }
+
+        @Override
+        public boolean contains(Object o) {
+            if (!(o instanceof Map.Entry)) {
+                return false;
+            }
+            Map.Entry<?, ?> entry = (Map.Entry<?, ?>) o;
+            Object value = view().root.find(entry.getKey(), hash(entry.getKey()), 0);
+            return value != NOT_FOUND && Objects.equals(value, entry.getValue());
+        }
+
+        @Override
+        public void clear() {
+            PersistentHashMap.this.clear();
+        }
+    }
+
+    /**
+     * Iterates one version, depth first. Removal goes through the map and does not disturb the
+     * iteration, which keeps walking the version it started on.
+     */
+    private final class EntryIterator implements Iterator<Map.Entry<Object, V>> {
+        private final ArrayDeque<Node> pending = new ArrayDeque<>();
+        private Node node;
+        private int index;
+        private Object lastKey = NOT_FOUND;
+
+        EntryIterator(Node root) {
+            this.node = root;
+            pushChildren(root);
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (index == node.dataArity()) {
+                if (pending.isEmpty()) {
+                    return false;
+                }
+                node = pending.pop();
+                index = 0;
+                pushChildren(node);
+            }
+            return true;
+        }
+
+        @Override
+        public Map.Entry<Object, V> next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            lastKey = node.keyAt(index);
+            V value = cast(node.valueAt(index++));
+            return new AbstractMap.SimpleImmutableEntry<>(lastKey, value);
+        }
+
+        @Override
+        public void remove() {
+            if (lastKey == NOT_FOUND) {
+                throw new IllegalStateException();
+            }
+            PersistentHashMap.this.remove(lastKey);
+            lastKey = NOT_FOUND;
+        }
+
+        private void pushChildren(Node parent) {
+            for (int i = parent.nodeArity() - 1; i >= 0; i--) {
+                pending.push(parent.nodeAt(i));
+            }
+        }
+    }
+
+    // =========================================================================
+    /**
+     * A trie node. Entries are stored as key-value pairs at the start of the array.
+     */
+    private abstract static class Node {
+        Edit edit;
+        Object[] array;
+
+        Node(Edit edit, Object[] array) {
+            this.edit = edit;
+            this.array = array;
+        }
+
+        abstract Object find(Object key, int hash, int shift);
+
+        abstract Node put(Edit edit, Object key, Object value, int hash, int shift, Change change);
+
+        abstract Node remove(Edit edit, Object key, int hash, int shift, Change change);
+
+        abstract int dataArity();
+
+        abstract int nodeArity();
+
+        abstract Node nodeAt(int index);
+
+        final Object keyAt(int index) {
+            return array[2 * index];
+        }
+
+        final Object valueAt(int index) {
+            return array[2 * index + 1];
+        }
+
+        /**
+         * Checks if the node is a single entry that its parent should hold inline.
+         */
+        final boolean isSingleEntry() {
+            return dataArity() == 1 && nodeArity() == 0;
+        }
+
+        final boolean isEditable(Edit edit) {
+            return edit != null && this.edit == edit;
+        }
+    }
+
+    /**
+     * A node with up to 32 slots: entries first, in slot order, then child nodes, in reverse
+     * slot order from the end of the array.
+     */
+    private static final class BitmapNode extends Node {
+        int dataMap;
+        int nodeMap;
+
+        BitmapNode(Edit edit, int dataMap, int nodeMap, Object[] array) {
+            super(edit, array);
+            this.dataMap = dataMap;
+            this.nodeMap = nodeMap;
+        }
+
+        @Override
+        Object find(Object key, int hash, int shift) {
+            int bit = 1 << mask(hash, shift);
+            if ((dataMap & bit) != 0) {
+                int index = index(dataMap, bit);
+                return Objects.equals(keyAt(index), key) ? valueAt(index) : NOT_FOUND;
+            }
+            if ((nodeMap & bit) != 0) {
+                return nodeAt(index(nodeMap, bit)).find(key, hash, shift + BITS);
+            }
+            return NOT_FOUND;
+        }
+
+        @Override
+        Node put(Edit edit, Object key, Object value, int hash, int shift, Change change) {
+            int bit = 1 << mask(hash, shift);
+            if ((dataMap & bit) != 0) {
+                int index = index(dataMap, bit);
+                Object current = keyAt(index);
+                if (Objects.equals(current, key)) {
+                    Object old = valueAt(index);
+                    change.old = old;
+                    if (old == value) {
+                        return this;
+                    }
+                    BitmapNode target = editable(edit, isEditable(edit) ? array : array.clone());
+                    target.array[2 * index + 1] = value;
+                    return target;
+                }
+                change.added = true;
+                Node child = merge(edit, current, valueAt(index), hash(current), key, value, hash, shift + BITS);
+                return inlineToNode(edit, bit, index, child);
+            }
+            if ((nodeMap & bit) != 0) {
+                int index = index(nodeMap, bit);
+                Node child = nodeAt(index);
+                Node updated = child.put(edit, key, value, hash, shift + BITS, change);
+                return updated == child ? this : setNode(edit, index, updated);
+            }
+            change.added = true;
+            int index = index(dataMap, bit);
+            Object[] grown = new Object[array.length + 2];
+            System.arraycopy(array, 0, grown, 0, 2 * index);
+            grown[2 * index] = key;
+            grown[2 * index + 1] = value;
+            System.arraycopy(array, 2 * index, grown, 2 * index + 2, array.length - 2 * index);
+            BitmapNode target = editable(edit, grown);
+            target.dataMap = dataMap | bit;
+            return target;
+        }
+
+        @Override
+        Node remove(Edit edit, Object key, int hash, int shift, Change change) {
+            int bit = 1 << mask(hash, shift);
+            if ((dataMap & bit) != 0) {
+                int index = index(dataMap, bit);
+                if (!Objects.equals(keyAt(index), key)) {
+                    return this;
+                }
+                change.removed = true;
+                change.old = valueAt(index);
+                if (shift > 0 && dataArity() == 2 && nodeArity() == 0) {
+                    // Leave a single entry for the parent to inline
+                    int other = 1 - index;
+                    return new BitmapNode(edit, 1, 0, new Object[] {keyAt(other), valueAt(other)});
+                }
+                Object[] shrunk = new Object[array.length - 2];
+                System.arraycopy(array, 0, shrunk, 0, 2 * index);
+                System.arraycopy(array, 2 * index + 2, shrunk, 2 * index, array.length - 2 * index - 2);
+                BitmapNode target = editable(edit, shrunk);
+                target.dataMap = dataMap ^ bit;
+                return target;
+            }
+            if ((nodeMap & bit) != 0) {
+                int index = index(nodeMap, bit);
+                Node child = nodeAt(index);
+                Node updated = child.remove(edit, key, hash, shift + BITS, change);
+                if (updated == child) {
+                    return this;
+                }
+                if (!updated.isSingleEntry()) {
+                    return setNode(edit, index, updated);
+                }
+                if (dataArity() == 0 && nodeArity() == 1 && shift > 0) {
+                    // Pass the single entry further up
+                    return updated;
+                }
+                return nodeToInline(edit, bit, index, updated);
+            }
+            return this;
+        }
+
+        @Override
+        int dataArity() {
+            return Integer.bitCount(dataMap);
+        }
+
+        @Override
+        int nodeArity() {
+            return Integer.bitCount(nodeMap);
+        }
+
+        @Override
+        Node nodeAt(int index) {
+            return (Node) array[array.length - 1 - index];
+        }
+
+        // =====================================================================
+        private BitmapNode editable(Edit edit, Object[] array) {
+            if (isEditable(edit)) {
+                this.array = array;
+                return this;
+            }
+            return new BitmapNode(edit, dataMap, nodeMap, array);
+        }
+
+        private Node setNode(Edit edit, int index, Node child) {
+            if (isEditable(edit)) {
+                array[array.length - 1 - index] = child;
+                return this;
+            }
+            Object[] copy = array.clone();
+            copy[copy.length - 1 - index] = child;
+            return new BitmapNode(edit, dataMap, nodeMap, copy);
+        }
+
+        /**
+         * Replaces the entry at a slot with a child node holding it and a new entry.
+         */
+        private Node inlineToNode(Edit edit, int bit, int dataIndex, Node child) {
+            int nodeIndex = index(nodeMap, bit);
+            Object[] updated = new Object[array.length - 1];
+            // Entries before and after the moved one
+            System.arraycopy(array, 0, updated, 0, 2 * dataIndex);
+            int dataEnd = 2 * dataArity();
+            System.arraycopy(array, 2 * dataIndex + 2, updated, 2 * dataIndex, dataEnd - 2 * dataIndex - 2);
+            // Child nodes sit at the end in reverse order: those after the new one keep their offset from the end
+            int nodeStart = dataEnd - 2;
+            int childPosition = updated.length - 1 - nodeIndex;
+            System.arraycopy(array, dataEnd, updated, nodeStart, childPosition - nodeStart);
+            updated[childPosition] = child;
+            System.arraycopy(array, dataEnd + childPosition - nodeStart, updated, childPosition + 1,
+                    updated.length - childPosition - 1);
+            BitmapNode target = editable(edit, updated);
+            target.dataMap = dataMap ^ bit;
+            target.nodeMap = nodeMap | bit;
+            return target;
+        }
+
+        /**
+         * Replaces a child node that has shrunk to one entry with that entry.
+         */
+        private Node nodeToInline(Edit edit, int bit, int nodeIndex, Node child) {
+            int dataIndex = index(dataMap, bit);
+            Object[] updated = new Object[array.length + 1];
+            System.arraycopy(array, 0, updated, 0, 2 * dataIndex);
+            updated[2 * dataIndex] = child.keyAt(0);
+            updated[2 * dataIndex + 1] = child.valueAt(0);
+            int dataEnd = 2 * dataArity();
+            System.arraycopy(array, 2 * dataIndex, updated, 2 * dataIndex + 2, dataEnd - 2 * dataIndex);
+            int childPosition = array.length - 1 - nodeIndex;
+            System.arraycopy(array, dataEnd, updated, dataEnd + 2, childPosition - dataEnd);
+            System.arraycopy(array, childPosition + 1, updated, childPosition + 2, array.length - childPosition - 1);
+            BitmapNode target = editable(edit, updated);
+            target.dataMap = dataMap | bit;
+            target.nodeMap = nodeMap ^ bit;
+            return target;
+        }
+
+        private static int index(int map, int bit) {
+            return Integer.bitCount(map & (bit - 1));
+        }
+
+        private static Node merge(Edit edit, Object key0, Object value0, int hash0, Object key1, Object value1,
+                                  int hash1, int shift) {
+            if (shift >= HASH_BITS) {
+                return new CollisionNode(edit, hash0, new Object[] {key0, value0, key1, value1});
+            }
+            int mask0 = mask(hash0, shift);
+            int mask1 = mask(hash1, shift);
+            if (mask0 != mask1) {
+                Object[] array = mask0 < mask1
+                        ? new Object[] {key0, value0, key1, value1}
+                        : new Object[] {key1, value1, key0, value0};
+                return new BitmapNode(edit, 1 << mask0 | 1 << mask1, 0, array);
+            }
+            Node child = merge(edit, key0, value0, hash0, key1, value1, hash1, shift + BITS);
+            return new BitmapNode(edit, 0, 1 << mask0, new Object[] {child});
+        }
+    }
+
+    /**
+     * The entries of keys whose hashes are equal in all 32 bits, in a flat array.
+     */
+    private static final class CollisionNode extends Node {
+        private final int hash;
+
+        CollisionNode(Edit edit, int hash, Object[] array) {
+            super(edit, array);
+            this.hash = hash;
+        }
+
+        @Override
+        Object find(Object key, int hash, int shift) {
+            int index = indexOf(key);
+            return index < 0 ? NOT_FOUND : valueAt(index);
+        }
+
+        @Override
+        Node put(Edit edit, Object key, Object value, int hash, int shift, Change change) {
+            int index = indexOf(key);
+            if (index >= 0) {
+                Object old = valueAt(index);
+                change.old = old;
+                if (old == value) {
+                    return this;
+                }
+                Object[] copy = isEditable(edit) ? array : array.clone();
+                copy[2 * index + 1] = value;
+                return target(edit, copy);
+            }
+            change.added = true;
+            Object[] grown = Arrays.copyOf(array, array.length + 2);
+            grown[array.length] = key;
+            grown[array.length + 1] = value;
+            return target(edit, grown);
+        }
+
+        @Override
+        Node remove(Edit edit, Object key, int hash, int shift, Change change) {
+            int index = indexOf(key);
+            if (index < 0) {
+                return this;
+            }
+            change.removed = true;
+            change.old = valueAt(index);
+            if (dataArity() == 2) {
+                int other = 1 - index;
+                return new BitmapNode(edit, 1 << mask(this.hash, 0), 0, new Object[] {keyAt(other), valueAt(other)});
+            }
+            Object[] shrunk = new Object[array.length - 2];
+            System.arraycopy(array, 0, shrunk, 0, 2 * index);
+            System.arraycopy(array, 2 * index + 2, shrunk, 2 * index, array.length - 2 * index - 2);
+            return target(edit, shrunk);
+        }
+
+        @Override
+        int dataArity() {
+            return array.length / 2;
+        }
+
+        @Override
+        int nodeArity() {
+            return 0;
+        }
+
+        @Override
+        Node nodeAt(int index) {
+            throw new IndexOutOfBoundsException(index);
+        }
+
+        private int indexOf(Object key) {
+            for (int i = 0; i < array.length; i += 2) {
+                if (Objects.equals(array[i], key)) {
+                    return i / 2;
+                }
+            }
+            return -1;
+        }
+
+        private Node target(Edit edit, Object[] array) {
+            if (isEditable(edit)) {
+                this.array = array;
+                return this;
+            }
+            return new CollisionNode(edit, hash, array);
+        }
+    }
+}
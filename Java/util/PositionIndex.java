@@ -0,0 +1,129 @@
+package Java.util;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reverse index from entity to its position, used by {@link Util_List} to answer
+ * {@code containsEntity}, {@code indexOf} and {@code removeEntity(T)} without scanning.
+ *
+ * <p>Entities are matched with {@code equals}/{@code hashCode}, like the list methods it
+ * serves. Each slot counts the occurrences of an entity, which is always exact, and holds the
+ * physical position of the entity while it occurs only once. Positions go stale when a
+ * removal shifts later elements; the next write that needs one rebuilds them in one pass, so a
+ * run of index-based removals costs a single rebuild. Reads never rebuild: while positions are
+ * stale, {@link #position(Object)} reports none and the list scans instead.</p>
+ *
+ * @param <T> the type of entities being indexed
+ */
+class PositionIndex<T> {
+    private final Map<Object, Slot> slots = new HashMap<>();
+    private final Tombstones tombstones;
+    private boolean positionsValid = true;
+
+    private static final class Slot {
+        int count;
+        int position;
+    }
+
+    /**
+     * @param tombstones - the positions of removed elements still in the list, skipped when rebuilding
+     */
+    PositionIndex(Tombstones tombstones) {
+        this.tombstones = tombstones;
+    }
+
+    /**
+     * Returns how many times the entity occurs in the list.
+     */
+    int count(Object entity) {
+        Slot slot = slots.get(entity);
+        return slot == null ? 0 : slot.count;
+    }
+
+    /**
+     * Returns the physical position of an entity that occurs exactly once.
+     * @param entity - the entity, whose count must be one
+     * @return the position, or -1 if positions are stale
+     */
+    int position(Object entity) {
+        return positionsValid ? slots.get(entity).position : -1;
+    }
+
+    /**
+     * Rebuilds stale positions, for a write that needs them.
+     * @param entities - the indexed list
+     */
+    void refresh(List<T> entities) {
+        if (!positionsValid) {
+            rebuild(entities);
+        }
+    }
+
+    /**
+     * Records an entity stored at the given physical position.
+     */
+    void add(T entity, int position) {
+        Slot slot = slots.get(entity);
+        if (slot == null) {
+            slot = new Slot();
+            slots.put(entity, slot);
+        }
+        if (++slot.count == 1) {
+            slot.position = position;
+        }
+    }
+
+    /**
+     * Records the removal of one occurrence of an entity.
+     */
+    void remove(Object entity) {
+        Slot slot = slots.get(entity);
+        if (slot == null) {
+            return;
+        }
+        if (--slot.count == 0) {
+            slots.remove(entity);
+        } else if (slot.count == 1) {
+            positionsValid = false;
+        }
+    }
+
+    /**
+     * Records that an entity was moved to a new physical position.
+     */
+    void moved(Object entity, int position) {
+        Slot slot = slots.get(entity);
+        if (slot != null && slot.count == 1) {
+            slot.position = position;
+        } else {
+            positionsValid = false;
+        }
+    }
+
+    /**
+     * Marks every position as stale, e.g. after elements were shifted or reordered.
+     */
+    void invalidatePositions() {
+        positionsValid = false;
+    }
+
+    /**
+     * Discards the current contents and indexes every element of the list.
+     */
+    void rebuild(List<T> entities) {
+        slots.clear();
+        positionsValid = true;
+        for (int i = 0; i < entities.size(); i++) {
+            if (!tombstones.contains(i)) {
+                add(entities.get(i), i);
+            }
+        }
+    }
+
+    void clear() {
+        slots.clear();
+        positionsValid = true;
+    }
+}
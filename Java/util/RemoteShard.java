@@ -0,0 +1,210 @@
+package Java.util;
+
+import Java.main.Entity;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.Objects;
+import java.util.function.BiConsumer;
+
+/**
+ * A {@link Shard} served by a {@link ShardServer}, reached over one socket with
+ * {@link ShardProtocol}.
+ *
+ * <p>Calls are sent one at a time over the shared connection, so concurrent callers queue on
+ * it. Each {@link #forEach} opens a connection of its own for the scan.</p>
+ *
+ * <p>Connecting and every response are bounded by the timeout, so a server that hangs fails the
+ * call instead of blocking it, and the key lock a {@link Util_PartitionedMap} holds around it,
+ * forever. A call that fails on I/O closes the connection, whose stream may be left mid-frame;
+ * the next call connects again, so the shard recovers once the server is back.</p>
+ *
+ * @param <T> the type of entities in the shard
+ */
+final class RemoteShard<T extends Entity> implements Shard<T> {
+    private final String name;
+    private final InetSocketAddress address;
+    private final SnapshotCodec<T> codec;
+    private final int timeoutMillis;
+    private final Object lock = new Object();
+    // Guarded by lock; null after a failure, until the next call connects again
+    private ShardProtocol.Connection connection;
+    private boolean closed;
+
+    RemoteShard(String name, InetSocketAddress address, SnapshotCodec<T> codec, Duration timeout) {
+        this.name = Objects.requireNonNull(name, "name");
+        this.address = Objects.requireNonNull(address, "address");
+        this.codec = Objects.requireNonNull(codec, "codec");
+        if (timeout.isNegative() || timeout.isZero() || timeout.compareTo(Duration.ofMillis(Integer.MAX_VALUE)) > 0) {
+            throw new IllegalArgumentException("Timeout must be positive and at most " + Integer.MAX_VALUE + " ms: " + timeout);
+        }
+        this.timeoutMillis = (int) timeout.toMillis();
+        this.connection = connect();
+    }
+
+    @Override
+    public String name() {
+        return name;
+    }
+
+    @Override
+    public T get(Object key) {
+        return valueCall(buffer -> {
+            buffer.put(ShardProtocol.GET);
+            EntitySnapshot.putKey(buffer, key);
+        });
+    }
+
+    @Override
+    public T put(Object key, T entity) {
+        return valueCall(buffer -> {
+            buffer.put(ShardProtocol.PUT);
+            EntitySnapshot.putKey(buffer, key);
+            EntitySnapshot.putValue(buffer, entity, codec);
+        });
+    }
+
+    @Override
+    public T putIfAbsent(Object key, T entity) {
+        return valueCall(buffer -> {
+            buffer.put(ShardProtocol.PUT_IF_ABSENT);
+            EntitySnapshot.putKey(buffer, key);
+            EntitySnapshot.putValue(buffer, entity, codec);
+        });
+    }
+
+    @Override
+    public T remove(Object key) {
+        return valueCall(buffer -> {
+            buffer.put(ShardProtocol.REMOVE);
+            EntitySnapshot.putKey(buffer, key);
+        });
+    }
+
+    @Override
+    public int size() {
+        synchronized (lock) {
+            return call(buffer -> buffer.put(ShardProtocol.SIZE)).getInt();
+        }
+    }
+
+    @Override
+    public void clear() {
+        synchronized (lock) {
+            call(buffer -> buffer.put(ShardProtocol.CLEAR));
+        }
+    }
+
+    @Override
+    public void forEach(BiConsumer<Object, ? super T> action) {
+        try (ShardProtocol.Connection scan = connect()) {
+            scan.send(buffer -> buffer.put(ShardProtocol.SCAN), true);
+            while (true) {
+                ByteBuffer batch = checked(scan.receive());
+                int count = batch.getInt();
+                if (count == 0) {
+                    return;
+                }
+                for (int i = 0; i < count; i++) {
+                    Object key = EntitySnapshot.getKey(batch);
+                    action.accept(key, EntitySnapshot.getValue(batch, codec));
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot scan shard " + name + " at " + address, e);
+        }
+    }
+
+    @Override
+    public void close() {
+        synchronized (lock) {
+            closed = true;
+            if (connection == null) {
+                return;
+            }
+            try {
+                connection.close();
+            } catch (IOException e) {
+                throw new UncheckedIOException("Cannot close shard " + name, e);
+            } finally {
+                connection = null;
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "RemoteShard[" + name + ", " + address + "]";
+    }
+
+    // =========================================================================
+    private T valueCall(ShardProtocol.Encoder request) {
+        synchronized (lock) {
+            return EntitySnapshot.getValue(call(request), codec);
+        }
+    }
+
+    /**
+     * Sends a request and returns the body of its response, connecting first if an earlier call
+     * dropped the connection. Callers hold the lock until they have decoded the body.
+     */
+    private ByteBuffer call(ShardProtocol.Encoder request) {
+        if (closed) {
+            throw new IllegalStateException("Shard " + name + " is closed");
+        }
+        if (connection == null) {
+            connection = connect();
+        }
+        ByteBuffer response;
+        try {
+            connection.send(request, true);
+            response = connection.receive();
+        } catch (IOException e) {
+            disconnect(e);
+            throw new UncheckedIOException("Shard " + name + " at " + address + " failed", e);
+        }
+        try {
+            return checked(response);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Shard " + name + " at " + address + " failed", e);
+        }
+    }
+
+    /**
+     * Closes the connection after a failed call. Called with the lock held.
+     */
+    private void disconnect(IOException failure) {
+        try {
+            connection.close();
+        } catch (IOException suppressed) {
+            failure.addSuppressed(suppressed);
+        }
+        connection = null;
+    }
+
+    private ByteBuffer checked(ByteBuffer response) throws IOException {
+        if (response.get() == ShardProtocol.ERROR) {
+            throw new IOException("Shard " + name + " failed: " + SnapshotCodec.getString(response));
+        }
+        return response;
+    }
+
+    private ShardProtocol.Connection connect() {
+        Socket socket = new Socket();
+        try {
+            socket.connect(address, timeoutMillis);
+            socket.setSoTimeout(timeoutMillis);
+            return new ShardProtocol.Connection(socket);
+        } catch (IOException e) {
+            try {
+                socket.close();
+            } catch (IOException suppressed) {
+                e.addSuppressed(suppressed);
+            }
+            throw new UncheckedIOException("Cannot connect to shard " + name + " at " + address, e);
+        }
+    }
+}
@@ -0,0 +1,137 @@
+package Java.util;
+
+import Java.main.Entity;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.time.Duration;
+import java.util.function.BiConsumer;
+
+/**
+ * One partition of a {@link Util_PartitionedMap}: a thread-safe map of keys to entities that
+ * lives either in this process or behind a {@link ShardServer}.
+ *
+ * <p>Keys and values are never null. Remote shards throw {@link UncheckedIOException} from any
+ * method when the server cannot be reached or does not answer in time.</p>
+ *
+ * @param <T> the type of entities in the shard
+ */
+public interface Shard<T extends Entity> extends AutoCloseable {
+    /**
+     * The default time a remote shard waits to connect and for each response.
+     */
+    Duration DEFAULT_REMOTE_TIMEOUT = Duration.ofSeconds(10);
+
+    /**
+     * Creates an in-process shard backed by a new {@link Util_ConcurrentMap}.
+     * @param <T> the type of entities in the shard
+     * @param name - the name of the shard, unique within a partitioned map
+     * @return the shard
+     */
+    static <T extends Entity> Shard<T> local(String name) {
+        return new LocalShard<>(name, new Util_ConcurrentMap<>());
+    }
+
+    /**
+     * Creates an in-process shard over an existing map, which must be thread-safe, like
+     * {@link Util_ConcurrentMap}.
+     * @param <T> the type of entities in the shard
+     * @param name - the name of the shard, unique within a partitioned map
+     * @param map - the map holding the entries of the shard
+     * @return the shard
+     */
+    static <T extends Entity> Shard<T> local(String name, Util_Map<T> map) {
+        return new LocalShard<>(name, map);
+    }
+
+    /**
+     * Connects to a shard served by a {@link ShardServer}.
+     * @param <T> the type of entities in the shard
+     * @param name - the name of the shard, unique within a partitioned map
+     * @param address - the address of the server
+     * @param codec - the encoding of the entities, the same as the server's
+     * @return the shard
+     * @throws UncheckedIOException if the server cannot be reached
+     */
+    static <T extends Entity> Shard<T> remote(String name, InetSocketAddress address, SnapshotCodec<T> codec) {
+        return remote(name, address, codec, DEFAULT_REMOTE_TIMEOUT);
+    }
+
+    /**
+     * Connects to a shard served by a {@link ShardServer}, waiting at most the given time to
+     * connect and for each response. A call that times out fails and drops the connection; the
+     * next call connects again.
+     * @param <T> the type of entities in the shard
+     * @param name - the name of the shard, unique within a partitioned map
+     * @param address - the address of the server
+     * @param codec - the encoding of the entities, the same as the server's
+     * @param timeout - the time to wait, positive and at most {@link Integer#MAX_VALUE} milliseconds
+     * @return the shard
+     * @throws IllegalArgumentException if the timeout is out of range
+     * @throws UncheckedIOException if the server cannot be reached
+     */
+    static <T extends Entity> Shard<T> remote(String name, InetSocketAddress address, SnapshotCodec<T> codec,
+                                              Duration timeout) {
+        return new RemoteShard<>(name, address, codec, timeout);
+    }
+
+    /**
+     * Returns the name of the shard, which also places it on the hash ring.
+     * @return the name
+     */
+    String name();
+
+    /**
+     * Returns the entity for a key.
+     * @param key - the key
+     * @return the entity, or null if there is none
+     */
+    T get(Object key);
+
+    /**
+     * Maps a key to an entity.
+     * @param key - the key
+     * @param entity - the entity
+     * @return the previous entity, or null if there was none
+     */
+    T put(Object key, T entity);
+
+    /**
+     * Maps a key to an entity unless the key is mapped already.
+     * @param key - the key
+     * @param entity - the entity
+     * @return the current entity, or null if the key was absent and is now mapped
+     */
+    T putIfAbsent(Object key, T entity);
+
+    /**
+     * Removes the mapping for a key.
+     * @param key - the key
+     * @return the removed entity, or null if there was none
+     */
+    T remove(Object key);
+
+    /**
+     * Returns the number of entries.
+     * @return the size of the shard
+     */
+    int size();
+
+    /**
+     * Removes all entries.
+     */
+    void clear();
+
+    /**
+     * Performs the action for each entry, with weakly consistent iteration: entries added or
+     * removed during the call may or may not be seen. The action may call this shard.
+     * @param action - the action to perform on each key and entity
+     */
+    void forEach(BiConsumer<Object, ? super T> action);
+
+    /**
+     * Releases the resources of the shard. Closing a local shard does nothing; closing a remote
+     * one closes its connection, not the server.
+     */
+    @Override
+    void close();
+}
@@ -0,0 +1,116 @@
+package Java.util;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.Socket;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+
+/**
+ * The wire protocol between a {@link Shard#remote remote shard} and a {@link ShardServer}.
+ *
+ * <p>Every message is a frame: its payload length as an int, then the payload. A request payload
+ * is an operation byte followed by its arguments; a response payload is a status byte followed
+ * by the result, or by an error message if the status is {@link #ERROR}. Keys and values are
+ * encoded as in {@link EntitySnapshot}, values by the shard's {@link SnapshotCodec}.</p>
+ *
+ * <p>A {@link #SCAN} is answered by a series of frames, each an entry count followed by that many
+ * keys and values, and ended by a frame with a count of 0. Scans use a connection of their own,
+ * so the scanning side may call the shard while it consumes the entries.</p>
+ */
+final class ShardProtocol {
+    static final byte GET = 1;
+    static final byte PUT = 2;
+    static final byte PUT_IF_ABSENT = 3;
+    static final byte REMOVE = 4;
+    static final byte SIZE = 5;
+    static final byte CLEAR = 6;
+    static final byte SCAN = 7;
+
+    static final byte OK = 0;
+    static final byte ERROR = 1;
+
+    static final int SCAN_BATCH = 1024;
+    private static final int MAX_FRAME_SIZE = 1 << 28;
+    private static final int INITIAL_BUFFER_SIZE = 1 << 12;
+
+    private ShardProtocol() {
+    }
+
+    /**
+     * Writes a payload into a buffer, which must use relative puts.
+     */
+    @FunctionalInterface
+    interface Encoder {
+        void encode(ByteBuffer buffer);
+    }
+
+    /**
+     * One end of a connection, with reusable send and receive buffers. Not thread-safe.
+     */
+    static final class Connection implements AutoCloseable {
+        private final Socket socket;
+        private final DataInputStream in;
+        private final DataOutputStream out;
+        private ByteBuffer sendBuffer = ByteBuffer.allocate(INITIAL_BUFFER_SIZE);
+        private ByteBuffer receiveBuffer = ByteBuffer.allocate(INITIAL_BUFFER_SIZE);
+
+        Connection(Socket socket) throws IOException {
+            socket.setTcpNoDelay(true);
+            this.socket = socket;
+            this.in = new DataInputStream(new BufferedInputStream(socket.getInputStream(), 1 << 16));
+            this.out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream(), 1 << 16));
+        }
+
+        /**
+         * Encodes and sends one frame, growing the send buffer until the payload fits.
+         * @param encoder - writes the payload
+         * @param flush - false to leave the frame buffered, when more frames follow
+         */
+        void send(Encoder encoder, boolean flush) throws IOException {
+            while (true) {
+                sendBuffer.clear();
+                try {
+                    encoder.encode(sendBuffer);
+                    break;
+                } catch (BufferOverflowException e) {
+                    if (sendBuffer.capacity() >= MAX_FRAME_SIZE) {
+                        throw new IOException("Frame larger than " + MAX_FRAME_SIZE + " bytes", e);
+                    }
+                    sendBuffer = ByteBuffer.allocate(sendBuffer.capacity() << 1);
+                }
+            }
+            out.writeInt(sendBuffer.position());
+            out.write(sendBuffer.array(), 0, sendBuffer.position());
+            if (flush) {
+                out.flush();
+            }
+        }
+
+        /**
+         * Receives one frame.
+         * @return the payload, valid until the next call
+         * @throws java.io.EOFException if the other end closed the connection
+         */
+        ByteBuffer receive() throws IOException {
+            int length = in.readInt();
+            if (length < 0 || length > MAX_FRAME_SIZE) {
+                throw new IOException("Corrupt frame length: " + length);
+            }
+            if (receiveBuffer.capacity() < length) {
+                receiveBuffer = ByteBuffer.allocate(Math.max(length, receiveBuffer.capacity() << 1));
+            }
+            in.readFully(receiveBuffer.array(), 0, length);
+            receiveBuffer.clear().limit(length);
+            return receiveBuffer;
+        }
+
+        @Override
+        public void close() throws IOException {
+            socket.close();
+        }
+    }
+}
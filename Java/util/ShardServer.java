@@ -0,0 +1,213 @@
+package Java.util;
+
+import Java.main.Entity;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Serves a {@link Util_Map} over a loopback socket, so a {@link Util_PartitionedMap} can
+ * use it as a {@link Shard#remote remote shard}. This lets tests run a multi-node setup
+ * inside one machine, or inside one process.
+ *
+ * <p>The server listens on the loopback address only and serves each connection on a
+ * thread of its own, speaking {@link ShardProtocol}. Connections run concurrently, so the map
+ * must be thread-safe, like {@link Util_ConcurrentMap}.</p>
+ *
+ * @param <T> the type of entities in the map
+ */
+public final class ShardServer<T extends Entity> implements AutoCloseable {
+    private static final AtomicInteger THREAD_IDS = new AtomicInteger();
+
+    private final Util_Map<T> map;
+    private final SnapshotCodec<T> codec;
+    private final ServerSocket server;
+    private final Set<Socket> clients = ConcurrentHashMap.newKeySet();
+    private final Thread acceptor;
+
+    /**
+     * Starts serving a map on a loopback port.
+     * @param map - the map to serve
+     * @param codec - the encoding of the entities
+     * @param port - the port to listen on, or 0 for any free port
+     * @throws UncheckedIOException if the port cannot be bound
+     */
+    public ShardServer(Util_Map<T> map, SnapshotCodec<T> codec, int port) {
+        this.map = map;
+        this.codec = codec;
+        try {
+            this.server = new ServerSocket(port, 50, InetAddress.getLoopbackAddress());
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot listen on port " + port, e);
+        }
+        this.acceptor = new Thread(this::acceptLoop, "shard-server-" + THREAD_IDS.incrementAndGet());
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    /**
+     * Returns the address clients connect to.
+     * @return the loopback address and bound port
+     */
+    public InetSocketAddress getAddress() {
+        return new InetSocketAddress(server.getInetAddress(), server.getLocalPort());
+    }
+
+    /**
+     * Stops accepting connections and closes the open ones. The map is left as it is.
+     */
+    @Override
+    public void close() {
+        try {
+            server.close();
+            for (Socket client : clients) {
+                client.close();
+            }
+            acceptor.join();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot close shard server", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // =========================================================================
+    private void acceptLoop() {
+        while (!server.isClosed()) {
+            Socket socket;
+            try {
+                socket = server.accept();
+            } catch (IOException e) {
+                return;
+            }
+            clients.add(socket);
+            Thread worker = new Thread(() -> serve(socket), acceptor.getName() + "-connection");
+            worker.setDaemon(true);
+            worker.start();
+        }
+    }
+
+    private void serve(Socket socket) {
+        try (ShardProtocol.Connection connection = new ShardProtocol.Connection(socket)) {
+            while (true) {
+                ByteBuffer request = connection.receive();
+                byte operation = request.get();
+                if (operation == ShardProtocol.SCAN) {
+                    scan(connection);
+                    continue;
+                }
+                try {
+                    respond(connection, operation, request);
+                } catch (RuntimeException e) {
+                    String message = String.valueOf(e);
+                    connection.send(buffer -> {
+                        buffer.put(ShardProtocol.ERROR);
+                        SnapshotCodec.putString(buffer, message);
+                    }, true);
+                }
+            }
+        } catch (EOFException | SocketException e) {
+            // The client went away or the server closed
+        } catch (IOException e) {
+            // A corrupt frame: drop the connection, the client sees it closed
+        } finally {
+            clients.remove(socket);
+        }
+    }
+
+    private void respond(ShardProtocol.Connection connection, byte operation, ByteBuffer request) throws IOException {
+        switch (operation) {
+            case ShardProtocol.GET:
+                sendValue(connection, map.getValueByKey(EntitySnapshot.getKey(request)));
+                break;
+            case ShardProtocol.PUT: {
+                Object key = EntitySnapshot.getKey(request);
+                sendValue(connection, map.put(key, EntitySnapshot.getValue(request, codec)));
+                break;
+            }
+            case ShardProtocol.PUT_IF_ABSENT: {
+                Object key = EntitySnapshot.getKey(request);
+                sendValue(connection, map.putIfAbsent(key, EntitySnapshot.getValue(request, codec)));
+                break;
+            }
+            case ShardProtocol.REMOVE: {
+                Object key = EntitySnapshot.getKey(request);
+                T entity = map.getValueByKey(key);
+                while (entity != null && !map.remove(key, entity)) {
+                    entity = map.getValueByKey(key);
+                }
+                sendValue(connection, entity);
+                break;
+            }
+            case ShardProtocol.SIZE: {
+                int size = map.size();
+                connection.send(buffer -> buffer.put(ShardProtocol.OK).putInt(size), true);
+                break;
+            }
+            case ShardProtocol.CLEAR:
+                map.clear();
+                connection.send(buffer -> buffer.put(ShardProtocol.OK), true);
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown operation " + operation);
+        }
+    }
+
+    private void sendValue(ShardProtocol.Connection connection, T entity) throws IOException {
+        connection.send(buffer -> {
+            buffer.put(ShardProtocol.OK);
+            EntitySnapshot.putValue(buffer, entity, codec);
+        }, true);
+    }
+
+    /**
+     * Streams all entries in batches, then an empty batch.
+     */
+    private void scan(ShardProtocol.Connection connection) throws IOException {
+        List<Object> keys = new ArrayList<>(ShardProtocol.SCAN_BATCH);
+        List<T> values = new ArrayList<>(ShardProtocol.SCAN_BATCH);
+        try {
+            map.forEachEntry((key, entity) -> {
+                keys.add(key);
+                values.add(entity);
+                if (keys.size() == ShardProtocol.SCAN_BATCH) {
+                    sendBatch(connection, keys, values);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        sendBatch(connection, keys, values);
+        connection.send(buffer -> buffer.put(ShardProtocol.OK).putInt(0), true);
+    }
+
+    private void sendBatch(ShardProtocol.Connection connection, List<Object> keys, List<T> values) {
+        if (keys.isEmpty()) {
+            return;
+        }
+        try {
+            connection.send(buffer -> {
+                buffer.put(ShardProtocol.OK).putInt(keys.size());
+                for (int i = 0; i < keys.size(); i++) {
+                    EntitySnapshot.putKey(buffer, keys.get(i));
+                    EntitySnapshot.putValue(buffer, values.get(i), codec);
+                }
+            }, false);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        keys.clear();
+        values.clear();
+    }
+}
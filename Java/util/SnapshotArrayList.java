@@ -0,0 +1,639 @@
+package Java.util;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.ListIterator;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.RandomAccess;
+import java.util.Spliterator;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.function.UnaryOperator;
+
+/**
+ * Chunked array list whose readers work on an immutable snapshot and never lock, used by
+ * {@link Util_ConcurrentList}.
+ *
+ * <p>Elements are stored in chunks of {@link #CHUNK} slots, referenced from a spine array, and
+ * the published state is a (spine, size) pair. Only the first chunk starts small and grows up
+ * to full size. Writers are serialised by a single lock and never change a slot that a
+ * published snapshot can see:</p>
+ * <ul>
+ *     <li>Appends write into spare capacity past {@code size} and publish a new pair over the
+ *     same spine and chunks, so nothing is copied unless the first chunk or the spine has to
+ *     grow.</li>
+ *     <li>{@link #set(int, Object)} copies the one chunk holding the slot and the spine, which
+ *     holds one reference per chunk, instead of the whole array.</li>
+ *     <li>Inserting or removing at an index copies the chunks from that index to the end, the
+ *     part of the array that {@link java.util.ArrayList} would shift anyway, and shares the
+ *     chunks before it. {@link #removeIf(Predicate)} shares the chunks before the first removed
+ *     element, and {@link #replaceAll(UnaryOperator)} copies only the chunks with an element
+ *     that actually changed.</li>
+ *     <li>{@link #sort(Comparator)} rebuilds every chunk.</li>
+ * </ul>
+ *
+ * <p>Iterators, spliterators and streams see the snapshot taken when they were created and
+ * do not support modification. {@link #subList(int, int)} returns an immutable copy.</p>
+ *
+ * @param <E> the type of elements in the list
+ */
+class SnapshotArrayList<E> extends AbstractList<E> implements RandomAccess {
+    static final int CHUNK_SHIFT = 10;
+    static final int CHUNK = 1 << CHUNK_SHIFT;
+    private static final int MASK = CHUNK - 1;
+    private static final int FIRST_CHUNK = 10;
+    private static final View EMPTY = new View(new Object[0][], 0);
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private volatile View view = EMPTY;
+
+    /**
+     * Immutable published state: only the first {@code size} slots of the chunks are visible.
+     */
+    private static final class View {
+        final Object[][] chunks;
+        final int size;
+
+        View(Object[][] chunks, int size) {
+            this.chunks = chunks;
+            this.size = size;
+        }
+
+        Object get(int index) {
+            return chunks[index >>> CHUNK_SHIFT][index & MASK];
+        }
+    }
+
+    /**
+     * Returns the lock that serialises writers, so callers can make compound updates atomic.
+     * @return the writer lock
+     */
+    ReentrantLock writeLock() {
+        return lock;
+    }
+
+    /**
+     * Returns the element at the index, or null if the index is out of range in the current snapshot.
+     * @param index - the index of the element
+     * @return the element, or null
+     */
+    E getOrNull(int index) {
+        View v = view;
+        return index >= 0 && index < v.size ? cast(v.get(index)) : null;
+    }
+
+    @Override
+    public E get(int index) {
+        View v = view;
+        Objects.checkIndex(index, v.size);
+        return cast(v.get(index));
+    }
+
+    @Override
+    public int size() {
+        return view.size;
+    }
+
+    @Override
+    public int indexOf(Object o) {
+        View v = view;
+        for (int k = 0, start = 0; start < v.size; k++, start += CHUNK) {
+            Object[] chunk = v.chunks[k];
+            int end = Math.min(CHUNK, v.size - start);
+            for (int i = 0; i < end; i++) {
+                if (Objects.equals(o, chunk[i])) {
+                    return start + i;
+                }
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public int lastIndexOf(Object o) {
+        View v = view;
+        for (int i = v.size - 1; i >= 0; i--) {
+            if (Objects.equals(o, v.get(i))) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        return indexOf(o) >= 0;
+    }
+
+    @Override
+    public Object[] toArray() {
+        View v = view;
+        return copyRange(v, 0, v.size);
+    }
+
+    @Override
+    public Iterator<E> iterator() {
+        return listIterator(0);
+    }
+
+    @Override
+    public ListIterator<E> listIterator() {
+        return listIterator(0);
+    }
+
+    @Override
+    public ListIterator<E> listIterator(int index) {
+        View v = view;
+        Objects.checkIndex(index, v.size + 1);
+        return new SnapshotIterator<>(v, index);
+    }
+
+    @Override
+    public Spliterator<E> spliterator() {
+        View v = view;
+        return new SnapshotSpliterator<>(v, 0, v.size);
+    }
+
+    @Override
+    public void forEach(Consumer<? super E> action) {
+        View v = view;
+        for (int k = 0, start = 0; start < v.size; k++, start += CHUNK) {
+            Object[] chunk = v.chunks[k];
+            int end = Math.min(CHUNK, v.size - start);
+            for (int i = 0; i < end; i++) {
+                action.accept(cast(chunk[i]));
+            }
+        }
+    }
+
+    @Override
+    public List<E> subList(int fromIndex, int toIndex) {
+        View v = view;
+        Objects.checkFromToIndex(fromIndex, toIndex, v.size);
+        @SuppressWarnings("unchecked")
+        List<E> copy = (List<E>) Arrays.asList(copyRange(v, fromIndex, toIndex));
+        return Collections.unmodifiableList(copy);
+    }
+
+    /**
+     * Grows the spine and the first chunk, if needed, so that appends up to the given size do
+     * not copy them again.
+     * @param minCapacity - the number of elements the list should hold
+     */
+    void ensureCapacity(int minCapacity) {
+        lock.lock();
+        try {
+            View v = view;
+            Object[][] chunks = v.chunks;
+            int spine = (int) (((long) minCapacity + MASK) >>> CHUNK_SHIFT);
+            if (spine > chunks.length) {
+                chunks = Arrays.copyOf(chunks, spine);
+            }
+            int first = Math.min(CHUNK, minCapacity);
+            if (first > 0 && chunks[0] == null) {
+                // The list is empty, so no snapshot reads the first slot of the spine
+                chunks[0] = new Object[first];
+            } else if (first > 0 && chunks[0].length < first) {
+                if (chunks == v.chunks) {
+                    chunks = chunks.clone();
+                }
+                chunks[0] = Arrays.copyOf(chunks[0], first);
+            }
+            view = new View(chunks, v.size);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // =========================================================================
+    @Override
+    public boolean add(E e) {
+        lock.lock();
+        try {
+            Appender appender = new Appender(view);
+            appender.add(e);
+            view = appender.view();
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public boolean addAll(Collection<? extends E> c) {
+        Object[] added = c.toArray();
+        if (added.length == 0) {
+            return false;
+        }
+        lock.lock();
+        try {
+            Appender appender = new Appender(view);
+            for (Object e : added) {
+                appender.add(e);
+            }
+            view = appender.view();
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void add(int index, E e) {
+        lock.lock();
+        try {
+            View v = view;
+            Objects.checkIndex(index, v.size + 1);
+            if (index == v.size) {
+                add(e);
+                return;
+            }
+            Appender appender = new Appender(v, index >>> CHUNK_SHIFT, v.size + 1);
+            appender.copy(v, index & ~MASK, index);
+            appender.add(e);
+            appender.copy(v, index, v.size);
+            view = appender.view();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public E set(int index, E e) {
+        lock.lock();
+        try {
+            View v = view;
+            Objects.checkIndex(index, v.size);
+            Object[][] chunks = v.chunks.clone();
+            int k = index >>> CHUNK_SHIFT;
+            Object[] chunk = chunks[k].clone();
+            E previous = cast(chunk[index & MASK]);
+            chunk[index & MASK] = e;
+            chunks[k] = chunk;
+            view = new View(chunks, v.size);
+            return previous;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public E remove(int index) {
+        lock.lock();
+        try {
+            View v = view;
+            Objects.checkIndex(index, v.size);
+            E previous = cast(v.get(index));
+            Appender appender = new Appender(v, index >>> CHUNK_SHIFT, v.size - 1);
+            appender.copy(v, index & ~MASK, index);
+            appender.copy(v, index + 1, v.size);
+            view = appender.view();
+            return previous;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public boolean remove(Object o) {
+        lock.lock();
+        try {
+            int index = indexOf(o);
+            if (index < 0) {
+                return false;
+            }
+            remove(index);
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public boolean removeAll(Collection<?> c) {
+        Objects.requireNonNull(c);
+        return removeIf(c::contains);
+    }
+
+    @Override
+    public boolean retainAll(Collection<?> c) {
+        Objects.requireNonNull(c);
+        return removeIf(e -> !c.contains(e));
+    }
+
+    /**
+     * Tests every element exactly once, in order. The chunks before the first removed element
+     * are shared with the current snapshot; the survivors after it are packed into new chunks.
+     */
+    @Override
+    public boolean removeIf(Predicate<? super E> filter) {
+        lock.lock();
+        try {
+            View v = view;
+            Appender appender = null;
+            for (int i = 0; i < v.size; i++) {
+                Object e = v.get(i);
+                if (filter.test(cast(e))) {
+                    if (appender == null) {
+                        appender = new Appender(v, i >>> CHUNK_SHIFT, v.size - 1);
+                        appender.copy(v, i & ~MASK, i);
+                    }
+                } else if (appender != null) {
+                    appender.add(e);
+                }
+            }
+            if (appender == null) {
+                return false;
+            }
+            view = appender.view();
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Copies a chunk, and the spine, only when the operator returns a different element for one
+     * of its slots.
+     */
+    @Override
+    public void replaceAll(UnaryOperator<E> operator) {
+        lock.lock();
+        try {
+            View v = view;
+            Object[][] chunks = v.chunks;
+            for (int k = 0, start = 0; start < v.size; k++, start += CHUNK) {
+                Object[] chunk = chunks[k];
+                boolean copied = false;
+                int end = Math.min(CHUNK, v.size - start);
+                for (int i = 0; i < end; i++) {
+                    Object replacement = operator.apply(cast(chunk[i]));
+                    if (replacement == chunk[i]) {
+                        continue;
+                    }
+                    if (!copied) {
+                        if (chunks == v.chunks) {
+                            chunks = chunks.clone();
+                        }
+                        chunk = chunk.clone();
+                        chunks[k] = chunk;
+                        copied = true;
+                    }
+                    chunk[i] = replacement;
+                }
+            }
+            if (chunks != v.chunks) {
+                view = new View(chunks, v.size);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public void sort(Comparator<? super E> c) {
+        lock.lock();
+        try {
+            View v = view;
+            Object[] array = copyRange(v, 0, v.size);
+            Arrays.sort(array, (Comparator<Object>) c);
+            Appender appender = new Appender(v, 0, v.size);
+            for (Object e : array) {
+                appender.add(e);
+            }
+            view = appender.view();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void clear() {
+        lock.lock();
+        try {
+            view = EMPTY;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // =========================================================================
+    @SuppressWarnings("unchecked")
+    private static <E> E cast(Object element) {
+        return (E) element;
+    }
+
+    private static Object[] copyRange(View v, int from, int to) {
+        Object[] array = new Object[to - from];
+        int i = from;
+        while (i < to) {
+            int offset = i & MASK;
+            int length = Math.min(CHUNK - offset, to - i);
+            System.arraycopy(v.chunks[i >>> CHUNK_SHIFT], offset, array, i - from, length);
+            i += length;
+        }
+        return array;
+    }
+
+    /**
+     * Writer-side builder of the next snapshot. Writes only go to slots past the size of every
+     * published snapshot that shares the spine or chunk, and a chunk that snapshots can see is
+     * replaced on a copy of the spine, never on the shared one.
+     */
+    private static final class Appender {
+        private Object[][] chunks;
+        private int size;
+        private boolean ownsSpine;
+        private final int expectedSize;
+
+        /**
+         * Appends after the contents of a snapshot, reusing its spine and chunks.
+         */
+        Appender(View v) {
+            this.chunks = v.chunks;
+            this.size = v.size;
+            this.expectedSize = 0;
+        }
+
+        /**
+         * Starts a new spine that shares the first chunks of a snapshot, for writes that
+         * rearrange everything after them.
+         */
+        Appender(View v, int keptChunks, int expectedSize) {
+            int spine = Math.max(keptChunks, (expectedSize + MASK) >>> CHUNK_SHIFT);
+            this.chunks = new Object[spine][];
+            System.arraycopy(v.chunks, 0, chunks, 0, keptChunks);
+            this.size = keptChunks << CHUNK_SHIFT;
+            this.ownsSpine = true;
+            this.expectedSize = expectedSize;
+        }
+
+        void add(Object e) {
+            int k = size >>> CHUNK_SHIFT;
+            int offset = size & MASK;
+            if (k == chunks.length) {
+                chunks = Arrays.copyOf(chunks, k + Math.max(1, k >> 1));
+                ownsSpine = true;
+            }
+            Object[] chunk = chunks[k];
+            if (chunk == null) {
+                chunk = new Object[k == 0 ? Math.min(CHUNK, Math.max(FIRST_CHUNK, expectedSize)) : CHUNK];
+                chunks[k] = chunk;
+            } else if (offset == chunk.length) {
+                // Only the first chunk can be short
+                chunk = Arrays.copyOf(chunk, Math.min(CHUNK, offset + (offset >> 1)));
+                if (!ownsSpine) {
+                    chunks = chunks.clone();
+                    ownsSpine = true;
+                }
+                chunks[k] = chunk;
+            }
+            chunk[offset] = e;
+            size++;
+        }
+
+        void copy(View v, int from, int to) {
+            for (int i = from; i < to; i++) {
+                add(v.get(i));
+            }
+        }
+
+        View view() {
+            return new View(chunks, size);
+        }
+    }
+
+    /**
+     * Read-only list iterator over a snapshot.
+     */
+    private static final class SnapshotIterator<E> implements ListIterator<E> {
+        private final View view;
+        private int cursor;
+
+        SnapshotIterator(View view, int cursor) {
+            this.view = view;
+            this.cursor = cursor;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return cursor < view.size;
+        }
+
+        @Override
+        public E next() {
+            if (cursor >= view.size) {
+                throw new NoSuchElementException();
+            }
+            return cast(view.get(cursor++));
+        }
+
+        @Override
+        public boolean hasPrevious() {
+            return cursor > 0;
+        }
+
+        @Override
+        public E previous() {
+            if (cursor <= 0) {
+                throw new NoSuchElementException();
+            }
+            return cast(view.get(--cursor));
+        }
+
+        @Override
+        public int nextIndex() {
+            return cursor;
+        }
+
+        @Override
+        public int previousIndex() {
+            return cursor - 1;
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException("Snapshot iterators are read-only");
+        }
+
+        @Override
+        public void set(E e) {
+            throw new UnsupportedOperationException("Snapshot iterators are read-only");
+        }
+
+        @Override
+        public void add(E e) {
+            throw new UnsupportedOperationException("Snapshot iterators are read-only");
+        }
+    }
+
+    /**
+     * Spliterator over a range of a snapshot, split in halves on chunk boundaries where possible.
+     */
+    private static final class SnapshotSpliterator<E> implements Spliterator<E> {
+        private final View view;
+        private int index;
+        private final int fence;
+
+        SnapshotSpliterator(View view, int origin, int fence) {
+            this.view = view;
+            this.index = origin;
+            this.fence = fence;
+        }
+
+        @Override
+        public Spliterator<E> trySplit() {
+            int mid = (index + fence) >>> 1;
+            if ((mid & ~MASK) > index) {
+                mid &= ~MASK;
+            }
+            if (mid <= index) {
+                return null;
+            }
+            Spliterator<E> prefix = new SnapshotSpliterator<>(view, index, mid);
+            index = mid;
+            return prefix;
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super E> action) {
+            if (index >= fence) {
+                return false;
+            }
+            action.accept(cast(view.get(index++)));
+            return true;
+        }
+
+        @Override
+        public void forEachRemaining(Consumer<? super E> action) {
+            int i = index;
+            index = fence;
+            while (i < fence) {
+                Object[] chunk = view.chunks[i >>> CHUNK_SHIFT];
+                int end = Math.min(CHUNK, (i & MASK) + fence - i);
+                for (int offset = i & MASK; offset < end; offset++) {
+                    action.accept(cast(chunk[offset]));
+                }
+                i = ((i >>> CHUNK_SHIFT) + 1) << CHUNK_SHIFT;
+            }
+        }
+
+        @Override
+        public long estimateSize() {
+            return fence - index;
+        }
+
+        @Override
+        public int characteristics() {
+            return ORDERED | SIZED | SUBSIZED | IMMUTABLE;
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package Java.util;
+
+import Java.main.Entity;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Variable-size binary encoding of an entity, used by {@link EntitySnapshot} to write and read
+ * snapshots. Unlike {@link EntityLayout} the encoding includes the entity's ID, so a codec can
+ * restore an entity on its own.
+ *
+ * <p>Implementations must use relative {@link ByteBuffer} accessors, so that the position moves
+ * past the encoded bytes. An entity that does not fit in the remaining space may simply let the
+ * buffer throw {@link java.nio.BufferOverflowException}; the writer then retries in a fresh block.</p>
+ *
+ * @param <T> the type of entities encoded
+ */
+public interface SnapshotCodec<T extends Entity> {
+
+    /**
+     * Writes the entity at the buffer's position.
+     * @param entity - the entity to write, never null
+     * @param buffer - the buffer to write to
+     */
+    void encode(T entity, ByteBuffer buffer);
+
+    /**
+     * Reads an entity from the buffer's position.
+     * @param buffer - the buffer to read from
+     * @return the entity
+     */
+    T decode(ByteBuffer buffer);
+
+    /**
+     * Writes a string as its UTF-8 length followed by its UTF-8 bytes, for use by codecs.
+     * @param buffer - the buffer to write to
+     * @param value - the string to write
+     */
+    static void putString(ByteBuffer buffer, String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        buffer.putInt(bytes.length);
+        buffer.put(bytes);
+    }
+
+    /**
+     * Reads a string written by {@link #putString(ByteBuffer, String)}.
+     * @param buffer - the buffer to read from
+     * @return the string
+     */
+    static String getString(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.getInt()];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
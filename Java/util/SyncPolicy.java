@@ -0,0 +1,27 @@
+package Java.util;
+
+/**
+ * When a {@link Util_DurableMap} forces its write-ahead log to disk.
+ *
+ * <p>Records are always written by a background thread in batches (group commit); the policy
+ * only decides when the batched writes are followed by an fsync and whether writers wait for it.</p>
+ */
+public enum SyncPolicy {
+    /**
+     * Every write returns only once its record has been synced. Concurrent writers share one
+     * fsync, so throughput scales with the number of writers, but each write waits for a disk sync.
+     */
+    ALWAYS,
+
+    /**
+     * Writes return as soon as the record is queued and the log is synced on a fixed interval.
+     * A crash loses at most the writes of the last interval.
+     */
+    INTERVAL,
+
+    /**
+     * Writes return as soon as the record is queued and syncing is left to the operating system.
+     * Survives a process crash but not a power failure.
+     */
+    NEVER
+}
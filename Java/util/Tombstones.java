@@ -0,0 +1,111 @@
+package Java.util;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The positions of the elements that {@link Util_List} has removed in order-preserving mode
+ * but not yet dropped from its backing list.
+ *
+ * <p>A removed element stays in its slot and its position is marked in a bitset, so a removal
+ * does not shift the rest of the array. Readers skip the marked positions and never change the
+ * list; the next write that needs exact positions drops them all in one pass with
+ * {@link #compact(List)}. Translating between positions in the backing list and in the list
+ * the caller sees counts bits a word at a time, so it costs O(n/64).</p>
+ */
+final class Tombstones {
+    private static final long[] EMPTY = new long[0];
+
+    private long[] words = EMPTY;
+    private int count;
+
+    /**
+     * Returns how many positions are marked.
+     */
+    int count() {
+        return count;
+    }
+
+    /**
+     * Checks if a position of the backing list holds a removed element.
+     * @param position - the position in the backing list
+     */
+    boolean contains(int position) {
+        int word = position >>> 6;
+        return word < words.length && (words[word] & 1L << position) != 0;
+    }
+
+    /**
+     * Marks a position of the backing list as removed.
+     * @param position - the position in the backing list, not marked yet
+     */
+    void add(int position) {
+        int word = position >>> 6;
+        if (word >= words.length) {
+            words = Arrays.copyOf(words, Math.max(word + 1, words.length * 2));
+        }
+        words[word] |= 1L << position;
+        count++;
+    }
+
+    /**
+     * Returns the position in the caller's view of the element at a backing list position,
+     * which is the number of live elements before it.
+     * @param position - the position in the backing list
+     */
+    int rank(int position) {
+        int dead = 0;
+        int word = position >>> 6;
+        int end = Math.min(word, words.length);
+        for (int i = 0; i < end; i++) {
+            dead += Long.bitCount(words[i]);
+        }
+        if (word < words.length) {
+            dead += Long.bitCount(words[word] & ((1L << position) - 1));
+        }
+        return position - dead;
+    }
+
+    /**
+     * Returns the backing list position of the live element at a position of the caller's view.
+     * @param index - the position in the caller's view, which must exist
+     */
+    int select(int index) {
+        for (int i = 0; ; i++) {
+            long live = i < words.length ? ~words[i] : -1L;
+            int bits = Long.bitCount(live);
+            if (index < bits) {
+                for (; index > 0; index--) {
+                    live &= live - 1;
+                }
+                return (i << 6) + Long.numberOfTrailingZeros(live);
+            }
+            index -= bits;
+        }
+    }
+
+    /**
+     * Drops the elements at the marked positions from the list in one pass, keeping the order
+     * of the others, and clears the marks.
+     * @param list - the backing list
+     */
+    <T> void compact(List<T> list) {
+        int size = list.size();
+        int write = 0;
+        for (int read = 0; read < size; read++) {
+            if (!contains(read)) {
+                if (write != read) {
+                    list.set(write, list.get(read));
+                }
+                write++;
+            }
+        }
+        list.subList(write, size).clear();
+        clear();
+    }
+
+    void clear() {
+        words = EMPTY;
+        count = 0;
+    }
+}
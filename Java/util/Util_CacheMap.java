@@ -0,0 +1,423 @@
+package Java.util;
+
+import Java.main.Entity;
+import Java.util.cache.CacheStats;
+import Java.util.cache.EvictionPolicy;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+
+/**
+ * Size-bounded, thread-safe cache with the {@link Util_Map} API, with pluggable eviction
+ * ({@link Java.util.cache.LruPolicy}, {@link Java.util.cache.TinyLfuPolicy}), an optional
+ * time-to-live and hit/miss/eviction statistics.
+ *
+ * <p>{@link #computeIfAbsent(Object, Function)} runs the loader outside the cache lock and at
+ * most once per key at a time: concurrent callers for a key that is being loaded wait for that
+ * load instead of starting their own. A loader that throws or returns null caches nothing, and a
+ * loader must not ask for its own key.</p>
+ *
+ * <p>Entries expire lazily: an expired entry is dropped when it is next looked up, or by
+ * {@link #cleanUp()}.</p>
+ *
+ * @param <T> the type of entities in the cache
+ */
+public class Util_CacheMap<T extends Entity> {
+    private final Map<Object, Node<T>> entities = new HashMap<>();
+    private final Map<Object, Load<T>> loading = new ConcurrentHashMap<>();
+    private final ReentrantLock lock = new ReentrantLock();
+    private final EvictionPolicy policy;
+    private final long timeToLiveNanos;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder loadSuccesses = new LongAdder();
+    private final LongAdder loadFailures = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder expirations = new LongAdder();
+
+    private static final class Node<T> {
+        final T value;
+        final long writeTime;
+
+        Node(T value, long writeTime) {
+            this.value = value;
+            this.writeTime = writeTime;
+        }
+    }
+
+    /**
+     * A load in progress, which remembers the thread running the loader so that a loader asking
+     * for its own key fails instead of waiting for itself.
+     */
+    private static final class Load<T> extends CompletableFuture<T> {
+        final Thread loader = Thread.currentThread();
+    }
+
+    /**
+     * Creates a cache whose entries never expire.
+     * @param policy - the eviction policy, which also sets the maximum size
+     */
+    public Util_CacheMap(EvictionPolicy policy) {
+        this(policy, null);
+    }
+
+    /**
+     * Creates a cache whose entries expire a fixed time after they were written.
+     * @param policy - the eviction policy, which also sets the maximum size
+     * @param timeToLive - how long an entry stays valid after it was written, or null for no expiry
+     */
+    public Util_CacheMap(EvictionPolicy policy, Duration timeToLive) {
+        if (timeToLive != null && (timeToLive.isNegative() || timeToLive.isZero())) {
+            throw new IllegalArgumentException("Time to live must be positive: " + timeToLive);
+        }
+        this.policy = policy;
+        this.timeToLiveNanos = timeToLive == null ? Long.MAX_VALUE : timeToLive.toNanos();
+    }
+
+    // =========================================================================
+    /**
+     * Adds an entity to the cache, evicting another one if the cache is full.
+     * @param id - the ID of the entity
+     * @param entity - the entity to add
+     */
+    public void addEntity(Object id, T entity) {
+        put(id, entity);
+    }
+
+    /**
+     * Adds or replaces an entity, evicting another one if the cache is full.
+     * @param id - the ID of the entity
+     * @param entity - the entity to add or replace
+     * @return the previous live value associated with the key, or null if there was none
+     */
+    public T put(Object id, T entity) {
+        if (entity == null) {
+            throw new NullPointerException("entity");
+        }
+        lock.lock();
+        try {
+            // The policy goes first, so that if it throws the cache and the policy still agree
+            Node<T> node = new Node<>(entity, System.nanoTime());
+            Node<T> previous = entities.get(id);
+            if (previous == null) {
+                Object victim = policy.recordInsert(id);
+                entities.put(id, node);
+                evict(victim);
+                return null;
+            }
+            policy.recordAccess(id);
+            entities.put(id, node);
+            return isExpired(previous, System.nanoTime()) ? null : previous.value;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Adds an entity only if the key has no live value.
+     * @param id - the ID of the entity
+     * @param entity - the entity to add if absent
+     * @return the current live value associated with the key, or null if the entity was added
+     */
+    public T putIfAbsent(Object id, T entity) {
+        lock.lock();
+        try {
+            T current = peek(id);
+            if (current == null) {
+                put(id, entity);
+            }
+            return current;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // =========================================================================
+    /**
+     * Finds a live entity by its ID and records the hit or miss.
+     * @param key - the ID of the entity to find
+     * @return - the entity if found and not expired, or null otherwise
+     */
+    public T getValueByKey(Object key) {
+        lock.lock();
+        try {
+            Node<T> node = entities.get(key);
+            if (node != null && isExpired(node, System.nanoTime())) {
+                expire(key);
+                node = null;
+            }
+            if (node == null) {
+                misses.increment();
+                policy.recordMiss(key);
+                return null;
+            }
+            hits.increment();
+            policy.recordAccess(key);
+            return node.value;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the live value for the key, or defaultValue if there is none.
+     * @param key - the ID of the entity to find
+     * @param defaultValue - the default value to return if the key is not found
+     * @return the entity if found, or defaultValue if not found
+     */
+    public T getOrDefault(Object key, T defaultValue) {
+        T entity = getValueByKey(key);
+        return entity != null ? entity : defaultValue;
+    }
+
+    /**
+     * Checks if the cache holds a live value for the key, without counting a hit or miss.
+     * @param id - the ID of the entity to check
+     * @return - true if the cache contains the entity, false otherwise
+     */
+    public boolean containsKey(Object id) {
+        lock.lock();
+        try {
+            Node<T> node = entities.get(id);
+            return node != null && !isExpired(node, System.nanoTime());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the live value for the key, loading it with the mapping function on a miss.
+     * Concurrent calls for the same key share a single load.
+     * @param key - the ID of the entity to compute
+     * @param mappingFunction - the loader, called outside the cache lock
+     * @return the current (existing or loaded) value, or null if the loader returned null
+     * @throws IllegalStateException if called from the loader of the same key, which would wait for itself
+     * @throws RuntimeException whatever the loader threw; nothing is cached in that case
+     */
+    public T computeIfAbsent(Object key, Function<? super Object, ? extends T> mappingFunction) {
+        T current = getValueByKey(key);
+        if (current != null) {
+            return current;
+        }
+        Load<T> load = new Load<>();
+        Load<T> inFlight = loading.putIfAbsent(key, load);
+        if (inFlight != null) {
+            if (inFlight.loader == Thread.currentThread()) {
+                throw new IllegalStateException("Recursive load of key: " + key);
+            }
+            return await(inFlight);
+        }
+        try {
+            T loaded = peek(key);
+            if (loaded != null) {
+                load.complete(loaded);
+                return loaded;
+            }
+            T entity = mappingFunction.apply(key);
+            if (entity != null) {
+                put(key, entity);
+                loadSuccesses.increment();
+            }
+            load.complete(entity);
+            return entity;
+        } catch (RuntimeException | Error e) {
+            loadFailures.increment();
+            load.completeExceptionally(e);
+            throw e;
+        } finally {
+            loading.remove(key, load);
+        }
+    }
+
+    // =========================================================================
+    /**
+     * Removes an entity from the cache by its ID.
+     * @param id - the ID of the entity to remove
+     * @return - the removed entity
+     * @throws NoSuchElementException if the cache holds no live value for the key
+     */
+    public T removeEntity(Object id) {
+        lock.lock();
+        try {
+            Node<T> node = entities.remove(id);
+            if (node != null) {
+                policy.recordRemoval(id);
+            }
+            if (node == null || isExpired(node, System.nanoTime())) {
+                throw new NoSuchElementException("Entity not found with ID: " + id);
+            }
+            return node.value;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Removes the entry for the key only if it is currently mapped to the value.
+     * @param key - the ID of the entity to remove
+     * @param value - the value expected to be associated with the specified key
+     * @return true if the entry was removed, false otherwise
+     */
+    public boolean remove(Object key, Object value) {
+        lock.lock();
+        try {
+            Node<T> node = entities.get(key);
+            if (node == null || isExpired(node, System.nanoTime()) || !node.value.equals(value)) {
+                return false;
+            }
+            entities.remove(key);
+            policy.recordRemoval(key);
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Clears all entities from the cache. Statistics are kept.
+     */
+    public void clear() {
+        lock.lock();
+        try {
+            entities.clear();
+            policy.clear();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Drops every expired entry now instead of waiting for it to be looked up.
+     */
+    public void cleanUp() {
+        if (timeToLiveNanos == Long.MAX_VALUE) {
+            return;
+        }
+        lock.lock();
+        try {
+            long now = System.nanoTime();
+            Iterator<Map.Entry<Object, Node<T>>> iterator = entities.entrySet().iterator();
+            while (iterator.hasNext()) {
+                Map.Entry<Object, Node<T>> entry = iterator.next();
+                if (isExpired(entry.getValue(), now)) {
+                    iterator.remove();
+                    policy.recordRemoval(entry.getKey());
+                    expirations.increment();
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // =========================================================================
+    /**
+     * Gets the number of entries, including expired ones not yet dropped.
+     * @return - the number of entities in the cache
+     */
+    public int size() {
+        lock.lock();
+        try {
+            return entities.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Checks if the cache is empty.
+     * @return - true if the cache is empty, otherwise false
+     */
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    /**
+     * Returns the maximum number of entries, as set by the eviction policy.
+     * @return - the maximum size
+     */
+    public long maximumSize() {
+        return policy.maximumSize();
+    }
+
+    /**
+     * Returns a snapshot of the cache statistics.
+     * @return the current counters
+     */
+    public CacheStats stats() {
+        return new CacheStats(hits.sum(), misses.sum(), loadSuccesses.sum(), loadFailures.sum(),
+                evictions.sum(), expirations.sum());
+    }
+
+    /**
+     * Prints all live entities in the cache.
+     */
+    public void printEntities() {
+        lock.lock();
+        try (ExportWriter out = ExportWriter.toStandardOut()) {
+            long now = System.nanoTime();
+            entities.values().forEach(node -> {
+                if (!isExpired(node, now)) {
+                    out.append(String.valueOf(node.value)).line();
+                }
+            });
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // =========================================================================
+    /**
+     * Returns the live value for the key without touching statistics or the policy.
+     */
+    private T peek(Object key) {
+        lock.lock();
+        try {
+            Node<T> node = entities.get(key);
+            return node == null || isExpired(node, System.nanoTime()) ? null : node.value;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private boolean isExpired(Node<T> node, long now) {
+        return now - node.writeTime >= timeToLiveNanos;
+    }
+
+    private void expire(Object key) {
+        entities.remove(key);
+        policy.recordRemoval(key);
+        expirations.increment();
+    }
+
+    private void evict(Object victim) {
+        if (victim != null) {
+            entities.remove(victim);
+            evictions.increment();
+        }
+    }
+
+    private static <T> T await(CompletableFuture<T> load) {
+        try {
+            return load.join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw e;
+        }
+    }
+}
@@ -0,0 +1,414 @@
+package Java.util;
+
+import Java.main.Entity;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.function.ToDoubleFunction;
+import java.util.function.ToLongFunction;
+import java.util.function.UnaryOperator;
+
+/**
+ * Thread-safe {@link Util_List} whose readers never lock and never see a half-applied write.
+ *
+ * <p>Reads such as {@code filterEntities}, {@code mapEntities}, {@code getEntityById} and the
+ * loop methods work on an immutable snapshot of the backing array and never throw
+ * {@link java.util.ConcurrentModificationException}. The backing array is split into chunks:
+ * appends publish a new snapshot without copying anything, {@code setEntity} copies one chunk,
+ * and removals copy the chunks from the removed position on. See {@link SnapshotArrayList}.</p>
+ *
+ * <p>With the ID index enabled, each lookup of an ID answers from the state before or after a
+ * concurrent write, never from a mix. Bulk writes build a new index and publish it in one step,
+ * and replacing an entity with one of the same ID swaps its index slot in one step.</p>
+ *
+ * <p>All writes, including the index-based {@code compute*} and {@code merge} methods, run
+ * under a single writer lock and are atomic; their functions are called while it is held.
+ * {@link #subList(int, int)} returns an immutable copy and list iterators are read-only.
+ * Queries over attribute indexes are the exception to lock-free reads: they take the writer
+ * lock, since the indexes are updated in place.</p>
+ *
+ * <p>Observers and subscriptions hear about a write after the writer lock is released, so a
+ * listener may query the list even while a writer waits for room in its buffer. The changes of
+ * all writers pass through one queue in the order the writes were applied, and are handed over
+ * by one writer at a time.</p>
+ *
+ * @param <T> the type of entities in the list
+ */
+public class Util_ConcurrentList<T extends Entity> extends Util_List<T> {
+    private final SnapshotArrayList<T> entities;
+    private final ReentrantLock lock;
+    private final ReentrantLock publishLock = new ReentrantLock();
+    private final Queue<Runnable> outbox = new ConcurrentLinkedQueue<>();
+    private final Map<ChangeObserver<T>, ChangeObserver<T>> deferred = new HashMap<>();
+
+    public Util_ConcurrentList() {
+        this(new SnapshotArrayList<>());
+    }
+
+    /**
+     * Creates a list sized to hold the given number of entities without copying its array.
+     * @param expectedSize - the number of entities the list is expected to hold
+     */
+    public Util_ConcurrentList(int expectedSize) {
+        this(new SnapshotArrayList<>());
+        ensureCapacity(expectedSize);
+    }
+
+    private Util_ConcurrentList(SnapshotArrayList<T> entities) {
+        super(entities);
+        this.entities = entities;
+        this.lock = entities.writeLock();
+    }
+
+    @Override
+    IdIndex<T> newIdIndex() {
+        return new IdIndex<>(new ConcurrentHashMap<>());
+    }
+
+    @Override
+    public T getEntityByIndex(int index) {
+        return entities.getOrNull(index);
+    }
+
+    // =========================================================================
+    @Override
+    public void addEntity(T entity) {
+        lock.lock();
+        try {
+            super.addEntity(entity);
+        } finally {
+            unlock();
+        }
+    }
+
+    @Override
+    public void addAllEntities(List<T> otherEntities) {
+        lock.lock();
+        try {
+            super.addAllEntities(otherEntities);
+        } finally {
+            unlock();
+        }
+    }
+
+    @Override
+    public void setEntity(int index, T entity) {
+        lock.lock();
+        try {
+            super.setEntity(index, entity);
+        } finally {
+            unlock();
+        }
+    }
+
+    @Override
+    public void replaceAllEntities(UnaryOperator<T> operator) {
+        lock.lock();
+        try {
+            super.replaceAllEntities(operator);
+        } finally {
+            unlock();
+        }
+    }
+
+    @Override
+    public void enableIdIndex() {
+        lock.lock();
+        try {
+            super.enableIdIndex();
+        } finally {
+            unlock();
+        }
+    }
+
+    @Override
+    public void disableIdIndex() {
+        lock.lock();
+        try {
+            super.disableIdIndex();
+        } finally {
+            unlock();
+        }
+    }
+
+    @Override
+    public void createHashIndex(String name, Function<? super T, ?> extractor) {
+        lock.lock();
+        try {
+            super.createHashIndex(name, extractor);
+        } finally {
+            unlock();
+        }
+    }
+
+    @Override
+    public void createSortedIndex(String name, Function<? super T, ? extends Comparable<?>> extractor) {
+        lock.lock();
+        try {
+            super.createSortedIndex(name, extractor);
+        } finally {
+            unlock();
+        }
+    }
+
+    @Override
+    public boolean dropIndex(String name) {
+        lock.lock();
+        try {
+            return super.dropIndex(name);
+        } finally {
+            unlock();
+        }
+    }
+
+    /**
+     * Runs an index query under the writer lock, since attribute indexes are updated in place.
+     */
+    @Override
+    List<T> runQuery(IndexQuery<T> query) {
+        lock.lock();
+        try {
+            return super.runQuery(query);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Runs lazy queries over a snapshot of the current contents, so that a query sees one
+     * consistent version of the list however long it runs.
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    List<T> querySource() {
+        return (List<T>) (List<?>) Arrays.asList(toArray());
+    }
+
+    /**
+     * Not supported: the reverse index marks removed entities in a bitset beside the array, which
+     * lock-free readers could not see consistently with the array they read.
+     * @throws UnsupportedOperationException always
+     */
+    @Override
+    public void enableValueIndex(boolean preserveOrder) {
+        throw new UnsupportedOperationException("Value index is not supported by Util_ConcurrentList");
+    }
+
+    /**
+     * Not supported: columns are rebuilt in place by the column operations, which read under no
+     * lock here and would race with each other and with writers.
+     * @throws UnsupportedOperationException always
+     */
+    @Override
+    public void addLongColumn(String name, ToLongFunction<? super T> extractor) {
+        throw new UnsupportedOperationException("Columns are not supported by Util_ConcurrentList");
+    }
+
+    /**
+     * Not supported, see {@link #addLongColumn(String, ToLongFunction)}.
+     * @throws UnsupportedOperationException always
+     */
+    @Override
+    public void addDoubleColumn(String name, ToDoubleFunction<? super T> extractor) {
+        throw new UnsupportedOperationException("Columns are not supported by Util_ConcurrentList");
+    }
+
+    /**
+     * Not supported, see {@link #addLongColumn(String, ToLongFunction)}.
+     * @throws UnsupportedOperationException always
+     */
+    @Override
+    public void addStringColumn(String name, Function<? super T, String> extractor) {
+        throw new UnsupportedOperationException("Columns are not supported by Util_ConcurrentList");
+    }
+
+    @Override
+    public boolean removeEntity(T entity) {
+        lock.lock();
+        try {
+            return super.removeEntity(entity);
+        } finally {
+            unlock();
+        }
+    }
+
+    @Override
+    public T removeEntity(int index) {
+        lock.lock();
+        try {
+            return super.removeEntity(index);
+        } finally {
+            unlock();
+        }
+    }
+
+    @Override
+    public boolean removeAllEntities(Collection<?> c) {
+        lock.lock();
+        try {
+            return super.removeAllEntities(c);
+        } finally {
+            unlock();
+        }
+    }
+
+    @Override
+    public boolean retainAllEntities(Collection<?> c) {
+        lock.lock();
+        try {
+            return super.retainAllEntities(c);
+        } finally {
+            unlock();
+        }
+    }
+
+    @Override
+    public boolean removeEntitiesIf(Predicate<? super T> filter) {
+        lock.lock();
+        try {
+            return super.removeEntitiesIf(filter);
+        } finally {
+            unlock();
+        }
+    }
+
+    @Override
+    public void clear() {
+        lock.lock();
+        try {
+            super.clear();
+        } finally {
+            unlock();
+        }
+    }
+
+    @Override
+    public void sortEntities(Comparator<? super T> comparator) {
+        lock.lock();
+        try {
+            super.sortEntities(comparator);
+        } finally {
+            unlock();
+        }
+    }
+
+    // =========================================================================
+    @Override
+    public T computeIfAbsent(int index, Function<? super Integer, ? extends T> mappingFunction) {
+        lock.lock();
+        try {
+            return super.computeIfAbsent(index, mappingFunction);
+        } finally {
+            unlock();
+        }
+    }
+
+    @Override
+    public T computeIfPresent(int index, BiFunction<? super Integer, ? super T, ? extends T> remappingFunction) {
+        lock.lock();
+        try {
+            return super.computeIfPresent(index, remappingFunction);
+        } finally {
+            unlock();
+        }
+    }
+
+    @Override
+    public T compute(int index, BiFunction<? super Integer, ? super T, ? extends T> remappingFunction) {
+        lock.lock();
+        try {
+            return super.compute(index, remappingFunction);
+        } finally {
+            unlock();
+        }
+    }
+
+    @Override
+    public T merge(int index, T value, BiFunction<? super T, ? super T, ? extends T> remappingFunction) {
+        lock.lock();
+        try {
+            return super.merge(index, value, remappingFunction);
+        } finally {
+            unlock();
+        }
+    }
+
+    // =========================================================================
+    /**
+     * Registers an observer whose changes are queued under the writer lock and handed over
+     * by {@link #unlock()}.
+     */
+    @Override
+    synchronized void addObserver(ChangeObserver<T> observer) {
+        ChangeObserver<T> queued = new QueuedObserver(observer);
+        deferred.put(observer, queued);
+        super.addObserver(queued);
+    }
+
+    @Override
+    synchronized void removeObserver(ChangeObserver<T> observer) {
+        ChangeObserver<T> queued = deferred.remove(observer);
+        if (queued != null) {
+            super.removeObserver(queued);
+        }
+    }
+
+    /**
+     * Releases the writer lock and, when this was the outermost hold, hands the queued changes
+     * to the observers. The writer lock is released first, so a listener that reads or queries
+     * the list while its buffer is full cannot deadlock with the writer waiting for it; the
+     * publish lock keeps a single thread draining the queue, so changes stay in write order.
+     */
+    private void unlock() {
+        boolean outermost = lock.getHoldCount() == 1;
+        lock.unlock();
+        if (!outermost || outbox.isEmpty()) {
+            return;
+        }
+        publishLock.lock();
+        try {
+            Runnable change;
+            while ((change = outbox.poll()) != null) {
+                change.run();
+            }
+        } finally {
+            publishLock.unlock();
+        }
+    }
+
+    /**
+     * Queues the changes reported to an observer while the writer lock is held.
+     */
+    private final class QueuedObserver implements ChangeObserver<T> {
+        private final ChangeObserver<T> target;
+
+        QueuedObserver(ChangeObserver<T> target) {
+            this.target = target;
+        }
+
+        @Override
+        public void changed(Object key, T previous, T current) {
+            outbox.add(() -> target.changed(key, previous, current));
+        }
+
+        @Override
+        public void changedAll(List<ChangeEvent<T>> changes) {
+            outbox.add(() -> target.changedAll(changes));
+        }
+
+        @Override
+        public void cleared() {
+            outbox.add(target::cleared);
+        }
+    }
+}
@@ -0,0 +1,288 @@
+package Java.util;
+
+import Java.main.Entity;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Thread-safe {@link Util_Map} backed by a {@link ConcurrentHashMap}.
+ *
+ * <p>Reads never block. Writes lock only the hash bin they touch, so writers on different
+ * keys proceed in parallel. {@code putIfAbsent}, {@code replace}, {@code remove(key, value)},
+ * the {@code compute*} methods and {@code merge} are atomic; the mapping function of a
+ * {@code compute*} or {@code merge} call runs at most once, while its bin is locked, so it
+ * should be short and must not modify this map.</p>
+ *
+ * <p>Observers and subscriptions hear about a change from inside the atomic update of its key,
+ * so the changes of each key reach them in the order they were applied. A subscription whose
+ * buffer is full therefore holds the writer inside the update; its listener may read the map
+ * but should not write to it from another thread.</p>
+ *
+ * <p>{@link #computeIfAbsentAsync(Object, Function, Executor)} and
+ * {@link #getAllAsync(Collection, Function, Executor)} load misses on another thread and store
+ * the results from there, so they are offered only by this thread-safe map.</p>
+ *
+ * <p>Iteration is weakly consistent: the loop and print methods never throw
+ * {@link java.util.ConcurrentModificationException} and see each entry at most once.
+ * Unlike {@link Util_Map}, neither keys nor values may be null.</p>
+ *
+ * @param <T> the type of entities in the map
+ */
+public class Util_ConcurrentMap<T extends Entity> extends Util_Map<T> {
+    private final ConcurrentHashMap<Object, T> entities;
+    private final Map<Object, CompletableFuture<T>> loading = new ConcurrentHashMap<>();
+
+    public Util_ConcurrentMap() {
+        this(new ConcurrentHashMap<>());
+    }
+
+    /**
+     * Creates a map sized to hold the given number of entities without resizing.
+     * @param initialCapacity - the expected number of entities
+     */
+    public Util_ConcurrentMap(int initialCapacity) {
+        this(new ConcurrentHashMap<>(initialCapacity));
+    }
+
+    private Util_ConcurrentMap(ConcurrentHashMap<Object, T> entities) {
+        super(entities);
+        this.entities = entities;
+    }
+
+    @Override
+    boolean allowsConcurrentWrites() {
+        return true;
+    }
+
+    /**
+     * Replaces the value inside the atomic update of the key, so the change reports the value
+     * that was actually replaced and reaches observers while the key is locked.
+     */
+    @Override
+    boolean replaceMapping(Object id, T oldEntity, T newEntity) {
+        if (!isTracked()) {
+            return super.replaceMapping(id, oldEntity, newEntity);
+        }
+        Objects.requireNonNull(oldEntity, "oldEntity");
+        Objects.requireNonNull(newEntity, "newEntity");
+        Witness<T> witness = new Witness<>();
+        entities.computeIfPresent(id, (k, previous) -> {
+            if (!previous.equals(oldEntity)) {
+                return previous;
+            }
+            witness.called = true;
+            changed(k, previous, newEntity);
+            return newEntity;
+        });
+        return witness.called;
+    }
+
+    /**
+     * Removes the entry inside the atomic update of the key, like
+     * {@link #replaceMapping(Object, Entity, Entity)}.
+     */
+    @Override
+    boolean removeMapping(Object key, Object value) {
+        if (!isTracked() || value == null) {
+            return super.removeMapping(key, value);
+        }
+        Witness<T> witness = new Witness<>();
+        entities.computeIfPresent(key, (k, previous) -> {
+            if (!previous.equals(value)) {
+                return previous;
+            }
+            witness.called = true;
+            changed(k, previous, null);
+            return null;
+        });
+        return witness.called;
+    }
+
+    /**
+     * Not supported: the value index is updated after each write and is not thread-safe.
+     * @throws UnsupportedOperationException always
+     */
+    @Override
+    public void enableValueIndex(boolean identity) {
+        throw new UnsupportedOperationException("Value index is not supported by Util_ConcurrentMap");
+    }
+
+    /**
+     * Returns the number of entities, which may exceed {@link Integer#MAX_VALUE}.
+     * The result is an estimate while concurrent updates are in progress.
+     * @return - the number of entities in the map
+     */
+    public long mappingCount() {
+        return entities.mappingCount();
+    }
+
+    // =========================================================================
+    /**
+     * Returns the value for the key, loading it asynchronously on a miss, on a virtual thread
+     * when the runtime has them. See {@link #computeIfAbsentAsync(Object, Function, Executor)}.
+     * @param key - the ID of the entity to load
+     * @param loader - the function that loads the value, which may block
+     * @return a future of the current (existing or loaded) value, or of null if the loader returned null
+     */
+    public CompletableFuture<T> computeIfAbsentAsync(Object key, Function<? super Object, ? extends T> loader) {
+        return computeIfAbsentAsync(key, loader, LoaderThreads.EXECUTOR);
+    }
+
+    /**
+     * Returns the value for the key, loading it asynchronously on a miss.
+     *
+     * <p>Unlike {@link #computeIfAbsent(Object, Function)}, the loader runs on the executor and
+     * never inside the map, so a slow load stalls neither the caller nor other keys. Concurrent
+     * calls for a key that is being loaded share that load. A loaded value is stored with
+     * {@link #putIfAbsent(Object, Entity)} before the future completes, so observers see it; if
+     * the key was mapped meanwhile, the future completes with that value instead. A load that
+     * throws completes the future exceptionally and, like one that returns null, stores nothing,
+     * so the next call loads again.</p>
+     * @param key - the ID of the entity to load
+     * @param loader - the function that loads the value, which may block
+     * @param executor - the executor to run the load on
+     * @return a future of the current (existing or loaded) value, or of null if the loader returned null
+     */
+    public CompletableFuture<T> computeIfAbsentAsync(Object key, Function<? super Object, ? extends T> loader,
+                                                     Executor executor) {
+        Objects.requireNonNull(loader, "loader");
+        T current = entities.get(key);
+        if (current != null) {
+            return CompletableFuture.completedFuture(current);
+        }
+        CompletableFuture<T> load = new CompletableFuture<>();
+        CompletableFuture<T> inFlight = loading.putIfAbsent(key, load);
+        if (inFlight != null) {
+            return inFlight.copy();
+        }
+        current = entities.get(key);
+        if (current != null) {
+            loading.remove(key, load);
+            load.complete(current);
+            return load;
+        }
+        Map<Object, CompletableFuture<T>> claimed = Collections.singletonMap(key, load);
+        submit(claimed, executor, () -> Collections.singletonMap(key, loader.apply(key)));
+        return load.copy();
+    }
+
+    /**
+     * Returns the values for the keys, loading all misses together asynchronously, on a virtual
+     * thread when the runtime has them. See {@link #getAllAsync(Collection, Function, Executor)}.
+     * @param keys - the IDs of the entities to get
+     * @param loader - the function that loads the values of a set of missing keys, which may block
+     * @return a future of the values found or loaded, by key in iteration order of the keys
+     */
+    public CompletableFuture<Map<Object, T>> getAllAsync(Collection<?> keys,
+                                                         Function<? super Set<Object>, ? extends Map<?, ? extends T>> loader) {
+        return getAllAsync(keys, loader, LoaderThreads.EXECUTOR);
+    }
+
+    /**
+     * Returns the values for the keys, loading all misses with a single asynchronous call to the
+     * loader, so a backend that can fetch many keys in one round trip is asked only once.
+     *
+     * <p>Keys that are already being loaded, by this or by
+     * {@link #computeIfAbsentAsync(Object, Function, Executor)}, join that load instead of being
+     * asked for again. Loaded values are stored and failed loads evicted as in
+     * {@code computeIfAbsentAsync}; keys the loader leaves out or maps to null store nothing and
+     * are left out of the result. If the loader throws, the returned future completes with its
+     * exception.</p>
+     * @param keys - the IDs of the entities to get
+     * @param loader - the function that loads the values of a set of missing keys, which may block
+     * @param executor - the executor to run the load on
+     * @return a future of the values found or loaded, by key in iteration order of the keys
+     */
+    public CompletableFuture<Map<Object, T>> getAllAsync(Collection<?> keys,
+                                                         Function<? super Set<Object>, ? extends Map<?, ? extends T>> loader,
+                                                         Executor executor) {
+        Objects.requireNonNull(loader, "loader");
+        Map<Object, CompletableFuture<T>> pending = new LinkedHashMap<>();
+        Map<Object, CompletableFuture<T>> claimed = new LinkedHashMap<>();
+        for (Object key : keys) {
+            if (pending.containsKey(key)) {
+                continue;
+            }
+            T current = entities.get(key);
+            if (current != null) {
+                pending.put(key, CompletableFuture.completedFuture(current));
+                continue;
+            }
+            CompletableFuture<T> load = new CompletableFuture<>();
+            CompletableFuture<T> inFlight = loading.putIfAbsent(key, load);
+            if (inFlight != null) {
+                pending.put(key, inFlight);
+            } else {
+                pending.put(key, load);
+                claimed.put(key, load);
+            }
+        }
+        if (!claimed.isEmpty()) {
+            Set<Object> missing = Collections.unmodifiableSet(claimed.keySet());
+            submit(claimed, executor, () -> loader.apply(missing));
+        }
+        return CompletableFuture.allOf(pending.values().toArray(new CompletableFuture<?>[0])).thenApply(done -> {
+            Map<Object, T> found = new LinkedHashMap<>();
+            pending.forEach((key, load) -> {
+                T entity = load.join();
+                if (entity != null) {
+                    found.put(key, entity);
+                }
+            });
+            return found;
+        });
+    }
+
+    /**
+     * Runs a load of the claimed keys on the executor, then stores the loaded values, releases
+     * the claims and completes their futures, in that order.
+     */
+    private void submit(Map<Object, CompletableFuture<T>> claimed, Executor executor,
+                        Supplier<? extends Map<?, ? extends T>> load) {
+        Runnable task = () -> {
+            Map<?, ? extends T> loaded;
+            try {
+                loaded = load.get();
+            } catch (Throwable e) {
+                failed(claimed, e);
+                return;
+            }
+            claimed.forEach((key, future) -> {
+                T entity = loaded == null ? null : loaded.get(key);
+                T current = null;
+                try {
+                    if (entity != null) {
+                        current = putIfAbsent(key, entity);
+                    }
+                } catch (Throwable e) {
+                    loading.remove(key, future);
+                    future.completeExceptionally(e);
+                    return;
+                }
+                loading.remove(key, future);
+                future.complete(current != null ? current : entity);
+            });
+        };
+        try {
+            executor.execute(task);
+        } catch (RuntimeException e) {
+            failed(claimed, e);
+        }
+    }
+
+    private void failed(Map<Object, CompletableFuture<T>> claimed, Throwable cause) {
+        claimed.forEach((key, future) -> {
+            loading.remove(key, future);
+            future.completeExceptionally(cause);
+        });
+    }
+}
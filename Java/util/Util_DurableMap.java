@@ -0,0 +1,476 @@
+package Java.util;
+
+import Java.main.Entity;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+/**
+ * {@link Util_ConcurrentMap} whose contents survive a crash: every change made through its
+ * mutating methods is recorded in a write-ahead log in a directory, and {@link #open} rebuilds
+ * the map from the latest snapshot plus the log.
+ *
+ * <p>Reads never block. Writes are serialised by a lock, which is held only while the backing
+ * map is updated and the log record is queued in memory; the record is written and synced by a
+ * background thread in batches, as set by the {@link SyncPolicy}. With {@link SyncPolicy#INTERVAL}
+ * or {@link SyncPolicy#NEVER} a write costs a few microseconds; with {@link SyncPolicy#ALWAYS}
+ * it also waits for the fsync of its batch.</p>
+ *
+ * <p>Once the current log file exceeds the compaction threshold, a background thread starts a
+ * new log file, writes a snapshot with {@link EntitySnapshot} and deletes the files it replaces.
+ * Writes continue meanwhile; the log records written after the switch are replayed over the
+ * snapshot on recovery.</p>
+ *
+ * <p>Keys must be Strings, UUIDs, Longs or Integers and values must be encodable by the
+ * codec. Changes made to an entity in place are only recorded when it is put again.</p>
+ *
+ * @param <T> the type of entities in the map
+ */
+public class Util_DurableMap<T extends Entity> extends Util_ConcurrentMap<T> {
+    /**
+     * The default sync interval of {@link SyncPolicy#INTERVAL}.
+     */
+    public static final Duration DEFAULT_SYNC_INTERVAL = Duration.ofMillis(10);
+
+    /**
+     * The default log size from which the log is compacted into a snapshot, 64 MiB.
+     */
+    public static final long DEFAULT_COMPACTION_THRESHOLD = 64L << 20;
+
+    private static final String LOG_PREFIX = "wal-";
+    private static final String LOG_SUFFIX = ".log";
+    private static final String SNAPSHOT_PREFIX = "snapshot-";
+    private static final String SNAPSHOT_SUFFIX = ".bin";
+
+    private final Path directory;
+    private final SnapshotCodec<T> codec;
+    private final SyncPolicy policy;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final ReentrantLock compactionLock = new ReentrantLock();
+    private final AtomicBoolean compactionPending = new AtomicBoolean();
+    private final ExecutorService compactor;
+    private WriteAheadLog<T> log;
+
+    private Util_DurableMap(int expectedSize, Path directory, SnapshotCodec<T> codec, SyncPolicy policy) {
+        super(expectedSize);
+        this.directory = directory;
+        this.codec = codec;
+        this.policy = policy;
+        this.compactor = Executors.newSingleThreadExecutor(task -> {
+            Thread thread = new Thread(task, "wal-compactor-" + directory.getFileName());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    // =========================================================================
+    /**
+     * Opens or creates a durable map in a directory with the default sync interval and
+     * compaction threshold, replaying its snapshot and log.
+     * @param <T> the type of entities in the map
+     * @param directory - the directory holding the snapshot and log files; created if missing
+     * @param codec - the encoding of the values
+     * @param policy - when to sync the log
+     * @return the recovered map
+     * @throws UncheckedIOException if the files cannot be read or a synced log file is corrupt
+     */
+    public static <T extends Entity> Util_DurableMap<T> open(Path directory, SnapshotCodec<T> codec, SyncPolicy policy) {
+        return open(directory, codec, policy, DEFAULT_SYNC_INTERVAL, DEFAULT_COMPACTION_THRESHOLD);
+    }
+
+    /**
+     * Opens or creates a durable map in a directory, replaying its snapshot and log.
+     * A record torn by a crash at the end of the newest log file is dropped.
+     * @param <T> the type of entities in the map
+     * @param directory - the directory holding the snapshot and log files; created if missing
+     * @param codec - the encoding of the values
+     * @param policy - when to sync the log
+     * @param syncInterval - how often {@link SyncPolicy#INTERVAL} syncs the log
+     * @param compactionThreshold - the log size in bytes from which the log is compacted
+     * @return the recovered map
+     * @throws UncheckedIOException if the files cannot be read or a synced log file is corrupt
+     */
+    public static <T extends Entity> Util_DurableMap<T> open(Path directory, SnapshotCodec<T> codec, SyncPolicy policy,
+                                                             Duration syncInterval, long compactionThreshold) {
+        if (syncInterval.isNegative() || syncInterval.isZero()) {
+            throw new IllegalArgumentException("Sync interval must be positive: " + syncInterval);
+        }
+        if (compactionThreshold <= 0) {
+            throw new IllegalArgumentException("Compaction threshold must be positive: " + compactionThreshold);
+        }
+        try {
+            Files.createDirectories(directory);
+            long snapshot = -1;
+            List<Long> logs = new ArrayList<>();
+            try (Stream<Path> files = Files.list(directory)) {
+                for (Path file : (Iterable<Path>) files::iterator) {
+                    snapshot = Math.max(snapshot, WriteAheadLog.generationOf(file, SNAPSHOT_PREFIX, SNAPSHOT_SUFFIX));
+                    long generation = WriteAheadLog.generationOf(file, LOG_PREFIX, LOG_SUFFIX);
+                    if (generation >= 0) {
+                        logs.add(generation);
+                    }
+                }
+            }
+            logs.sort(null);
+
+            Util_DurableMap<T> map = snapshot < 0
+                    ? new Util_DurableMap<>(16, directory, codec, policy)
+                    : EntitySnapshot.readMap(WriteAheadLog.snapshotFile(directory, snapshot), codec,
+                            size -> new Util_DurableMap<>(size, directory, codec, policy));
+            long generation = Math.max(snapshot, 0);
+            ChangeObserver<T> replay = map.replayTarget();
+            for (int i = 0; i < logs.size(); i++) {
+                long log = logs.get(i);
+                if (log >= generation) {
+                    WriteAheadLog.replay(WriteAheadLog.logFile(directory, log), codec, replay, i == logs.size() - 1);
+                }
+            }
+            if (!logs.isEmpty()) {
+                generation = Math.max(generation, logs.get(logs.size() - 1));
+            }
+            map.deleteBefore(Math.max(snapshot, 0));
+
+            map.log = new WriteAheadLog<>(directory, generation, codec, policy, syncInterval.toNanos(),
+                    compactionThreshold, map::requestCompaction);
+            map.addObserver(map.log);
+            return map;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot open durable map: " + directory, e);
+        }
+    }
+
+    /**
+     * Opens a durable map like {@link #open(Path, SnapshotCodec, SyncPolicy)}, replaying the
+     * snapshot and log on a background thread.
+     * @param <T> the type of entities in the map
+     * @param directory - the directory holding the snapshot and log files; created if missing
+     * @param codec - the encoding of the values
+     * @param policy - when to sync the log
+     * @return a future completed with the recovered map
+     */
+    public static <T extends Entity> CompletableFuture<Util_DurableMap<T>> openAsync(Path directory,
+                                                                                     SnapshotCodec<T> codec,
+                                                                                     SyncPolicy policy) {
+        return CompletableFuture.supplyAsync(() -> open(directory, codec, policy), task -> {
+            Thread thread = new Thread(task, "wal-recovery-" + directory.getFileName());
+            thread.setDaemon(true);
+            thread.start();
+        });
+    }
+
+    // =========================================================================
+    @Override
+    public void addEntity(Object id, T entity) {
+        EntitySnapshot.checkKey(id);
+        write(() -> {
+            stage(id, entity);
+            super.addEntity(id, entity);
+            return null;
+        });
+    }
+
+    @Override
+    public void addEntity(T entity) {
+        write(() -> {
+            stage(entity.getUuid(), entity);
+            super.addEntity(entity);
+            return null;
+        });
+    }
+
+    @Override
+    public void addAllEntities(Map<?, ? extends T> otherEntities) {
+        otherEntities.keySet().forEach(EntitySnapshot::checkKey);
+        write(() -> {
+            otherEntities.forEach(this::stage);
+            super.addAllEntities(otherEntities);
+            return null;
+        });
+    }
+
+    /**
+     * Logs the batch as contiguous records and, under {@link SyncPolicy#ALWAYS}, waits for a
+     * single sync covering all of them.
+     */
+    @Override
+    public void addEntities(Collection<? extends T> batch) {
+        write(() -> {
+            for (T entity : batch) {
+                stage(entity.getUuid(), entity);
+            }
+            super.addEntities(batch);
+            return null;
+        });
+    }
+
+    @Override
+    public T put(Object id, T entity) {
+        EntitySnapshot.checkKey(id);
+        return write(() -> super.put(id, staged(id, entity)));
+    }
+
+    @Override
+    public T putIfAbsent(Object id, T entity) {
+        EntitySnapshot.checkKey(id);
+        return write(() -> super.putIfAbsent(id, staged(id, entity)));
+    }
+
+    @Override
+    public T replace(Object id, T entity) {
+        return write(() -> super.replace(id, staged(id, entity)));
+    }
+
+    @Override
+    public boolean replace(Object id, T oldEntity, T newEntity) {
+        return write(() -> super.replace(id, oldEntity, staged(id, newEntity)));
+    }
+
+    @Override
+    public T removeEntity(Object id) {
+        return write(() -> super.removeEntity(id));
+    }
+
+    @Override
+    public boolean remove(Object key, Object value) {
+        return write(() -> super.remove(key, value));
+    }
+
+    @Override
+    public boolean removeAllKeys(Collection<?> keys) {
+        return write(() -> super.removeAllKeys(keys));
+    }
+
+    @Override
+    public boolean retainAllKeys(Collection<?> keys) {
+        return write(() -> super.retainAllKeys(keys));
+    }
+
+    @Override
+    public void clear() {
+        write(() -> {
+            super.clear();
+            return null;
+        });
+    }
+
+    @Override
+    public T computeIfAbsent(Object key, Function<? super Object, ? extends T> mappingFunction) {
+        EntitySnapshot.checkKey(key);
+        return write(() -> super.computeIfAbsent(key, k -> staged(k, mappingFunction.apply(k))));
+    }
+
+    @Override
+    public T computeIfPresent(Object key, BiFunction<? super Object, ? super T, ? extends T> remappingFunction) {
+        return write(() -> super.computeIfPresent(key, (k, v) -> staged(k, remappingFunction.apply(k, v))));
+    }
+
+    @Override
+    public T compute(Object key, BiFunction<? super Object, ? super T, ? extends T> remappingFunction) {
+        EntitySnapshot.checkKey(key);
+        return write(() -> super.compute(key, (k, v) -> staged(k, remappingFunction.apply(k, v))));
+    }
+
+    @Override
+    public T merge(Object key, T value, BiFunction<? super T, ? super T, ? extends T> remappingFunction) {
+        EntitySnapshot.checkKey(key);
+        return write(() -> super.merge(key, staged(key, value),
+                (old, v) -> staged(key, remappingFunction.apply(old, v))));
+    }
+
+    // =========================================================================
+    /**
+     * Returns the sync policy of the log.
+     * @return the sync policy
+     */
+    public SyncPolicy syncPolicy() {
+        return policy;
+    }
+
+    /**
+     * Syncs every change made so far to disk, whatever the sync policy.
+     * @throws UncheckedIOException if the log failed
+     */
+    public void sync() {
+        log.sync();
+    }
+
+    /**
+     * Compacts the log now: starts a new log file, writes a snapshot of the map and deletes the
+     * older snapshot and log files. Writes may continue while the snapshot is written.
+     * @throws UncheckedIOException if the snapshot cannot be written
+     */
+    public void compact() {
+        compactionLock.lock();
+        try {
+            long generation;
+            lock.lock();
+            try {
+                generation = log.roll();
+            } finally {
+                lock.unlock();
+            }
+            Path temporary = directory.resolve(SNAPSHOT_PREFIX + generation + ".tmp");
+            EntitySnapshot.writeMapDirect(this, temporary, codec, EntitySnapshot.DEFAULT_BLOCK_SIZE);
+            // Every change the snapshot may contain must be durable before it replaces the log
+            log.sync();
+            Files.move(temporary, WriteAheadLog.snapshotFile(directory, generation), StandardCopyOption.ATOMIC_MOVE);
+            deleteBefore(generation);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot compact durable map: " + directory, e);
+        } finally {
+            compactionLock.unlock();
+        }
+    }
+
+    /**
+     * Waits for a running compaction, then writes and syncs all pending log records and closes
+     * the log. The map stays readable; later writes throw {@link IllegalStateException}.
+     * @throws UncheckedIOException if the log failed
+     */
+    public void close() {
+        compactor.shutdown();
+        boolean interrupted = false;
+        while (true) {
+            try {
+                if (compactor.awaitTermination(1, TimeUnit.MINUTES)) {
+                    break;
+                }
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        lock.lock();
+        try {
+            log.close();
+        } finally {
+            lock.unlock();
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    // =========================================================================
+    /**
+     * Runs a mutation under the write lock, then waits for its log record as the sync policy requires.
+     * The mutation stages the values it puts before it changes the map, see {@link #stage}.
+     */
+    private <R> R write(Supplier<R> operation) {
+        if (log == null) {
+            // Still restoring the snapshot
+            return operation.get();
+        }
+        R result;
+        long sequence;
+        lock.lock();
+        try {
+            log.checkHealthy();
+            result = operation.get();
+            sequence = log.lastSequence();
+        } finally {
+            log.unstage();
+            lock.unlock();
+        }
+        if (!lock.isHeldByCurrentThread()) {
+            log.awaitDurable(sequence);
+        }
+        return result;
+    }
+
+    /**
+     * Encodes the value of a put into the log before the map is changed, so that if the codec
+     * fails or the record is too large the write throws with the map and the log unchanged.
+     */
+    private void stage(Object key, T value) {
+        if (log != null && value != null) {
+            log.stage(key, value);
+        }
+    }
+
+    private T staged(Object key, T value) {
+        stage(key, value);
+        return value;
+    }
+
+    /**
+     * Removes keys one at a time on the calling thread: the log and the subscriptions must see
+     * every change under the write lock, which the parallel removal of Util_ConcurrentMap does not hold.
+     */
+    @Override
+    boolean allowsConcurrentWrites() {
+        return false;
+    }
+
+    /**
+     * Applies replayed log records straight to the map, before the log observes it.
+     */
+    private ChangeObserver<T> replayTarget() {
+        return new ChangeObserver<T>() {
+            @Override
+            public void changed(Object key, T previous, T current) {
+                if (current != null) {
+                    Util_DurableMap.super.put(key, current);
+                } else if (containsKey(key)) {
+                    Util_DurableMap.super.removeEntity(key);
+                }
+            }
+
+            @Override
+            public void cleared() {
+                Util_DurableMap.super.clear();
+            }
+        };
+    }
+
+    private void requestCompaction() {
+        if (compactionPending.compareAndSet(false, true)) {
+            try {
+                compactor.execute(() -> {
+                    try {
+                        compact();
+                    } finally {
+                        compactionPending.set(false);
+                    }
+                });
+            } catch (RuntimeException e) {
+                // Rejected because the map is closing
+                compactionPending.set(false);
+            }
+        }
+    }
+
+    /**
+     * Deletes the snapshot and log files of generations older than the given one and, while
+     * opening, temporary snapshots left by an interrupted compaction.
+     */
+    private void deleteBefore(long generation) throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                long snapshot = WriteAheadLog.generationOf(file, SNAPSHOT_PREFIX, SNAPSHOT_SUFFIX);
+                long log = WriteAheadLog.generationOf(file, LOG_PREFIX, LOG_SUFFIX);
+                long temporary = WriteAheadLog.generationOf(file, SNAPSHOT_PREFIX, ".tmp");
+                if ((snapshot >= 0 && snapshot < generation) || (log >= 0 && log < generation)
+                        || (temporary >= 0 && this.log == null)) {
+                    Files.deleteIfExists(file);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,538 @@
+package Java.util;
+
+import Java.main.Entity;
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+import java.util.function.IntConsumer;
+import java.util.function.IntFunction;
+
+/**
+ * {@link Util_Map} counterpart for {@code int} keys that never boxes them.
+ *
+ * <p>Keys live in a {@code int[]} and values in a parallel {@code Object[]}, using open
+ * addressing with linear probing and Fibonacci hashing; removals shift the following
+ * entries back instead of leaving tombstones. Lookups, updates and the primitive
+ * {@code forEach} variants allocate nothing; the table only allocates when it grows.
+ * Key 0 marks an empty slot, so its entity is kept in a separate field.</p>
+ *
+ * <p>Values may not be null: as in {@code computeIfAbsent}, a null result means "no mapping".</p>
+ *
+ * @param <T> the type of entities in the map
+ */
+public class Util_IntMap<T extends Entity> {
+    private static final int PHI = 0x9E3779B9;
+    private static final int MIN_CAPACITY = 16;
+    private static final float LOAD_FACTOR = 0.75f;
+
+    private int[] keys;
+    private Object[] values;
+    private int shift;
+    private int size;
+    private int resizeAt;
+    private T zeroValue;
+
+    /**
+     * Function of a primitive key and its current entity.
+     * @param <T> the type of entities in the map
+     */
+    @FunctionalInterface
+    public interface IntEntityFunction<T> {
+        T apply(int key, T entity);
+    }
+
+    /**
+     * Action on a primitive key and its entity.
+     * @param <T> the type of entities in the map
+     */
+    @FunctionalInterface
+    public interface IntEntityConsumer<T> {
+        void accept(int key, T entity);
+    }
+
+    public Util_IntMap() {
+        this(MIN_CAPACITY);
+    }
+
+    /**
+     * Creates a map sized to hold the given number of entities without growing.
+     * @param expectedSize - the expected number of entities
+     */
+    public Util_IntMap(int expectedSize) {
+        allocate(tableSizeFor(expectedSize));
+    }
+
+    /**
+     * Adds an entity to the map with its ID as the key.
+     * @param id - the ID of the entity
+     * @param entity - the entity to add
+     */
+    public void addEntity(int id, T entity) {
+        put(id, entity);
+    }
+
+    /**
+     * Adds or replaces an entity in the map with its ID as the key.
+     * @param id - the ID of the entity
+     * @param entity - the entity to add or replace
+     * @return the previous value associated with the key, or null if there was no mapping for the key
+     */
+    public T put(int id, T entity) {
+        Objects.requireNonNull(entity, "entity");
+        if (id == 0) {
+            T previous = zeroValue;
+            zeroValue = entity;
+            if (previous == null) {
+                size++;
+            }
+            return previous;
+        }
+        int slot = find(id);
+        if (slot >= 0) {
+            T previous = valueAt(slot);
+            values[slot] = entity;
+            return previous;
+        }
+        insert(~slot, id, entity);
+        return null;
+    }
+
+    /**
+     * Adds an entity to the map only if the key is not already associated with a value.
+     * @param id - the ID of the entity
+     * @param entity - the entity to add if absent
+     * @return the previous value associated with the key, or null if there was no mapping for the key
+     */
+    public T putIfAbsent(int id, T entity) {
+        T current = getValueByKey(id);
+        if (current == null) {
+            put(id, entity);
+        }
+        return current;
+    }
+
+    /**
+     * Replaces the entry for the specified key only if it is currently mapped to some value.
+     * @param id - the ID of the entity
+     * @param entity - the entity to replace with
+     * @return the previous value associated with the key, or null if there was no mapping for the key
+     */
+    public T replace(int id, T entity) {
+        return containsKey(id) ? put(id, entity) : null;
+    }
+
+    /**
+     * Replaces the entry for the specified key only if it is currently mapped to the specified value.
+     * @param id - the ID of the entity
+     * @param oldEntity - the value expected to be associated with the specified key
+     * @param newEntity - the entity to replace with
+     * @return true if the value was replaced, false otherwise
+     */
+    public boolean replace(int id, T oldEntity, T newEntity) {
+        T current = getValueByKey(id);
+        if (current != null && current.equals(oldEntity)) {
+            put(id, newEntity);
+            return true;
+        }
+        return false;
+    }
+    // =========================================================================
+    /**
+     * Finds an entity by its ID.
+     * @param key - the ID of the entity to find
+     * @return - the entity if found, or null if not found
+     */
+    public T getValueByKey(int key) {
+        if (key == 0) {
+            return zeroValue;
+        }
+        int slot = find(key);
+        return slot >= 0 ? valueAt(slot) : null;
+    }
+
+    /**
+     * Returns the value to which the specified key is mapped, or defaultValue if the map contains no mapping for the key.
+     * @param key - the ID of the entity to find
+     * @param defaultValue - the default value to return if the key is not found
+     * @return the entity if found, or defaultValue if not found
+     */
+    public T getOrDefault(int key, T defaultValue) {
+        T entity = getValueByKey(key);
+        return entity != null ? entity : defaultValue;
+    }
+
+    // =========================================================================
+    /**
+     * Checks if the map contains a specific entity by ID.
+     * @param id - the ID of the entity to check
+     * @return - true if the map contains the entity, false otherwise
+     */
+    public boolean containsKey(int id) {
+        return id == 0 ? zeroValue != null : find(id) >= 0;
+    }
+
+    /**
+     * Checks if the map contains a specific entity.
+     * @param entity - the entity to check
+     * @return - true if the map contains the entity, false otherwise
+     */
+    public boolean containsValue(T entity) {
+        if (entity == null) {
+            return false;
+        }
+        if (entity.equals(zeroValue)) {
+            return true;
+        }
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] != 0 && entity.equals(values[i])) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Prints all entities in the map.
+     */
+    public void printEntities() {
+        try (ExportWriter out = ExportWriter.toStandardOut()) {
+            forEachValue(entity -> out.append(String.valueOf(entity)).line());
+        }
+    }
+
+    // =========================================================================
+    /**
+     * Gets the size of the map.
+     * @return - the number of entities in the map
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Checks if the map is empty.
+     * @return - true if the map is empty, otherwise false
+     */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    // =========================================================================
+    /**
+     * Converts the map of entities to an array.
+     * @return - an array containing all entities in the map
+     */
+    public Object[] toArray() {
+        Object[] array = new Object[size];
+        int[] next = {0};
+        forEachValue(entity -> array[next[0]++] = entity);
+        return array;
+    }
+
+    /**
+     * Returns all keys in the map.
+     * @return - a new array containing every key
+     */
+    public int[] keys() {
+        int[] array = new int[size];
+        int[] next = {0};
+        forEachKey(key -> array[next[0]++] = key);
+        return array;
+    }
+
+    // =========================================================================
+    /**
+     * Removes an entity from the map by its ID.
+     * @param id - the ID of the entity to remove
+     * @return - the removed entity, or throws an exception if not found
+     * @throws NoSuchElementException if the entity is not found in the map
+     */
+    public T removeEntity(int id) {
+        T entity = removeKey(id);
+        if (entity == null) {
+            throw new NoSuchElementException("Entity not found with ID: " + id);
+        }
+        return entity;
+    }
+
+    /**
+     * Removes the entry for the specified key only if it is currently mapped to the specified value.
+     * @param key - the ID of the entity to remove
+     * @param value - the value expected to be associated with the specified key
+     * @return true if the entry was removed, false otherwise
+     */
+    public boolean remove(int key, Object value) {
+        T current = getValueByKey(key);
+        if (current != null && current.equals(value)) {
+            removeKey(key);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Clears all entities from the map.
+     */
+    public void clear() {
+        Arrays.fill(keys, 0);
+        Arrays.fill(values, null);
+        zeroValue = null;
+        size = 0;
+    }
+    // =========================================================================
+
+    /**
+     * Performs the given action for each key-value pair without boxing the keys.
+     * @param action - the action to perform
+     */
+    public void forEach(IntEntityConsumer<? super T> action) {
+        if (zeroValue != null) {
+            action.accept(0, zeroValue);
+        }
+        int[] k = keys;
+        Object[] v = values;
+        for (int i = 0; i < k.length; i++) {
+            if (k[i] != 0) {
+                action.accept(k[i], valueAt(v, i));
+            }
+        }
+    }
+
+    /**
+     * Performs the given action for each key without boxing it.
+     * @param action - the action to perform
+     */
+    public void forEachKey(IntConsumer action) {
+        if (zeroValue != null) {
+            action.accept(0);
+        }
+        int[] k = keys;
+        for (int i = 0; i < k.length; i++) {
+            if (k[i] != 0) {
+                action.accept(k[i]);
+            }
+        }
+    }
+
+    /**
+     * Performs the given action for each entity.
+     * @param action - the action to perform
+     */
+    public void forEachValue(Consumer<? super T> action) {
+        if (zeroValue != null) {
+            action.accept(zeroValue);
+        }
+        int[] k = keys;
+        Object[] v = values;
+        for (int i = 0; i < k.length; i++) {
+            if (k[i] != 0) {
+                action.accept(valueAt(v, i));
+            }
+        }
+    }
+
+    /**
+     * Using forEach() method
+     * Processes each key-value pair in the map.
+     */
+    public void loopUsingForEach() {
+        try (ExportWriter out = ExportWriter.toStandardOut()) {
+            forEach((key, value) -> {
+                out.append("Key: ").append(String.valueOf(key)).line();
+                out.append("Value: ").append(String.valueOf(value)).line();
+            });
+        }
+    }
+
+    // =========================================================================
+    /**
+     * If the specified key is not already associated with a value,
+     * attempts to compute its value using the given mapping function and enters it into the map.
+     * @param key - the ID of the entity to compute
+     * @param mappingFunction - the function to compute the value
+     * @return the current (existing or computed) value associated with the key, or null if the computed value is null
+     */
+    public T computeIfAbsent(int key, IntFunction<? extends T> mappingFunction) {
+        T current = getValueByKey(key);
+        if (current != null) {
+            return current;
+        }
+        T entity = mappingFunction.apply(key);
+        if (entity != null) {
+            put(key, entity);
+        }
+        return entity;
+    }
+
+    /**
+     * If the value for the specified key is present, attempts to compute a new mapping given the key and its current mapped value.
+     * @param key - the ID of the entity to compute
+     * @param remappingFunction - the function to compute the new value
+     * @return the new value associated with the specified key, or null if none
+     */
+    public T computeIfPresent(int key, IntEntityFunction<T> remappingFunction) {
+        T current = getValueByKey(key);
+        if (current == null) {
+            return null;
+        }
+        return store(key, remappingFunction.apply(key, current));
+    }
+
+    /**
+     * Attempts to compute a mapping for the specified key and its current mapped value (or null if there is no current mapping).
+     * @param key - the ID of the entity to compute
+     * @param remappingFunction - the function to compute the new value
+     * @return the new value associated with the specified key, or null if none
+     */
+    public T compute(int key, IntEntityFunction<T> remappingFunction) {
+        return store(key, remappingFunction.apply(key, getValueByKey(key)));
+    }
+
+    /**
+     * If the specified key is not already associated with a value, associates it with the given value.
+     * Otherwise, it replaces the associated value with the results of the given remapping function, or removes if the result is null.
+     * @param key - the ID of the entity to merge
+     * @param value - the value to merge
+     * @param remappingFunction - the function to recompute a value if present
+     * @return the new value associated with the specified key, or null if no value is associated
+     */
+    public T merge(int key, T value, BiFunction<? super T, ? super T, ? extends T> remappingFunction) {
+        Objects.requireNonNull(value, "value");
+        T current = getValueByKey(key);
+        return store(key, current == null ? value : remappingFunction.apply(current, value));
+    }
+
+    // =========================================================================
+    /**
+     * Stores the result of a remapping function: null removes the key.
+     * The slot is looked up again because the function may have changed the table.
+     */
+    private T store(int key, T entity) {
+        if (entity == null) {
+            removeKey(key);
+        } else {
+            put(key, entity);
+        }
+        return entity;
+    }
+
+    /**
+     * Returns the slot holding the key, or the bitwise complement of the empty slot where it would go.
+     */
+    private int find(int key) {
+        int[] k = keys;
+        int mask = k.length - 1;
+        int i = slotOf(key);
+        while (true) {
+            int candidate = k[i];
+            if (candidate == key) {
+                return i;
+            }
+            if (candidate == 0) {
+                return ~i;
+            }
+            i = (i + 1) & mask;
+        }
+    }
+
+    private void insert(int slot, int key, T entity) {
+        keys[slot] = key;
+        values[slot] = entity;
+        if (++size >= resizeAt) {
+            rehash(keys.length << 1);
+        }
+    }
+
+    private T removeKey(int key) {
+        if (key == 0) {
+            T previous = zeroValue;
+            if (previous != null) {
+                zeroValue = null;
+                size--;
+            }
+            return previous;
+        }
+        int slot = find(key);
+        if (slot < 0) {
+            return null;
+        }
+        T previous = valueAt(slot);
+        shiftBack(slot);
+        size--;
+        return previous;
+    }
+
+    /**
+     * Backward-shift deletion: moves later entries of the probe run into the freed slot
+     * so that lookups never need tombstones.
+     */
+    private void shiftBack(int gap) {
+        int[] k = keys;
+        int mask = k.length - 1;
+        int i = gap;
+        while (true) {
+            i = (i + 1) & mask;
+            int key = k[i];
+            if (key == 0) {
+                break;
+            }
+            int home = slotOf(key);
+            if (((i - home) & mask) >= ((i - gap) & mask)) {
+                k[gap] = key;
+                values[gap] = values[i];
+                gap = i;
+            }
+        }
+        k[gap] = 0;
+        values[gap] = null;
+    }
+
+    private void rehash(int capacity) {
+        int[] oldKeys = keys;
+        Object[] oldValues = values;
+        allocate(capacity);
+        int mask = capacity - 1;
+        for (int j = 0; j < oldKeys.length; j++) {
+            int key = oldKeys[j];
+            if (key != 0) {
+                int i = slotOf(key);
+                while (keys[i] != 0) {
+                    i = (i + 1) & mask;
+                }
+                keys[i] = key;
+                values[i] = oldValues[j];
+            }
+        }
+    }
+
+    private void allocate(int capacity) {
+        keys = new int[capacity];
+        values = new Object[capacity];
+        shift = 32 - Integer.numberOfTrailingZeros(capacity);
+        resizeAt = (int) (capacity * LOAD_FACTOR);
+    }
+
+    private int slotOf(int key) {
+        return (key * PHI) >>> shift;
+    }
+
+    private static int tableSizeFor(int expectedSize) {
+        long needed = (long) Math.ceil(Math.max(expectedSize, 1) / (double) LOAD_FACTOR) + 1;
+        long capacity = Math.max(MIN_CAPACITY, Long.highestOneBit(needed - 1) << 1);
+        if (capacity > 1 << 30) {
+            throw new IllegalArgumentException("Expected size too large: " + expectedSize);
+        }
+        return (int) capacity;
+    }
+
+    private T valueAt(int slot) {
+        return valueAt(values, slot);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T valueAt(Object[] values, int slot) {
+        return (T) values[slot];
+    }
+}
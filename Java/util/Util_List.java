@@ -2,7 +2,10 @@ package Java.util;
 
 import java.util.List;
 import Java.main.Entity;
+import Java.util.ContainerMetrics.Operation;
+import java.util.AbstractList;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Iterator;
 import java.util.NoSuchElementException;
 import java.util.function.BiFunction;
@@ -11,27 +14,152 @@ import java.util.stream.Collectors;
 import java.util.function.Predicate;
 import java.util.Collection;
 import java.util.Comparator;
+import java.util.DoubleSummaryStatistics;
 import java.util.ListIterator;
+import java.util.RandomAccess;
 import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LongSummaryStatistics;
+import java.util.Map;
+import java.util.Objects;
+import java.util.OptionalDouble;
+import java.util.OptionalLong;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.function.ToDoubleFunction;
+import java.util.function.ToLongFunction;
 import java.util.function.UnaryOperator;
+import java.util.stream.Stream;
 
 public class Util_List<T extends Entity> {
-    private List<T> entities = new ArrayList<>();
+    private final List<T> entities;
+    private volatile IdIndex<T> idIndex;
+    private PositionIndex<T> positionIndex;
+    private boolean preserveOrder;
+    private final Tombstones tombstones = new Tombstones();
+    private int parallelThreshold = Integer.MAX_VALUE;
+    private ForkJoinPool parallelPool;
+    private volatile List<ChangeObserver<T>> observers = List.of();
+    private volatile Map<String, AttributeIndex<T>> attributeIndexes = Map.of();
+    private ColumnStore<T> columns;
+    private volatile ContainerMetrics metrics;
+
+    public Util_List() {
+        this(new ArrayList<>());
+    }
+
+    /**
+     * Creates a list sized to hold the given number of entities without growing.
+     * @param expectedSize - the number of entities the list is expected to hold
+     */
+    public Util_List(int expectedSize) {
+        this(new ArrayList<>(expectedSize));
+    }
+
+    /**
+     * Creates a list over the given backing list, used by subclasses that need different storage.
+     * @param entities - the empty backing list
+     */
+    protected Util_List(List<T> entities) {
+        this.entities = entities;
+    }
 
     /**
      * Adds an entity to the list.
      * @param entity - the entity to add
      */
     public void addEntity(T entity) {
-        entities.add(entity);
+        ContainerMetrics metrics = this.metrics;
+        long start = metrics != null ? System.nanoTime() : 0;
+        try {
+            entities.add(entity);
+            entityAdded(entities.size() - 1, entity);
+        } finally {
+            if (metrics != null) {
+                metrics.record(Operation.ADD, start, size());
+            }
+        }
     }
 
     /**
-     * Adds all entities from another list to this list.
+     * Adds all entities from another list to this list as one batch: the backing array grows
+     * at most once, and observers and subscriptions are notified once for the whole batch.
      * @param otherEntities - the list of entities to add
      */
     public void addAllEntities(List<T> otherEntities) {
-        entities.addAll(otherEntities);
+        ContainerMetrics metrics = this.metrics;
+        long start = metrics != null ? System.nanoTime() : 0;
+        try {
+            if (otherEntities.isEmpty()) {
+                return;
+            }
+            int position = entities.size();
+            entities.addAll(otherEntities);
+            for (T entity : otherEntities) {
+                indexAdded(position++, entity);
+            }
+            if (!observers.isEmpty()) {
+                List<ChangeEvent<T>> changes = new ArrayList<>(otherEntities.size());
+                for (T entity : otherEntities) {
+                    changes.add(ChangeEvent.of(entity.getIdKey(), null, entity));
+                }
+                changedAll(changes);
+            }
+        } finally {
+            if (metrics != null) {
+                metrics.record(Operation.ADD_ALL, start, size());
+            }
+        }
+    }
+
+    /**
+     * Adds the entities of an array as one batch. See {@link #addAllEntities(List)}.
+     * @param batch - the entities to add
+     */
+    public void addEntities(T[] batch) {
+        addAllEntities(Arrays.asList(batch));
+    }
+
+    /**
+     * Adds the remaining entities of an iterator as one batch. See {@link #addAllEntities(List)}.
+     * @param batch - the entities to add
+     */
+    public void addEntities(Iterator<? extends T> batch) {
+        List<T> buffer = new ArrayList<>();
+        batch.forEachRemaining(buffer::add);
+        addAllEntities(buffer);
+    }
+
+    /**
+     * Adds the entities of a stream as one batch. See {@link #addAllEntities(List)}.
+     * @param batch - the entities to add
+     */
+    public void addEntities(Stream<? extends T> batch) {
+        addAllEntities(batch.collect(Collectors.toList()));
+    }
+
+    /**
+     * Grows the backing array, if needed, to hold the given number of entities without
+     * reallocating, ahead of a series of single inserts.
+     * @param minCapacity - the number of entities the list should be able to hold
+     */
+    public void ensureCapacity(int minCapacity) {
+        if (entities instanceof ArrayList) {
+            ((ArrayList<T>) entities).ensureCapacity(minCapacity);
+        } else if (entities instanceof SnapshotArrayList) {
+            ((SnapshotArrayList<T>) entities).ensureCapacity(minCapacity);
+        }
+        ContainerMetrics metrics = this.metrics;
+        if (metrics != null) {
+            metrics.reserved(minCapacity);
+        }
     }
 
    /**
@@ -41,28 +169,432 @@ public class Util_List<T extends Entity> {
      * @throws IndexOutOfBoundsException if the index is out of range
      */
     public void setEntity(int index, T entity) {
-        entities.set(index, entity);
+        ContainerMetrics metrics = this.metrics;
+        long start = metrics != null ? System.nanoTime() : 0;
+        try {
+            compact();
+            T previous = entities.set(index, entity);
+            entityReplaced(index, previous, entity);
+        } finally {
+            if (metrics != null) {
+                metrics.record(Operation.SET, start, size());
+            }
+        }
     }
 
     /**
      * Replaces each element of this list with the result of applying the operator to that element.
+     * Observers hear about the elements the operator actually replaced, as one batch; an element
+     * the operator returns unchanged (the same instance) is not reported.
      * @param operator - the operator to apply to each element
      */
     public void replaceAllEntities(UnaryOperator<T> operator) {
-        entities.replaceAll(operator);
+        ContainerMetrics metrics = this.metrics;
+        long start = metrics != null ? System.nanoTime() : 0;
+        try {
+            compact();
+            List<T> previous = observers.isEmpty() ? null : new ArrayList<>(entities);
+            entities.replaceAll(operator);
+            reindex();
+            if (previous != null) {
+                List<ChangeEvent<T>> changes = new ArrayList<>();
+                for (int i = 0; i < previous.size(); i++) {
+                    T current = entities.get(i);
+                    if (current != previous.get(i)) {
+                        changes.add(ChangeEvent.of(current.getIdKey(), previous.get(i), current));
+                    }
+                }
+                changedAll(changes);
+            }
+        } finally {
+            if (metrics != null) {
+                metrics.record(Operation.REPLACE_ALL, start, size());
+            }
+        }
     }
 
     // =========================================================================
     /**
-     * Finds an entity by its ID.
+     * Finds an entity by its ID, given as a UUID or as its string form in either case. Both ID
+     * modes are matched by comparing the two halves of the UUID, so a scan allocates nothing
+     * per entity and agrees with the ID index.
      * @param id - the ID of the entity to find
      * @return - the entity if found, or null if not found
      */
     public T getEntityById(Object id) {
-        return entities.stream()
-                       .filter(entity -> entity.getId().equals(id))
-                       .findFirst()
-                       .orElse(null);
+        ContainerMetrics metrics = this.metrics;
+        long start = metrics != null ? System.nanoTime() : 0;
+        try {
+            if (idIndex != null) {
+                return idIndex.get(id, contents());
+            }
+            Object key = IdIndex.normalize(id);
+            if (!(key instanceof UUID)) {
+                return null;
+            }
+            UUID uuid = (UUID) key;
+            return scanById(uuid.getMostSignificantBits(), uuid.getLeastSignificantBits());
+        } finally {
+            if (metrics != null) {
+                metrics.record(Operation.GET, start);
+            }
+        }
+    }
+
+    /**
+     * Finds an entity by the two 64-bit halves of its UUID, without allocating per entity in
+     * either ID mode.
+     * @param mostSigBits - the most significant 64 bits of the ID
+     * @param leastSigBits - the least significant 64 bits of the ID
+     * @return - the entity if found, or null if not found
+     */
+    public T getEntityById(long mostSigBits, long leastSigBits) {
+        if (idIndex != null) {
+            return idIndex.get(new UUID(mostSigBits, leastSigBits), contents());
+        }
+        return scanById(mostSigBits, leastSigBits);
+    }
+
+    private T scanById(long mostSigBits, long leastSigBits) {
+        for (T entity : contents()) {
+            if (entity.hasId(mostSigBits, leastSigBits)) {
+                return entity;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Enables a hash index on entity IDs so that {@link #getEntityById(Object)} runs in constant time.
+     * The index is built from the current contents and kept up to date by every mutating method of this class.
+     * Changes made through {@link #subList(int, int)} or a list iterator bypass the index;
+     * call this method again afterwards to rebuild it.
+     */
+    public void enableIdIndex() {
+        compact();
+        idIndex = buildIdIndex();
+    }
+
+    /**
+     * Disables the ID index and releases its memory; lookups go back to scanning the list.
+     */
+    public void disableIdIndex() {
+        idIndex = null;
+    }
+
+    /**
+     * Checks if the ID index is enabled.
+     * @return - true if ID lookups are served by the index, otherwise false
+     */
+    public boolean isIdIndexEnabled() {
+        return idIndex != null;
+    }
+
+    /**
+     * Enables a reverse index from entity to position, making {@link #containsEntity(Entity)} O(1),
+     * {@link #indexOf(Entity)} and {@link #lastIndexOf(Entity)} O(1) for entities that occur once,
+     * and {@link #removeEntity(Entity)} O(1) amortised. Entities are matched with equals/hashCode.
+     *
+     * <p>With {@code preserveOrder} set, a removed entity stays in its slot, marked as removed in
+     * a bitset that reads skip, and the marked slots are compacted away in a single pass by the
+     * next write that needs exact positions (or once they make up half of the backing array), so
+     * a loop of removals costs O(n) in total instead of O(n) each. Reads never compact, so
+     * interleaving them with removals keeps each removal cheap. Without it, the last entity is moved into the freed slot, which
+     * needs no compaction but changes the order of the list.</p>
+     *
+     * <p>Like the ID index, changes made through {@link #subList(int, int)} or a list iterator
+     * are not tracked; call this method again afterwards to rebuild it.</p>
+     * @param preserveOrder - true to keep the list order on removal, false to swap-remove
+     */
+    public void enableValueIndex(boolean preserveOrder) {
+        compact();
+        positionIndex = new PositionIndex<>(tombstones);
+        positionIndex.rebuild(entities);
+        this.preserveOrder = preserveOrder;
+    }
+
+    /**
+     * Disables the reverse index; membership and position queries go back to scanning the list.
+     */
+    public void disableValueIndex() {
+        compact();
+        positionIndex = null;
+    }
+
+    /**
+     * Checks if the reverse index is enabled.
+     * @return - true if membership and position queries are served by the index, otherwise false
+     */
+    public boolean isValueIndexEnabled() {
+        return positionIndex != null;
+    }
+
+    /**
+     * Creates a named hash index over an attribute of the entities, which serves equality
+     * conditions of {@link #indexQuery()}. It is kept up to date by every mutating method.
+     * @param name - the name of the index
+     * @param extractor - returns the attribute of an entity; may return null
+     * @throws IllegalArgumentException if an index with that name exists
+     */
+    public void createHashIndex(String name, Function<? super T, ?> extractor) {
+        createIndex(new AttributeIndex<>(name, extractor, false));
+    }
+
+    /**
+     * Creates a named sorted index over an attribute of the entities, which serves equality and
+     * range conditions of {@link #indexQuery()}. It is kept up to date by every mutating method.
+     * @param name - the name of the index
+     * @param extractor - returns the attribute of an entity; values must be mutually comparable, or null
+     * @throws IllegalArgumentException if an index with that name exists
+     */
+    public void createSortedIndex(String name, Function<? super T, ? extends Comparable<?>> extractor) {
+        createIndex(new AttributeIndex<>(name, extractor, true));
+    }
+
+    /**
+     * Drops a named attribute index.
+     * @param name - the name of the index
+     * @return true if the index existed
+     */
+    public boolean dropIndex(String name) {
+        if (!attributeIndexes.containsKey(name)) {
+            return false;
+        }
+        Map<String, AttributeIndex<T>> updated = new LinkedHashMap<>(attributeIndexes);
+        updated.remove(name);
+        attributeIndexes = Collections.unmodifiableMap(updated);
+        return true;
+    }
+
+    /**
+     * Checks if a named attribute index exists.
+     * @param name - the name of the index
+     * @return true if the index exists
+     */
+    public boolean hasIndex(String name) {
+        return attributeIndexes.containsKey(name);
+    }
+
+    /**
+     * Starts a query over the attribute indexes. See {@link IndexQuery}.
+     * @return a new, empty query
+     */
+    public IndexQuery<T> indexQuery() {
+        return new IndexQuery<>(this);
+    }
+
+    /**
+     * Finds the entities whose indexed attribute equals a value.
+     * @param index - the name of the index
+     * @param value - the value to match
+     * @return the matching entities, in index order
+     * @throws IllegalArgumentException if the index does not exist
+     */
+    public List<T> findEquals(String index, Object value) {
+        return indexQuery().whereEquals(index, value).list();
+    }
+
+    /**
+     * Finds the entities whose indexed attribute lies between two bounds, both inclusive.
+     * Served by a sorted index; a hash index falls back to a scan.
+     * @param index - the name of the index
+     * @param from - the lower bound, or null for none
+     * @param to - the upper bound, or null for none
+     * @return the matching entities, in index order
+     * @throws IllegalArgumentException if the index does not exist
+     */
+    public List<T> findRange(String index, Object from, Object to) {
+        return indexQuery().whereBetween(index, from, to).list();
+    }
+
+    /**
+     * Adds a column holding a numeric attribute of every entity in a {@code long[]}, in list
+     * order. Filters and aggregations over columns run as tight loops over primitive arrays
+     * instead of visiting every entity on the heap.
+     *
+     * <p>Appends and replacements update the columns in place; other changes, like removals
+     * from the middle or sorting, rebuild them in one pass before the next column operation.
+     * Like the attribute indexes, an entity modified in place must be set again to be seen.</p>
+     * @param name - the name of the column
+     * @param extractor - returns the attribute of an entity
+     * @throws IllegalArgumentException if a column with that name exists
+     */
+    public void addLongColumn(String name, ToLongFunction<? super T> extractor) {
+        addColumn(name, new ColumnStore.LongColumn<>(extractor));
+    }
+
+    /**
+     * Adds a column holding a numeric attribute of every entity in a {@code double[]}.
+     * See {@link #addLongColumn(String, ToLongFunction)}.
+     * @param name - the name of the column
+     * @param extractor - returns the attribute of an entity
+     * @throws IllegalArgumentException if a column with that name exists
+     */
+    public void addDoubleColumn(String name, ToDoubleFunction<? super T> extractor) {
+        addColumn(name, new ColumnStore.DoubleColumn<>(extractor));
+    }
+
+    /**
+     * Adds a column holding a string attribute of every entity, dictionary-encoded so that
+     * every distinct string is stored once and rows are compared by an {@code int} code.
+     * See {@link #addLongColumn(String, ToLongFunction)}.
+     * @param name - the name of the column
+     * @param extractor - returns the attribute of an entity; may return null
+     * @throws IllegalArgumentException if a column with that name exists
+     */
+    public void addStringColumn(String name, Function<? super T, String> extractor) {
+        addColumn(name, new ColumnStore.StringColumn<>(extractor));
+    }
+
+    /**
+     * Drops a column.
+     * @param name - the name of the column
+     * @return true if the column existed
+     */
+    public boolean dropColumn(String name) {
+        if (columns == null || !columns.remove(name)) {
+            return false;
+        }
+        if (columns.isEmpty()) {
+            columns = null;
+        }
+        return true;
+    }
+
+    /**
+     * Checks if a column exists.
+     * @param name - the name of the column
+     * @return true if the column exists
+     */
+    public boolean hasColumn(String name) {
+        return columns != null && columns.contains(name);
+    }
+
+    /**
+     * Finds the entities whose long column value lies between two bounds, both inclusive.
+     * @param column - the name of the long column
+     * @param min - the lower bound
+     * @param max - the upper bound
+     * @return the matching entities, in list order
+     * @throws IllegalArgumentException if there is no long column with that name
+     */
+    public List<T> filterLongColumn(String column, long min, long max) {
+        return rows(columns(column).selectLong(column, min, max));
+    }
+
+    /**
+     * Finds the entities whose double column value lies between two bounds, both inclusive.
+     * NaN values never match.
+     * @param column - the name of the double column
+     * @param min - the lower bound
+     * @param max - the upper bound
+     * @return the matching entities, in list order
+     * @throws IllegalArgumentException if there is no double column with that name
+     */
+    public List<T> filterDoubleColumn(String column, double min, double max) {
+        return rows(columns(column).selectDouble(column, min, max));
+    }
+
+    /**
+     * Finds the entities whose string column value equals a value.
+     * @param column - the name of the string column
+     * @param value - the value to match, may be null
+     * @return the matching entities, in list order
+     * @throws IllegalArgumentException if there is no string column with that name
+     */
+    public List<T> filterStringColumn(String column, String value) {
+        return rows(columns(column).selectString(column, value));
+    }
+
+    /**
+     * Counts the entities whose string column value equals a value.
+     * @param column - the name of the string column
+     * @param value - the value to match, may be null
+     * @return the number of matching entities
+     * @throws IllegalArgumentException if there is no string column with that name
+     */
+    public int countStringColumn(String column, String value) {
+        return columns(column).countString(column, value);
+    }
+
+    /**
+     * Counts the entities per distinct value of a string column.
+     * @param column - the name of the string column
+     * @return the count of every value that occurs, in order of first occurrence, with null last
+     * @throws IllegalArgumentException if there is no string column with that name
+     */
+    public Map<String, Integer> countByStringColumn(String column) {
+        return columns(column).countByString(column);
+    }
+
+    /**
+     * Sums a long column.
+     * @param column - the name of the long column
+     * @return the sum, which overflows silently like {@code long} arithmetic
+     * @throws IllegalArgumentException if there is no long column with that name
+     */
+    public long sumLongColumn(String column) {
+        return columns(column).sumLong(column);
+    }
+
+    /**
+     * Returns the smallest value of a long column.
+     * @param column - the name of the long column
+     * @return the minimum, or empty if the list is empty
+     * @throws IllegalArgumentException if there is no long column with that name
+     */
+    public OptionalLong minLongColumn(String column) {
+        return columns(column).minLong(column);
+    }
+
+    /**
+     * Returns the largest value of a long column.
+     * @param column - the name of the long column
+     * @return the maximum, or empty if the list is empty
+     * @throws IllegalArgumentException if there is no long column with that name
+     */
+    public OptionalLong maxLongColumn(String column) {
+        return columns(column).maxLong(column);
+    }
+
+    /**
+     * Sums a double column. The additions are not strictly sequential, so the last bits may
+     * differ from a loop over the entities.
+     * @param column - the name of the double column
+     * @return the sum
+     * @throws IllegalArgumentException if there is no double column with that name
+     */
+    public double sumDoubleColumn(String column) {
+        return columns(column).sumDouble(column);
+    }
+
+    /**
+     * Returns the smallest value of a double column, NaN if any value is NaN.
+     * @param column - the name of the double column
+     * @return the minimum, or empty if the list is empty
+     * @throws IllegalArgumentException if there is no double column with that name
+     */
+    public OptionalDouble minDoubleColumn(String column) {
+        return columns(column).minDouble(column);
+    }
+
+    /**
+     * Returns the largest value of a double column, NaN if any value is NaN.
+     * @param column - the name of the double column
+     * @return the maximum, or empty if the list is empty
+     * @throws IllegalArgumentException if there is no double column with that name
+     */
+    public OptionalDouble maxDoubleColumn(String column) {
+        return columns(column).maxDouble(column);
+    }
+
+    /**
+     * Starts a lazy query over the entities, which fuses filter, map, skip, limit, sort and
+     * distinct stages into a single pass. See {@link LazyQuery}.
+     * @return a new query returning every entity in list order
+     */
+    public LazyQuery<T> lazyQuery() {
+        return new LazyQuery<>(this);
     }
 
     public List<Object> getEntityIds() {
@@ -76,8 +608,8 @@ public class Util_List<T extends Entity> {
      * @throws IndexOutOfBoundsException if the index is out of range
      */
     public T getEntityByIndex(int index) {
-        if (index >= 0 && index < entities.size()) {
-            return entities.get(index);
+        if (index >= 0 && index < size()) {
+            return entities.get(tombstones.count() == 0 ? index : tombstones.select(index));
         }
         return null;
     }
@@ -89,6 +621,7 @@ public class Util_List<T extends Entity> {
      * @return - a sublist of entities
      */
     public List<T> subList(int fromIndex, int toIndex) {
+        compact();
         return entities.subList(fromIndex, toIndex);
     }
 
@@ -98,7 +631,13 @@ public class Util_List<T extends Entity> {
      * Prints all entities in the list.
      */
     public void printEntities() {
-        entities.stream().forEach(entity -> System.out.println(entity));
+        if (isParallel()) {
+            printInOrder("");
+            return;
+        }
+        try (ExportWriter out = ExportWriter.toStandardOut()) {
+            contents().stream().forEach(entity -> out.append(String.valueOf(entity)).line());
+        }
     }
 
     /**
@@ -107,7 +646,10 @@ public class Util_List<T extends Entity> {
      * @return - true if the list contains the entity, false otherwise
      */
     public boolean containsEntity(T entity) {
-        return entities.contains(entity);
+        if (positionIndex != null) {
+            return positionIndex.count(entity) > 0;
+        }
+        return contents().contains(entity);
     }
 
     // =========================================================================
@@ -116,7 +658,7 @@ public class Util_List<T extends Entity> {
      * @return - the number of entities in the list
      */
     public int size() {
-        return entities.size();
+        return entities.size() - tombstones.count();
     }
 
     /**
@@ -124,7 +666,7 @@ public class Util_List<T extends Entity> {
      * @return - true if the list is empty, otherwise false
      */
     public boolean isEmpty() {
-        return entities.isEmpty();
+        return size() == 0;
     }
 
     // =========================================================================
@@ -135,7 +677,19 @@ public class Util_List<T extends Entity> {
      * @return the index of the first occurrence, or -1 if not found
      */
     public int indexOf(T entity) {
-        return entities.indexOf(entity);
+        if (positionIndex != null) {
+            int count = positionIndex.count(entity);
+            if (count == 0) {
+                return -1;
+            }
+            if (count == 1) {
+                int position = positionIndex.position(entity);
+                if (position >= 0) {
+                    return tombstones.rank(position);
+                }
+            }
+        }
+        return contents().indexOf(entity);
     }
 
     /**
@@ -144,7 +698,19 @@ public class Util_List<T extends Entity> {
      * @return the index of the last occurrence, or -1 if not found
      */
     public int lastIndexOf(T entity) {
-        return entities.lastIndexOf(entity);
+        if (positionIndex != null) {
+            int count = positionIndex.count(entity);
+            if (count == 0) {
+                return -1;
+            }
+            if (count == 1) {
+                int position = positionIndex.position(entity);
+                if (position >= 0) {
+                    return tombstones.rank(position);
+                }
+            }
+        }
+        return contents().lastIndexOf(entity);
     }
 
     // =========================================================================
@@ -153,7 +719,7 @@ public class Util_List<T extends Entity> {
      * @return - an array containing all entities in the list
      */
     public Object[] toArray() {
-        return entities.toArray();
+        return contents().toArray();
     }
 
     // =========================================================================
@@ -163,10 +729,31 @@ public class Util_List<T extends Entity> {
      * @return - true if the entity was removed, otherwise throws an exception
      */
     public boolean removeEntity(T entity) {
-        if(entities.remove(entity)){
-            return true;
-        } else {
-            throw new NoSuchElementException("Entity not found: " + entity);
+        ContainerMetrics metrics = this.metrics;
+        long start = metrics != null ? System.nanoTime() : 0;
+        try {
+            if (positionIndex != null) {
+                int count = positionIndex.count(entity);
+                if (count == 0) {
+                    throw new NoSuchElementException("Entity not found: " + entity);
+                }
+                if (count == 1) {
+                    removeIndexedEntity(entity);
+                    return true;
+                }
+            }
+            compact();
+            int index = entities.indexOf(entity);
+            if (index >= 0) {
+                entityRemoved(index, entities.remove(index));
+                return true;
+            } else {
+                throw new NoSuchElementException("Entity not found: " + entity);
+            }
+        } finally {
+            if (metrics != null) {
+                metrics.record(Operation.REMOVE, start, size());
+            }
         }
     }
 
@@ -177,10 +764,21 @@ public class Util_List<T extends Entity> {
      * @throws NoSuchElementException if the index is out of bounds
      */
     public T removeEntity(int index) {
-        if (index >= 0 && index < entities.size()) {
-            return entities.remove(index);
+        ContainerMetrics metrics = this.metrics;
+        long start = metrics != null ? System.nanoTime() : 0;
+        try {
+            compact();
+            if (index >= 0 && index < entities.size()) {
+                T entity = entities.remove(index);
+                entityRemoved(index, entity);
+                return entity;
+            }
+            throw new NoSuchElementException("Entity not found at index: " + index);
+        } finally {
+            if (metrics != null) {
+                metrics.record(Operation.REMOVE, start, size());
+            }
         }
-        throw new NoSuchElementException("Entity not found at index: " + index);
     }
 
     /**
@@ -189,7 +787,16 @@ public class Util_List<T extends Entity> {
      * @return true if this list changed as a result of the call
      */
     public boolean removeAllEntities(Collection<?> c) {
-        return entities.removeAll(c);
+        if (!observers.isEmpty()) {
+            Collection<?> lookup = hashed(c);
+            return removeEntitiesIf(lookup::contains);
+        }
+        compact();
+        if (entities.removeAll(hashed(c))) {
+            reindex();
+            return true;
+        }
+        return false;
     }
 
     /**
@@ -198,14 +805,118 @@ public class Util_List<T extends Entity> {
      * @return true if this list changed as a result of the call
      */
     public boolean retainAllEntities(Collection<?> c) {
-        return entities.retainAll(c);
+        if (!observers.isEmpty()) {
+            Collection<?> lookup = hashed(c);
+            return removeEntitiesIf(entity -> !lookup.contains(entity));
+        }
+        compact();
+        if (entities.retainAll(hashed(c))) {
+            reindex();
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Removes every entity whose ID is in the given collection, in a single pass over the list.
+     * IDs may be given as strings or UUIDs, whatever the ID mode of the entities.
+     * @param ids - the IDs of the entities to remove
+     * @return true if this list changed as a result of the call
+     */
+    public boolean removeEntitiesById(Collection<?> ids) {
+        Set<Object> lookup = idLookup(ids);
+        return removeEntitiesIf(entity -> lookup.contains(entity.getIdKey()));
+    }
+
+    /**
+     * Retains only the entities whose ID is in the given collection, in a single pass over the list.
+     * IDs may be given as strings or UUIDs, whatever the ID mode of the entities.
+     * @param ids - the IDs of the entities to keep
+     * @return true if this list changed as a result of the call
+     */
+    public boolean retainEntitiesById(Collection<?> ids) {
+        Set<Object> lookup = idLookup(ids);
+        return removeEntitiesIf(entity -> !lookup.contains(entity.getIdKey()));
+    }
+
+    /**
+     * Removes every entity that matches the predicate. The survivors are compacted in a single
+     * pass and the indexes are rebuilt once, whatever the number of removed entities, and
+     * observers hear about the removals as one batch.
+     * @param filter - the predicate selecting the entities to remove
+     * @return true if this list changed as a result of the call
+     */
+    public boolean removeEntitiesIf(Predicate<? super T> filter) {
+        ContainerMetrics metrics = this.metrics;
+        long start = metrics != null ? System.nanoTime() : 0;
+        try {
+            compact();
+            if (observers.isEmpty()) {
+                if (entities.removeIf(filter)) {
+                    reindex();
+                    return true;
+                }
+                return false;
+            }
+            List<ChangeEvent<T>> removed = new ArrayList<>();
+            entities.removeIf(entity -> {
+                if (filter.test(entity)) {
+                    removed.add(ChangeEvent.of(entity.getIdKey(), entity, null));
+                    return true;
+                }
+                return false;
+            });
+            if (removed.isEmpty()) {
+                return false;
+            }
+            reindex();
+            changedAll(removed);
+            return true;
+        } finally {
+            if (metrics != null) {
+                metrics.record(Operation.REMOVE_ALL, start, size());
+            }
+        }
+    }
+
+    /**
+     * Retains only the entities that match the predicate. See {@link #removeEntitiesIf(Predicate)}.
+     * @param filter - the predicate selecting the entities to keep
+     * @return true if this list changed as a result of the call
+     */
+    public boolean retainEntitiesIf(Predicate<? super T> filter) {
+        return removeEntitiesIf(filter.negate());
     }
 
     /**
      * Clears all entities from the list.
      */
     public void clear() {
-        entities.clear();
+        ContainerMetrics metrics = this.metrics;
+        long start = metrics != null ? System.nanoTime() : 0;
+        try {
+            entities.clear();
+            tombstones.clear();
+            if (idIndex != null) {
+                idIndex = newIdIndex();
+            }
+            if (positionIndex != null) {
+                positionIndex.clear();
+            }
+            for (AttributeIndex<T> index : attributeIndexes.values()) {
+                index.clear();
+            }
+            if (columns != null) {
+                columns.clear();
+            }
+            for (ChangeObserver<T> observer : observers) {
+                observer.cleared();
+            }
+        } finally {
+            if (metrics != null) {
+                metrics.record(Operation.CLEAR, start, size());
+            }
+        }
     }
     // =========================================================================
 
@@ -213,8 +924,10 @@ public class Util_List<T extends Entity> {
      * Looping through entities using a standard for loop.
      */
     public void loopThroughEntities() {
-        for (T entity : entities) {
-            System.out.println("Entity: " + entity);
+        try (ExportWriter out = ExportWriter.toStandardOut()) {
+            for (T entity : contents()) {
+                out.append("Entity: ").append(String.valueOf(entity)).line();
+            }
         }
     }
 
@@ -223,9 +936,13 @@ public class Util_List<T extends Entity> {
      * Processes each entity in the list.
      */
     public void loopUsingForEach() {
-        entities.forEach(entity -> {
-            System.out.println("Entity: " + entity);
-        });
+        if (isParallel()) {
+            printInOrder("Entity: ");
+            return;
+        }
+        try (ExportWriter out = ExportWriter.toStandardOut()) {
+            contents().forEach(entity -> out.append("Entity: ").append(String.valueOf(entity)).line());
+        }
     }
 
 
@@ -234,9 +951,96 @@ public class Util_List<T extends Entity> {
      * Converts the list into a stream and processes them.
      */
     public void loopUsingStream() {
-        entities.stream().forEach(entity -> {
-            System.out.println("Entity: " + entity);
-        });
+        if (isParallel()) {
+            printInOrder("Entity: ");
+            return;
+        }
+        try (ExportWriter out = ExportWriter.toStandardOut()) {
+            contents().stream().forEach(entity -> out.append("Entity: ").append(String.valueOf(entity)).line());
+        }
+    }
+
+    /**
+     * Subscribes a listener to every later change made through the mutating methods of this list,
+     * delivered in batches on a dedicated thread and keyed by entity ID. Reordering by
+     * {@link #sortEntities(Comparator)} is not a change. See {@link ChangeSubscription}.
+     * @param listener - the listener to deliver the changes to
+     * @return the subscription, which must be closed to stop delivery
+     */
+    public ChangeSubscription<T> subscribe(ChangeListener<T> listener) {
+        return subscribe(listener, ChangeSubscription.DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Subscribes a listener to every later change, buffering up to the given number of changes
+     * before writers wait for the listener.
+     * @param listener - the listener to deliver the changes to
+     * @param capacity - the number of changes the buffer holds
+     * @return the subscription, which must be closed to stop delivery
+     */
+    public ChangeSubscription<T> subscribe(ChangeListener<T> listener, int capacity) {
+        ChangeSubscription<T> subscription = new ChangeSubscription<>(listener, capacity, this::removeObserver);
+        addObserver(subscription.observer());
+        subscription.start();
+        return subscription;
+    }
+
+    /**
+     * Starts collecting call counts, latency histograms and size statistics of the main
+     * operations, readable through the returned object. See {@link ContainerMetrics}.
+     * Replaces any metrics enabled before.
+     * @return the metrics of this list
+     */
+    public ContainerMetrics enableMetrics() {
+        return installMetrics(new ContainerMetrics(null, this::size, ContainerMetrics.Growth.ARRAY));
+    }
+
+    /**
+     * Starts collecting metrics and also publishes them through JMX as
+     * {@code Java.util:type=<class>,name=<name>}. Replaces any metrics enabled before.
+     * @param name - the name of this list in JMX
+     * @return the metrics of this list
+     * @throws IllegalStateException if the JMX name is already taken
+     */
+    public ContainerMetrics enableMetrics(String name) {
+        return installMetrics(new ContainerMetrics(Objects.requireNonNull(name, "name"), this::size,
+                                                   ContainerMetrics.Growth.ARRAY));
+    }
+
+    /**
+     * Stops collecting metrics and unregisters them from JMX; the instrumented methods go back
+     * to a single field check.
+     */
+    public synchronized void disableMetrics() {
+        ContainerMetrics current = metrics;
+        metrics = null;
+        if (current != null) {
+            current.unregister();
+        }
+    }
+
+    /**
+     * Returns the metrics being collected.
+     * @return the metrics, or null if they are disabled
+     */
+    public ContainerMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Performs the given action for each entity. In parallel mode the action runs concurrently
+     * on several threads in no particular order, so it must be thread-safe.
+     * @param action - the action to perform on each entity
+     */
+    public void forEachEntity(Consumer<? super T> action) {
+        if (isParallel()) {
+            inPool(() -> {
+                contents().parallelStream().forEach(action);
+                return null;
+            });
+            return;
+        }
+        contents().forEach(action);
     }
     // =========================================================================
     /**
@@ -258,10 +1062,12 @@ public class Util_List<T extends Entity> {
      * Provides more control over the iteration process.
      */
     public void loopUsingIterator() {
-        Iterator<T> iterator = entities.iterator();
-        while (iterator.hasNext()) {
-            T entity = iterator.next();
-            System.out.println("Entity: " + entity);
+        try (ExportWriter out = ExportWriter.toStandardOut()) {
+            Iterator<T> iterator = contents().iterator();
+            while (iterator.hasNext()) {
+                T entity = iterator.next();
+                out.append("Entity: ").append(String.valueOf(entity)).line();
+            }
         }
     }
 
@@ -271,6 +1077,7 @@ public class Util_List<T extends Entity> {
      * @return a ListIterator over the elements in this list
      */
     public ListIterator<T> getListIterator() {
+        compact();
         return entities.listIterator();
     }
 
@@ -280,6 +1087,7 @@ public class Util_List<T extends Entity> {
      * @return a ListIterator over the elements in this list starting at the specified position
      */
     public ListIterator<T> getListIterator(int index) {
+        compact();
         return entities.listIterator(index);
     }
     /**
@@ -287,14 +1095,21 @@ public class Util_List<T extends Entity> {
      * @param comparator - the Comparator used to compare list elements
      */
     public void sortEntities(Comparator<? super T> comparator) {
+        compact();
         entities.sort(comparator);
+        if (positionIndex != null) {
+            positionIndex.invalidatePositions();
+        }
+        if (columns != null) {
+            columns.invalidate();
+        }
     }
     /**
      * Creates a Spliterator over the elements in this list.
      * @return a Spliterator over the elements in this list
      */
     public Spliterator<T> getSpliterator() {
-        return entities.spliterator();
+        return contents().spliterator();
     }
 
     /**
@@ -303,9 +1118,17 @@ public class Util_List<T extends Entity> {
      * @return a list of entities that match the predicate
      */
     public List<T> filterEntities(Predicate<? super T> predicate) {
-        return entities.stream()
-                       .filter(predicate)
-                       .collect(Collectors.toList());
+        ContainerMetrics metrics = this.metrics;
+        long start = metrics != null ? System.nanoTime() : 0;
+        try {
+            return inPool(() -> stream()
+                           .filter(predicate)
+                           .collect(Collectors.toList()));
+        } finally {
+            if (metrics != null) {
+                metrics.record(Operation.FILTER, start);
+            }
+        }
     }
 
     /**
@@ -315,9 +1138,128 @@ public class Util_List<T extends Entity> {
      * @return a list of transformed entities
      */
     public <R> List<R> mapEntities(Function<? super T, ? extends R> mapper) {
-        return entities.stream()
-                       .map(mapper)
-                       .collect(Collectors.toList());
+        ContainerMetrics metrics = this.metrics;
+        long start = metrics != null ? System.nanoTime() : 0;
+        try {
+            return inPool(() -> stream()
+                           .map(mapper)
+                           .collect(Collectors.toList()));
+        } finally {
+            if (metrics != null) {
+                metrics.record(Operation.MAP, start);
+            }
+        }
+    }
+
+    // =========================================================================
+    // Aggregations take primitive extractors and accumulate into primitives, so no value is
+    // boxed and no intermediate list is built. Like the bulk operations above, they run in
+    // parallel once the list reaches the threshold set by enableParallelism.
+
+    /**
+     * Counts the entities that match a predicate.
+     * @param predicate - the condition to count
+     * @return the number of matching entities
+     */
+    public long countEntities(Predicate<? super T> predicate) {
+        return inPool(() -> stream().filter(predicate).count());
+    }
+
+    /**
+     * Sums a numeric attribute of the entities.
+     * @param extractor - returns the attribute of an entity
+     * @return the sum, which overflows silently like {@code long} arithmetic
+     */
+    public long sumLong(ToLongFunction<? super T> extractor) {
+        return inPool(() -> stream().mapToLong(extractor).sum());
+    }
+
+    /**
+     * Sums a numeric attribute of the entities.
+     * @param extractor - returns the attribute of an entity
+     * @return the sum
+     */
+    public double sumDouble(ToDoubleFunction<? super T> extractor) {
+        return inPool(() -> stream().mapToDouble(extractor).sum());
+    }
+
+    /**
+     * Computes count, sum, minimum, maximum and average of a numeric attribute in one pass.
+     * @param extractor - returns the attribute of an entity
+     * @return the statistics; minimum and maximum are {@code Long.MAX_VALUE} and
+     *         {@code Long.MIN_VALUE} for an empty list
+     */
+    public LongSummaryStatistics summarizeLong(ToLongFunction<? super T> extractor) {
+        return inPool(() -> stream().mapToLong(extractor).summaryStatistics());
+    }
+
+    /**
+     * Computes count, sum, minimum, maximum and average of a numeric attribute in one pass.
+     * @param extractor - returns the attribute of an entity
+     * @return the statistics
+     */
+    public DoubleSummaryStatistics summarizeDouble(ToDoubleFunction<? super T> extractor) {
+        return inPool(() -> stream().mapToDouble(extractor).summaryStatistics());
+    }
+
+    /**
+     * Groups the entities by a primitive key and computes count, sum, minimum and maximum of a
+     * numeric attribute per group, in a primitive hash table.
+     * @param key - returns the group key of an entity
+     * @param value - returns the attribute to aggregate
+     * @return the statistics per group
+     */
+    public LongGroupStatistics groupLong(ToLongFunction<? super T> key, ToLongFunction<? super T> value) {
+        return inPool(() -> stream().collect(LongGroupStatistics::new,
+                                             (groups, entity) -> groups.accept(key.applyAsLong(entity), value.applyAsLong(entity)),
+                                             LongGroupStatistics::combine));
+    }
+
+    /**
+     * Groups the entities by a primitive key and computes count, sum, minimum and maximum of a
+     * numeric attribute per group, in a primitive hash table.
+     * @param key - returns the group key of an entity
+     * @param value - returns the attribute to aggregate
+     * @return the statistics per group
+     */
+    public DoubleGroupStatistics groupDouble(ToLongFunction<? super T> key, ToDoubleFunction<? super T> value) {
+        return inPool(() -> stream().collect(DoubleGroupStatistics::new,
+                                             (groups, entity) -> groups.accept(key.applyAsLong(entity), value.applyAsDouble(entity)),
+                                             DoubleGroupStatistics::combine));
+    }
+
+    // =========================================================================
+    /**
+     * Runs bulk operations in parallel on the common ForkJoinPool once the list holds at least
+     * {@code threshold} entities. Affects filterEntities, mapEntities (and so getEntityIds),
+     * forEachEntity and the stream-based print and loop methods. Results keep the list order;
+     * the predicates and functions passed in must be thread-safe.
+     * @param threshold - the minimum size at which bulk operations go parallel
+     */
+    public void enableParallelism(int threshold) {
+        enableParallelism(threshold, null);
+    }
+
+    /**
+     * Runs bulk operations in parallel on the given pool once the list holds at least
+     * {@code threshold} entities. See {@link #enableParallelism(int)}.
+     * @param threshold - the minimum size at which bulk operations go parallel
+     * @param pool - the pool to run on, or null for the common pool
+     */
+    public void enableParallelism(int threshold, ForkJoinPool pool) {
+        if (threshold < 0) {
+            throw new IllegalArgumentException("Threshold must not be negative: " + threshold);
+        }
+        this.parallelThreshold = threshold;
+        this.parallelPool = pool;
+    }
+
+    /**
+     * Makes all bulk operations sequential again.
+     */
+    public void disableParallelism() {
+        this.parallelThreshold = Integer.MAX_VALUE;
+        this.parallelPool = null;
     }
 
     // =========================================================================
@@ -328,7 +1270,7 @@ public class Util_List<T extends Entity> {
      */
     @Override
     public boolean equals(Object o) {
-        return entities.equals(o);
+        return contents().equals(o);
     }
     /**
      * Returns the hash code value for this list.
@@ -336,7 +1278,7 @@ public class Util_List<T extends Entity> {
      */
     @Override
     public int hashCode() {
-        return entities.hashCode();
+        return contents().hashCode();
     }
 
     // =========================================================================
@@ -348,14 +1290,24 @@ public class Util_List<T extends Entity> {
      * @return the current (existing or computed) value at the index, or null if the computed value is null
      */
     public T computeIfAbsent(int index, Function<? super Integer, ? extends T> mappingFunction) {
-        if (index >= 0 && index < entities.size()) {
-            return entities.get(index);
-        } else {
-            T entity = mappingFunction.apply(index);
-            if (entity != null) {
-                entities.add(entity);
+        ContainerMetrics metrics = this.metrics;
+        long start = metrics != null ? System.nanoTime() : 0;
+        try {
+            compact();
+            if (index >= 0 && index < entities.size()) {
+                return entities.get(index);
+            } else {
+                T entity = mappingFunction.apply(index);
+                if (entity != null) {
+                    entities.add(entity);
+                    entityAdded(entities.size() - 1, entity);
+                }
+                return entity;
+            }
+        } finally {
+            if (metrics != null) {
+                metrics.record(Operation.COMPUTE_IF_ABSENT, start, size());
             }
-            return entity;
         }
     }
 
@@ -366,18 +1318,29 @@ public class Util_List<T extends Entity> {
      * @return the new value at the specified index, or null if none
      */
     public T computeIfPresent(int index, BiFunction<? super Integer, ? super T, ? extends T> remappingFunction) {
-        if (index >= 0 && index < entities.size()) {
-            T entity = entities.get(index);
-            T newEntity = remappingFunction.apply(index, entity);
-            if (newEntity != null) {
-                entities.set(index, newEntity);
-                return newEntity;
-            } else {
-                entities.remove(index);
-                return null;
+        ContainerMetrics metrics = this.metrics;
+        long start = metrics != null ? System.nanoTime() : 0;
+        try {
+            compact();
+            if (index >= 0 && index < entities.size()) {
+                T entity = entities.get(index);
+                T newEntity = remappingFunction.apply(index, entity);
+                if (newEntity != null) {
+                    entities.set(index, newEntity);
+                    entityReplaced(index, entity, newEntity);
+                    return newEntity;
+                } else {
+                    entities.remove(index);
+                    entityRemoved(index, entity);
+                    return null;
+                }
+            }
+            return null;
+        } finally {
+            if (metrics != null) {
+                metrics.record(Operation.COMPUTE_IF_PRESENT, start, size());
             }
         }
-        return null;
     }
 
     /**
@@ -387,17 +1350,27 @@ public class Util_List<T extends Entity> {
      * @return the new value at the specified index, or null if none
      */
     public T compute(int index, BiFunction<? super Integer, ? super T, ? extends T> remappingFunction) {
-        T newEntity = remappingFunction.apply(index, index >= 0 && index < entities.size() ? entities.get(index) : null);
-        if (index >= 0 && index < entities.size()) {
-            if (newEntity != null) {
-                entities.set(index, newEntity);
-            } else {
-                entities.remove(index);
+        ContainerMetrics metrics = this.metrics;
+        long start = metrics != null ? System.nanoTime() : 0;
+        try {
+            compact();
+            T newEntity = remappingFunction.apply(index, index >= 0 && index < entities.size() ? entities.get(index) : null);
+            if (index >= 0 && index < entities.size()) {
+                if (newEntity != null) {
+                    entityReplaced(index, entities.set(index, newEntity), newEntity);
+                } else {
+                    entityRemoved(index, entities.remove(index));
+                }
+            } else if (newEntity != null) {
+                entities.add(newEntity);
+                entityAdded(entities.size() - 1, newEntity);
+            }
+            return newEntity;
+        } finally {
+            if (metrics != null) {
+                metrics.record(Operation.COMPUTE, start, size());
             }
-        } else if (newEntity != null) {
-            entities.add(newEntity);
         }
-        return newEntity;
     }
 
     /**
@@ -408,20 +1381,481 @@ public class Util_List<T extends Entity> {
      * @return the new value at the specified index, or null if none
      */
     public T merge(int index, T value, BiFunction<? super T, ? super T, ? extends T> remappingFunction) {
-        if (index >= 0 && index < entities.size()) {
-            T entity = entities.get(index);
-            T newEntity = remappingFunction.apply(entity, value);
-            if (newEntity != null) {
-                entities.set(index, newEntity);
-                return newEntity;
-            } else {
-                entities.remove(index);
+        ContainerMetrics metrics = this.metrics;
+        long start = metrics != null ? System.nanoTime() : 0;
+        try {
+            compact();
+            if (index >= 0 && index < entities.size()) {
+                T entity = entities.get(index);
+                T newEntity = remappingFunction.apply(entity, value);
+                if (newEntity != null) {
+                    entities.set(index, newEntity);
+                    entityReplaced(index, entity, newEntity);
+                    return newEntity;
+                } else {
+                    entities.remove(index);
+                    entityRemoved(index, entity);
+                    return null;
+                }
+            } else if (value != null) {
+                entities.add(value);
+                entityAdded(entities.size() - 1, value);
+                return value;
+            }
+            return null;
+        } finally {
+            if (metrics != null) {
+                metrics.record(Operation.MERGE, start, size());
+            }
+        }
+    }
+
+    // =========================================================================
+    private boolean isParallel() {
+        return entities.size() >= parallelThreshold;
+    }
+
+    private Stream<T> stream() {
+        List<T> contents = contents();
+        return isParallel() ? contents.parallelStream() : contents.stream();
+    }
+
+    /**
+     * Runs a bulk operation in the configured pool, so that parallel streams it creates use that pool.
+     */
+    private <R> R inPool(Supplier<R> operation) {
+        ForkJoinPool pool = parallelPool;
+        if (pool == null || !isParallel() || ForkJoinTask.getPool() == pool) {
+            return operation.get();
+        }
+        return pool.submit(operation::get).join();
+    }
+
+    private void printInOrder(String prefix) {
+        try (ExportWriter out = ExportWriter.toStandardOut()) {
+            inPool(() -> {
+                contents().parallelStream()
+                          .map(entity -> prefix + entity)
+                          .forEachOrdered(line -> out.append(line).line());
                 return null;
+            });
+        }
+    }
+
+    /**
+     * Performs the action for each entity in list order on the calling thread, even in parallel mode.
+     * @param action - the action to perform on each entity
+     */
+    void forEachInOrder(Consumer<? super T> action) {
+        contents().forEach(action);
+    }
+
+    /**
+     * Registers an observer that hears about every later change.
+     * @param observer - the observer to add
+     */
+    synchronized void addObserver(ChangeObserver<T> observer) {
+        List<ChangeObserver<T>> updated = new ArrayList<>(observers);
+        updated.add(observer);
+        observers = List.copyOf(updated);
+    }
+
+    /**
+     * Unregisters an observer added by {@link #addObserver(ChangeObserver)}.
+     * @param observer - the observer to remove
+     */
+    synchronized void removeObserver(ChangeObserver<T> observer) {
+        List<ChangeObserver<T>> updated = new ArrayList<>(observers);
+        updated.remove(observer);
+        observers = List.copyOf(updated);
+    }
+
+    /**
+     * Runs an index query against the current contents.
+     * @param query - the query to run
+     * @return the matching entities
+     */
+    List<T> runQuery(IndexQuery<T> query) {
+        ContainerMetrics metrics = this.metrics;
+        long start = metrics != null ? System.nanoTime() : 0;
+        try {
+            return query.execute(attributeIndexes, contents());
+        } finally {
+            if (metrics != null) {
+                metrics.record(Operation.QUERY, start);
             }
-        } else if (value != null) {
-            entities.add(value);
-            return value;
         }
-        return null;
+    }
+
+    /**
+     * Returns the entities a lazy query runs over, read by index.
+     * @return the backing list, or a copy of the list as callers see it while removals are pending
+     */
+    List<T> querySource() {
+        return tombstones.count() == 0 ? entities : new ArrayList<>(contents());
+    }
+
+    private void createIndex(AttributeIndex<T> index) {
+        if (attributeIndexes.containsKey(index.name())) {
+            throw new IllegalArgumentException("Index already exists: " + index.name());
+        }
+        compact();
+        index.rebuild(entities);
+        Map<String, AttributeIndex<T>> updated = new LinkedHashMap<>(attributeIndexes);
+        updated.put(index.name(), index);
+        attributeIndexes = Collections.unmodifiableMap(updated);
+    }
+
+    private void addColumn(String name, ColumnStore.Column<T> column) {
+        compact();
+        if (columns == null) {
+            ColumnStore<T> store = new ColumnStore<>();
+            store.add(name, column, entities);
+            columns = store;
+        } else {
+            columns.add(name, column, entities);
+        }
+    }
+
+    /**
+     * Returns the column store, brought up to date with the list, for an operation on a column.
+     */
+    private ColumnStore<T> columns(String name) {
+        if (columns == null) {
+            throw new IllegalArgumentException("No column named: " + name);
+        }
+        columns.refresh(contents());
+        return columns;
+    }
+
+    /**
+     * Collects the entities at the given rows, which are in ascending order.
+     */
+    private List<T> rows(int[] rows) {
+        List<T> result = new ArrayList<>(rows.length);
+        if (tombstones.count() == 0) {
+            for (int row : rows) {
+                result.add(entities.get(row));
+            }
+            return result;
+        }
+        int position = -1;
+        int live = -1;
+        for (int row : rows) {
+            while (live < row) {
+                if (!tombstones.contains(++position)) {
+                    live++;
+                }
+            }
+            result.add(entities.get(position));
+        }
+        return result;
+    }
+
+    private synchronized ContainerMetrics installMetrics(ContainerMetrics installed) {
+        disableMetrics();
+        installed.register(getClass().getSimpleName());
+        metrics = installed;
+        return installed;
+    }
+
+    IdIndex<T> newIdIndex() {
+        return new IdIndex<>();
+    }
+
+    /**
+     * Builds an ID index of the current contents, to be published in one step in place of the old one.
+     */
+    private IdIndex<T> buildIdIndex() {
+        IdIndex<T> index = newIdIndex();
+        index.addAll(entities);
+        return index;
+    }
+
+    /**
+     * Removes an entity that occurs exactly once, by position, without scanning.
+     */
+    private void removeIndexedEntity(T entity) {
+        positionIndex.refresh(entities);
+        int position = positionIndex.position(entity);
+        T removed = entities.get(position);
+        if (preserveOrder) {
+            tombstones.add(position);
+        } else {
+            int last = entities.size() - 1;
+            T moved = entities.remove(last);
+            if (position != last) {
+                entities.set(position, moved);
+                positionIndex.moved(moved, position);
+            }
+        }
+        positionIndex.remove(removed);
+        if (idIndex != null) {
+            idIndex.remove(removed, contents());
+        }
+        for (AttributeIndex<T> index : attributeIndexes.values()) {
+            index.remove(removed);
+        }
+        if (columns != null) {
+            columns.invalidate();
+        }
+        if (tombstones.count() > entities.size() / 2) {
+            compact();
+        }
+        changed(removed, null);
+    }
+
+    /**
+     * Drops the entities left in place by order-preserving removals, in a single pass. Called
+     * only by writes, which need exact positions; reads go through {@link #contents()} instead.
+     */
+    private void compact() {
+        if (tombstones.count() > 0) {
+            tombstones.compact(entities);
+            positionIndex.rebuild(entities);
+        }
+    }
+
+    /**
+     * Returns the list as callers see it: the backing list itself, or a read-only view that
+     * skips the entities removed in order-preserving mode but not yet compacted away.
+     */
+    private List<T> contents() {
+        return tombstones.count() == 0 ? entities : new LiveView();
+    }
+
+    /**
+     * Read-only view of the backing list that skips the positions marked in {@link #tombstones}.
+     * Iteration walks the backing list once; access by index translates the position in O(n/64).
+     */
+    private final class LiveView extends AbstractList<T> implements RandomAccess {
+        @Override
+        public int size() {
+            return entities.size() - tombstones.count();
+        }
+
+        @Override
+        public T get(int index) {
+            Objects.checkIndex(index, size());
+            return entities.get(tombstones.select(index));
+        }
+
+        @Override
+        public Iterator<T> iterator() {
+            return new Iterator<T>() {
+                private int next = skip(0);
+
+                @Override
+                public boolean hasNext() {
+                    return next < entities.size();
+                }
+
+                @Override
+                public T next() {
+                    if (!hasNext()) {
+                        throw new NoSuchElementException();
+                    }
+                    T entity = entities.get(next);
+                    next = skip(next + 1);
+                    return entity;
+                }
+            };
+        }
+
+        @Override
+        public void forEach(Consumer<? super T> action) {
+            for (int i = 0; i < entities.size(); i++) {
+                if (!tombstones.contains(i)) {
+                    action.accept(entities.get(i));
+                }
+            }
+        }
+
+        @Override
+        public Spliterator<T> spliterator() {
+            return Spliterators.spliterator(this, Spliterator.ORDERED);
+        }
+
+        @Override
+        public int indexOf(Object o) {
+            int index = 0;
+            for (T entity : this) {
+                if (Objects.equals(o, entity)) {
+                    return index;
+                }
+                index++;
+            }
+            return -1;
+        }
+
+        @Override
+        public int lastIndexOf(Object o) {
+            for (int i = entities.size() - 1; i >= 0; i--) {
+                if (!tombstones.contains(i) && Objects.equals(o, entities.get(i))) {
+                    return tombstones.rank(i);
+                }
+            }
+            return -1;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (o == this) {
+                return true;
+            }
+            if (!(o instanceof List)) {
+                return false;
+            }
+            Iterator<?> other = ((List<?>) o).iterator();
+            for (T entity : this) {
+                if (!other.hasNext() || !Objects.equals(entity, other.next())) {
+                    return false;
+                }
+            }
+            return !other.hasNext();
+        }
+
+        @Override
+        public int hashCode() {
+            return super.hashCode();
+        }
+
+        private int skip(int position) {
+            while (position < entities.size() && tombstones.contains(position)) {
+                position++;
+            }
+            return position;
+        }
+    }
+
+    /**
+     * Returns a collection with O(1) contains for bulk removal: small collections and sets are
+     * used as they are, anything else is copied into a HashSet once.
+     */
+    private static Collection<?> hashed(Collection<?> c) {
+        return c instanceof Set || c.size() < 16 ? c : new HashSet<>(c);
+    }
+
+    /**
+     * Builds a set of ID keys holding both the UUID and the canonical string form of every ID,
+     * so it can be probed with {@link Entity#getIdKey()} of entities in either ID mode. IDs are
+     * normalized first, so a string in upper case matches like in {@link #getEntityById(Object)}.
+     */
+    private static Set<Object> idLookup(Collection<?> ids) {
+        Set<Object> lookup = new HashSet<>(ids.size() * 2);
+        for (Object id : ids) {
+            Object key = IdIndex.normalize(id);
+            if (key instanceof UUID) {
+                lookup.add(key);
+                lookup.add(key.toString());
+            }
+        }
+        return lookup;
+    }
+
+    private void entityAdded(int index, T entity) {
+        indexAdded(index, entity);
+        changed(null, entity);
+    }
+
+    private void indexAdded(int index, T entity) {
+        if (idIndex != null) {
+            idIndex.add(entity);
+        }
+        if (positionIndex != null) {
+            positionIndex.add(entity, index);
+        }
+        for (AttributeIndex<T> attributeIndex : attributeIndexes.values()) {
+            attributeIndex.add(entity);
+        }
+        if (columns != null) {
+            if (index == columns.size()) {
+                columns.appended(entity);
+            } else {
+                columns.invalidate();
+            }
+        }
+    }
+
+    private void entityRemoved(int index, T entity) {
+        if (idIndex != null) {
+            idIndex.remove(entity, entities);
+        }
+        if (positionIndex != null) {
+            positionIndex.remove(entity);
+            if (index != entities.size()) {
+                positionIndex.invalidatePositions();
+            }
+        }
+        for (AttributeIndex<T> attributeIndex : attributeIndexes.values()) {
+            attributeIndex.remove(entity);
+        }
+        if (columns != null) {
+            if (index == entities.size() && index == columns.size() - 1) {
+                columns.removedLast();
+            } else {
+                columns.invalidate();
+            }
+        }
+        changed(entity, null);
+    }
+
+    private void entityReplaced(int index, T previous, T entity) {
+        if (idIndex != null) {
+            idIndex.replace(previous, entity, entities);
+        }
+        if (positionIndex != null) {
+            positionIndex.remove(previous);
+            positionIndex.add(entity, index);
+        }
+        for (AttributeIndex<T> attributeIndex : attributeIndexes.values()) {
+            attributeIndex.remove(previous);
+            attributeIndex.add(entity);
+        }
+        if (columns != null) {
+            columns.replaced(index, entity);
+        }
+        changed(previous, entity);
+    }
+
+    /**
+     * Reports a change to the observers, keyed by the ID of the new entity, or of the removed one.
+     */
+    private void changed(T previous, T current) {
+        List<ChangeObserver<T>> observers = this.observers;
+        if (observers.isEmpty()) {
+            return;
+        }
+        Object key = (current != null ? current : previous).getIdKey();
+        for (ChangeObserver<T> observer : observers) {
+            observer.changed(key, previous, current);
+        }
+    }
+
+    /**
+     * Reports the changes of a bulk operation to the observers in one call, if there are any.
+     */
+    private void changedAll(List<ChangeEvent<T>> changes) {
+        if (changes.isEmpty()) {
+            return;
+        }
+        for (ChangeObserver<T> observer : observers) {
+            observer.changedAll(changes);
+        }
+    }
+
+    private void reindex() {
+        if (idIndex != null) {
+            idIndex = buildIdIndex();
+        }
+        if (positionIndex != null) {
+            positionIndex.rebuild(entities);
+        }
+        for (AttributeIndex<T> index : attributeIndexes.values()) {
+            index.rebuild(entities);
+        }
+        if (columns != null) {
+            columns.invalidate();
+        }
     }
 }
@@ -1,17 +1,60 @@
 package Java.util;
 
 import Java.main.Entity;
+import Java.util.ContainerMetrics.Operation;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.DoubleSummaryStatistics;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Iterator;
+import java.util.LongSummaryStatistics;
 import java.util.Map;
 import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.function.BiConsumer;
 import java.util.function.BiFunction;
 import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.function.ToDoubleFunction;
+import java.util.function.ToLongFunction;
 import java.util.Collection;
 import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 public class Util_Map<T extends Entity> {
-    private Map<Object, T> entities = new HashMap<>();
+    private static final int PARALLEL_THRESHOLD = 1 << 14;
+
+    private final Map<Object, T> entities;
+    private ValueIndex<T> valueIndex;
+    private volatile List<ChangeObserver<T>> observers = List.of();
+    private volatile ContainerMetrics metrics;
+
+    public Util_Map() {
+        this(new HashMap<>());
+    }
+
+    /**
+     * Creates a map sized to hold the given number of entities without rehashing.
+     * @param expectedSize - the number of entities the map is expected to hold
+     */
+    public Util_Map(int expectedSize) {
+        this(new HashMap<>((int) Math.ceil(expectedSize / 0.75)));
+    }
+
+    /**
+     * Creates a map over the given backing map, used by subclasses that need different storage.
+     * @param entities - the empty backing map
+     */
+    protected Util_Map(Map<Object, T> entities) {
+        this.entities = entities;
+    }
 
     /**
      * Adds an entity to the map with its ID as the key.
@@ -19,15 +62,125 @@ public class Util_Map<T extends Entity> {
      * @param entity - the entity to add
      */
     public void addEntity(Object id, T entity) {
-        entities.put(id, entity);
+        ContainerMetrics metrics = this.metrics;
+        long start = metrics != null ? System.nanoTime() : 0;
+        try {
+            store(id, entity);
+        } finally {
+            if (metrics != null) {
+                metrics.record(Operation.ADD, start, size());
+            }
+        }
     }
 
     /**
-     * Adds all entities from another map to this map.
+     * Adds an entity to the map keyed by the UUID of its ID, in either ID mode, so the long-based
+     * lookups below find it directly and the ID lookups find it by its string form too.
+     * @param entity - the entity to add
+     */
+    public void addEntity(T entity) {
+        ContainerMetrics metrics = this.metrics;
+        long start = metrics != null ? System.nanoTime() : 0;
+        try {
+            store(entity.getUuid(), entity);
+        } finally {
+            if (metrics != null) {
+                metrics.record(Operation.ADD, start, size());
+            }
+        }
+    }
+
+    /**
+     * Adds all entities from another map to this map as one batch: the table is grown once up
+     * front, and observers and subscriptions are notified once for the whole batch.
      * @param otherEntities - the map of entities to add
      */
     public void addAllEntities(Map<?, ? extends T> otherEntities) {
-        entities.putAll(otherEntities);
+        ContainerMetrics metrics = this.metrics;
+        long start = metrics != null ? System.nanoTime() : 0;
+        try {
+            if (!isTracked()) {
+                entities.putAll(otherEntities);
+                return;
+            }
+            ensureCapacity(entities.size() + otherEntities.size());
+            List<ChangeEvent<T>> changes = observers.isEmpty() ? null : new ArrayList<>(otherEntities.size());
+            for (Map.Entry<?, ? extends T> entry : otherEntities.entrySet()) {
+                putRecorded(entry.getKey(), entry.getValue(), changes);
+            }
+            changedAll(changes);
+        } finally {
+            if (metrics != null) {
+                metrics.record(Operation.ADD_ALL, start, size());
+            }
+        }
+    }
+
+    /**
+     * Adds entities keyed by the UUID of their ID as one batch. See {@link #addAllEntities(Map)}.
+     * @param batch - the entities to add
+     */
+    public void addEntities(Collection<? extends T> batch) {
+        ContainerMetrics metrics = this.metrics;
+        long start = metrics != null ? System.nanoTime() : 0;
+        try {
+            if (batch.isEmpty()) {
+                return;
+            }
+            ensureCapacity(entities.size() + batch.size());
+            List<ChangeEvent<T>> changes = observers.isEmpty() ? null : new ArrayList<>(batch.size());
+            for (T entity : batch) {
+                putRecorded(entity.getUuid(), entity, changes);
+            }
+            changedAll(changes);
+        } finally {
+            if (metrics != null) {
+                metrics.record(Operation.ADD_ALL, start, size());
+            }
+        }
+    }
+
+    /**
+     * Adds the entities of an array as one batch. See {@link #addEntities(Collection)}.
+     * @param batch - the entities to add
+     */
+    public void addEntities(T[] batch) {
+        addEntities(Arrays.asList(batch));
+    }
+
+    /**
+     * Adds the remaining entities of an iterator as one batch. See {@link #addEntities(Collection)}.
+     * @param batch - the entities to add
+     */
+    public void addEntities(Iterator<? extends T> batch) {
+        List<T> buffer = new ArrayList<>();
+        batch.forEachRemaining(buffer::add);
+        addEntities(buffer);
+    }
+
+    /**
+     * Adds the entities of a stream as one batch. See {@link #addEntities(Collection)}.
+     * @param batch - the entities to add
+     */
+    public void addEntities(Stream<? extends T> batch) {
+        addEntities(batch.collect(Collectors.toList()));
+    }
+
+    /**
+     * Grows the hash table, if needed, to hold the given number of entities without rehashing,
+     * ahead of a series of single inserts.
+     * @param minCapacity - the number of entities the map should be able to hold
+     */
+    public void ensureCapacity(int minCapacity) {
+        if (minCapacity > entities.size()) {
+            // HashMap and ConcurrentHashMap both size their table for the incoming entries at the
+            // start of putAll, so an empty map that reports the target size grows the table once
+            entities.putAll(new Presize<>(minCapacity));
+            ContainerMetrics metrics = this.metrics;
+            if (metrics != null) {
+                metrics.reserved(minCapacity);
+            }
+        }
     }
 
     /**
@@ -37,7 +190,15 @@ public class Util_Map<T extends Entity> {
      * @return the previous value associated with the key, or null if there was no mapping for the key
      */
     public T put(Object id, T entity) {
-        return entities.put(id, entity);
+        ContainerMetrics metrics = this.metrics;
+        long start = metrics != null ? System.nanoTime() : 0;
+        try {
+            return store(id, entity);
+        } finally {
+            if (metrics != null) {
+                metrics.record(Operation.ADD, start, size());
+            }
+        }
     }
 
     /**
@@ -47,7 +208,29 @@ public class Util_Map<T extends Entity> {
      * @return the previous value associated with the key, or null if there was no mapping for the key
      */
     public T putIfAbsent(Object id, T entity) {
-        return entities.putIfAbsent(id, entity);
+        ContainerMetrics metrics = this.metrics;
+        long start = metrics != null ? System.nanoTime() : 0;
+        try {
+            if (allowsConcurrentWrites() && isTracked()) {
+                Objects.requireNonNull(entity, "entity");
+                Witness<T> witness = new Witness<>();
+                T current = entities.computeIfAbsent(id, k -> {
+                    witness.called = true;
+                    changed(k, null, entity);
+                    return entity;
+                });
+                return witness.called ? null : current;
+            }
+            T previous = entities.putIfAbsent(id, entity);
+            if (previous == null) {
+                changed(id, null, entity);
+            }
+            return previous;
+        } finally {
+            if (metrics != null) {
+                metrics.record(Operation.ADD, start, size());
+            }
+        }
     }
 
     /**
@@ -57,16 +240,92 @@ public class Util_Map<T extends Entity> {
      * @return the previous value associated with the key, or null if there was no mapping for the key
      */
     public T replace(Object id, T entity) {
-        return entities.replace(id, entity);
+        ContainerMetrics metrics = this.metrics;
+        long start = metrics != null ? System.nanoTime() : 0;
+        try {
+            if (allowsConcurrentWrites() && isTracked()) {
+                Objects.requireNonNull(entity, "entity");
+                Witness<T> witness = new Witness<>();
+                entities.computeIfPresent(id, (k, previous) -> {
+                    witness.previous = previous;
+                    changed(k, previous, entity);
+                    return entity;
+                });
+                return witness.previous;
+            }
+            T previous = entities.replace(id, entity);
+            if (previous != null) {
+                changed(id, previous, entity);
+            }
+            return previous;
+        } finally {
+            if (metrics != null) {
+                metrics.record(Operation.SET, start, size());
+            }
+        }
+    }
+
+    /**
+     * Replaces the entry for the specified key only if it is currently mapped to the specified value.
+     * @param id - the ID of the entity
+     * @param oldEntity - the value expected to be associated with the specified key
+     * @param newEntity - the entity to replace with
+     * @return true if the value was replaced, false otherwise
+     */
+    public boolean replace(Object id, T oldEntity, T newEntity) {
+        ContainerMetrics metrics = this.metrics;
+        long start = metrics != null ? System.nanoTime() : 0;
+        try {
+            return replaceMapping(id, oldEntity, newEntity);
+        } finally {
+            if (metrics != null) {
+                metrics.record(Operation.SET, start, size());
+            }
+        }
     }
     // =========================================================================
     /**
-     * Finds an entity by its ID.
-     * @param id - the ID of the entity to find
+     * Finds an entity by its ID. A string in UUID form that is not a key itself is also looked
+     * up as its UUID, in either case, so entities added by {@link #addEntity(Entity)} are found
+     * by their string ID.
+     * @param key - the ID of the entity to find
      * @return - the entity if found, or null if not found
      */
     public T getValueByKey(Object key) {
-        return entities.get(key);
+        ContainerMetrics metrics = this.metrics;
+        long start = metrics != null ? System.nanoTime() : 0;
+        try {
+            T entity = entities.get(key);
+            if (entity == null) {
+                Object id = IdIndex.normalize(key);
+                if (id != key) {
+                    entity = entities.get(id);
+                }
+            }
+            return entity;
+        } finally {
+            if (metrics != null) {
+                metrics.record(Operation.GET, start);
+            }
+        }
+    }
+
+    /**
+     * Finds an entity keyed by the UUID with the given 64-bit halves.
+     * @param mostSigBits - the most significant 64 bits of the ID
+     * @param leastSigBits - the least significant 64 bits of the ID
+     * @return - the entity if found, or null if not found
+     */
+    public T getValueByKey(long mostSigBits, long leastSigBits) {
+        ContainerMetrics metrics = this.metrics;
+        long start = metrics != null ? System.nanoTime() : 0;
+        try {
+            return entities.get(new UUID(mostSigBits, leastSigBits));
+        } finally {
+            if (metrics != null) {
+                metrics.record(Operation.GET, start);
+            }
+        }
     }
 
     /**
@@ -113,12 +372,27 @@ public class Util_Map<T extends Entity> {
 
     // =========================================================================
     /**
-     * Checks if the map contains a specific entity by ID.
+     * Checks if the map contains a specific entity by ID, trying a string ID in UUID form as its
+     * UUID too, like {@link #getValueByKey(Object)}.
      * @param id - the ID of the entity to check
      * @return - true if the map contains the entity, false otherwise
      */
     public boolean containsKey(Object id) {
-        return entities.containsKey(id);
+        if (entities.containsKey(id)) {
+            return true;
+        }
+        Object key = IdIndex.normalize(id);
+        return key != id && entities.containsKey(key);
+    }
+
+    /**
+     * Checks if the map contains an entity keyed by the UUID with the given 64-bit halves.
+     * @param mostSigBits - the most significant 64 bits of the ID
+     * @param leastSigBits - the least significant 64 bits of the ID
+     * @return - true if the map contains the key, false otherwise
+     */
+    public boolean containsKey(long mostSigBits, long leastSigBits) {
+        return entities.containsKey(new UUID(mostSigBits, leastSigBits));
     }
 
     /**
@@ -127,14 +401,112 @@ public class Util_Map<T extends Entity> {
      * @return - true if the map contains the entity, false otherwise
      */
     public boolean containsValue(T entity) {
+        if (valueIndex != null) {
+            return valueIndex.contains(entity);
+        }
         return entities.containsValue(entity);
     }
 
+    /**
+     * Enables a multiset index of the values so that {@link #containsValue(Entity)} is O(1).
+     * It is kept up to date by every mutating method of this class; changes made through
+     * the collections returned by {@link #getKeys(Map)} or {@link #getValues(Map)} bypass it.
+     * @param identity - true to match values by reference, false to match them with equals
+     */
+    public void enableValueIndex(boolean identity) {
+        ValueIndex<T> index = new ValueIndex<>(identity);
+        index.rebuild(entities.values());
+        valueIndex = index;
+    }
+
+    /**
+     * Disables the value index; containsValue goes back to scanning.
+     */
+    public void disableValueIndex() {
+        valueIndex = null;
+    }
+
+    /**
+     * Checks if the value index is enabled.
+     * @return - true if containsValue is served by the index, otherwise false
+     */
+    public boolean isValueIndexEnabled() {
+        return valueIndex != null;
+    }
+
+    /**
+     * Subscribes a listener to every later change made through the mutating methods of this map,
+     * delivered in batches on a dedicated thread. See {@link ChangeSubscription}.
+     * @param listener - the listener to deliver the changes to
+     * @return the subscription, which must be closed to stop delivery
+     */
+    public ChangeSubscription<T> subscribe(ChangeListener<T> listener) {
+        return subscribe(listener, ChangeSubscription.DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Subscribes a listener to every later change, buffering up to the given number of changes
+     * before writers wait for the listener.
+     * @param listener - the listener to deliver the changes to
+     * @param capacity - the number of changes the buffer holds
+     * @return the subscription, which must be closed to stop delivery
+     */
+    public ChangeSubscription<T> subscribe(ChangeListener<T> listener, int capacity) {
+        ChangeSubscription<T> subscription = new ChangeSubscription<>(listener, capacity, this::removeObserver);
+        addObserver(subscription.observer());
+        subscription.start();
+        return subscription;
+    }
+
+    /**
+     * Starts collecting call counts, latency histograms and size statistics of the main
+     * operations, readable through the returned object. See {@link ContainerMetrics}.
+     * Replaces any metrics enabled before.
+     * @return the metrics of this map
+     */
+    public ContainerMetrics enableMetrics() {
+        return installMetrics(new ContainerMetrics(null, this::size, ContainerMetrics.Growth.HASH));
+    }
+
+    /**
+     * Starts collecting metrics and also publishes them through JMX as
+     * {@code Java.util:type=<class>,name=<name>}. Replaces any metrics enabled before.
+     * @param name - the name of this map in JMX
+     * @return the metrics of this map
+     * @throws IllegalStateException if the JMX name is already taken
+     */
+    public ContainerMetrics enableMetrics(String name) {
+        return installMetrics(new ContainerMetrics(Objects.requireNonNull(name, "name"), this::size,
+                                                   ContainerMetrics.Growth.HASH));
+    }
+
+    /**
+     * Stops collecting metrics and unregisters them from JMX; the instrumented methods go back
+     * to a single field check.
+     */
+    public synchronized void disableMetrics() {
+        ContainerMetrics current = metrics;
+        metrics = null;
+        if (current != null) {
+            current.unregister();
+        }
+    }
+
+    /**
+     * Returns the metrics being collected.
+     * @return the metrics, or null if they are disabled
+     */
+    public ContainerMetrics getMetrics() {
+        return metrics;
+    }
+
     /**
      * Prints all entities in the map.
      */
     public void printEntities() {
-        entities.values().forEach(entity -> System.out.println(entity));
+        try (ExportWriter out = ExportWriter.toStandardOut()) {
+            entities.values().forEach(entity -> out.append(String.valueOf(entity)).line());
+        }
     }
 
     // =========================================================================
@@ -165,17 +537,32 @@ public class Util_Map<T extends Entity> {
 
     // =========================================================================
     /**
-     * Removes an entity from the map by its ID.
+     * Removes an entity from the map by its ID, trying a string ID in UUID form as its UUID too,
+     * like {@link #getValueByKey(Object)}.
      * @param id - the ID of the entity to remove
      * @return - the removed entity, or throws an exception if not found
      * @throws NoSuchElementException if the entity is not found in the map
      */
     public T removeEntity(Object id) {
-        T entity = entities.remove(id);
-        if (entity == null) {
-            throw new NoSuchElementException("Entity not found with ID: " + id);
+        ContainerMetrics metrics = this.metrics;
+        long start = metrics != null ? System.nanoTime() : 0;
+        try {
+            T entity = delete(id);
+            if (entity == null) {
+                Object key = IdIndex.normalize(id);
+                if (key != id) {
+                    entity = delete(key);
+                }
+            }
+            if (entity == null) {
+                throw new NoSuchElementException("Entity not found with ID: " + id);
+            }
+            return entity;
+        } finally {
+            if (metrics != null) {
+                metrics.record(Operation.REMOVE, start, size());
+            }
         }
-        return entity;
     }
 
     /**
@@ -185,14 +572,95 @@ public class Util_Map<T extends Entity> {
      * @return true if the entry was removed, false otherwise
      */
     public boolean remove(Object key, Object value) {
-        return entities.remove(key, value);
+        ContainerMetrics metrics = this.metrics;
+        long start = metrics != null ? System.nanoTime() : 0;
+        try {
+            return removeMapping(key, value);
+        } finally {
+            if (metrics != null) {
+                metrics.record(Operation.REMOVE, start, size());
+            }
+        }
+    }
+
+    /**
+     * Removes the entries for all the given keys. Each key is a single hash lookup; on a
+     * {@link Util_ConcurrentMap}, large inputs are removed in parallel.
+     * @param keys - the IDs of the entities to remove
+     * @return true if this map changed as a result of the call
+     */
+    public boolean removeAllKeys(Collection<?> keys) {
+        ContainerMetrics metrics = this.metrics;
+        long start = metrics != null ? System.nanoTime() : 0;
+        try {
+            return removeKeys(keys);
+        } finally {
+            if (metrics != null) {
+                metrics.record(Operation.REMOVE_ALL, start, size());
+            }
+        }
+    }
+
+    /**
+     * Retains only the entries whose key is in the given collection. The keys are hashed once
+     * and, for large maps, the entries to drop are found by a parallel scan.
+     * @param keys - the IDs of the entities to keep
+     * @return true if this map changed as a result of the call
+     */
+    public boolean retainAllKeys(Collection<?> keys) {
+        ContainerMetrics metrics = this.metrics;
+        long start = metrics != null ? System.nanoTime() : 0;
+        try {
+            Collection<?> lookup = keys instanceof Set ? keys : new HashSet<>(keys);
+            Stream<Object> candidates = entities.size() >= PARALLEL_THRESHOLD
+                    ? entities.keySet().parallelStream()
+                    : entities.keySet().stream();
+            List<Object> doomed = candidates.filter(key -> !lookup.contains(key))
+                                            .collect(Collectors.toList());
+            return removeKeys(doomed);
+        } finally {
+            if (metrics != null) {
+                metrics.record(Operation.REMOVE_ALL, start, size());
+            }
+        }
+    }
+
+    private boolean removeKeys(Collection<?> keys) {
+        if (keys.size() >= PARALLEL_THRESHOLD && allowsConcurrentWrites()) {
+            AtomicBoolean changed = new AtomicBoolean();
+            keys.parallelStream().forEach(key -> {
+                if (removeKey(key)) {
+                    changed.set(true);
+                }
+            });
+            return changed.get();
+        }
+        boolean changed = false;
+        for (Object key : keys) {
+            changed |= removeKey(key);
+        }
+        return changed;
     }
 
     /**
      * Clears all entities from the map.
      */
     public void clear() {
-        entities.clear();
+        ContainerMetrics metrics = this.metrics;
+        long start = metrics != null ? System.nanoTime() : 0;
+        try {
+            entities.clear();
+            if (valueIndex != null) {
+                valueIndex.clear();
+            }
+            for (ChangeObserver<T> observer : observers) {
+                observer.cleared();
+            }
+        } finally {
+            if (metrics != null) {
+                metrics.record(Operation.CLEAR, start, size());
+            }
+        }
     }
     // =========================================================================
 
@@ -202,9 +670,10 @@ public class Util_Map<T extends Entity> {
      * Iterates over the keys in the map.
      */
     public void loopThroughKeys() {
-        for (Object key : entities.keySet()) {
-            System.out.println("Key: " + key);
-            System.out.println("Value: " + entities.get(key));
+        try (ExportWriter out = ExportWriter.toStandardOut()) {
+            for (Object key : entities.keySet()) {
+                printEntry(out, key, entities.get(key));
+            }
         }
     }
 
@@ -213,8 +682,10 @@ public class Util_Map<T extends Entity> {
      * Iterates over the values in the map.
      */
     public void loopThroughValues() {
-        for (T value : entities.values()) {
-            System.out.println("Value: " + value);
+        try (ExportWriter out = ExportWriter.toStandardOut()) {
+            for (T value : entities.values()) {
+                out.append("Value: ").append(String.valueOf(value)).line();
+            }
         }
     }
 
@@ -223,9 +694,10 @@ public class Util_Map<T extends Entity> {
      * Iterates over the key-value pairs in the map.
      */
     public void loopThroughEntries() {
-        for (Map.Entry<Object, T> entry : entities.entrySet()) {
-            System.out.println("Key: " + entry.getKey());
-            System.out.println("Value: " + entry.getValue());
+        try (ExportWriter out = ExportWriter.toStandardOut()) {
+            for (Map.Entry<Object, T> entry : entities.entrySet()) {
+                printEntry(out, entry.getKey(), entry.getValue());
+            }
         }
     }
 
@@ -234,10 +706,9 @@ public class Util_Map<T extends Entity> {
      * Processes each key-value pair in the map.
      */
     public void loopUsingForEach() {
-        entities.forEach((key, value) -> {
-            System.out.println("Key: " + key);
-            System.out.println("Value: " + value);
-        });
+        try (ExportWriter out = ExportWriter.toStandardOut()) {
+            entities.forEach((key, value) -> printEntry(out, key, value));
+        }
     }
 
     /**
@@ -245,11 +716,12 @@ public class Util_Map<T extends Entity> {
      * Provides more control over the iteration process.
      */
     public void loopUsingIterator() {
-        Iterator<Map.Entry<Object, T>> iterator = entities.entrySet().iterator();
-        while (iterator.hasNext()) {
-            Map.Entry<Object, T> entry = iterator.next();
-            System.out.println("Key: " + entry.getKey());
-            System.out.println("Value: " + entry.getValue());
+        try (ExportWriter out = ExportWriter.toStandardOut()) {
+            Iterator<Map.Entry<Object, T>> iterator = entities.entrySet().iterator();
+            while (iterator.hasNext()) {
+                Map.Entry<Object, T> entry = iterator.next();
+                printEntry(out, entry.getKey(), entry.getValue());
+            }
         }
     }
 
@@ -258,10 +730,147 @@ public class Util_Map<T extends Entity> {
      * Converts the entries of the map into a stream and processes them.
      */
     public void loopUsingStream() {
-        entities.entrySet().stream().forEach(entry -> {
-            System.out.println("Key: " + entry.getKey());
-            System.out.println("Value: " + entry.getValue());
-        });
+        try (ExportWriter out = ExportWriter.toStandardOut()) {
+            entities.entrySet().stream().forEach(entry -> printEntry(out, entry.getKey(), entry.getValue()));
+        }
+    }
+
+    private static void printEntry(ExportWriter out, Object key, Object value) {
+        out.append("Key: ").append(String.valueOf(key)).line();
+        out.append("Value: ").append(String.valueOf(value)).line();
+    }
+
+    // =========================================================================
+    // Aggregations take primitive extractors and accumulate into primitives, so no value is
+    // boxed and no intermediate collection is built. Maps of PARALLEL_THRESHOLD entities or
+    // more are aggregated in parallel.
+
+    /**
+     * Counts the entities that match a predicate.
+     * @param predicate - the condition to count
+     * @return the number of matching entities
+     */
+    public long countEntities(Predicate<? super T> predicate) {
+        ContainerMetrics metrics = this.metrics;
+        long start = metrics != null ? System.nanoTime() : 0;
+        try {
+            return values().filter(predicate).count();
+        } finally {
+            if (metrics != null) {
+                metrics.record(Operation.AGGREGATE, start);
+            }
+        }
+    }
+
+    /**
+     * Sums a numeric attribute of the entities.
+     * @param extractor - returns the attribute of an entity
+     * @return the sum, which overflows silently like {@code long} arithmetic
+     */
+    public long sumLong(ToLongFunction<? super T> extractor) {
+        ContainerMetrics metrics = this.metrics;
+        long start = metrics != null ? System.nanoTime() : 0;
+        try {
+            return values().mapToLong(extractor).sum();
+        } finally {
+            if (metrics != null) {
+                metrics.record(Operation.AGGREGATE, start);
+            }
+        }
+    }
+
+    /**
+     * Sums a numeric attribute of the entities.
+     * @param extractor - returns the attribute of an entity
+     * @return the sum
+     */
+    public double sumDouble(ToDoubleFunction<? super T> extractor) {
+        ContainerMetrics metrics = this.metrics;
+        long start = metrics != null ? System.nanoTime() : 0;
+        try {
+            return values().mapToDouble(extractor).sum();
+        } finally {
+            if (metrics != null) {
+                metrics.record(Operation.AGGREGATE, start);
+            }
+        }
+    }
+
+    /**
+     * Computes count, sum, minimum, maximum and average of a numeric attribute in one pass.
+     * @param extractor - returns the attribute of an entity
+     * @return the statistics; minimum and maximum are {@code Long.MAX_VALUE} and
+     *         {@code Long.MIN_VALUE} for an empty map
+     */
+    public LongSummaryStatistics summarizeLong(ToLongFunction<? super T> extractor) {
+        ContainerMetrics metrics = this.metrics;
+        long start = metrics != null ? System.nanoTime() : 0;
+        try {
+            return values().mapToLong(extractor).summaryStatistics();
+        } finally {
+            if (metrics != null) {
+                metrics.record(Operation.AGGREGATE, start);
+            }
+        }
+    }
+
+    /**
+     * Computes count, sum, minimum, maximum and average of a numeric attribute in one pass.
+     * @param extractor - returns the attribute of an entity
+     * @return the statistics
+     */
+    public DoubleSummaryStatistics summarizeDouble(ToDoubleFunction<? super T> extractor) {
+        ContainerMetrics metrics = this.metrics;
+        long start = metrics != null ? System.nanoTime() : 0;
+        try {
+            return values().mapToDouble(extractor).summaryStatistics();
+        } finally {
+            if (metrics != null) {
+                metrics.record(Operation.AGGREGATE, start);
+            }
+        }
+    }
+
+    /**
+     * Groups the entities by a primitive key and computes count, sum, minimum and maximum of a
+     * numeric attribute per group, in a primitive hash table.
+     * @param key - returns the group key of an entity
+     * @param value - returns the attribute to aggregate
+     * @return the statistics per group
+     */
+    public LongGroupStatistics groupLong(ToLongFunction<? super T> key, ToLongFunction<? super T> value) {
+        ContainerMetrics metrics = this.metrics;
+        long start = metrics != null ? System.nanoTime() : 0;
+        try {
+            return values().collect(LongGroupStatistics::new,
+                                    (groups, entity) -> groups.accept(key.applyAsLong(entity), value.applyAsLong(entity)),
+                                    LongGroupStatistics::combine);
+        } finally {
+            if (metrics != null) {
+                metrics.record(Operation.AGGREGATE, start);
+            }
+        }
+    }
+
+    /**
+     * Groups the entities by a primitive key and computes count, sum, minimum and maximum of a
+     * numeric attribute per group, in a primitive hash table.
+     * @param key - returns the group key of an entity
+     * @param value - returns the attribute to aggregate
+     * @return the statistics per group
+     */
+    public DoubleGroupStatistics groupDouble(ToLongFunction<? super T> key, ToDoubleFunction<? super T> value) {
+        ContainerMetrics metrics = this.metrics;
+        long start = metrics != null ? System.nanoTime() : 0;
+        try {
+            return values().collect(DoubleGroupStatistics::new,
+                                    (groups, entity) -> groups.accept(key.applyAsLong(entity), value.applyAsDouble(entity)),
+                                    DoubleGroupStatistics::combine);
+        } finally {
+            if (metrics != null) {
+                metrics.record(Operation.AGGREGATE, start);
+            }
+        }
     }
 
     // =========================================================================
@@ -273,7 +882,22 @@ public class Util_Map<T extends Entity> {
      * @return the current (existing or computed) value associated with the key, or null if the computed value is null
      */
     public T computeIfAbsent(Object key, Function<? super Object, ? extends T> mappingFunction) {
-        return entities.computeIfAbsent(key, mappingFunction);
+        ContainerMetrics metrics = this.metrics;
+        long start = metrics != null ? System.nanoTime() : 0;
+        try {
+            if (!isTracked()) {
+                return entities.computeIfAbsent(key, mappingFunction);
+            }
+            return entities.computeIfAbsent(key, k -> {
+                T entity = mappingFunction.apply(k);
+                changed(k, null, entity);
+                return entity;
+            });
+        } finally {
+            if (metrics != null) {
+                metrics.record(Operation.COMPUTE_IF_ABSENT, start, size());
+            }
+        }
     }
 
     /**
@@ -283,7 +907,22 @@ public class Util_Map<T extends Entity> {
      * @return the new value associated with the specified key, or null if none
      */
     public T computeIfPresent(Object key, BiFunction<? super Object, ? super T, ? extends T> remappingFunction) {
-        return entities.computeIfPresent(key, remappingFunction);
+        ContainerMetrics metrics = this.metrics;
+        long start = metrics != null ? System.nanoTime() : 0;
+        try {
+            if (!isTracked()) {
+                return entities.computeIfPresent(key, remappingFunction);
+            }
+            return entities.computeIfPresent(key, (k, v) -> {
+                T entity = remappingFunction.apply(k, v);
+                changed(k, v, entity);
+                return entity;
+            });
+        } finally {
+            if (metrics != null) {
+                metrics.record(Operation.COMPUTE_IF_PRESENT, start, size());
+            }
+        }
     }
 
     /**
@@ -293,7 +932,22 @@ public class Util_Map<T extends Entity> {
      * @return the new value associated with the specified key, or null if none
      */
     public T compute(Object key, BiFunction<? super Object, ? super T, ? extends T> remappingFunction) {
-        return entities.compute(key, remappingFunction);
+        ContainerMetrics metrics = this.metrics;
+        long start = metrics != null ? System.nanoTime() : 0;
+        try {
+            if (!isTracked()) {
+                return entities.compute(key, remappingFunction);
+            }
+            return entities.compute(key, (k, v) -> {
+                T entity = remappingFunction.apply(k, v);
+                changed(k, v, entity);
+                return entity;
+            });
+        } finally {
+            if (metrics != null) {
+                metrics.record(Operation.COMPUTE, start, size());
+            }
+        }
     }
 
     /**
@@ -306,7 +960,226 @@ public class Util_Map<T extends Entity> {
      * @return the new value associated with the specified key, or null if no value is associated
      */
     public T merge(Object key, T value, BiFunction<? super T, ? super T, ? extends T> remappingFunction) {
-        return entities.merge(key, value, remappingFunction);
+        ContainerMetrics metrics = this.metrics;
+        long start = metrics != null ? System.nanoTime() : 0;
+        try {
+            if (!isTracked()) {
+                return entities.merge(key, value, remappingFunction);
+            }
+            Objects.requireNonNull(value, "value");
+            Objects.requireNonNull(remappingFunction, "remappingFunction");
+            return entities.compute(key, (k, old) -> {
+                T entity = old == null ? value : remappingFunction.apply(old, value);
+                changed(k, old, entity);
+                return entity;
+            });
+        } finally {
+            if (metrics != null) {
+                metrics.record(Operation.MERGE, start, size());
+            }
+        }
+    }
+
+    // =========================================================================
+    /**
+     * Checks if the backing map may be written by several threads at once.
+     * @return true for thread-safe subclasses
+     */
+    boolean allowsConcurrentWrites() {
+        return false;
+    }
+
+    /**
+     * Replaces the value of a key if it equals oldEntity and records the change; the work of
+     * {@link #replace(Object, Entity, Entity)} without the metrics.
+     * @return true if the value was replaced
+     */
+    boolean replaceMapping(Object id, T oldEntity, T newEntity) {
+        T previous = isTracked() ? entities.get(id) : null;
+        if (entities.replace(id, oldEntity, newEntity)) {
+            changed(id, previous, newEntity);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Removes a key if its value equals the given one and records the change; the work of
+     * {@link #remove(Object, Object)} without the metrics.
+     * @return true if the entry was removed
+     */
+    boolean removeMapping(Object key, Object value) {
+        T previous = isTracked() ? entities.get(key) : null;
+        if (entities.remove(key, value)) {
+            changed(key, previous, null);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Performs the action for each key and value, straight from the backing map.
+     * @param action - the action to perform on each entry
+     */
+    void forEachEntry(BiConsumer<Object, ? super T> action) {
+        entities.forEach(action);
+    }
+
+    private Stream<T> values() {
+        return entities.size() >= PARALLEL_THRESHOLD
+                ? entities.values().parallelStream()
+                : entities.values().stream();
+    }
+
+    /**
+     * Puts an entity, updates the value index and records the change if changes is not null.
+     */
+    private void putRecorded(Object key, T entity, List<ChangeEvent<T>> changes) {
+        T previous = entities.put(key, entity);
+        if (valueIndex != null && previous != entity) {
+            valueIndex.remove(previous);
+            valueIndex.add(entity);
+        }
+        if (changes != null) {
+            changes.add(ChangeEvent.of(key, previous, entity));
+        }
+    }
+
+    /**
+     * Reports the changes of a batch to the observers, if any were recorded.
+     */
+    private void changedAll(List<ChangeEvent<T>> changes) {
+        if (changes == null || changes.isEmpty()) {
+            return;
+        }
+        for (ChangeObserver<T> observer : observers) {
+            observer.changedAll(changes);
+        }
+    }
+
+    private synchronized ContainerMetrics installMetrics(ContainerMetrics installed) {
+        disableMetrics();
+        installed.register(getClass().getSimpleName());
+        metrics = installed;
+        return installed;
+    }
+
+    private boolean removeKey(Object key) {
+        return delete(key) != null;
+    }
+
+    /**
+     * Maps a key to an entity and records the change. Where writers may run concurrently, the
+     * change is recorded inside the atomic update, while the key is locked, so the changes of a
+     * key reach observers in the order they were applied.
+     * @return the previous value, or null if there was no mapping
+     */
+    private T store(Object key, T entity) {
+        if (!allowsConcurrentWrites() || !isTracked()) {
+            T previous = entities.put(key, entity);
+            changed(key, previous, entity);
+            return previous;
+        }
+        Objects.requireNonNull(entity, "entity");
+        Witness<T> witness = new Witness<>();
+        entities.compute(key, (k, previous) -> {
+            witness.previous = previous;
+            changed(k, previous, entity);
+            return entity;
+        });
+        return witness.previous;
+    }
+
+    /**
+     * Removes the mapping of a key and records the change, like {@link #store(Object, Entity)}.
+     * @return the removed value, or null if there was no mapping
+     */
+    private T delete(Object key) {
+        if (!allowsConcurrentWrites() || !isTracked()) {
+            T previous = entities.remove(key);
+            changed(key, previous, null);
+            return previous;
+        }
+        Witness<T> witness = new Witness<>();
+        entities.computeIfPresent(key, (k, previous) -> {
+            witness.previous = previous;
+            changed(k, previous, null);
+            return null;
+        });
+        return witness.previous;
+    }
+
+    /**
+     * Checks if any secondary structure needs to hear about changes, so that mutators only pay
+     * for reading the previous value when it is needed.
+     */
+    boolean isTracked() {
+        return valueIndex != null || !observers.isEmpty();
+    }
+
+    /**
+     * Registers an observer that hears about every later change.
+     * @param observer - the observer to add
+     */
+    synchronized void addObserver(ChangeObserver<T> observer) {
+        List<ChangeObserver<T>> updated = new ArrayList<>(observers);
+        updated.add(observer);
+        observers = List.copyOf(updated);
+    }
+
+    /**
+     * Unregisters an observer added by {@link #addObserver(ChangeObserver)}.
+     * @param observer - the observer to remove
+     */
+    synchronized void removeObserver(ChangeObserver<T> observer) {
+        List<ChangeObserver<T>> updated = new ArrayList<>(observers);
+        updated.remove(observer);
+        observers = List.copyOf(updated);
+    }
+
+    /**
+     * Records that the value for a key changed from previous to current; null stands for no mapping.
+     */
+    void changed(Object key, T previous, T current) {
+        if (previous == null && current == null) {
+            return;
+        }
+        if (valueIndex != null && previous != current) {
+            valueIndex.remove(previous);
+            valueIndex.add(current);
+        }
+        for (ChangeObserver<T> observer : observers) {
+            observer.changed(key, previous, current);
+        }
+    }
+
+    /**
+     * Empty map that reports a size, used only to make putAll presize the backing table.
+     */
+    private static final class Presize<K, V> extends AbstractMap<K, V> {
+        private final int size;
+
+        Presize(int size) {
+            this.size = size;
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+
+        @Override
+        public Set<Map.Entry<K, V>> entrySet() {
+            return Collections.emptySet();
+        }
+    }
+
+    /**
+     * Captures the value a compute or merge function saw, so the change can be reported exactly.
+     */
+    static final class Witness<T> {
+        boolean called;
+        T previous;
     }
 
 }
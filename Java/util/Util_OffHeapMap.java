@@ -0,0 +1,583 @@
+package Java.util;
+
+import Java.main.Entity;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.LinkedHashSet;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.UUID;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
+/**
+ * Entity map kept outside the Java heap, in a memory-mapped file, keyed by entity UUID.
+ *
+ * <p>The file is a 64-byte header followed by a fixed-capacity open-addressing hash table.
+ * Each record holds the two halves of the UUID, a state word and the entity's payload in the
+ * fixed layout given by an {@link EntityLayout}. Nothing but the mapped buffers lives on the
+ * heap, so the garbage collector never traces the stored entities. Entities are decoded on
+ * every read; {@link #addEntity(Entity)} and the key lookups decode nothing.</p>
+ *
+ * <p>{@link #open(Path, EntityLayout)} maps an existing file and is ready at once: there is no
+ * deserialization or rehashing pass. Capacity is fixed when the file is created; call
+ * {@link #force()} to make changes durable. Like {@link Util_Map}, this class is not thread-safe.</p>
+ *
+ * @param <T> the type of entities in the map
+ */
+public class Util_OffHeapMap<T extends Entity> implements Closeable {
+    private static final long MAGIC = 0x53564F484D415031L;
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 64;
+    private static final int MAGIC_OFFSET = 0;
+    private static final int VERSION_OFFSET = 8;
+    private static final int PAYLOAD_SIZE_OFFSET = 12;
+    private static final int CAPACITY_OFFSET = 16;
+    private static final int SIZE_OFFSET = 20;
+
+    private static final int KEY_HIGH = 0;
+    private static final int KEY_LOW = 8;
+    private static final int STATE = 16;
+    private static final int PAYLOAD = 24;
+    private static final long OCCUPIED = 1L;
+
+    private static final long PHI = 0x9E3779B97F4A7C15L;
+    private static final float LOAD_FACTOR = 0.75f;
+    private static final int MAX_CHUNK_BYTES = 1 << 30;
+
+    private final FileChannel channel;
+    private final EntityLayout<T> layout;
+    private final MappedByteBuffer header;
+    private final MappedByteBuffer[] chunks;
+    private final int recordSize;
+    private final int chunkShift;
+    private final int chunkMask;
+    private final int capacity;
+    private final int shift;
+    private final int maxSize;
+    private int size;
+    private boolean closed;
+
+    private Util_OffHeapMap(FileChannel channel, EntityLayout<T> layout, int capacity, boolean create) throws IOException {
+        this.channel = channel;
+        this.layout = layout;
+        this.capacity = capacity;
+        this.recordSize = recordSize(layout);
+        this.shift = 64 - Integer.numberOfTrailingZeros(capacity);
+        this.maxSize = (int) (capacity * LOAD_FACTOR);
+        int recordsPerChunk = Math.min(capacity, Integer.highestOneBit(MAX_CHUNK_BYTES / recordSize));
+        this.chunkShift = Integer.numberOfTrailingZeros(recordsPerChunk);
+        this.chunkMask = recordsPerChunk - 1;
+
+        this.header = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE);
+        this.chunks = new MappedByteBuffer[capacity / recordsPerChunk];
+        long chunkBytes = (long) recordsPerChunk * recordSize;
+        for (int i = 0; i < chunks.length; i++) {
+            chunks[i] = channel.map(FileChannel.MapMode.READ_WRITE, HEADER_SIZE + i * chunkBytes, chunkBytes);
+        }
+        if (create) {
+            header.putLong(MAGIC_OFFSET, MAGIC);
+            header.putInt(VERSION_OFFSET, VERSION);
+            header.putInt(PAYLOAD_SIZE_OFFSET, layout.payloadSize());
+            header.putInt(CAPACITY_OFFSET, capacity);
+            header.putInt(SIZE_OFFSET, 0);
+        }
+        this.size = header.getInt(SIZE_OFFSET);
+    }
+
+    /**
+     * Creates a new store, replacing any existing file.
+     * @param file - the file to map
+     * @param maxEntities - the maximum number of entities the store must hold
+     * @param layout - the payload layout of the entities
+     * @param <T> the type of entities in the map
+     * @return the new, empty store
+     * @throws UncheckedIOException if the file cannot be created or mapped
+     */
+    public static <T extends Entity> Util_OffHeapMap<T> create(Path file, int maxEntities, EntityLayout<T> layout) {
+        try {
+            FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                    StandardOpenOption.READ, StandardOpenOption.WRITE);
+            return new Util_OffHeapMap<>(channel, layout, tableSizeFor(maxEntities), true);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot create off-heap store: " + file, e);
+        }
+    }
+
+    /**
+     * Maps an existing store; its entities are available immediately, without being read.
+     * @param file - the file created by {@link #create(Path, int, EntityLayout)}
+     * @param layout - the payload layout the file was created with
+     * @param <T> the type of entities in the map
+     * @return the reopened store
+     * @throws UncheckedIOException if the file cannot be read or mapped
+     * @throws IllegalArgumentException if the file is not a store, its payload size does not match the layout,
+     * or its header or length is corrupt, e.g. because the file was truncated
+     */
+    public static <T extends Entity> Util_OffHeapMap<T> open(Path file, EntityLayout<T> layout) {
+        try {
+            FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            ByteBuffer fileHeader = ByteBuffer.allocate(HEADER_SIZE);
+            if (channel.read(fileHeader, 0) < HEADER_SIZE || fileHeader.getLong(MAGIC_OFFSET) != MAGIC
+                    || fileHeader.getInt(VERSION_OFFSET) != VERSION) {
+                channel.close();
+                throw new IllegalArgumentException("Not an off-heap store: " + file);
+            }
+            if (fileHeader.getInt(PAYLOAD_SIZE_OFFSET) != layout.payloadSize()) {
+                channel.close();
+                throw new IllegalArgumentException("Payload size mismatch: file has " + fileHeader.getInt(PAYLOAD_SIZE_OFFSET)
+                        + " bytes, layout has " + layout.payloadSize());
+            }
+            int capacity = fileHeader.getInt(CAPACITY_OFFSET);
+            if (capacity < 16 || capacity > 1 << 30 || Integer.bitCount(capacity) != 1) {
+                channel.close();
+                throw new IllegalArgumentException("Corrupt off-heap store " + file + ": invalid capacity " + capacity);
+            }
+            int size = fileHeader.getInt(SIZE_OFFSET);
+            if (size < 0 || size > capacity) {
+                channel.close();
+                throw new IllegalArgumentException("Corrupt off-heap store " + file + ": invalid size " + size);
+            }
+            // Mapping past the end would silently extend a truncated file with empty records
+            long expectedLength = HEADER_SIZE + (long) capacity * recordSize(layout);
+            if (channel.size() != expectedLength) {
+                long length = channel.size();
+                channel.close();
+                throw new IllegalArgumentException("Corrupt off-heap store " + file + ": length is " + length
+                        + " bytes, expected " + expectedLength);
+            }
+            return new Util_OffHeapMap<>(channel, layout, capacity, false);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot open off-heap store: " + file, e);
+        }
+    }
+
+    // =========================================================================
+    /**
+     * Adds or replaces an entity, keyed by its UUID, without decoding the previous value.
+     * @param entity - the entity to add
+     * @throws IllegalStateException if the store is full
+     */
+    public void addEntity(T entity) {
+        UUID id = entity.getUuid();
+        long high = id.getMostSignificantBits();
+        long low = id.getLeastSignificantBits();
+        int slot = find(high, low);
+        if (slot < 0) {
+            slot = insert(~slot, high, low);
+        }
+        layout.write(entity, chunk(slot), offset(slot) + PAYLOAD);
+    }
+
+    /**
+     * Adds or replaces an entity, keyed by its UUID.
+     * @param entity - the entity to add or replace
+     * @return the previous value associated with the key, or null if there was no mapping for the key
+     * @throws IllegalStateException if the store is full
+     */
+    public T put(T entity) {
+        UUID id = entity.getUuid();
+        int slot = find(id.getMostSignificantBits(), id.getLeastSignificantBits());
+        T previous = slot >= 0 ? decode(slot) : null;
+        addEntity(entity);
+        return previous;
+    }
+
+    /**
+     * Adds an entity only if its UUID is not already present.
+     * @param entity - the entity to add if absent
+     * @return the current value associated with the key, or null if the entity was added
+     * @throws IllegalStateException if the store is full
+     */
+    public T putIfAbsent(T entity) {
+        UUID id = entity.getUuid();
+        int slot = find(id.getMostSignificantBits(), id.getLeastSignificantBits());
+        if (slot >= 0) {
+            return decode(slot);
+        }
+        addEntity(entity);
+        return null;
+    }
+
+    /**
+     * Replaces the entity with the same UUID only if one is present.
+     * @param entity - the entity to replace with
+     * @return the previous value associated with the key, or null if there was no mapping for the key
+     */
+    public T replace(T entity) {
+        UUID id = entity.getUuid();
+        int slot = find(id.getMostSignificantBits(), id.getLeastSignificantBits());
+        if (slot < 0) {
+            return null;
+        }
+        T previous = decode(slot);
+        layout.write(entity, chunk(slot), offset(slot) + PAYLOAD);
+        return previous;
+    }
+
+    // =========================================================================
+    /**
+     * Finds an entity by its ID.
+     * @param key - the ID of the entity, as a UUID or its string form
+     * @return - the entity if found, or null if not found
+     */
+    public T getValueByKey(Object key) {
+        UUID id = toUuid(key);
+        return id == null ? null : getValueByKey(id.getMostSignificantBits(), id.getLeastSignificantBits());
+    }
+
+    /**
+     * Finds an entity by the two 64-bit halves of its UUID.
+     * @param mostSigBits - the most significant 64 bits of the ID
+     * @param leastSigBits - the least significant 64 bits of the ID
+     * @return - the entity if found, or null if not found
+     */
+    public T getValueByKey(long mostSigBits, long leastSigBits) {
+        int slot = find(mostSigBits, leastSigBits);
+        return slot >= 0 ? decode(slot) : null;
+    }
+
+    /**
+     * Returns the entity with the given ID, or defaultValue if there is none.
+     * @param key - the ID of the entity, as a UUID or its string form
+     * @param defaultValue - the default value to return if the key is not found
+     * @return the entity if found, or defaultValue if not found
+     */
+    public T getOrDefault(Object key, T defaultValue) {
+        T entity = getValueByKey(key);
+        return entity != null ? entity : defaultValue;
+    }
+
+    /**
+     * Returns a copy of the set of keys in the map.
+     * @return the keys, in table order
+     */
+    public Set<UUID> getKeys() {
+        Set<UUID> keys = new LinkedHashSet<>();
+        forEachSlot(slot -> keys.add(keyAt(slot)));
+        return keys;
+    }
+
+    // =========================================================================
+    /**
+     * Checks if the map contains a specific entity by ID.
+     * @param id - the ID of the entity, as a UUID or its string form
+     * @return - true if the map contains the entity, false otherwise
+     */
+    public boolean containsKey(Object id) {
+        UUID uuid = toUuid(id);
+        return uuid != null && containsKey(uuid.getMostSignificantBits(), uuid.getLeastSignificantBits());
+    }
+
+    /**
+     * Checks if the map contains an entity with the given UUID halves, without decoding it.
+     * @param mostSigBits - the most significant 64 bits of the ID
+     * @param leastSigBits - the least significant 64 bits of the ID
+     * @return - true if the map contains the key, false otherwise
+     */
+    public boolean containsKey(long mostSigBits, long leastSigBits) {
+        return find(mostSigBits, leastSigBits) >= 0;
+    }
+
+    /**
+     * Prints all entities in the map.
+     */
+    public void printEntities() {
+        try (ExportWriter out = ExportWriter.toStandardOut()) {
+            forEachValue(entity -> out.append(String.valueOf(entity)).line());
+        }
+    }
+
+    // =========================================================================
+    /**
+     * Gets the size of the map.
+     * @return - the number of entities in the map
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Checks if the map is empty.
+     * @return - true if the map is empty, otherwise false
+     */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Returns the maximum number of entities the store can hold.
+     * @return - the capacity in entities
+     */
+    public int maxSize() {
+        return maxSize;
+    }
+
+    /**
+     * Converts the map of entities to an array, decoding every entity.
+     * @return - an array containing all entities in the map
+     */
+    public Object[] toArray() {
+        Object[] array = new Object[size];
+        int[] next = {0};
+        forEachValue(entity -> array[next[0]++] = entity);
+        return array;
+    }
+
+    // =========================================================================
+    /**
+     * Removes an entity from the map by its ID.
+     * @param id - the ID of the entity, as a UUID or its string form
+     * @return - the removed entity, or throws an exception if not found
+     * @throws NoSuchElementException if the entity is not found in the map
+     */
+    public T removeEntity(Object id) {
+        UUID uuid = toUuid(id);
+        int slot = uuid == null ? -1 : find(uuid.getMostSignificantBits(), uuid.getLeastSignificantBits());
+        if (slot < 0) {
+            throw new NoSuchElementException("Entity not found with ID: " + id);
+        }
+        T entity = decode(slot);
+        shiftBack(slot);
+        setSize(size - 1);
+        return entity;
+    }
+
+    /**
+     * Clears all entities from the map.
+     */
+    public void clear() {
+        for (int slot = 0; slot < capacity; slot++) {
+            chunk(slot).putLong(offset(slot) + STATE, 0L);
+        }
+        setSize(0);
+    }
+
+    // =========================================================================
+    /**
+     * Performs the given action for each key-value pair, decoding each entity.
+     * @param action - the action to perform
+     */
+    public void forEach(BiConsumer<? super UUID, ? super T> action) {
+        forEachSlot(slot -> action.accept(keyAt(slot), decode(slot)));
+    }
+
+    /**
+     * Performs the given action for each entity.
+     * @param action - the action to perform
+     */
+    public void forEachValue(Consumer<? super T> action) {
+        forEachSlot(slot -> action.accept(decode(slot)));
+    }
+
+    /**
+     * Looping through keys
+     * Iterates over the keys in the map.
+     */
+    public void loopThroughKeys() {
+        try (ExportWriter out = ExportWriter.toStandardOut()) {
+            forEachSlot(slot -> {
+                out.append("Key: ").append(String.valueOf(keyAt(slot))).line();
+                out.append("Value: ").append(String.valueOf(decode(slot))).line();
+            });
+        }
+    }
+
+    /**
+     * Looping through values
+     * Iterates over the values in the map.
+     */
+    public void loopThroughValues() {
+        try (ExportWriter out = ExportWriter.toStandardOut()) {
+            forEachValue(value -> out.append("Value: ").append(String.valueOf(value)).line());
+        }
+    }
+
+    /**
+     * Looping through key-value pairs
+     * Iterates over the key-value pairs in the map.
+     */
+    public void loopThroughEntries() {
+        try (ExportWriter out = ExportWriter.toStandardOut()) {
+            forEach((key, value) -> {
+                out.append("Key: ").append(String.valueOf(key)).line();
+                out.append("Value: ").append(String.valueOf(value)).line();
+            });
+        }
+    }
+
+    // =========================================================================
+    /**
+     * Writes all changes to the underlying file.
+     */
+    public void force() {
+        ensureOpen();
+        for (MappedByteBuffer chunk : chunks) {
+            chunk.force();
+        }
+        header.force();
+    }
+
+    /**
+     * Forces all changes to the file and closes it. The mapping itself is released when the
+     * store is garbage collected.
+     * @throws IOException if the file cannot be closed
+     */
+    @Override
+    public void close() throws IOException {
+        if (!closed) {
+            force();
+            closed = true;
+            channel.close();
+        }
+    }
+
+    // =========================================================================
+    private interface SlotAction {
+        void accept(int slot);
+    }
+
+    private void forEachSlot(SlotAction action) {
+        ensureOpen();
+        for (int slot = 0; slot < capacity; slot++) {
+            if (isOccupied(slot)) {
+                action.accept(slot);
+            }
+        }
+    }
+
+    /**
+     * Returns the slot holding the key, or the bitwise complement of the empty slot where it would go.
+     */
+    private int find(long high, long low) {
+        ensureOpen();
+        int mask = capacity - 1;
+        int slot = slotOf(high, low);
+        while (true) {
+            ByteBuffer chunk = chunk(slot);
+            int offset = offset(slot);
+            if (chunk.getLong(offset + STATE) != OCCUPIED) {
+                return ~slot;
+            }
+            if (chunk.getLong(offset + KEY_HIGH) == high && chunk.getLong(offset + KEY_LOW) == low) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    private int insert(int slot, long high, long low) {
+        if (size >= maxSize) {
+            throw new IllegalStateException("Off-heap store is full: " + maxSize + " entities");
+        }
+        ByteBuffer chunk = chunk(slot);
+        int offset = offset(slot);
+        chunk.putLong(offset + KEY_HIGH, high);
+        chunk.putLong(offset + KEY_LOW, low);
+        chunk.putLong(offset + STATE, OCCUPIED);
+        setSize(size + 1);
+        return slot;
+    }
+
+    /**
+     * Backward-shift deletion: moves later records of the probe run into the freed slot.
+     */
+    private void shiftBack(int gap) {
+        int mask = capacity - 1;
+        int slot = gap;
+        while (true) {
+            slot = (slot + 1) & mask;
+            if (!isOccupied(slot)) {
+                break;
+            }
+            ByteBuffer chunk = chunk(slot);
+            int offset = offset(slot);
+            int home = slotOf(chunk.getLong(offset + KEY_HIGH), chunk.getLong(offset + KEY_LOW));
+            if (((slot - home) & mask) >= ((slot - gap) & mask)) {
+                copyRecord(slot, gap);
+                gap = slot;
+            }
+        }
+        chunk(gap).putLong(offset(gap) + STATE, 0L);
+    }
+
+    private void copyRecord(int from, int to) {
+        ByteBuffer source = chunk(from);
+        ByteBuffer target = chunk(to);
+        int sourceOffset = offset(from);
+        int targetOffset = offset(to);
+        for (int i = 0; i < recordSize; i += Long.BYTES) {
+            target.putLong(targetOffset + i, source.getLong(sourceOffset + i));
+        }
+    }
+
+    private boolean isOccupied(int slot) {
+        return chunk(slot).getLong(offset(slot) + STATE) == OCCUPIED;
+    }
+
+    private UUID keyAt(int slot) {
+        ByteBuffer chunk = chunk(slot);
+        int offset = offset(slot);
+        return new UUID(chunk.getLong(offset + KEY_HIGH), chunk.getLong(offset + KEY_LOW));
+    }
+
+    private T decode(int slot) {
+        return layout.read(keyAt(slot), chunk(slot), offset(slot) + PAYLOAD);
+    }
+
+    private ByteBuffer chunk(int slot) {
+        return chunks[slot >>> chunkShift];
+    }
+
+    private int offset(int slot) {
+        return (slot & chunkMask) * recordSize;
+    }
+
+    private int slotOf(long high, long low) {
+        return (int) (((high ^ low) * PHI) >>> shift);
+    }
+
+    private void setSize(int size) {
+        this.size = size;
+        header.putInt(SIZE_OFFSET, size);
+    }
+
+    private void ensureOpen() {
+        if (closed) {
+            throw new IllegalStateException("Off-heap store is closed");
+        }
+    }
+
+    private static UUID toUuid(Object key) {
+        if (key instanceof UUID) {
+            return (UUID) key;
+        }
+        if (key instanceof String) {
+            try {
+                return UUID.fromString((String) key);
+            } catch (IllegalArgumentException e) {
+                return null;
+            }
+        }
+        return null;
+    }
+
+    private static int recordSize(EntityLayout<?> layout) {
+        return PAYLOAD + ((layout.payloadSize() + 7) & ~7);
+    }
+
+    private static int tableSizeFor(int maxEntities) {
+        long needed = (long) Math.ceil(Math.max(maxEntities, 1) / (double) LOAD_FACTOR) + 1;
+        long capacity = Math.max(16, Long.highestOneBit(needed - 1) << 1);
+        if (capacity > 1 << 30) {
+            throw new IllegalArgumentException("Too many entities: " + maxEntities);
+        }
+        return (int) capacity;
+    }
+}
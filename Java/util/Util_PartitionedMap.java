@@ -0,0 +1,512 @@
+package Java.util;
+
+import Java.main.Entity;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiConsumer;
+
+/**
+ * Thread-safe map that splits its keys across {@link Shard shards} by consistent hashing. Each
+ * shard is a {@link Util_Map} of its own, in this process or behind a {@link ShardServer}.
+ *
+ * <p>No single hash table holds all the entries, so no resize has to copy them all at once, and
+ * the entries can be spread over several JVMs. A key always lives in the shard that the
+ * {@link ConsistentHashRing} assigns it to.</p>
+ *
+ * <p>{@link #addShard(Shard)} and {@link #removeShard(String)} switch to the new ring at once and
+ * move the affected entries, about 1/N of them, on a background thread, while the map keeps
+ * serving. During the move a read that misses the new owner of a key also looks in the old one,
+ * and a write goes to the new owner and removes the key from the old one. Writes and moves of
+ * the same key are serialized by a striped lock; reads take no lock. One rebalance runs at a
+ * time; starting another waits for the running one to finish.</p>
+ *
+ * <p>If a move fails, for example on an I/O error of a remote shard, the map keeps routing
+ * through both rings, so no entry is lost. {@link #resumeRebalance()}, and anything that waits
+ * for the rebalance, starts the move again; keys that were already moved are skipped.</p>
+ *
+ * <p>{@link #size()} and {@link #forEachEntry(BiConsumer)} visit every shard without a global
+ * lock, so they are weakly consistent, but they never miss an entry that is in the map for the
+ * whole call, even while a rebalance moves it. They visit the shards a key can move out of before
+ * the shards it can move into, and a move copies before it removes. {@code forEachEntry} also
+ * skips the copy of an entry it already visited in its old shard; {@code size} may count an entry
+ * that moves during the call twice. Neither keys nor values may be null.</p>
+ *
+ * @param <T> the type of entities in the map
+ */
+public class Util_PartitionedMap<T extends Entity> implements AutoCloseable {
+    private static final int LOCK_STRIPES = 256;
+    private static final AtomicInteger THREAD_IDS = new AtomicInteger();
+
+    private final ReentrantLock[] locks = new ReentrantLock[LOCK_STRIPES];
+    private volatile Routing<T> routing;
+    // Completes when the running rebalance is done; guarded by this
+    private CompletableFuture<Void> rebalance = CompletableFuture.completedFuture(null);
+    // The shards the last rebalance moves entries out of, to resume it after a failure; guarded by this
+    private List<Shard<T>> moveSources = List.of();
+
+    /**
+     * Where keys live: the current ring and, while a rebalance is moving entries, the ring before it.
+     */
+    private static final class Routing<T extends Entity> {
+        final ConsistentHashRing<Shard<T>> current;
+        final ConsistentHashRing<Shard<T>> previous;
+
+        Routing(ConsistentHashRing<Shard<T>> current, ConsistentHashRing<Shard<T>> previous) {
+            this.current = current;
+            this.previous = previous;
+        }
+    }
+
+    /**
+     * Creates a map of the given number of in-process shards, named "shard-0", "shard-1" and so on.
+     * @param shards - the number of shards
+     */
+    public Util_PartitionedMap(int shards) {
+        this(localShards(shards));
+    }
+
+    /**
+     * Creates a map over the given shards.
+     * @param shards - the shards, at least one, with unique names
+     * @throws IllegalArgumentException if there are no shards or two share a name
+     */
+    public Util_PartitionedMap(List<? extends Shard<T>> shards) {
+        for (int i = 0; i < LOCK_STRIPES; i++) {
+            locks[i] = new ReentrantLock();
+        }
+        this.routing = new Routing<>(ring(new ArrayList<>(shards)), null);
+    }
+
+    // =========================================================================
+    /**
+     * Adds an entity to the map.
+     * @param id - the ID of the entity
+     * @param entity - the entity to add
+     */
+    public void addEntity(Object id, T entity) {
+        put(id, entity);
+    }
+
+    /**
+     * Adds an entity to the map keyed by the UUID of its ID, in either ID mode.
+     * @param entity - the entity to add
+     */
+    public void addEntity(T entity) {
+        put(entity.getUuid(), entity);
+    }
+
+    /**
+     * Maps a key to an entity.
+     * @param id - the key
+     * @param entity - the entity
+     * @return the previous entity, or null if there was none
+     */
+    public T put(Object id, T entity) {
+        Objects.requireNonNull(entity, "entity");
+        ReentrantLock lock = lockFor(id);
+        lock.lock();
+        try {
+            Routing<T> routing = this.routing;
+            Shard<T> owner = routing.current.owner(id);
+            T previous = owner.put(id, entity);
+            Shard<T> old = previousOwner(routing, id, owner);
+            if (old != null) {
+                T moved = old.remove(id);
+                if (previous == null) {
+                    previous = moved;
+                }
+            }
+            return previous;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Maps a key to an entity unless the key is mapped already.
+     * @param id - the key
+     * @param entity - the entity
+     * @return the current entity, or null if the key was absent and is now mapped
+     */
+    public T putIfAbsent(Object id, T entity) {
+        Objects.requireNonNull(entity, "entity");
+        ReentrantLock lock = lockFor(id);
+        lock.lock();
+        try {
+            T current = getValueByKey(id);
+            return current != null ? current : put(id, entity);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the entity for a key.
+     * @param key - the key
+     * @return the entity, or null if there is none
+     */
+    public T getValueByKey(Object key) {
+        Objects.requireNonNull(key, "key");
+        while (true) {
+            Routing<T> routing = this.routing;
+            Shard<T> owner = routing.current.owner(key);
+            T entity = owner.get(key);
+            if (entity == null) {
+                Shard<T> old = previousOwner(routing, key, owner);
+                if (old != null) {
+                    // A move copies to the new owner before it removes from the old one,
+                    // so a key missed in both was moved in between: look again
+                    entity = old.get(key);
+                    if (entity == null) {
+                        entity = owner.get(key);
+                    }
+                }
+            }
+            if (entity != null || routing == this.routing) {
+                return entity;
+            }
+            // The ring changed during the lookup; the key may have moved past it
+        }
+    }
+
+    /**
+     * Checks if the map contains a key.
+     * @param key - the key
+     * @return true if the key is mapped
+     */
+    public boolean containsKey(Object key) {
+        return getValueByKey(key) != null;
+    }
+
+    /**
+     * Removes the mapping for a key.
+     * @param id - the key
+     * @return the removed entity, or null if there was none
+     */
+    public T removeEntity(Object id) {
+        ReentrantLock lock = lockFor(id);
+        lock.lock();
+        try {
+            Routing<T> routing = this.routing;
+            Shard<T> owner = routing.current.owner(id);
+            T removed = owner.remove(id);
+            Shard<T> old = previousOwner(routing, id, owner);
+            if (old != null) {
+                T moved = old.remove(id);
+                if (removed == null) {
+                    removed = moved;
+                }
+            }
+            return removed;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Removes all entries from every shard.
+     */
+    public void clear() {
+        lockAll();
+        try {
+            scanOrder(routing).forEach(Shard::clear);
+        } finally {
+            unlockAll();
+        }
+    }
+
+    /**
+     * Returns the number of entries, summed over the shards.
+     * @return the size of the map
+     */
+    public int size() {
+        while (true) {
+            Routing<T> routing = this.routing;
+            long size = 0;
+            for (Shard<T> shard : scanOrder(routing)) {
+                size += shard.size();
+            }
+            if (routing == this.routing) {
+                return (int) Math.min(Integer.MAX_VALUE, size);
+            }
+            // The ring changed during the count; keys may have moved into shards it did not visit
+        }
+    }
+
+    /**
+     * Checks if the map is empty.
+     * @return true if no shard has an entry
+     */
+    public boolean isEmpty() {
+        for (Shard<T> shard : scanOrder(routing)) {
+            if (shard.size() > 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Performs the action for each entry, shard by shard. During a rebalance, an entry still in
+     * its old shard is visited there and skipped in its new one; only an entry that moves while a
+     * rebalance starts during the call may be visited twice.
+     * @param action - the action to perform on each key and entity
+     */
+    public void forEachEntry(BiConsumer<Object, ? super T> action) {
+        Set<Shard<T>> visited = new HashSet<>();
+        Set<Object> unmoved = new HashSet<>();
+        Routing<T> routing = this.routing;
+        while (true) {
+            for (Shard<T> shard : scanOrder(routing)) {
+                if (!visited.add(shard)) {
+                    continue;
+                }
+                ConsistentHashRing<Shard<T>> current = routing.previous != null ? routing.current : null;
+                shard.forEach((key, entity) -> {
+                    if (current == null) {
+                        action.accept(key, entity);
+                    } else if (current.owner(key) != shard) {
+                        // Not moved yet: its copy in the new owner, if the move runs before
+                        // that shard is visited, is skipped there
+                        unmoved.add(key);
+                        action.accept(key, entity);
+                    } else if (!unmoved.contains(key)) {
+                        action.accept(key, entity);
+                    }
+                });
+            }
+            Routing<T> latest = this.routing;
+            if (latest == routing) {
+                return;
+            }
+            // A rebalance started or ended during the scan: visit the shards it added
+            routing = latest;
+        }
+    }
+
+    // =========================================================================
+    /**
+     * Adds a shard and moves the keys it now owns to it in the background.
+     * @param shard - the new shard
+     * @return a future that completes when the rebalance is done
+     * @throws IllegalArgumentException if a shard of the same name exists
+     * @throws java.util.concurrent.CompletionException if an earlier rebalance fails again when resumed
+     */
+    public synchronized CompletableFuture<Void> addShard(Shard<T> shard) {
+        awaitRebalance();
+        List<Shard<T>> shards = new ArrayList<>(routing.current.shards());
+        shards.add(shard);
+        return rebalance(ring(shards), routing.current.shards());
+    }
+
+    /**
+     * Removes a shard, moving all its entries to the remaining shards in the background. The
+     * shard is not closed: close it once the returned future has completed.
+     * @param name - the name of the shard to remove
+     * @return a future that completes when the rebalance is done
+     * @throws IllegalArgumentException if there is no such shard
+     * @throws IllegalStateException if it is the last shard
+     * @throws java.util.concurrent.CompletionException if an earlier rebalance fails again when resumed
+     */
+    public synchronized CompletableFuture<Void> removeShard(String name) {
+        awaitRebalance();
+        List<Shard<T>> shards = new ArrayList<>(routing.current.shards());
+        Shard<T> removed = shards.stream().filter(shard -> shard.name().equals(name)).findFirst()
+                .orElseThrow(() -> new IllegalArgumentException("No shard named " + name));
+        if (shards.size() == 1) {
+            throw new IllegalStateException("Cannot remove the last shard");
+        }
+        shards.remove(removed);
+        return rebalance(ring(shards), List.of(removed));
+    }
+
+    /**
+     * Returns the names of the shards of the current ring.
+     * @return the shard names, in the order the shards were added
+     */
+    public List<String> getShardNames() {
+        List<String> names = new ArrayList<>();
+        routing.current.shards().forEach(shard -> names.add(shard.name()));
+        return names;
+    }
+
+    /**
+     * Checks if a rebalance is moving entries.
+     * @return true while entries are being moved
+     */
+    public boolean isRebalancing() {
+        return routing.previous != null;
+    }
+
+    /**
+     * Waits for the running rebalance, if any, to finish, first resuming it if its move failed.
+     * @throws java.util.concurrent.CompletionException if the move fails again
+     */
+    public void awaitRebalance() {
+        resumeRebalance().join();
+    }
+
+    /**
+     * Starts the move of a rebalance again if it failed, moving the entries still on the old ring.
+     * @return a future that completes when the rebalance is done: the running one, a new one
+     * for a resumed move, or a completed one if no rebalance is left to do
+     */
+    public synchronized CompletableFuture<Void> resumeRebalance() {
+        Routing<T> routing = this.routing;
+        if (routing.previous == null || !rebalance.isCompletedExceptionally()) {
+            return rebalance;
+        }
+        return move(routing, moveSources);
+    }
+
+    /**
+     * Waits for the running rebalance, resuming it if it failed, then closes every shard.
+     */
+    @Override
+    public void close() {
+        try {
+            awaitRebalance();
+        } finally {
+            routing.current.shards().forEach(Shard::close);
+        }
+    }
+
+    // =========================================================================
+    /**
+     * Switches to the new ring and starts moving the entries of the source shards whose owner
+     * changed. All key locks are held across the switch, so no write is half done on the old ring.
+     */
+    private CompletableFuture<Void> rebalance(ConsistentHashRing<Shard<T>> next, List<Shard<T>> sources) {
+        Routing<T> moving;
+        lockAll();
+        try {
+            moving = new Routing<>(next, routing.current);
+            routing = moving;
+        } finally {
+            unlockAll();
+        }
+        return move(moving, sources);
+    }
+
+    /**
+     * Moves the entries of the source shards on a background thread, then drops the old ring.
+     * If the move fails the old ring stays, for {@link #resumeRebalance()}. Called with the
+     * monitor held.
+     */
+    private CompletableFuture<Void> move(Routing<T> moving, List<Shard<T>> sources) {
+        CompletableFuture<Void> done = new CompletableFuture<>();
+        Thread mover = new Thread(() -> {
+            try {
+                for (Shard<T> source : sources) {
+                    source.forEach((key, entity) -> move(moving, source, key));
+                }
+                routing = new Routing<>(moving.current, null);
+                done.complete(null);
+            } catch (Throwable e) {
+                done.completeExceptionally(e);
+            }
+        }, "partition-rebalance-" + THREAD_IDS.incrementAndGet());
+        mover.setDaemon(true);
+        moveSources = sources;
+        rebalance = done;
+        mover.start();
+        return done;
+    }
+
+    /**
+     * Moves a key from its old owner to its new one, copying before removing so a concurrent
+     * read finds it in one of them.
+     */
+    private void move(Routing<T> moving, Shard<T> source, Object key) {
+        Shard<T> target = moving.current.owner(key);
+        if (target == source) {
+            return;
+        }
+        ReentrantLock lock = lockFor(key);
+        lock.lock();
+        try {
+            T entity = source.get(key);
+            if (entity != null) {
+                target.putIfAbsent(key, entity);
+                source.remove(key);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private Shard<T> previousOwner(Routing<T> routing, Object key, Shard<T> owner) {
+        if (routing.previous == null) {
+            return null;
+        }
+        Shard<T> old = routing.previous.owner(key);
+        return old == owner ? null : old;
+    }
+
+    /**
+     * Returns the shards of both rings in the order a scan visits them: those only the old ring
+     * has, then those of both rings, then those only the new ring has. A rebalance moves keys
+     * only out of a removed shard or into an added one, so every key is visited in the shard it
+     * moves out of before the shard it moves into.
+     */
+    private static <T extends Entity> List<Shard<T>> scanOrder(Routing<T> routing) {
+        if (routing.previous == null) {
+            return new ArrayList<>(routing.current.shards());
+        }
+        Set<Shard<T>> current = new LinkedHashSet<>(routing.current.shards());
+        Set<Shard<T>> order = new LinkedHashSet<>();
+        for (Shard<T> shard : routing.previous.shards()) {
+            if (!current.contains(shard)) {
+                order.add(shard);
+            }
+        }
+        order.addAll(routing.previous.shards());
+        order.addAll(current);
+        return new ArrayList<>(order);
+    }
+
+    private ReentrantLock lockFor(Object key) {
+        int hash = key.hashCode();
+        return locks[(hash ^ hash >>> 16) & (LOCK_STRIPES - 1)];
+    }
+
+    private void lockAll() {
+        for (ReentrantLock lock : locks) {
+            lock.lock();
+        }
+    }
+
+    private void unlockAll() {
+        for (ReentrantLock lock : locks) {
+            lock.unlock();
+        }
+    }
+
+    private static <T extends Entity> ConsistentHashRing<Shard<T>> ring(List<Shard<T>> shards) {
+        Set<String> names = new LinkedHashSet<>();
+        for (Shard<T> shard : shards) {
+            if (!names.add(shard.name())) {
+                throw new IllegalArgumentException("Duplicate shard name: " + shard.name());
+            }
+        }
+        return new ConsistentHashRing<>(shards, Shard::name);
+    }
+
+    private static <T extends Entity> List<Shard<T>> localShards(int count) {
+        if (count < 1) {
+            throw new IllegalArgumentException("Shard count must be positive: " + count);
+        }
+        List<Shard<T>> shards = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            shards.add(Shard.local("shard-" + i));
+        }
+        return shards;
+    }
+}
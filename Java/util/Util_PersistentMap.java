@@ -0,0 +1,87 @@
+package Java.util;
+
+import Java.main.Entity;
+import java.util.Collection;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * {@link Util_Map} backed by a persistent hash array mapped trie, for readers that need a
+ * stable view of the map while writers keep changing it.
+ *
+ * <p>{@link #snapshot()} is O(1). It returns a read-only map of the current version, which
+ * shares every node with the live map and never changes. A write copies the few nodes on the
+ * path to its key and publishes a new version, so no reader ever sees a partial write. Reads,
+ * iteration and snapshots take no lock. Writes are serialized, and their mapping functions run
+ * while other writers wait.</p>
+ *
+ * <p>{@link #batch(Consumer)} runs a series of writes in transient mode. Each path is copied
+ * once instead of once per write, and the whole batch becomes visible to other threads in one
+ * step. {@link #addAllEntities(Map)} and {@link #addEntities(Collection)} always run as a
+ * batch.</p>
+ *
+ * <p>Iteration walks the version that was current when it started. It never throws
+ * {@link java.util.ConcurrentModificationException} and sees none of the writes made while it
+ * runs.</p>
+ *
+ * @param <T> the type of entities in the map
+ */
+public class Util_PersistentMap<T extends Entity> extends Util_Map<T> {
+    private final PersistentHashMap<T> entities;
+
+    public Util_PersistentMap() {
+        this(new PersistentHashMap<>());
+    }
+
+    private Util_PersistentMap(PersistentHashMap<T> entities) {
+        super(entities);
+        this.entities = entities;
+    }
+
+    /**
+     * Returns a read-only map of the current version, in constant time. Later writes to this
+     * map do not show in the snapshot. The snapshot has no observers, metrics or value index.
+     * @return the snapshot, whose mutating methods throw {@link UnsupportedOperationException}
+     */
+    public Util_PersistentMap<T> snapshot() {
+        return new Util_PersistentMap<>(entities.snapshot());
+    }
+
+    /**
+     * Checks if this map is a snapshot.
+     * @return true if the map is read-only
+     */
+    public boolean isSnapshot() {
+        return entities.isReadOnly();
+    }
+
+    /**
+     * Runs a series of writes on this map in transient mode: nodes created by the batch are
+     * updated in place by its later writes, and other threads see the map as it was before the
+     * batch until it ends. Writes from other threads wait for the batch.
+     * @param edits - the writes, made through this map on the calling thread
+     * @throws UnsupportedOperationException if this map is a snapshot
+     */
+    public void batch(Consumer<? super Util_PersistentMap<T>> edits) {
+        entities.batch(() -> edits.accept(this));
+    }
+
+    @Override
+    public void addAllEntities(Map<?, ? extends T> otherEntities) {
+        entities.batch(() -> super.addAllEntities(otherEntities));
+    }
+
+    @Override
+    public void addEntities(Collection<? extends T> batch) {
+        entities.batch(() -> super.addEntities(batch));
+    }
+
+    /**
+     * Not supported: the value index is updated after each write and is not thread-safe.
+     * @throws UnsupportedOperationException always
+     */
+    @Override
+    public void enableValueIndex(boolean identity) {
+        throw new UnsupportedOperationException("Value index is not supported by Util_PersistentMap");
+    }
+}
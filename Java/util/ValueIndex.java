@@ -0,0 +1,54 @@
+package Java.util;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * Multiset of the values in a {@link Util_Map}, so that {@code containsValue} is a hash
+ * lookup instead of a scan over every entry.
+ *
+ * @param <T> the type of values being indexed
+ */
+class ValueIndex<T> {
+    private final Map<T, int[]> counts;
+
+    /**
+     * @param identity - true to match values by reference, false to match them with {@code equals}
+     */
+    ValueIndex(boolean identity) {
+        this.counts = identity ? new IdentityHashMap<>() : new HashMap<>();
+    }
+
+    boolean contains(Object value) {
+        return counts.containsKey(value);
+    }
+
+    void add(T value) {
+        if (value != null) {
+            counts.computeIfAbsent(value, v -> new int[1])[0]++;
+        }
+    }
+
+    void remove(T value) {
+        if (value == null) {
+            return;
+        }
+        int[] count = counts.get(value);
+        if (count != null && --count[0] == 0) {
+            counts.remove(value);
+        }
+    }
+
+    void rebuild(Collection<T> values) {
+        counts.clear();
+        for (T value : values) {
+            add(value);
+        }
+    }
+
+    void clear() {
+        counts.clear();
+    }
+}
@@ -0,0 +1,624 @@
+package Java.util;
+
+import Java.main.Entity;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32C;
+
+/**
+ * Append-only redo log of the changes to a {@link Util_DurableMap}, one file per generation.
+ *
+ * <p>Writers encode their record into an in-memory buffer and return; a single flusher thread
+ * swaps the buffer out and writes everything queued so far with one write call, followed by
+ * one fsync when the {@link SyncPolicy} asks for it (group commit). While it is writing, the next
+ * batch builds up in the second buffer. Writers are slowed down only when more than
+ * {@link #MAX_PENDING} bytes are queued.</p>
+ *
+ * <p>A record is its payload length, the CRC32C of the payload, and the payload: a type byte,
+ * the key (as in {@link EntitySnapshot}) and, for puts, the value. Records hold the full new
+ * state of a key, so replaying them over a snapshot taken at any later point gives the same result.</p>
+ *
+ * <p>The map stages the values of its puts with {@link #stage(Object, Entity)} before it changes
+ * anything, so a value the codec rejects, or a record over the size limit, fails the write while
+ * the map and the log still agree. The records then copy the staged bytes instead of encoding
+ * the values again.</p>
+ *
+ * @param <T> the type of entities in the map
+ */
+final class WriteAheadLog<T extends Entity> implements ChangeObserver<T> {
+    static final int MAX_PENDING = 64 << 20;
+    private static final int MAX_RECORD_SIZE = 1 << 28;
+    private static final int RECORD_HEADER_SIZE = 8;
+    private static final int INITIAL_BUFFER_SIZE = 1 << 16;
+    private static final int MAX_RETAINED_STAGING = 1 << 20;
+    private static final int READ_BUFFER_SIZE = 1 << 20;
+
+    private static final byte PUT = 1;
+    private static final byte REMOVE = 2;
+    private static final byte CLEAR = 3;
+
+    private final Path directory;
+    private final SnapshotCodec<? super T> codec;
+    private final SyncPolicy policy;
+    private final long syncIntervalNanos;
+    private final long compactionThreshold;
+    private final Runnable compaction;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition work = lock.newCondition();
+    private final Condition progress = lock.newCondition();
+    private final CRC32C crc = new CRC32C();
+    private final Thread flusher;
+
+    // Guarded by lock
+    private ByteBuffer pending = ByteBuffer.allocate(INITIAL_BUFFER_SIZE);
+    private ByteBuffer spare = ByteBuffer.allocate(INITIAL_BUFFER_SIZE);
+    private ByteBuffer rolled;
+    private long rolledUpTo;
+    private long appended;
+    private long written;
+    private long durable;
+    private long syncRequested;
+    private long nextGeneration;
+    private IOException failure;
+    private boolean closed;
+    private boolean stopped;
+
+    // Owned by the map's writer, which holds the map's write lock while staging and appending
+    private ByteBuffer staged = ByteBuffer.allocate(INITIAL_BUFFER_SIZE);
+    private Map<Object, Long> stagedValues = new IdentityHashMap<>();
+
+    // Owned by the flusher
+    private FileChannel channel;
+    private long generation;
+    private long channelSize;
+    private long lastSync = System.nanoTime();
+
+    /**
+     * Opens the log file of a generation for appending and starts the flusher.
+     * @param directory - the directory of the log files
+     * @param generation - the generation to append to
+     * @param codec - the encoding of the values
+     * @param policy - when to sync the log
+     * @param syncIntervalNanos - the sync interval of {@link SyncPolicy#INTERVAL}
+     * @param compactionThreshold - the log size from which compaction is requested after each batch
+     * @param compaction - requests a compaction; must not block
+     */
+    WriteAheadLog(Path directory, long generation, SnapshotCodec<? super T> codec, SyncPolicy policy,
+                  long syncIntervalNanos, long compactionThreshold, Runnable compaction) throws IOException {
+        this.directory = directory;
+        this.codec = codec;
+        this.policy = policy;
+        this.syncIntervalNanos = syncIntervalNanos;
+        this.compactionThreshold = compactionThreshold;
+        this.compaction = compaction;
+        this.generation = generation;
+        this.nextGeneration = generation;
+        this.channel = openForAppend(generation);
+        this.channelSize = channel.size();
+        this.flusher = new Thread(this::flushLoop, "wal-flusher-" + directory.getFileName());
+        flusher.setDaemon(true);
+        flusher.start();
+    }
+
+    // =========================================================================
+    @Override
+    public void changed(Object key, T previous, T current) {
+        append(current == null ? REMOVE : PUT, key, current);
+    }
+
+    @Override
+    public void cleared() {
+        append(CLEAR, null, null);
+    }
+
+    /**
+     * Appends the records of a batch under one acquisition of the lock, so the flusher picks
+     * them up together and they are contiguous in the log.
+     */
+    @Override
+    public void changedAll(List<ChangeEvent<T>> changes) {
+        lock.lock();
+        try {
+            ChangeObserver.super.changedAll(changes);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Encodes the value of a put before the map is changed. The record appended for the same
+     * value object reuses the encoding, until {@link #unstage()}. Must be called by the map's
+     * writer under its write lock.
+     * @param key - the key of the put
+     * @param value - the new value
+     * @throws IllegalArgumentException if the record would be larger than the size limit
+     * @throws RuntimeException whatever the codec throws
+     */
+    void stage(Object key, T value) {
+        int start = staged.position();
+        while (true) {
+            try {
+                staged.put(PUT);
+                EntitySnapshot.putKey(staged, key);
+                int valueStart = staged.position();
+                codec.encode(value, staged);
+                if (staged.position() - start > MAX_RECORD_SIZE) {
+                    throw new BufferOverflowException();
+                }
+                stagedValues.put(value, (long) valueStart << 32 | (staged.position() - valueStart));
+                return;
+            } catch (BufferOverflowException e) {
+                staged.position(start);
+                if (staged.capacity() - start > MAX_RECORD_SIZE) {
+                    throw new IllegalArgumentException("Record larger than " + MAX_RECORD_SIZE + " bytes: " + key);
+                }
+                staged = grow(staged, staged.capacity() * 2);
+            } catch (RuntimeException e) {
+                staged.position(start);
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Discards the staged values once the write that staged them is over.
+     */
+    void unstage() {
+        if (stagedValues.isEmpty()) {
+            return;
+        }
+        if (staged.capacity() > MAX_RETAINED_STAGING) {
+            staged = ByteBuffer.allocate(INITIAL_BUFFER_SIZE);
+            stagedValues = new IdentityHashMap<>();
+        } else {
+            staged.clear();
+            stagedValues.clear();
+        }
+    }
+
+    /**
+     * Returns the sequence number of the last record queued.
+     * @return the number of records appended so far
+     */
+    long lastSequence() {
+        lock.lock();
+        try {
+            return appended;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Waits until the record with the given sequence number is synced, if the policy is
+     * {@link SyncPolicy#ALWAYS}; returns at once otherwise.
+     * @param sequence - the sequence number to wait for
+     * @throws UncheckedIOException if the log failed
+     */
+    void awaitDurable(long sequence) {
+        if (policy == SyncPolicy.ALWAYS) {
+            awaitSynced(sequence);
+        }
+    }
+
+    /**
+     * Syncs every record queued so far, whatever the policy.
+     * @throws UncheckedIOException if the log failed
+     */
+    void sync() {
+        long target;
+        lock.lock();
+        try {
+            checkHealthy();
+            target = appended;
+            syncRequested = Math.max(syncRequested, target);
+            work.signal();
+        } finally {
+            lock.unlock();
+        }
+        awaitSynced(target);
+    }
+
+    /**
+     * Starts a new generation: records queued from now on go to the next log file, and the
+     * current file is synced and closed once its last records are written.
+     * @return the new generation
+     * @throws UncheckedIOException if the log failed
+     */
+    long roll() {
+        lock.lock();
+        try {
+            while (rolled != null && failure == null && !stopped) {
+                progress.awaitUninterruptibly();
+            }
+            checkHealthy();
+            rolled = pending;
+            rolledUpTo = appended;
+            pending = ByteBuffer.allocate(INITIAL_BUFFER_SIZE);
+            work.signal();
+            return ++nextGeneration;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Throws if records can no longer be appended.
+     * @throws UncheckedIOException if writing or syncing the log failed
+     * @throws IllegalStateException if the log is closed
+     */
+    void checkHealthy() {
+        lock.lock();
+        try {
+            if (failure != null) {
+                throw new UncheckedIOException("Write-ahead log failed: " + directory, failure);
+            }
+            if (closed) {
+                throw new IllegalStateException("Write-ahead log is closed: " + directory);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Writes and syncs every queued record, then stops the flusher and closes the file.
+     * @throws UncheckedIOException if the log failed
+     */
+    void close() {
+        lock.lock();
+        try {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            work.signal();
+            while (!stopped) {
+                progress.awaitUninterruptibly();
+            }
+            if (failure != null) {
+                throw new UncheckedIOException("Write-ahead log failed: " + directory, failure);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // =========================================================================
+    private void append(byte type, Object key, T value) {
+        lock.lock();
+        try {
+            while (pending.position() >= MAX_PENDING && failure == null && !stopped) {
+                progress.awaitUninterruptibly();
+            }
+            checkHealthy();
+            int start = pending.position();
+            if (pending.capacity() - start <= RECORD_HEADER_SIZE) {
+                pending = grow(pending, pending.capacity() * 2);
+            }
+            while (true) {
+                try {
+                    pending.position(start + RECORD_HEADER_SIZE);
+                    pending.put(type);
+                    if (type != CLEAR) {
+                        EntitySnapshot.putKey(pending, key);
+                    }
+                    if (type == PUT) {
+                        Long range = stagedValues.get(value);
+                        if (range != null) {
+                            pending.put(staged.array(), (int) (range >>> 32), (int) range.longValue());
+                        } else {
+                            codec.encode(value, pending);
+                        }
+                    }
+                    break;
+                } catch (BufferOverflowException e) {
+                    if (pending.capacity() - start > MAX_RECORD_SIZE) {
+                        pending.position(start);
+                        throw new IllegalArgumentException("Record larger than " + MAX_RECORD_SIZE + " bytes: " + key);
+                    }
+                    pending.position(start);
+                    pending = grow(pending, pending.capacity() * 2);
+                } catch (RuntimeException e) {
+                    pending.position(start);
+                    throw e;
+                }
+            }
+            int length = pending.position() - start - RECORD_HEADER_SIZE;
+            crc.reset();
+            crc.update(pending.array(), start + RECORD_HEADER_SIZE, length);
+            pending.putInt(start, length);
+            pending.putInt(start + 4, (int) crc.getValue());
+            appended++;
+            work.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void awaitSynced(long sequence) {
+        lock.lock();
+        try {
+            while (durable < sequence && failure == null && !stopped) {
+                progress.awaitUninterruptibly();
+            }
+            if (failure != null) {
+                throw new UncheckedIOException("Write-ahead log failed: " + directory, failure);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void flushLoop() {
+        while (true) {
+            ByteBuffer batch;
+            ByteBuffer closing;
+            long upTo;
+            long closingUpTo;
+            boolean force;
+            boolean last;
+            lock.lock();
+            try {
+                while (!hasWork()) {
+                    waitForWork();
+                }
+                closing = rolled;
+                closingUpTo = rolledUpTo;
+                batch = pending;
+                upTo = appended;
+                pending = spare;
+                spare = null;
+                last = closed;
+                force = policy == SyncPolicy.ALWAYS || syncRequested > durable || last
+                        || (policy == SyncPolicy.INTERVAL && System.nanoTime() - lastSync >= syncIntervalNanos);
+            } finally {
+                lock.unlock();
+            }
+
+            IOException error = null;
+            boolean forced = false;
+            try {
+                if (closing != null) {
+                    write(closing);
+                    channel.force(false);
+                    channel.close();
+                    generation++;
+                    channel = openForAppend(generation);
+                    channelSize = channel.size();
+                }
+                write(batch);
+                if (force && upTo > durable) {
+                    channel.force(false);
+                    lastSync = System.nanoTime();
+                    forced = true;
+                }
+                if (last) {
+                    channel.close();
+                }
+            } catch (IOException e) {
+                error = e;
+            }
+
+            lock.lock();
+            try {
+                batch.clear();
+                spare = batch;
+                if (closing != null && error == null) {
+                    rolled = null;
+                    durable = Math.max(durable, closingUpTo);
+                }
+                if (error != null) {
+                    failure = error;
+                    stopped = true;
+                } else {
+                    written = upTo;
+                    if (forced) {
+                        durable = upTo;
+                    }
+                    stopped = last;
+                }
+                progress.signalAll();
+                if (stopped) {
+                    return;
+                }
+            } finally {
+                lock.unlock();
+            }
+            if (channelSize >= compactionThreshold) {
+                compaction.run();
+            }
+        }
+    }
+
+    private boolean hasWork() {
+        return pending.position() > 0 || rolled != null || closed || syncRequested > durable
+                || (policy == SyncPolicy.INTERVAL && durable < written
+                    && System.nanoTime() - lastSync >= syncIntervalNanos);
+    }
+
+    private void waitForWork() {
+        if (policy == SyncPolicy.INTERVAL && durable < written) {
+            try {
+                work.awaitNanos(lastSync + syncIntervalNanos - System.nanoTime());
+            } catch (InterruptedException e) {
+                // The flusher is stopped by close(), not by interrupts
+            }
+        } else {
+            work.awaitUninterruptibly();
+        }
+    }
+
+    private void write(ByteBuffer batch) throws IOException {
+        batch.flip();
+        while (batch.hasRemaining()) {
+            channelSize += channel.write(batch);
+        }
+    }
+
+    private FileChannel openForAppend(long generation) throws IOException {
+        FileChannel file = FileChannel.open(logFile(directory, generation), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE);
+        file.position(file.size());
+        return file;
+    }
+
+    private static ByteBuffer grow(ByteBuffer buffer, int capacity) {
+        ByteBuffer bigger = ByteBuffer.allocate(capacity);
+        buffer.flip();
+        bigger.put(buffer);
+        return bigger;
+    }
+
+    // =========================================================================
+    /**
+     * Returns the log file of a generation.
+     * @param directory - the directory of the log files
+     * @param generation - the generation
+     * @return the path of the log file
+     */
+    static Path logFile(Path directory, long generation) {
+        return directory.resolve("wal-" + generation + ".log");
+    }
+
+    /**
+     * Returns the snapshot file of a generation.
+     * @param directory - the directory of the log files
+     * @param generation - the generation
+     * @return the path of the snapshot file
+     */
+    static Path snapshotFile(Path directory, long generation) {
+        return directory.resolve("snapshot-" + generation + ".bin");
+    }
+
+    /**
+     * Parses the generation out of a log or snapshot file name.
+     * @param file - the file
+     * @param prefix - the expected file name prefix
+     * @param suffix - the expected file name suffix
+     * @return the generation, or -1 if the name does not match
+     */
+    static long generationOf(Path file, String prefix, String suffix) {
+        String name = file.getFileName().toString();
+        if (!name.startsWith(prefix) || !name.endsWith(suffix)) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(name.substring(prefix.length(), name.length() - suffix.length()));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Replays a log file, reporting each put as a change from null to the value and each
+     * removal as a change from null to null.
+     *
+     * <p>A torn or corrupt record ends the replay. In the newest file that is the normal result
+     * of a crash mid-write, and the file is truncated before the bad record; in an older file,
+     * which was synced when its generation ended, it is an error.</p>
+     *
+     * @param file - the log file
+     * @param codec - the encoding of the values
+     * @param target - receives the replayed changes
+     * @param newest - true if no later log file exists
+     * @return the number of records replayed
+     * @throws IOException if the file cannot be read, or an older file is corrupt
+     */
+    static <T extends Entity> long replay(Path file, SnapshotCodec<? extends T> codec, ChangeObserver<T> target,
+                                          boolean newest) throws IOException {
+        CRC32C checksum = new CRC32C();
+        long offset = 0;
+        long records = 0;
+        boolean torn = false;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer buffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+            buffer.flip();
+            while (true) {
+                buffer = fill(channel, buffer, RECORD_HEADER_SIZE);
+                if (buffer.remaining() < RECORD_HEADER_SIZE) {
+                    torn = buffer.hasRemaining();
+                    break;
+                }
+                int start = buffer.position();
+                int length = buffer.getInt(start);
+                int expected = buffer.getInt(start + 4);
+                if (length <= 0 || length > MAX_RECORD_SIZE) {
+                    torn = true;
+                    break;
+                }
+                buffer = fill(channel, buffer, RECORD_HEADER_SIZE + length);
+                if (buffer.remaining() < RECORD_HEADER_SIZE + length) {
+                    torn = true;
+                    break;
+                }
+                start = buffer.position();
+                checksum.reset();
+                checksum.update(buffer.array(), start + RECORD_HEADER_SIZE, length);
+                if ((int) checksum.getValue() != expected) {
+                    torn = true;
+                    break;
+                }
+                buffer.position(start + RECORD_HEADER_SIZE);
+                byte type = buffer.get();
+                if (type == CLEAR) {
+                    target.cleared();
+                } else if (type == PUT) {
+                    Object key = EntitySnapshot.getKey(buffer);
+                    target.changed(key, null, codec.decode(buffer));
+                } else if (type == REMOVE) {
+                    target.changed(EntitySnapshot.getKey(buffer), null, null);
+                } else {
+                    torn = true;
+                    break;
+                }
+                buffer.position(start + RECORD_HEADER_SIZE + length);
+                offset += RECORD_HEADER_SIZE + length;
+                records++;
+            }
+        }
+        if (torn) {
+            if (!newest) {
+                throw new IOException("Corrupt write-ahead log " + file + " at offset " + offset);
+            }
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+                channel.truncate(offset);
+                channel.force(false);
+            }
+        }
+        return records;
+    }
+
+    /**
+     * Makes at least the given number of bytes available from the buffer's position, reading
+     * more of the file and growing the buffer as needed. Fewer bytes remain only at end of file.
+     */
+    private static ByteBuffer fill(FileChannel channel, ByteBuffer buffer, int needed) throws IOException {
+        if (buffer.remaining() >= needed) {
+            return buffer;
+        }
+        if (buffer.capacity() < needed) {
+            ByteBuffer bigger = ByteBuffer.allocate(Math.max(needed, buffer.capacity() * 2));
+            bigger.put(buffer);
+            buffer = bigger;
+        } else {
+            buffer.compact();
+        }
+        while (buffer.position() < needed && channel.read(buffer) >= 0) {
+            // keep reading until enough bytes are buffered or the file ends
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+}
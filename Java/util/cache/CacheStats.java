@@ -0,0 +1,80 @@
+package Java.util.cache;
+
+/**
+ * Immutable snapshot of a cache's counters.
+ */
+public final class CacheStats {
+    private final long hitCount;
+    private final long missCount;
+    private final long loadSuccessCount;
+    private final long loadFailureCount;
+    private final long evictionCount;
+    private final long expirationCount;
+
+    public CacheStats(long hitCount, long missCount, long loadSuccessCount, long loadFailureCount,
+                      long evictionCount, long expirationCount) {
+        this.hitCount = hitCount;
+        this.missCount = missCount;
+        this.loadSuccessCount = loadSuccessCount;
+        this.loadFailureCount = loadFailureCount;
+        this.evictionCount = evictionCount;
+        this.expirationCount = expirationCount;
+    }
+
+    /**
+     * @return the number of lookups that found a live entry
+     */
+    public long hitCount() {
+        return hitCount;
+    }
+
+    /**
+     * @return the number of lookups that found no entry or an expired one
+     */
+    public long missCount() {
+        return missCount;
+    }
+
+    /**
+     * @return the number of loads that produced a value
+     */
+    public long loadSuccessCount() {
+        return loadSuccessCount;
+    }
+
+    /**
+     * @return the number of loads that threw an exception
+     */
+    public long loadFailureCount() {
+        return loadFailureCount;
+    }
+
+    /**
+     * @return the number of entries removed to stay within the maximum size
+     */
+    public long evictionCount() {
+        return evictionCount;
+    }
+
+    /**
+     * @return the number of entries removed because their time-to-live passed
+     */
+    public long expirationCount() {
+        return expirationCount;
+    }
+
+    /**
+     * @return the ratio of hits to lookups, or 1.0 if there were no lookups
+     */
+    public double hitRate() {
+        long requests = hitCount + missCount;
+        return requests == 0 ? 1.0 : (double) hitCount / requests;
+    }
+
+    @Override
+    public String toString() {
+        return "CacheStats{hits=" + hitCount + ", misses=" + missCount + ", loadSuccesses=" + loadSuccessCount
+                + ", loadFailures=" + loadFailureCount + ", evictions=" + evictionCount
+                + ", expirations=" + expirationCount + "}";
+    }
+}
@@ -0,0 +1,48 @@
+package Java.util.cache;
+
+/**
+ * Decides which key a size-bounded cache drops once it is full.
+ *
+ * <p>The cache calls these methods while holding its own lock, so implementations need not
+ * be thread-safe. Keys are compared with {@code equals}/{@code hashCode}.</p>
+ */
+public interface EvictionPolicy {
+
+    /**
+     * Returns the maximum number of entries the cache may hold.
+     * @return the maximum size
+     */
+    long maximumSize();
+
+    /**
+     * Records a key that was just added to the cache.
+     * @param key - the new key
+     * @return the key to evict to stay within the maximum size, possibly the new key itself, or null if none
+     */
+    Object recordInsert(Object key);
+
+    /**
+     * Records a read of a key that is in the cache.
+     * @param key - the key that was read
+     */
+    void recordAccess(Object key);
+
+    /**
+     * Records a read of a key that is not in the cache. Frequency-based policies use misses
+     * to judge whether the key is worth admitting once it is loaded.
+     * @param key - the key that was looked up
+     */
+    default void recordMiss(Object key) {
+    }
+
+    /**
+     * Forgets a key that was removed from the cache other than by eviction.
+     * @param key - the removed key
+     */
+    void recordRemoval(Object key);
+
+    /**
+     * Forgets all keys.
+     */
+    void clear();
+}
@@ -0,0 +1,87 @@
+package Java.util.cache;
+
+import java.util.Arrays;
+
+/**
+ * Count-min sketch of 4-bit counters estimating how often each key was seen recently.
+ *
+ * <p>Each key maps to four counters, one per hash function, packed sixteen to a long; its
+ * estimate is the smallest of the four. When the number of increments reaches ten times the
+ * cache size, every counter is halved, so old popularity fades and the sketch follows shifts
+ * in the workload.</p>
+ */
+class FrequencySketch {
+    private static final long[] SEEDS = {
+        0x97CB3127_7AC1E95BL, 0xC6A4A793_5BD1E995L, 0x9E3779B9_7F4A7C15L, 0xBF58476D_1CE4E5B9L
+    };
+    private static final long HALF_MASK = 0x7777777777777777L;
+
+    private final long[] table;
+    private final int sampleSize;
+    private int additions;
+
+    FrequencySketch(long maximumSize) {
+        int counters = (int) Math.min(1 << 26, Math.max(64, Long.highestOneBit(maximumSize * 4 - 1) << 1));
+        this.table = new long[counters / 16];
+        this.sampleSize = (int) Math.min(Integer.MAX_VALUE, maximumSize * 10);
+    }
+
+    /**
+     * Returns the estimated number of times the key was seen, from 0 to 15.
+     */
+    int frequency(Object key) {
+        int hash = key.hashCode();
+        int min = 15;
+        for (long seed : SEEDS) {
+            long h = mix(hash, seed);
+            int count = (int) ((table[index(h)] >>> shiftOf(h)) & 0xF);
+            min = Math.min(min, count);
+        }
+        return min;
+    }
+
+    /**
+     * Records one occurrence of the key.
+     */
+    void increment(Object key) {
+        int hash = key.hashCode();
+        boolean added = false;
+        for (long seed : SEEDS) {
+            long h = mix(hash, seed);
+            int index = index(h);
+            int shift = shiftOf(h);
+            if (((table[index] >>> shift) & 0xF) < 15) {
+                table[index] += 1L << shift;
+                added = true;
+            }
+        }
+        if (added && ++additions >= sampleSize) {
+            reset();
+        }
+    }
+
+    void clear() {
+        Arrays.fill(table, 0L);
+        additions = 0;
+    }
+
+    private void reset() {
+        for (int i = 0; i < table.length; i++) {
+            table[i] = (table[i] >>> 1) & HALF_MASK;
+        }
+        additions /= 2;
+    }
+
+    private int index(long h) {
+        return (int) (h >>> 32) & (table.length - 1);
+    }
+
+    private static int shiftOf(long h) {
+        return ((int) h & 0xF) << 2;
+    }
+
+    private static long mix(int hash, long seed) {
+        long h = (hash + seed) * 0x9E3779B97F4A7C15L;
+        return h ^ (h >>> 29);
+    }
+}
@@ -0,0 +1,55 @@
+package Java.util.cache;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+/**
+ * Least-recently-used eviction: the key that has gone longest without being read or written goes first.
+ */
+public class LruPolicy implements EvictionPolicy {
+    private final long maximumSize;
+    private final LinkedHashMap<Object, Boolean> order = new LinkedHashMap<>(16, 0.75f, true);
+
+    /**
+     * Creates an LRU policy.
+     * @param maximumSize - the maximum number of entries
+     */
+    public LruPolicy(long maximumSize) {
+        if (maximumSize <= 0) {
+            throw new IllegalArgumentException("Maximum size must be positive: " + maximumSize);
+        }
+        this.maximumSize = maximumSize;
+    }
+
+    @Override
+    public long maximumSize() {
+        return maximumSize;
+    }
+
+    @Override
+    public Object recordInsert(Object key) {
+        order.put(key, Boolean.TRUE);
+        if (order.size() <= maximumSize) {
+            return null;
+        }
+        Iterator<Object> eldest = order.keySet().iterator();
+        Object victim = eldest.next();
+        eldest.remove();
+        return victim;
+    }
+
+    @Override
+    public void recordAccess(Object key) {
+        order.get(key);
+    }
+
+    @Override
+    public void recordRemoval(Object key) {
+        order.remove(key);
+    }
+
+    @Override
+    public void clear() {
+        order.clear();
+    }
+}
@@ -0,0 +1,147 @@
+package Java.util.cache;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Window TinyLFU eviction, which keeps frequently used keys even when a burst of one-off keys
+ * passes through.
+ *
+ * <p>New keys enter a small LRU window (1% of the capacity). Keys leaving the window compete
+ * for a place in the main area, a segmented LRU made of a probation and a protected segment:
+ * a candidate is admitted only if a {@link FrequencySketch} says it has been seen more often
+ * than the probation segment's LRU key, which is evicted instead. Keys read while on
+ * probation are promoted to the protected segment (80% of the main area).</p>
+ */
+public class TinyLfuPolicy implements EvictionPolicy {
+    private static final Boolean PRESENT = Boolean.TRUE;
+
+    private enum Segment { WINDOW, PROBATION, PROTECTED }
+
+    private final long maximumSize;
+    private final long windowMaximum;
+    private final long protectedMaximum;
+    private final FrequencySketch sketch;
+    private final Map<Object, Segment> segments = new HashMap<>();
+    private final LinkedHashMap<Object, Boolean> window = new LinkedHashMap<>();
+    private final LinkedHashMap<Object, Boolean> probation = new LinkedHashMap<>();
+    private final LinkedHashMap<Object, Boolean> protectedKeys = new LinkedHashMap<>();
+
+    /**
+     * Creates a W-TinyLFU policy.
+     * @param maximumSize - the maximum number of entries
+     */
+    public TinyLfuPolicy(long maximumSize) {
+        if (maximumSize <= 0) {
+            throw new IllegalArgumentException("Maximum size must be positive: " + maximumSize);
+        }
+        this.maximumSize = maximumSize;
+        this.windowMaximum = Math.max(1, maximumSize / 100);
+        this.protectedMaximum = (long) ((maximumSize - windowMaximum) * 0.8);
+        this.sketch = new FrequencySketch(maximumSize);
+    }
+
+    @Override
+    public long maximumSize() {
+        return maximumSize;
+    }
+
+    @Override
+    public Object recordInsert(Object key) {
+        sketch.increment(key);
+        segments.put(key, Segment.WINDOW);
+        window.put(key, PRESENT);
+        if (window.size() <= windowMaximum) {
+            return null;
+        }
+        Object candidate = removeEldest(window);
+        if (segments.size() <= maximumSize) {
+            segments.put(candidate, Segment.PROBATION);
+            probation.put(candidate, PRESENT);
+            return null;
+        }
+        if (probation.isEmpty() && protectedKeys.isEmpty()) {
+            // With a tiny capacity the main area can be empty: there is no one to compete with
+            segments.remove(candidate);
+            return candidate;
+        }
+        LinkedHashMap<Object, Boolean> victims = probation.isEmpty() ? protectedKeys : probation;
+        Object victim = victims.keySet().iterator().next();
+        if (sketch.frequency(candidate) > sketch.frequency(victim)) {
+            victims.remove(victim);
+            segments.remove(victim);
+            segments.put(candidate, Segment.PROBATION);
+            probation.put(candidate, PRESENT);
+            return victim;
+        }
+        segments.remove(candidate);
+        return candidate;
+    }
+
+    @Override
+    public void recordAccess(Object key) {
+        sketch.increment(key);
+        Segment segment = segments.get(key);
+        if (segment == null) {
+            return;
+        }
+        switch (segment) {
+            case WINDOW:
+                moveToTail(window, key);
+                break;
+            case PROBATION:
+                probation.remove(key);
+                segments.put(key, Segment.PROTECTED);
+                protectedKeys.put(key, PRESENT);
+                if (protectedKeys.size() > protectedMaximum) {
+                    Object demoted = removeEldest(protectedKeys);
+                    segments.put(demoted, Segment.PROBATION);
+                    probation.put(demoted, PRESENT);
+                }
+                break;
+            default:
+                moveToTail(protectedKeys, key);
+                break;
+        }
+    }
+
+    @Override
+    public void recordMiss(Object key) {
+        sketch.increment(key);
+    }
+
+    @Override
+    public void recordRemoval(Object key) {
+        Segment segment = segments.remove(key);
+        if (segment == Segment.WINDOW) {
+            window.remove(key);
+        } else if (segment == Segment.PROBATION) {
+            probation.remove(key);
+        } else if (segment == Segment.PROTECTED) {
+            protectedKeys.remove(key);
+        }
+    }
+
+    @Override
+    public void clear() {
+        segments.clear();
+        window.clear();
+        probation.clear();
+        protectedKeys.clear();
+        sketch.clear();
+    }
+
+    private static void moveToTail(LinkedHashMap<Object, Boolean> segment, Object key) {
+        segment.remove(key);
+        segment.put(key, PRESENT);
+    }
+
+    private static Object removeEldest(LinkedHashMap<Object, Boolean> segment) {
+        Iterator<Object> eldest = segment.keySet().iterator();
+        Object key = eldest.next();
+        eldest.remove();
+        return key;
+    }
+}
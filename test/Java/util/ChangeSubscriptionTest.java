@@ -0,0 +1,127 @@
+package Java.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+
+import Java.main.Entity;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.Test;
+
+class ChangeSubscriptionTest {
+
+    // =========================================================================
+    @Test
+    void listenerMayQueryConcurrentListWhileBufferIsFull() {
+        Util_ConcurrentList<Entity> list = new Util_ConcurrentList<>();
+        list.createHashIndex("id", Entity::getId);
+        AtomicInteger delivered = new AtomicInteger();
+        CountDownLatch done = new CountDownLatch(1000);
+        try (ChangeSubscription<Entity> subscription = list.subscribe(changes -> {
+            for (ChangeEvent<Entity> change : changes) {
+                list.indexQuery().whereEquals("id", change.getCurrent().getId()).count();
+                delivered.incrementAndGet();
+                done.countDown();
+            }
+        }, 1)) {
+            assertTimeoutPreemptively(Duration.ofSeconds(30), () -> {
+                for (int i = 0; i < 1000; i++) {
+                    list.addEntity(new Entity());
+                }
+                done.await();
+            });
+        }
+        assertEquals(1000, delivered.get());
+    }
+
+    @Test
+    void concurrentMapPublishesEachKeyInOrder() throws InterruptedException {
+        Util_ConcurrentMap<Entity> map = new Util_ConcurrentMap<>();
+        List<ChangeEvent<Entity>> events = new ArrayList<>();
+        map.addObserver(new ChangeObserver<Entity>() {
+            @Override
+            public void changed(Object key, Entity previous, Entity current) {
+                synchronized (events) {
+                    events.add(ChangeEvent.of(key, previous, current));
+                }
+            }
+
+            @Override
+            public void cleared() {
+            }
+        });
+        List<Thread> writers = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            Thread writer = new Thread(() -> {
+                for (int i = 0; i < 5000; i++) {
+                    Entity seen = map.getValueByKey("key");
+                    if (i % 4 == 3) {
+                        map.removeAllKeys(List.of("key"));
+                    } else if (i % 4 == 2 && seen != null) {
+                        map.remove("key", seen);
+                    } else if (i % 4 == 1 && seen != null) {
+                        map.replace("key", seen, new Entity());
+                    } else {
+                        map.put("key", new Entity());
+                    }
+                }
+            });
+            writers.add(writer);
+            writer.start();
+        }
+        for (Thread writer : writers) {
+            writer.join();
+        }
+        Entity current = null;
+        for (ChangeEvent<Entity> event : events) {
+            assertSame(current, event.getPrevious());
+            current = event.getCurrent();
+        }
+        assertSame(current, map.getValueByKey("key"));
+    }
+
+    @Test
+    void bulkListChangesArriveAsOneBatch() {
+        Util_List<Entity> list = new Util_List<>();
+        List<Entity> entities = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            entities.add(new Entity());
+        }
+        list.addAllEntities(entities);
+        List<List<ChangeEvent<Entity>>> batches = new ArrayList<>();
+        list.addObserver(new ChangeObserver<Entity>() {
+            @Override
+            public void changed(Object key, Entity previous, Entity current) {
+                batches.add(List.of(ChangeEvent.of(key, previous, current)));
+            }
+
+            @Override
+            public void changedAll(List<ChangeEvent<Entity>> changes) {
+                batches.add(changes);
+            }
+
+            @Override
+            public void cleared() {
+            }
+        });
+
+        Entity replacement = new Entity();
+        list.replaceAllEntities(entity -> entity == entities.get(3) ? replacement : entity);
+        assertEquals(1, batches.size());
+        assertEquals(1, batches.get(0).size());
+        assertSame(entities.get(3), batches.get(0).get(0).getPrevious());
+        assertSame(replacement, batches.get(0).get(0).getCurrent());
+
+        batches.clear();
+        list.removeEntitiesIf(entity -> entity != replacement);
+        assertEquals(1, batches.size());
+        assertEquals(9, batches.get(0).size());
+        for (ChangeEvent<Entity> change : batches.get(0)) {
+            assertEquals(ChangeEvent.Type.REMOVE, change.getType());
+        }
+    }
+}
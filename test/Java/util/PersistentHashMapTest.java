@@ -0,0 +1,72 @@
+package Java.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import org.junit.jupiter.api.Test;
+
+class PersistentHashMapTest {
+
+    // =========================================================================
+    @Test
+    void iteratorRemovesInsideBatch() {
+        PersistentHashMap<Integer> map = new PersistentHashMap<>();
+        Set<Object> seen = new HashSet<>();
+        map.batch(() -> {
+            for (int i = 0; i < 1000; i++) {
+                map.put(i, i);
+            }
+            Iterator<Map.Entry<Object, Integer>> iterator = map.entrySet().iterator();
+            while (iterator.hasNext()) {
+                assertTrue(seen.add(iterator.next().getKey()));
+                iterator.remove();
+            }
+        });
+        assertEquals(1000, seen.size());
+        assertTrue(map.isEmpty());
+    }
+
+    @Test
+    void forEachSeesBatchAsItStarted() {
+        PersistentHashMap<Integer> map = new PersistentHashMap<>();
+        Set<Object> seen = new HashSet<>();
+        map.batch(() -> {
+            for (int i = 0; i < 1000; i++) {
+                map.put(i, i);
+            }
+            map.forEach((key, value) -> {
+                assertTrue(seen.add(key));
+                map.remove(key);
+                map.put(-1 - (Integer) key, value);
+            });
+        });
+        assertEquals(1000, seen.size());
+        assertEquals(1000, map.size());
+        for (int i = 0; i < 1000; i++) {
+            assertEquals(i, map.get(-1 - i));
+        }
+    }
+
+    @Test
+    void writesAfterIterationStayInBatch() {
+        PersistentHashMap<Integer> map = new PersistentHashMap<>();
+        map.put("before", 0);
+        PersistentHashMap<Integer> snapshot = map.snapshot();
+        map.batch(() -> {
+            for (int i = 0; i < 100; i++) {
+                map.put(i, i);
+            }
+            map.entrySet().iterator().next();
+            for (int i = 100; i < 200; i++) {
+                map.put(i, i);
+            }
+            assertEquals(201, map.size());
+        });
+        assertEquals(201, map.size());
+        assertEquals(1, snapshot.size());
+    }
+}
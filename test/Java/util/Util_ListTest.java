@@ -0,0 +1,164 @@
+package Java.util;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import Java.main.Entity;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.UUID;
+import org.junit.jupiter.api.Test;
+
+class Util_ListTest {
+
+    static final class Item extends Entity {
+        Item(UUID id, IdMode mode) {
+            super(id, mode);
+        }
+    }
+
+    // =========================================================================
+    @Test
+    void orderedRemovalsInterleavedWithReads() {
+        Util_List<Entity> list = new Util_List<>();
+        List<Entity> expected = new ArrayList<>();
+        for (int i = 0; i < 500; i++) {
+            Entity entity = new Entity(i % 2 == 0 ? Entity.IdMode.COMPACT : Entity.IdMode.STRING);
+            list.addEntity(entity);
+            expected.add(entity);
+        }
+        list.enableIdIndex();
+        list.enableValueIndex(true);
+
+        Random random = new Random(42);
+        while (expected.size() > 1) {
+            Entity removed = expected.remove(random.nextInt(expected.size()));
+            list.removeEntity(removed);
+
+            assertEquals(expected.size(), list.size());
+            int index = random.nextInt(expected.size());
+            Entity entity = expected.get(index);
+            assertSame(entity, list.getEntityByIndex(index));
+            assertEquals(index, list.indexOf(entity));
+            assertEquals(index, list.lastIndexOf(entity));
+            assertEquals(-1, list.indexOf(removed));
+            assertSame(entity, list.getEntityById(entity.getId()));
+            assertNull(list.getEntityById(removed.getId()));
+            assertNull(list.getEntityByIndex(expected.size()));
+        }
+        assertArrayEquals(expected.toArray(), list.toArray());
+    }
+
+    @Test
+    void bulkReadsSkipRemovedEntities() {
+        Util_List<Entity> list = new Util_List<>();
+        List<Entity> expected = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            Entity entity = new Entity();
+            list.addEntity(entity);
+            expected.add(entity);
+        }
+        list.enableValueIndex(true);
+        for (int i = 0; i < 200; i += 3) {
+            list.removeEntity(expected.get(i));
+        }
+        expected.removeIf(entity -> !list.containsEntity(entity));
+
+        assertArrayEquals(expected.toArray(), list.toArray());
+        assertEquals(expected, list.filterEntities(entity -> true));
+        assertEquals(expected.size(), list.countEntities(entity -> true));
+        assertTrue(list.equals(new ArrayList<>(expected)));
+        assertEquals(expected.hashCode(), list.hashCode());
+        List<Entity> seen = new ArrayList<>();
+        list.forEachEntity(seen::add);
+        assertEquals(expected, seen);
+        List<Entity> split = new ArrayList<>();
+        list.getSpliterator().forEachRemaining(split::add);
+        assertEquals(expected, split);
+    }
+
+    @Test
+    void writesAfterRemovalsSeeCompactedList() {
+        Util_List<Entity> list = new Util_List<>();
+        List<Entity> expected = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            Entity entity = new Entity();
+            list.addEntity(entity);
+            expected.add(entity);
+        }
+        list.enableValueIndex(true);
+        for (int i = 0; i < 10; i++) {
+            list.removeEntity(expected.remove(i));
+        }
+        Entity added = new Entity();
+        list.addEntity(added);
+        expected.add(added);
+        assertEquals(expected.size() - 1, list.indexOf(added));
+
+        Entity replacement = new Entity();
+        list.setEntity(5, replacement);
+        expected.set(5, replacement);
+        assertEquals(5, list.indexOf(replacement));
+        assertArrayEquals(expected.toArray(), list.toArray());
+
+        list.removeEntity(expected.remove(0));
+        assertEquals(4, list.indexOf(replacement));
+        assertArrayEquals(expected.toArray(), list.toArray());
+    }
+
+    @Test
+    void idLookupsAgreeWithAndWithoutIndex() {
+        UUID shared = UUID.randomUUID();
+        Entity first = new Item(shared, Entity.IdMode.STRING);
+        Entity second = new Item(shared, Entity.IdMode.COMPACT);
+        Entity other = new Item(UUID.randomUUID(), Entity.IdMode.COMPACT);
+        Util_List<Entity> scanned = new Util_List<>();
+        Util_List<Entity> indexed = new Util_List<>();
+        for (Util_List<Entity> list : List.of(scanned, indexed)) {
+            list.addEntity(other);
+            list.addEntity(first);
+            list.addEntity(second);
+        }
+        indexed.enableIdIndex();
+
+        for (Util_List<Entity> list : List.of(scanned, indexed)) {
+            assertSame(first, list.getEntityById(shared));
+            assertSame(first, list.getEntityById(shared.toString()));
+            assertSame(first, list.getEntityById(shared.toString().toUpperCase(Locale.ROOT)));
+            assertSame(first, list.getEntityById(shared.getMostSignificantBits(), shared.getLeastSignificantBits()));
+            assertSame(other, list.getEntityById(other.getId().toUpperCase(Locale.ROOT)));
+            assertNull(list.getEntityById("not an id"));
+        }
+
+        indexed.removeEntity(first);
+        assertSame(second, indexed.getEntityById(shared.toString()));
+        assertTrue(scanned.removeEntitiesById(List.of(shared.toString().toUpperCase(Locale.ROOT))));
+        assertEquals(1, scanned.size());
+    }
+
+    @Test
+    void invertedRangesAreEmpty() {
+        Util_List<Entity> list = new Util_List<>();
+        for (int i = 0; i < 10; i++) {
+            list.addEntity(new Entity());
+        }
+        list.createSortedIndex("id", Entity::getId);
+        List<String> ids = new ArrayList<>();
+        list.forEachEntity(entity -> ids.add(entity.getId()));
+        ids.sort(null);
+        String low = ids.get(3);
+        String high = ids.get(4);
+
+        assertEquals(2, list.findRange("id", low, high).size());
+        assertTrue(list.findRange("id", high, low).isEmpty());
+        assertEquals(0, list.indexQuery().whereRange("id", high, true, low, true).count());
+        assertEquals(1, list.indexQuery().whereRange("id", low, true, low, true).count());
+        assertEquals(0, list.indexQuery().whereRange("id", low, false, low, true).count());
+        assertEquals(0, list.indexQuery().whereRange("id", low, true, low, false).count());
+    }
+}
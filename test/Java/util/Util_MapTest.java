@@ -0,0 +1,36 @@
+package Java.util;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import Java.main.Entity;
+import java.util.List;
+import java.util.Locale;
+import java.util.UUID;
+import org.junit.jupiter.api.Test;
+
+class Util_MapTest {
+
+    // =========================================================================
+    @Test
+    void entitiesAreFoundByEitherFormOfTheirId() {
+        for (Util_Map<Entity> map : List.<Util_Map<Entity>>of(new Util_Map<>(), new Util_ConcurrentMap<>())) {
+            Entity compact = new Entity(Entity.IdMode.COMPACT);
+            Entity string = new Entity(Entity.IdMode.STRING);
+            map.addEntity(compact);
+            map.addEntity(string);
+
+            for (Entity entity : List.of(compact, string)) {
+                UUID id = entity.getUuid();
+                assertSame(entity, map.getValueByKey(entity.getId()));
+                assertSame(entity, map.getValueByKey(entity.getId().toUpperCase(Locale.ROOT)));
+                assertSame(entity, map.getValueByKey(id));
+                assertSame(entity, map.getValueByKey(id.getMostSignificantBits(), id.getLeastSignificantBits()));
+                assertTrue(map.containsKey(entity.getId()));
+            }
+            assertSame(string, map.removeEntity(string.getId()));
+            assertFalse(map.containsKey(string.getUuid()));
+        }
+    }
+}
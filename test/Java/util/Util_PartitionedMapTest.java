@@ -0,0 +1,53 @@
+package Java.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import Java.main.Entity;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import org.junit.jupiter.api.Test;
+
+class Util_PartitionedMapTest {
+    private static final int ENTRIES = 200_000;
+
+    // =========================================================================
+    @Test
+    void scansDuringAddShardSeeEveryEntryOnce() {
+        Util_PartitionedMap<Entity> map = filled(new Util_PartitionedMap<>(3));
+        CompletableFuture<Void> rebalance = map.addShard(Shard.local("shard-3"));
+        assertScansComplete(map, rebalance);
+    }
+
+    @Test
+    void scansDuringRemoveShardSeeEveryEntryOnce() {
+        Util_PartitionedMap<Entity> map = filled(new Util_PartitionedMap<>(4));
+        CompletableFuture<Void> rebalance = map.removeShard("shard-1");
+        assertScansComplete(map, rebalance);
+    }
+
+    private static Util_PartitionedMap<Entity> filled(Util_PartitionedMap<Entity> map) {
+        for (int i = 0; i < ENTRIES; i++) {
+            map.put(i, new Entity());
+        }
+        return map;
+    }
+
+    private static void assertScansComplete(Util_PartitionedMap<Entity> map, CompletableFuture<Void> rebalance) {
+        int scans = 0;
+        do {
+            Map<Object, Integer> visits = new HashMap<>();
+            map.forEachEntry((key, entity) -> visits.merge(key, 1, Integer::sum));
+            assertEquals(ENTRIES, visits.size());
+            for (int count : visits.values()) {
+                assertEquals(1, count);
+            }
+            assertTrue(map.size() >= ENTRIES);
+            scans++;
+        } while (!rebalance.isDone());
+        rebalance.join();
+        assertTrue(scans > 0);
+        assertEquals(ENTRIES, map.size());
+    }
+}